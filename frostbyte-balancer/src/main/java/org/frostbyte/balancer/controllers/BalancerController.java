@@ -2,21 +2,28 @@ package org.frostbyte.balancer.controllers;
 
 import org.frostbyte.balancer.models.DataNodeInfo;
 import org.frostbyte.balancer.models.configModel;
+import org.frostbyte.balancer.services.DataNodeGuard;
 import org.frostbyte.balancer.services.DataNodeService;
-import org.frostbyte.balancer.services.DatabaseNodeService;
 import org.frostbyte.balancer.services.DownloadService;
+import org.frostbyte.balancer.services.ReplicaRegistrationQueue;
+import org.frostbyte.balancer.services.ReplicaScoreboard;
 import org.frostbyte.balancer.services.ReplicaService;
+import org.frostbyte.balancer.services.SnowflakeCache;
+import org.frostbyte.balancer.services.StagingSpool;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Objects;
 import java.util.logging.Logger;
 
 /*
@@ -29,25 +36,37 @@ public class BalancerController {
     private final configModel config;
     private final DataNodeService dataNodeService;
     private final ReplicaService replicaService;
-    private final DatabaseNodeService databaseNodeService;
     private final DownloadService downloadService;
+    private final ReplicaRegistrationQueue registrationQueue;
+    private final SnowflakeCache snowflakeCache;
+    private final ReplicaScoreboard replicaScoreboard;
+    private final DataNodeGuard dataNodeGuard;
+    private final AdmissionFilter admissionFilter;
+    private final StagingSpool stagingSpool;
     private static final Logger log = Logger.getLogger(BalancerController.class.getName());
     private static final String API_HEADER = "X-API-Key";
 
-    // Counter for round-robin datanode selection offset
-    private final AtomicInteger chunkCounter = new AtomicInteger(0);
-
     @Autowired
     public BalancerController(configModel config,
                               DataNodeService dataNodeService,
                               ReplicaService replicaService,
-                              DatabaseNodeService databaseNodeService,
-                              DownloadService downloadService) {
+                              DownloadService downloadService,
+                              ReplicaRegistrationQueue registrationQueue,
+                              SnowflakeCache snowflakeCache,
+                              ReplicaScoreboard replicaScoreboard,
+                              DataNodeGuard dataNodeGuard,
+                              AdmissionFilter admissionFilter,
+                              StagingSpool stagingSpool) {
         this.config = config;
         this.dataNodeService = dataNodeService;
         this.replicaService = replicaService;
-        this.databaseNodeService = databaseNodeService;
         this.downloadService = downloadService;
+        this.registrationQueue = registrationQueue;
+        this.snowflakeCache = snowflakeCache;
+        this.replicaScoreboard = replicaScoreboard;
+        this.dataNodeGuard = dataNodeGuard;
+        this.admissionFilter = admissionFilter;
+        this.stagingSpool = stagingSpool;
     }
 
     private boolean isAuthorized(String apiKey) {
@@ -89,115 +108,107 @@ public class BalancerController {
 
             log.info("Processing upload for snowflake: " + snowflakeFileName + " (chunk: " + chunkId + ")");
 
-            // Step 1: Fetch available datanodes from MasterNode
-            List<DataNodeInfo> availableNodes = dataNodeService.fetchAvailableDataNodes();
+            // Staging spool (if enabled and not full): ack once the snowflake is on local disk
+            if (stagingSpool.isEnabled()) {
+                try (InputStream in = snowflakeFile.getInputStream()) {
+                    StagingSpool.StagedChunk staged = stagingSpool.stage(chunkId, snowflakeFileName, in, snowflakeFile.getSize());
+                    if (staged != null) {
+                        return stagedUploadResponse(staged);
+                    }
+                }
+            }
+
+            // Step 1: Available datanodes from the local membership cache (refreshed from MasterNode)
+            List<DataNodeInfo> availableNodes = dataNodeService.getAvailableDataNodes();
 
             if (availableNodes.isEmpty()) {
-                log.severe("No datanodes available for upload");
-                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
-                        .body(Map.of(
-                                "error", "No datanodes available",
-                                "message", "Cannot upload snowflake - no storage nodes online"
-                        ));
+                return noDataNodesResponse();
             }
 
-            // Step 2: Select datanodes for replicas using capacity-aware heap algorithm
+            // Step 2: Read snowflake data
+            byte[] snowflakeData = snowflakeFile.getBytes();
+            log.info("Snowflake size: " + snowflakeData.length + " bytes");
 
-            /*
-                * Greedy based Latin Rectangle Algorithm for Replica Selection
-                * - Uses min-heap based on projectedFillPercent to select least-loaded nodes
-                * - Ensures no duplicate nodes for the same chunk (Latin rectangle property)
-                *
-             */
-            int replicaCount = config.getReplicaCount();
-            log.fine("Selecting "+ replicaCount +" datanodes for replicas from" + availableNodes.size() + "available nodes");
-            int offset = chunkCounter.getAndIncrement(); // Different offset for each chunk (legacy param)
-            List<DataNodeInfo> selectedNodes = dataNodeService.selectDataNodesForReplicas(
-                    availableNodes, replicaCount, offset);
+            // Step 3: Select datanodes for replicas using capacity-aware heap algorithm
+            List<DataNodeInfo> selectedNodes = selectReplicaNodes(availableNodes, snowflakeData.length, snowflakeFileName);
 
             if (selectedNodes.isEmpty()) {
-                log.severe("No datanodes selected - all nodes may be at capacity or unavailable");
-                return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE)
-                        .body(Map.of(
-                                "error", "No datanodes available with sufficient capacity",
-                                "message", "All storage nodes are at or near capacity (>95% full)"
-                        ));
+                return insufficientCapacityResponse();
             }
 
-            // Warn if we couldn't get the requested number of replicas
-            if (selectedNodes.size() < replicaCount) {
-                log.warning(String.format("Partial replica allocation: selected %d/%d replicas due to capacity constraints",
-                        selectedNodes.size(), replicaCount));
-            }
+            // Step 4: Distribute replicas to selected datanodes
+            ReplicaService.ReplicaWrite write = replicaService.distributeReplicas(
+                    selectedNodes, snowflakeData, snowflakeFileName);
 
-            log.info(String.format("Selected %d datanodes for replication (requested: %d)",
-                    selectedNodes.size(), replicaCount));
+            // Steps 5-6: Register replicas and build the response
+            return completeUpload(chunkId, write);
 
-            // Step 3: Read snowflake data
-            byte[] snowflakeData = snowflakeFile.getBytes();
-            log.info("Snowflake size: " + snowflakeData.length + " bytes");
+        } catch (Exception e) {
+            log.severe("Error processing snowflake upload: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of(
+                            "error", "Failed to process snowflake upload",
+                            "message", e.getMessage()
+                    ));
+        }
+    }
 
-            // Step 4: Distribute replicas to selected datanodes
-            List<String> successfulNodes = replicaService.distributeReplicas(
-                    selectedNodes, snowflakeData, snowflakeFileName);
+    /**
+     * Streaming variant of /upload/snowflake: the request body is the raw snowflake
+     * (application/octet-stream, Content-Length required) and is relayed to the selected
+     * DataNodes while it is being received, so the balancer never holds a whole chunk.
+     * Responses are the same as /upload/snowflake; 411 if the length is unknown.
+     * With the staging spool enabled, the body goes to local disk instead (202, see StagingSpool).
+     */
+    @PostMapping(value = "/upload/snowflake/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadSnowflakeStream(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestParam("chunkId") String chunkId,
+            @RequestParam("fileName") String fileName,
+            HttpServletRequest request) {
 
-            if (successfulNodes.isEmpty()) {
-                log.severe("Failed to upload snowflake to any datanode");
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(Map.of(
-                                "error", "Failed to upload snowflake to any datanode",
-                                "replicasCreated", 0
-                        ));
-            }
+        if (!isAuthorized(apiKey)) {
+            log.warning("Unauthorized snowflake stream upload attempt");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+
+        if (chunkId.trim().isEmpty() || fileName.trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Chunk ID and fileName are required"));
+        }
 
-            // Step 5: Fetch DatabaseNode URL
-            String databaseNodeUrl = databaseNodeService.fetchDatabaseNodeUrl();
-            if (databaseNodeUrl == null) {
-                log.severe("No database node available - replicas uploaded but not registered!");
-                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                        .body(Map.of(
-                                "warning", "Replicas uploaded but not registered - no database node available",
-                                "replicasCreated", successfulNodes.size(),
-                                "replicaLocations", successfulNodes
-                        ));
+        long contentLength = request.getContentLengthLong();
+        if (contentLength <= 0) {
+            return ResponseEntity.status(HttpStatus.LENGTH_REQUIRED)
+                    .body(Map.of("error", "Content-Length is required for streamed uploads"));
+        }
+
+        try {
+            StagingSpool.StagedChunk staged = stagingSpool.stage(chunkId, fileName, request.getInputStream(), contentLength);
+            if (staged != null) {
+                return stagedUploadResponse(staged);
             }
 
-            // Step 6: Register replicas in DatabaseNode
-            boolean registered = replicaService.registerReplicasInDatabase(
-                    chunkId, successfulNodes, databaseNodeUrl);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("chunkId", chunkId);
-            response.put("replicasCreated", successfulNodes.size());
-            response.put("replicasRequested", replicaCount);
-            response.put("replicaLocations", successfulNodes);
-            response.put("registered", registered);
-
-            if (!registered) {
-                response.put("warning", "Replicas uploaded but registration in database failed");
-                log.warning("Failed to register replicas in database");
-                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).body(response);
+            log.info("Relaying snowflake: " + fileName + " (chunk: " + chunkId + ", " + contentLength + " bytes)");
+
+            List<DataNodeInfo> availableNodes = dataNodeService.getAvailableDataNodes();
+            if (availableNodes.isEmpty()) {
+                return noDataNodesResponse();
             }
 
-            // Warn if we created fewer replicas than requested due to capacity constraints
-            if (successfulNodes.size() < replicaCount) {
-                response.put("warning", String.format(
-                        "Partial replication: created %d/%d replicas due to capacity constraints",
-                        successfulNodes.size(), replicaCount));
-                response.put("message", "Snowflake uploaded with reduced replication factor");
-                log.warning(String.format("Upload completed with reduced replication: %d/%d replicas for chunk %s",
-                        successfulNodes.size(), replicaCount, chunkId));
-                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).body(response);
+            List<DataNodeInfo> selectedNodes = selectReplicaNodes(availableNodes, contentLength, fileName);
+            if (selectedNodes.isEmpty()) {
+                return insufficientCapacityResponse();
             }
 
-            response.put("message", "Snowflake uploaded and replicas registered successfully");
-            log.info("Snowflake upload completed: " + successfulNodes.size() + " replicas created for chunk " + chunkId);
+            ReplicaService.ReplicaWrite write = replicaService.relayReplicas(
+                    selectedNodes, request.getInputStream(), contentLength, fileName);
 
-            return ResponseEntity.ok(response);
+            return completeUpload(chunkId, write);
 
         } catch (Exception e) {
-            log.severe("Error processing snowflake upload: " + e.getMessage());
+            log.severe("Error processing snowflake stream upload: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of(
                             "error", "Failed to process snowflake upload",
@@ -206,12 +217,149 @@ public class BalancerController {
         }
     }
 
+    private ResponseEntity<?> noDataNodesResponse() {
+        log.severe("No datanodes available for upload");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of(
+                        "error", "No datanodes available",
+                        "message", "Cannot upload snowflake - no storage nodes online"
+                ));
+    }
+
+    private ResponseEntity<?> insufficientCapacityResponse() {
+        log.severe("No datanodes selected - all nodes may be at capacity or unavailable");
+        return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE)
+                .body(Map.of(
+                        "error", "No datanodes available with sufficient capacity",
+                        "message", "All storage nodes are at or near capacity (>95% full)"
+                ));
+    }
+
+    /*
+        * Greedy based Latin Rectangle Algorithm for Replica Selection
+        * - Picks least-loaded nodes by projectedFillPercent, spread across zones/racks/machines
+        * - Ensures no duplicate nodes for the same chunk (Latin rectangle property)
+        * - Reserves the snowflake's bytes on the selected nodes (placement ledger), the
+        *   replica writes settle the reservation
+        * - placement-mode=striped: chunk position within the file comes from the snowflake
+        *   name (<fileId>_<chunkNumber>.snowflake), see DataNodeService.selectStripedNodes
+        *
+     */
+    private List<DataNodeInfo> selectReplicaNodes(List<DataNodeInfo> availableNodes, long snowflakeBytes,
+                                                  String snowflakeFileName) {
+        int replicaCount = config.getReplicaCount();
+        log.fine("Selecting "+ replicaCount +" datanodes for replicas from" + availableNodes.size() + "available nodes");
+
+        List<DataNodeInfo> selectedNodes = dataNodeService.placeReplicas(
+                availableNodes, replicaCount, snowflakeBytes, snowflakeFileName);
+
+        if (selectedNodes.isEmpty()) {
+            return selectedNodes;
+        }
+
+        // Warn if we couldn't get the requested number of replicas
+        if (selectedNodes.size() < replicaCount) {
+            log.warning(String.format("Partial replica allocation: selected %d/%d replicas due to capacity constraints",
+                    selectedNodes.size(), replicaCount));
+        }
+
+        log.info(String.format("Selected %d datanodes for replication (requested: %d)",
+                selectedNodes.size(), replicaCount));
+        return selectedNodes;
+    }
+
+    /**
+     * Queues registration of the written replicas and builds the upload response
+     * (shared by the multipart and streamed upload endpoints)
+     * Replicas still being written past the write quorum are registered as PENDING and
+     * completed in the background.
+     */
+    private ResponseEntity<?> completeUpload(String chunkId, ReplicaService.ReplicaWrite write) {
+        int replicaCount = config.getReplicaCount();
+        List<String> successfulNodes = write.getAcked();
+        List<String> pendingNodes = write.getPendingHosts();
+
+        if (successfulNodes.isEmpty()) {
+            log.severe("Failed to upload snowflake to any datanode");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of(
+                            "error", "Failed to upload snowflake to any datanode",
+                            "replicasCreated", 0
+                    ));
+        }
+
+        // Step 5: Queue the registration (journaled locally, sent to a DatabaseNode in bulk)
+        boolean registered = replicaService.registerReplicasInDatabase(chunkId, successfulNodes, pendingNodes);
+        if (registered && !pendingNodes.isEmpty()) {
+            replicaService.completePendingReplicas(chunkId, write);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("chunkId", chunkId);
+        response.put("replicasCreated", successfulNodes.size());
+        response.put("replicasRequested", replicaCount);
+        response.put("replicaLocations", successfulNodes);
+        response.put("replicasPending", pendingNodes.size());
+        response.put("replicaFallbacks", write.getFallbacks());
+        response.put("registered", registered);
+
+        if (!registered) {
+            response.put("warning", "Replicas uploaded but could not be queued for registration");
+            log.warning("Failed to queue replica registration");
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).body(response);
+        }
+
+        // Warn if we created fewer replicas than requested due to capacity constraints
+        if (successfulNodes.size() + pendingNodes.size() < replicaCount) {
+            response.put("warning", String.format(
+                    "Partial replication: created %d/%d replicas due to capacity constraints",
+                    successfulNodes.size(), replicaCount));
+            response.put("message", "Snowflake uploaded with reduced replication factor");
+            log.warning(String.format("Upload completed with reduced replication: %d/%d replicas for chunk %s",
+                    successfulNodes.size(), replicaCount, chunkId));
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).body(response);
+        }
+
+        response.put("message", "Snowflake uploaded and replica registration queued");
+        log.info("Snowflake upload completed: " + successfulNodes.size() + " replicas created, "
+                + pendingNodes.size() + " pending for chunk " + chunkId);
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Upload response for a snowflake held in the staging spool (202: replicas are written
+     * and registered in the background). replicaLocations lists the replica written before
+     * the ack when staging-ack-replica is on.
+     */
+    private ResponseEntity<?> stagedUploadResponse(StagingSpool.StagedChunk staged) {
+        List<String> writtenNodes = staged.getWrittenHosts();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("chunkId", staged.getChunkId());
+        response.put("staged", true);
+        response.put("replicasCreated", writtenNodes.size());
+        response.put("replicasRequested", config.getReplicaCount());
+        response.put("replicaLocations", writtenNodes);
+
+        if (config.isStagingAckReplica() && writtenNodes.isEmpty()) {
+            response.put("warning", "Snowflake staged but the acknowledgement replica could not be written");
+            log.warning("No acknowledgement replica for staged chunk " + staged.getChunkId());
+        }
+        response.put("message", "Snowflake staged, replicas are written in the background");
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
     // 2. DIAGNOSTIC ENDPOINTS
     /**
-     * Endpoint to fetch available DataNodes from MasterNode
+     * Endpoint to list available DataNodes from the membership cache
      *
      * @param apiKey Internal API key for authentication
-     * @return JSON with count, datanodes list, and configured replicaCount
+     * @return JSON with count, datanodes list, configured replicaCount, snapshot age, quarantined nodes
+     *         and bytes placed but not yet reported by heartbeats
      */
     @GetMapping("/datanodes/available")
     public ResponseEntity<?> getAvailableDataNodes(@RequestHeader(value = API_HEADER) String apiKey) {
@@ -221,11 +369,14 @@ public class BalancerController {
         }
 
         try {
-            List<DataNodeInfo> nodes = dataNodeService.fetchAvailableDataNodes();
+            List<DataNodeInfo> nodes = dataNodeService.getAvailableDataNodes();
             return ResponseEntity.ok(Map.of(
                     "count", nodes.size(),
                     "datanodes", nodes,
-                    "replicaCount", config.getReplicaCount()
+                    "replicaCount", config.getReplicaCount(),
+                    "membershipAgeMs", dataNodeService.getMembershipAgeMs(),
+                    "quarantined", dataNodeService.getQuarantinedHosts(),
+                    "placementLedger", dataNodeService.getPlacementLedger()
             ));
         } catch (Exception e) {
             log.severe("Error fetching available datanodes: " + e.getMessage());
@@ -234,17 +385,130 @@ public class BalancerController {
         }
     }
 
+    /**
+     * Read replica scores per DataNode: EWMA latency and error rate, reads in flight and the
+     * expected cost used to order replicas for downloads (lower is preferred)
+     *
+     * @param apiKey Internal API key for authentication
+     */
+    @GetMapping("/datanodes/scores")
+    public ResponseEntity<?> getReplicaScores(@RequestHeader(value = API_HEADER) String apiKey) {
+        if (!isAuthorized(apiKey)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "decayMs", config.getReplicaScoreDecayMs(),
+                "errorPenaltyMs", config.getReplicaErrorPenaltyMs(),
+                "datanodes", replicaScoreboard.snapshot()
+        ));
+    }
+
+    /**
+     * Circuit breaker state (CLOSED / OPEN / HALF_OPEN) and adaptive concurrency limit per
+     * DataNode, with baseline latencies and shed request counts
+     *
+     * @param apiKey Internal API key for authentication
+     */
+    @GetMapping("/datanodes/breakers")
+    public ResponseEntity<?> getBreakers(@RequestHeader(value = API_HEADER) String apiKey) {
+        if (!isAuthorized(apiKey)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "failureThreshold", config.getBreakerFailureThreshold(),
+                "openMs", config.getBreakerOpenMs(),
+                "datanodes", dataNodeGuard.snapshot()
+        ));
+    }
+
+    /**
+     * Snowflake read cache metrics: hit ratio, evictions, 2Q area sizes, and
+     * chunk requests served by another request's in-flight fetch
+     *
+     * @param apiKey Internal API key for authentication
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> getCacheStats(@RequestHeader(value = API_HEADER) String apiKey) {
+        if (!isAuthorized(apiKey)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+        Map<String, Object> stats = new HashMap<>(snowflakeCache.getStats());
+        stats.put("coalescedFetches", downloadService.getCoalescedFetches());
+        stats.put("hintedFetches", downloadService.getHintedFetches());
+        stats.put("hintFallbacks", downloadService.getHintFallbacks());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Drops every cached snowflake (counters are kept)
+     *
+     * @param apiKey Internal API key for authentication
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<?> clearCache(@RequestHeader(value = API_HEADER) String apiKey) {
+        if (!isAuthorized(apiKey)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+        snowflakeCache.clear();
+        return ResponseEntity.ok(Map.of("message", "Snowflake cache cleared"));
+    }
+
+    /**
+     * Deletes snowflakes that no file references any more (e.g. the chunks of an aborted
+     * append) from every available DataNode, the snowflake cache and the staging spool,
+     * so their names can be written again.
+     *
+     * @param apiKey Internal API key for authentication
+     * @param requestBody JSON {"snowflakeNames": [...]}
+     * @return 200 with the number of names, 502 if some DataNodes could not be reached
+     */
+    @PostMapping("/snowflakes/delete")
+    public ResponseEntity<?> deleteSnowflakes(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestBody Map<String, List<String>> requestBody) {
+        if (!isAuthorized(apiKey)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+
+        List<String> names = requestBody.get("snowflakeNames");
+        if (names == null || names.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "snowflakeNames is required"));
+        }
+
+        names.forEach(name -> {
+            snowflakeCache.invalidate(name);
+            stagingSpool.discard(name);
+        });
+        List<String> failed = replicaService.deleteSnowflakes(dataNodeService.getAvailableDataNodes(), names);
+        log.info(String.format("[SNOWFLAKES-DELETED] names=%d failedDataNodes=%s", names.size(), failed));
+
+        if (!failed.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body(Map.of("error", "Delete failed on DataNodes: " + failed));
+        }
+        return ResponseEntity.ok(Map.of("deleted", names.size()));
+    }
+
     /**
      * Health check endpoint for monitoring BalancerNode status.
      *
-     * @return JSON with status, nodeName, and configured replicaCount
+     * @return JSON with status, nodeName, configured replicaCount, the replica registration backlog
+     *         in-flight upload admission counters and staging spool usage
      */
     @GetMapping("/health")
     public ResponseEntity<?> healthCheck() {
         return ResponseEntity.ok(Map.of(
                 "status", "healthy",
                 "nodeName", config.getNodeName(),
-                "replicaCount", config.getReplicaCount()
+                "replicaCount", config.getReplicaCount(),
+                "registrationBacklog", registrationQueue.getBacklog(),
+                "uploadAdmission", admissionFilter.getStats(),
+                "stagingSpool", stagingSpool.getStats()
         ));
     }
 
@@ -258,15 +522,17 @@ public class BalancerController {
      *
      * <p>Process:
      * <ol>
-     *   <li>Query DatabaseNode for chunk replica locations</li>
-     *   <li>Select random replica from available locations</li>
+     *   <li>Try the replicas hinted by the client, if any; otherwise (or if all of them fail)
+     *       query DatabaseNode for chunk replica locations</li>
+     *   <li>Order available replicas by expected latency (ReplicaScoreboard)</li>
      *   <li>Download from selected DataNode</li>
      *   <li>Validate CRC32 checksum</li>
      *   <li>If validation fails or node unavailable, retry with next replica</li>
      * </ol>
      *
      * @param apiKey Internal API key for authentication
-     * @param requestBody JSON with fileId, chunkId, chunkNumber fields
+     * @param requestBody JSON with fileId, chunkId, chunkNumber fields and optional
+     *                    replicas (DataNode hosts from the file map)
      * @return Binary snowflake data (metadata + encrypted chunk), 404 if no replicas available,
      *         500 if all replicas fail CRC validation
      */
@@ -290,12 +556,13 @@ public class BalancerController {
         String fileId = requestBody.get("fileId").toString();
         String chunkId = requestBody.get("chunkId").toString();
         int chunkNumber = Integer.parseInt(requestBody.get("chunkNumber").toString());
+        List<String> replicaHints = replicaHints(requestBody.get("replicas"));
 
         log.info(String.format("[CHUNK-REQUEST] fileId=%s chunkId=%s chunkNumber=%d", fileId, chunkId, chunkNumber));
 
         try {
             // Download chunk with automatic replica selection and failover
-            byte[] snowflakeBytes = downloadService.downloadChunk(fileId, chunkId, chunkNumber);
+            byte[] snowflakeBytes = downloadService.downloadChunk(fileId, chunkId, chunkNumber, replicaHints);
 
             log.info(String.format("[CHUNK-RESPONSE] chunkId=%s snowflakeSize=%d", chunkId, snowflakeBytes.length));
 
@@ -321,5 +588,133 @@ public class BalancerController {
                     .body(("Internal server error: " + e.getMessage()).getBytes());
         }
     }
-}
 
+    /**
+     * Same as /download/chunk, but the snowflake is relayed to the caller while it arrives
+     * from the DataNode instead of being buffered, and its CRC32 is checked on the way
+     * through. The outcome is reported in-band (see DownloadService.relayChunk for the
+     * frame format): a corrupt replica ends with FRAME_RETRY and the next replica follows.
+     *
+     * @param apiKey Internal API key for authentication
+     * @param requestBody JSON with fileId, chunkId, chunkNumber fields and optional replicas
+     * @return Framed snowflake stream, 400 if a field is missing
+     */
+    @PostMapping(value = "/download/chunk/stream", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> relayChunk(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestBody Map<String, Object> requestBody) {
+
+        if (!isAuthorized(apiKey)) {
+            log.warning("Unauthorized chunk relay attempt");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body("Forbidden: Invalid API key".getBytes());
+        }
+
+        if (!requestBody.containsKey("fileId") || !requestBody.containsKey("chunkId") || !requestBody.containsKey("chunkNumber")) {
+            return ResponseEntity.badRequest()
+                    .body("Missing required fields: fileId, chunkId, chunkNumber".getBytes());
+        }
+
+        String fileId = requestBody.get("fileId").toString();
+        String chunkId = requestBody.get("chunkId").toString();
+        int chunkNumber = Integer.parseInt(requestBody.get("chunkNumber").toString());
+        List<String> replicaHints = replicaHints(requestBody.get("replicas"));
+
+        log.info(String.format("[CHUNK-RELAY-REQUEST] fileId=%s chunkId=%s chunkNumber=%d", fileId, chunkId, chunkNumber));
+
+        StreamingResponseBody body = outputStream ->
+                downloadService.relayChunk(fileId, chunkId, chunkNumber, replicaHints, outputStream);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    /**
+     * Snowflake of a chunk held in this balancer's staging spool, read by other balancers
+     * while the chunk is not destaged yet (see StagingSpool)
+     *
+     * @param apiKey Internal API key for authentication
+     * @param snowflakeName Name of the staged snowflake
+     * @return Raw snowflake bytes, 404 if it is not (or no longer) staged here
+     */
+    @PostMapping(value = "/staged/download", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> downloadStaged(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestParam("snowflake_name") String snowflakeName) {
+
+        if (!isAuthorized(apiKey)) {
+            log.warning("Unauthorized staged download attempt");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body("Forbidden: Invalid API key".getBytes());
+        }
+
+        InputStream in = stagingSpool.openStaged(snowflakeName);
+        if (in == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(("Not staged here: " + snowflakeName).getBytes());
+        }
+
+        log.info("[STAGED-DOWNLOAD] snowflake=" + snowflakeName);
+        StreamingResponseBody body = outputStream -> {
+            try (in) {
+                in.transferTo(outputStream);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    // Optional "replicas" of a download request: DataNode hosts hinted by the client
+    private static List<String> replicaHints(Object value) {
+        if (!(value instanceof List<?> hints)) return null;
+        return hints.stream().filter(Objects::nonNull).map(Object::toString).toList();
+    }
+
+    /**
+     * Download many chunks in one request, streamed back in request order.
+     * Replica lookups and liveness checks are done once for the whole batch
+     * (see DownloadService.streamChunks for the frame format).
+     *
+     * @param apiKey Internal API key for authentication
+     * @param requestBody JSON {"chunks": [{fileId, chunkId, chunkNumber, replicas?}, ...]}
+     * @return Framed stream of snowflakes, 400 if the list is empty or over batch-download-max-chunks
+     */
+    @PostMapping(value = "/download/batch", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> downloadChunkBatch(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestBody Map<String, List<DownloadService.ChunkRequest>> requestBody) {
+
+        if (!isAuthorized(apiKey)) {
+            log.warning("Unauthorized batch download attempt");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body("Forbidden: Invalid API key".getBytes());
+        }
+
+        List<DownloadService.ChunkRequest> chunks = requestBody.get("chunks");
+        if (chunks == null || chunks.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body("Missing required field: chunks".getBytes());
+        }
+        if (chunks.size() > config.getBatchDownloadMaxChunks()) {
+            return ResponseEntity.badRequest()
+                    .body(("At most " + config.getBatchDownloadMaxChunks() + " chunks per batch").getBytes());
+        }
+        for (DownloadService.ChunkRequest chunk : chunks) {
+            if (chunk.getFileId() == null || chunk.getChunkId() == null) {
+                return ResponseEntity.badRequest()
+                        .body("Every chunk needs fileId, chunkId and chunkNumber".getBytes());
+            }
+        }
+
+        log.info(String.format("[BATCH-REQUEST] chunks=%d first=%s", chunks.size(), chunks.get(0).getChunkId()));
+
+        StreamingResponseBody body = outputStream -> downloadService.streamChunks(chunks, outputStream);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header("X-Chunk-Count", Integer.toString(chunks.size()))
+                .body(body);
+    }
+}
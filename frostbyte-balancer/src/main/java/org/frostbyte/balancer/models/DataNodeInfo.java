@@ -12,6 +12,11 @@ public class DataNodeInfo {
     private double totalCapacityGB = 0.0;
     private double fillPercent = 0.0;
 
+    // Failure-domain labels; empty when the DataNode did not report them
+    private String zone = "";
+    private String rack = "";
+    private String physicalHost = "";
+
     // For load balancing - tracks projected load during allocation
     private double projectedFillPercent = 0.0;
 }
@@ -13,6 +13,10 @@ public class configModel {
     private int port;
     private String nodeName;
 
+    // Failure domain of this balancer (read locality), empty = unknown
+    private String zone = "";
+    private String rack = "";
+
     // Masternode list
     private String[] masterNodes;
 
@@ -21,5 +25,70 @@ public class configModel {
 
     // Replication configuration
     private int replicaCount = 3; // Default 3 replicas per chunk
+    private String placementMode = "least-loaded"; // least-loaded | striped (Latin rectangle per file)
+
+    // DataNode membership cache
+    private long membershipRefreshMs = 5000;       // Background refresh from MasterNode
+    private long membershipMaxStalenessMs = 15000; // Older snapshots are refreshed inline before use
+    private long datanodeQuarantineMs = 30000;     // Exclusion after a failed upload to a DataNode
+    private long placementLedgerTtlMs = 120000;    // Placed bytes count towards projected fill at most this long
+
+    // Replica fan-out
+    private int maxInFlightPerDataNode = 4;        // Initial concurrency limit per DataNode (adapted, see below)
+    private long replicaUploadDeadlineMs = 600000; // Upper bound for writing all replicas of one chunk
+    private int writeQuorum = 0;                   // Replicas written before an upload is acknowledged (0 = all)
+    private int replicaFallbackAttempts = 2;       // Replacement nodes tried per failed replica write (0 = none)
+
+    // Upload admission control (503 + Retry-After beyond these)
+    private long admissionMaxInflightBytes = 1073741824; // Content-Length of uploads being processed
+    private int admissionMaxInflightRequests = 64;
+    private long admissionRetryAfterMaxS = 30;           // Upper bound of the advertised Retry-After
+
+    // Streamed uploads (/upload/snowflake/stream)
+    private int relayBufferKB = 64;                // Size of one relayed segment
+    private int relayQueueDepth = 8;               // Segments buffered per DataNode before backpressure
+
+    // Batch downloads (/download/batch)
+    private int batchDownloadMaxChunks = 256;      // Chunks per batch request
+    private int batchDownloadPrefetch = 2;         // Chunks fetched ahead of the one being streamed
+    private long batchDownloadPrefetchMaxBytes = 1073741824; // Bytes fetched ahead across all batches
+    private int batchDownloadThreads = 32;         // Chunk fetch threads shared by all batches
+
+    // Snowflake read cache (off-heap)
+    private long snowflakeCacheMaxBytes = 1073741824; // Byte budget, 0 disables the cache (hold two full-size chunks)
+    private long snowflakeCacheMaxEntryBytes = 0;     // Larger snowflakes are not cached (0 = the whole budget)
+
+    // Per-DataNode circuit breaker and adaptive (AIMD) concurrency limit
+    private int breakerFailureThreshold = 5;       // Consecutive failures that open the breaker
+    private long breakerOpenMs = 10000;            // Requests refused for this long before a probe
+    private int adaptiveLimitMin = 1;
+    private int adaptiveLimitMax = 32;
+    private double adaptiveLatencyTolerance = 2.0; // Slower than this x baseline latency counts as congestion
+    private long datanodeLimitWaitMs = 2000;       // Downloads wait this long for a slot before trying the next replica
+    private long datanodeConnectTimeoutMs = 5000;
+    private long datanodeReadTimeoutMs = 120000;   // A hung DataNode request fails after this
+
+    // Latency-aware replica selection for reads
+    private long replicaScoreDecayMs = 10000;      // Time constant of the latency / error-rate EWMAs
+    private long replicaErrorPenaltyMs = 1000;     // Cost of a read with error rate 1.0, in latency ms
+
+    // DatabaseNode endpoints
+    private long databaseNodeRetryMs = 10000;      // An endpoint that failed is tried last for this long
+
+    // Write-behind replica registration
+    private String registrationJournalDir = "registration-journal"; // Local journal of unsent registrations
+    private long registrationFlushMs = 200;        // Max delay before queued registrations are sent
+    private int registrationBatchSize = 256;       // Registrations per bulk request (a full batch is sent at once)
+    private int registrationQueueMax = 100000;     // Backlog limit, uploads get 206 beyond it
+    private long registrationAckTimeoutMs = 2000;  // Uploads wait this long for their batch to be stored (0 = journal-only ack)
+
+    // Local staging spool (absorbs ingest bursts, destaged to DataNodes in the background)
+    private boolean stagingEnabled = false;        // Ack uploads once fsynced to the local spool
+    private String stagingDir = "staging-spool";   // Spool directory, ideally on a local SSD
+    private long stagingMaxBytes = 10737418240L;   // Spool capacity, uploads go straight to DataNodes beyond it
+    private boolean stagingAckReplica = false;     // Also write one replica before acking
+    private long stagingDestageBytesPerSec = 0;    // Destage bandwidth limit across workers (0 = unlimited)
+    private int stagingDestageConcurrency = 2;     // Destage worker threads
+    private long stagingRetryMs = 5000;            // Delay before a failed destage is retried
 
 }
\ No newline at end of file
@@ -39,6 +39,8 @@ public class ConfigLoader {
             writer.write("frostbyte.balancer.host=127.0.0.1\n");
             writer.write("frostbyte.balancer.port=8999\n");
             writer.write("frostbyte.balancer.node-name=Balancernode_1\n");
+            writer.write("frostbyte.balancer.zone=\n");
+            writer.write("frostbyte.balancer.rack=\n");
             writer.write("\n");
             writer.write("# Master Nodes (comma-separated)\n");
             writer.write("frostbyte.balancer.master-nodes=127.0.0.1:7001\n");
@@ -48,6 +50,52 @@ public class ConfigLoader {
             writer.write("\n");
             writer.write("# Replication Configuration\n");
             writer.write("frostbyte.balancer.replica-count=3\n");
+            writer.write("frostbyte.balancer.placement-mode=least-loaded\n");
+            writer.write("\n");
+            writer.write("frostbyte.balancer.max-in-flight-per-data-node=4\n");
+            writer.write("frostbyte.balancer.replica-upload-deadline-ms=600000\n");
+            writer.write("frostbyte.balancer.write-quorum=0\n");
+            writer.write("frostbyte.balancer.replica-fallback-attempts=2\n");
+            writer.write("frostbyte.balancer.admission-max-inflight-bytes=1073741824\n");
+            writer.write("frostbyte.balancer.admission-max-inflight-requests=64\n");
+            writer.write("frostbyte.balancer.admission-retry-after-max-s=30\n");
+            writer.write("frostbyte.balancer.relay-buffer-kb=64\n");
+            writer.write("frostbyte.balancer.relay-queue-depth=8\n");
+            writer.write("\n");
+            writer.write("# DataNode Membership Cache (milliseconds)\n");
+            writer.write("frostbyte.balancer.membership-refresh-ms=5000\n");
+            writer.write("frostbyte.balancer.membership-max-staleness-ms=15000\n");
+            writer.write("frostbyte.balancer.datanode-quarantine-ms=30000\n");
+            writer.write("frostbyte.balancer.placement-ledger-ttl-ms=120000\n");
+            writer.write("frostbyte.balancer.batch-download-max-chunks=256\n");
+            writer.write("frostbyte.balancer.batch-download-prefetch=2\n");
+            writer.write("frostbyte.balancer.batch-download-prefetch-max-bytes=1073741824\n");
+            writer.write("frostbyte.balancer.batch-download-threads=32\n");
+            writer.write("frostbyte.balancer.snowflake-cache-max-bytes=1073741824\n");
+            writer.write("frostbyte.balancer.snowflake-cache-max-entry-bytes=0\n");
+            writer.write("frostbyte.balancer.breaker-failure-threshold=5\n");
+            writer.write("frostbyte.balancer.breaker-open-ms=10000\n");
+            writer.write("frostbyte.balancer.adaptive-limit-min=1\n");
+            writer.write("frostbyte.balancer.adaptive-limit-max=32\n");
+            writer.write("frostbyte.balancer.adaptive-latency-tolerance=2.0\n");
+            writer.write("frostbyte.balancer.datanode-limit-wait-ms=2000\n");
+            writer.write("frostbyte.balancer.datanode-connect-timeout-ms=5000\n");
+            writer.write("frostbyte.balancer.datanode-read-timeout-ms=120000\n");
+            writer.write("frostbyte.balancer.replica-score-decay-ms=10000\n");
+            writer.write("frostbyte.balancer.replica-error-penalty-ms=1000\n");
+            writer.write("frostbyte.balancer.database-node-retry-ms=10000\n");
+            writer.write("frostbyte.balancer.registration-journal-dir=registration-journal\n");
+            writer.write("frostbyte.balancer.registration-flush-ms=200\n");
+            writer.write("frostbyte.balancer.registration-batch-size=256\n");
+            writer.write("frostbyte.balancer.registration-queue-max=100000\n");
+            writer.write("frostbyte.balancer.registration-ack-timeout-ms=2000\n");
+            writer.write("frostbyte.balancer.staging-enabled=false\n");
+            writer.write("frostbyte.balancer.staging-dir=staging-spool\n");
+            writer.write("frostbyte.balancer.staging-max-bytes=10737418240\n");
+            writer.write("frostbyte.balancer.staging-ack-replica=false\n");
+            writer.write("frostbyte.balancer.staging-destage-bytes-per-sec=0\n");
+            writer.write("frostbyte.balancer.staging-destage-concurrency=2\n");
+            writer.write("frostbyte.balancer.staging-retry-ms=5000\n");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,282 @@
+package org.frostbyte.balancer.services;
+
+import org.frostbyte.balancer.models.configModel;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/*
+ * DataNodeGuard
+ * Every snowflake read or write to a DataNode runs under a Permit from this guard, which
+ * keeps two controls per DataNode:
+ *
+ * Circuit breaker
+ * - CLOSED: requests flow; breaker-failure-threshold consecutive failures open it
+ * - OPEN: requests are refused at once for breaker-open-ms (the node is also left out of
+ *   placement and read candidates)
+ * - HALF_OPEN: after the open period a single probe request is let through; success closes
+ *   the breaker, failure opens it again
+ *
+ * Adaptive concurrency limit (AIMD)
+ * - starts at max-in-flight-per-data-node, kept within [adaptive-limit-min, adaptive-limit-max]
+ * - a success no slower than adaptive-latency-tolerance x the node's baseline latency
+ *   raises the limit by 1/limit (about +1 per limit's worth of requests)
+ * - a failure or a slow success multiplies it by 0.7, at most once per window of requests
+ *   (requests started before the last decrease do not decrease it again)
+ * Baselines are slow EWMAs of successful latency, kept apart for reads and writes and per
+ * transfer size (power-of-4 buckets from 64 KB up), so a full-size chunk is only compared
+ * with other large transfers, never with tail chunks of a few KB.
+ */
+@Service
+public class DataNodeGuard {
+
+    public enum Kind { READ, WRITE }
+
+    public enum BreakerState { CLOSED, OPEN, HALF_OPEN }
+
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final double BASELINE_ALPHA = 0.1;
+    private static final String[] SIZE_BUCKETS = {"<64KB", "64KB+", "256KB+", "1MB+", "4MB+", "16MB+", "64MB+", "256MB+"};
+
+    private final configModel config;
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+    private static final Logger log = Logger.getLogger(DataNodeGuard.class.getName());
+
+    public DataNodeGuard(configModel config) {
+        this.config = config;
+    }
+
+    /**
+     * Waits (until the deadline) for a free slot under the node's concurrency limit
+     *
+     * @return a Permit that must be released, or null if the breaker is open, a half-open
+     *         probe is already running, or no slot freed up before the deadline
+     */
+    public Permit acquire(String host, Kind kind, long deadlineNanos) throws InterruptedException {
+        return guardOf(host).acquire(kind, deadlineNanos);
+    }
+
+    /**
+     * Whether requests to the node are currently refused (breaker OPEN)
+     */
+    public boolean isOpen(String host) {
+        Guard guard = guards.get(host);
+        if (guard == null) return false;
+        synchronized (guard) {
+            return guard.state == BreakerState.OPEN && System.currentTimeMillis() < guard.openUntil;
+        }
+    }
+
+    /**
+     * Breaker state, concurrency limit and counters per DataNode host (admin endpoint)
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        long now = System.currentTimeMillis();
+        guards.forEach((host, guard) -> {
+            synchronized (guard) {
+                BreakerState state = guard.state == BreakerState.OPEN && now >= guard.openUntil
+                        ? BreakerState.HALF_OPEN : guard.state;
+                Map<String, Object> view = new LinkedHashMap<>();
+                view.put("state", state);
+                view.put("openForMs", state == BreakerState.OPEN ? guard.openUntil - now : 0);
+                view.put("consecutiveFailures", guard.consecutiveFailures);
+                view.put("limit", Math.round(guard.limit * 100) / 100.0);
+                view.put("inFlight", guard.inFlight);
+                view.put("readBaselineMs", baselines(guard.baselineMs[Kind.READ.ordinal()]));
+                view.put("writeBaselineMs", baselines(guard.baselineMs[Kind.WRITE.ordinal()]));
+                view.put("shed", guard.shed);
+                view.put("trips", guard.trips);
+                result.put(host, view);
+            }
+        });
+        return result;
+    }
+
+    private Guard guardOf(String host) {
+        return guards.computeIfAbsent(host, Guard::new);
+    }
+
+    // Baselines of the size buckets seen so far
+    private static Map<String, Long> baselines(double[] byBucket) {
+        Map<String, Long> view = new LinkedHashMap<>();
+        for (int b = 0; b < byBucket.length; b++) {
+            if (byBucket[b] > 0) view.put(SIZE_BUCKETS[b], Math.round(byBucket[b]));
+        }
+        return view;
+    }
+
+    /**
+     * Size bucket of a transfer: below 64 KB, then one bucket per factor of 4 up to 256 MB+
+     */
+    static int sizeBucket(long bytes) {
+        if (bytes < 64 * 1024) return 0;
+        int log2 = 63 - Long.numberOfLeadingZeros(bytes >> 16);
+        return Math.min(SIZE_BUCKETS.length - 1, 1 + log2 / 2);
+    }
+
+    /**
+     * One admitted request; release exactly once with succeeded(bytes), failed() or cancelled()
+     */
+    public static final class Permit {
+        private final Guard guard;
+        private final Kind kind;
+        private final boolean probe;
+        private final long startNanos = System.nanoTime();
+        private long bytes;
+        private boolean released;
+
+        private Permit(Guard guard, Kind kind, boolean probe) {
+            this.guard = guard;
+            this.kind = kind;
+            this.probe = probe;
+        }
+
+        // @param bytes Snowflake bytes transferred (selects the latency baseline)
+        public void succeeded(long bytes) {
+            this.bytes = bytes;
+            release(Outcome.SUCCESS);
+        }
+
+        public void failed() {
+            release(Outcome.FAILURE);
+        }
+
+        // Released without feedback, e.g. the client side of a relay gave up
+        public void cancelled() {
+            release(Outcome.CANCELLED);
+        }
+
+        public void release(boolean success, long bytes) {
+            if (success) {
+                succeeded(bytes);
+            } else {
+                failed();
+            }
+        }
+
+        private void release(Outcome outcome) {
+            synchronized (guard) {
+                if (released) return;
+                released = true;
+                guard.release(this, outcome);
+            }
+        }
+    }
+
+    private enum Outcome { SUCCESS, FAILURE, CANCELLED }
+
+    private final class Guard {
+        private final String host;
+        private BreakerState state = BreakerState.CLOSED;
+        private long openUntil;
+        private boolean probeInFlight;
+        private int consecutiveFailures;
+        private long trips;
+
+        private double limit = clampLimit(config.getMaxInFlightPerDataNode());
+        private int inFlight;
+        private long lastDecreaseNanos = System.nanoTime();
+        private final double[][] baselineMs = new double[Kind.values().length][SIZE_BUCKETS.length];
+        private long shed;
+
+        Guard(String host) {
+            this.host = host;
+        }
+
+        synchronized Permit acquire(Kind kind, long deadlineNanos) throws InterruptedException {
+            while (true) {
+                if (state == BreakerState.OPEN) {
+                    if (System.currentTimeMillis() < openUntil) {
+                        shed++;
+                        return null;
+                    }
+                    state = BreakerState.HALF_OPEN;
+                    probeInFlight = false;
+                    log.info("[BREAKER-HALF-OPEN] datanode=" + host);
+                }
+                if (state == BreakerState.HALF_OPEN) {
+                    if (probeInFlight) {
+                        shed++;
+                        return null;
+                    }
+                    probeInFlight = true;
+                    inFlight++;
+                    return new Permit(this, kind, true);
+                }
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    return new Permit(this, kind, false);
+                }
+
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    shed++;
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+
+        // Caller holds this monitor
+        void release(Permit permit, Outcome outcome) {
+            inFlight--;
+            if (permit.probe) probeInFlight = false;
+
+            double latencyMs = (System.nanoTime() - permit.startNanos) / 1_000_000.0;
+            switch (outcome) {
+                case SUCCESS -> {
+                    consecutiveFailures = 0;
+                    if (state == BreakerState.HALF_OPEN) {
+                        state = BreakerState.CLOSED;
+                        log.info("[BREAKER-CLOSED] datanode=" + host);
+                    }
+                    double[] baselines = baselineMs[permit.kind.ordinal()];
+                    int bucket = sizeBucket(permit.bytes);
+                    double baseline = baselines[bucket];
+                    if (baseline > 0 && latencyMs > baseline * config.getAdaptiveLatencyTolerance()) {
+                        decrease(permit);
+                    } else {
+                        limit = clampLimit(limit + 1.0 / limit);
+                    }
+                    baselines[bucket] = baseline == 0 ? latencyMs : baseline * (1 - BASELINE_ALPHA) + latencyMs * BASELINE_ALPHA;
+                }
+                case FAILURE -> {
+                    consecutiveFailures++;
+                    decrease(permit);
+                    if (state == BreakerState.HALF_OPEN
+                            || consecutiveFailures >= Math.max(1, config.getBreakerFailureThreshold())) {
+                        trip();
+                    }
+                }
+                case CANCELLED -> { }
+            }
+            notifyAll();
+        }
+
+        private void decrease(Permit permit) {
+            if (permit.startNanos < lastDecreaseNanos) return; // Already reacted to this window
+            limit = clampLimit(limit * DECREASE_FACTOR);
+            lastDecreaseNanos = System.nanoTime();
+        }
+
+        private void trip() {
+            if (state != BreakerState.OPEN) trips++;
+            state = BreakerState.OPEN;
+            openUntil = System.currentTimeMillis() + config.getBreakerOpenMs();
+            log.warning(String.format("[BREAKER-OPEN] datanode=%s consecutiveFailures=%d for %dms",
+                    host, consecutiveFailures, config.getBreakerOpenMs()));
+        }
+    }
+
+    private double clampLimit(double value) {
+        double min = Math.max(1, config.getAdaptiveLimitMin());
+        double max = Math.max(min, config.getAdaptiveLimitMax());
+        return Math.max(min, Math.min(max, value));
+    }
+}
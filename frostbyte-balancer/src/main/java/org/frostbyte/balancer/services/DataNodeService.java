@@ -6,31 +6,394 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 @Service
 public class DataNodeService {
 
+    // Read locality tiers, see localityOf()
+    public static final int LOCALITY_RACK = 0;
+    public static final int LOCALITY_ZONE = 1;
+    public static final int LOCALITY_REMOTE = 2;
+
     private final configModel config;
+    private final DataNodeGuard dataNodeGuard;
     private final RestTemplate restTemplate;
     private static final Logger log = Logger.getLogger(DataNodeService.class.getName());
 
-    public DataNodeService(configModel config) {
+    /*
+     * Membership cache
+     * Upload and download hot paths read a local snapshot of alive DataNodes instead of
+     * calling the MasterNode per chunk. The snapshot is refreshed in the background; a
+     * snapshot older than membership-max-staleness-ms is refreshed inline before use.
+     * DataNodes that fail an upload are quarantined right away, so they stop receiving
+     * replicas before the MasterNode notices the missed heartbeats; the quarantine only
+     * applies to placement, reads have the breaker and the replica scoreboard. DataNodes that answer
+     * an upload with 507 (full) only leave placement for the same period: their projected
+     * fill is pinned at 100%, they stay readable.
+     */
+    private volatile Membership membership;
+    private volatile long lastRefreshAttempt;
+    private final Object refreshLock = new Object();
+    private final Map<String, Long> quarantinedUntil = new ConcurrentHashMap<>();
+    private final Map<String, Long> fullUntil = new ConcurrentHashMap<>();
+    private final AtomicInteger chunkCounter = new AtomicInteger(0);
+
+    /*
+     * Placement reservation ledger
+     * The fill reported by the MasterNode only moves on a DataNode heartbeat, so without
+     * a ledger every upload between two heartbeats would pick the same least-full nodes.
+     * Bytes placed by this balancer are added to a node's projected fill at selection
+     * time (in-flight), kept once the replica is written (committed), and released if the
+     * write fails. Committed bytes are dropped once a snapshot shows the node's usage has
+     * moved since they were placed (the heartbeat now counts them), or after
+     * placement-ledger-ttl-ms at the latest.
+     */
+    private final Map<String, HostLedger> ledger = new HashMap<>(); // Guarded by itself
+
+    public DataNodeService(configModel config, DataNodeGuard dataNodeGuard) {
         this.config = config;
+        this.dataNodeGuard = dataNodeGuard;
         this.restTemplate = new RestTemplate();
     }
 
+    /**
+     * Alive DataNodes from the local membership cache, without quarantined nodes or nodes
+     * whose circuit breaker is open.
+     * Returns copies, callers may adjust projected fill while allocating.
+     */
+    public List<DataNodeInfo> getAvailableDataNodes() {
+        long now = System.currentTimeMillis();
+        Membership current = currentMembership(now);
+        if (current == null) {
+            return new ArrayList<>();
+        }
+
+        List<DataNodeInfo> nodes = new ArrayList<>(current.nodes.size());
+        synchronized (ledger) {
+            for (DataNodeInfo node : current.nodes) {
+                if (!isQuarantined(node.getHost(), now) && !dataNodeGuard.isOpen(node.getHost())) {
+                    DataNodeInfo copy = copyOf(node);
+                    applyLedger(copy, now);
+                    nodes.add(copy);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Hosts of alive DataNodes (download replica filtering). Quarantined nodes and nodes
+     * whose breaker is open are included: a failed upload says little about reads, and the
+     * read path sheds open breakers itself (and lets their half-open probes through).
+     */
+    public Set<String> getAvailableHosts() {
+        Set<String> hosts = new HashSet<>();
+        Membership current = currentMembership(System.currentTimeMillis());
+        if (current != null) {
+            for (DataNodeInfo node : current.nodes) {
+                hosts.add(node.getHost());
+            }
+        }
+        return hosts;
+    }
+
+    // Snapshot in use, refreshed inline when older than membership-max-staleness-ms
+    private Membership currentMembership(long now) {
+        Membership current = membership;
+        if (current == null || now - current.fetchedAt > config.getMembershipMaxStalenessMs()) {
+            current = refreshIfStale(current);
+        }
+        return current;
+    }
+
+    /**
+     * Excludes a DataNode from placement after a failed upload, until the quarantine
+     * expires; the MasterNode's view cannot bring it back earlier. Reads still use it.
+     */
+    public void markFailed(String host) {
+        quarantinedUntil.put(host, System.currentTimeMillis() + config.getDatanodeQuarantineMs());
+        log.warning("[MEMBERSHIP-QUARANTINE] datanode=" + host + " for " + config.getDatanodeQuarantineMs() + "ms");
+    }
+
+    /**
+     * Keeps a DataNode that reported itself full (507) out of placement until the quarantine
+     * period expires; like markFailed, it stays readable
+     */
+    public void markFull(String host) {
+        fullUntil.put(host, System.currentTimeMillis() + config.getDatanodeQuarantineMs());
+        log.warning("[MEMBERSHIP-FULL] datanode=" + host + " excluded from placement for "
+                + config.getDatanodeQuarantineMs() + "ms");
+    }
+
+    /**
+     * Background refresh of the membership snapshot
+     */
+    @Scheduled(fixedDelayString = "${frostbyte.balancer.membership-refresh-ms:5000}")
+    public void refreshMembership() {
+        synchronized (refreshLock) {
+            doRefresh();
+        }
+
+        long now = System.currentTimeMillis();
+        quarantinedUntil.values().removeIf(until -> until <= now);
+        fullUntil.values().removeIf(until -> until <= now);
+    }
+
+    /**
+     * Age of the current snapshot in milliseconds, -1 if none was fetched yet
+     */
+    public long getMembershipAgeMs() {
+        Membership current = membership;
+        return current == null ? -1 : System.currentTimeMillis() - current.fetchedAt;
+    }
+
+    /**
+     * placeReplicas for a snowflake named <fileId>_<chunkNumber>.snowflake: the chunk's
+     * position within its file comes from the name (striped placement); names that do not
+     * follow the convention get a rotating position
+     */
+    public List<DataNodeInfo> placeReplicas(List<DataNodeInfo> availableNodes, int count, long bytes,
+                                            String snowflakeFileName) {
+        String fileId = null;
+        int chunkNumber = chunkCounter.getAndIncrement();
+        int separator = snowflakeFileName.lastIndexOf('_');
+        if (separator > 0 && snowflakeFileName.endsWith(".snowflake")) {
+            try {
+                chunkNumber = Integer.parseInt(snowflakeFileName.substring(separator + 1,
+                        snowflakeFileName.length() - ".snowflake".length()));
+                fileId = snowflakeFileName.substring(0, separator);
+            } catch (NumberFormatException e) {
+                log.fine("Snowflake name without chunk number: " + snowflakeFileName);
+            }
+        }
+        return placeReplicas(availableNodes, count, bytes, fileId, chunkNumber);
+    }
+
+    /**
+     * Selects datanodes for one chunk and reserves its bytes on them, atomically with
+     * respect to other uploads so concurrent selections see each other's placements.
+     * Every reserved node must later be settled with settlePlacement().
+     *
+     * @param availableNodes Candidates from getAvailableDataNodes()
+     * @param count Number of replicas needed
+     * @param bytes Snowflake size
+     * @param fileId File the chunk belongs to (null if unknown: least-loaded placement)
+     * @param chunkNumber Position of the chunk in its file
+     * @return Selected datanodes (empty if none has capacity)
+     */
+    public List<DataNodeInfo> placeReplicas(List<DataNodeInfo> availableNodes, int count, long bytes,
+                                            String fileId, int chunkNumber) {
+        synchronized (ledger) {
+            long now = System.currentTimeMillis();
+            for (DataNodeInfo node : availableNodes) {
+                applyLedger(node, now); // Placements made since the candidates were copied
+            }
+
+            List<DataNodeInfo> selected = "striped".equalsIgnoreCase(config.getPlacementMode()) && fileId != null
+                    ? selectStripedNodes(availableNodes, count, fileId, chunkNumber)
+                    : selectDataNodesForReplicas(availableNodes, count, chunkNumber);
+            for (DataNodeInfo node : selected) {
+                ledger.computeIfAbsent(node.getHost(), h -> new HostLedger()).inFlightBytes += bytes;
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * Picks a replacement datanode for a chunk replica whose write failed and reserves its
+     * bytes (settled like placeReplicas). Skips excludedHosts (nodes already written or tried
+     * for this chunk); among the rest, the least-loaded node sharing the fewest failure
+     * domains with keptNodes (the chunk's other replicas) wins.
+     *
+     * @return the replacement, or null if no other node has capacity
+     */
+    public DataNodeInfo placeFallbackReplica(Set<String> excludedHosts, List<DataNodeInfo> keptNodes, long bytes) {
+        final double CAPACITY_THRESHOLD = 95.0;
+
+        Set<String> usedMachines = new HashSet<>();
+        Set<String> usedRacks = new HashSet<>();
+        Set<String> usedZones = new HashSet<>();
+        for (DataNodeInfo node : keptNodes) {
+            addIfKnown(usedMachines, machineOf(node));
+            addIfKnown(usedRacks, rackOf(node));
+            addIfKnown(usedZones, zoneOf(node));
+        }
+
+        List<DataNodeInfo> candidates = getAvailableDataNodes();
+        synchronized (ledger) {
+            long now = System.currentTimeMillis();
+            DataNodeInfo best = null;
+            int bestOverlap = Integer.MAX_VALUE;
+            for (DataNodeInfo node : candidates) {
+                if (excludedHosts.contains(node.getHost())) continue;
+                applyLedger(node, now);
+                if (node.getProjectedFillPercent() >= CAPACITY_THRESHOLD) continue;
+
+                int overlap = domainOverlap(node, usedMachines, usedRacks, usedZones);
+                if (best == null || overlap < bestOverlap
+                        || (overlap == bestOverlap && node.getProjectedFillPercent() < best.getProjectedFillPercent())) {
+                    best = node;
+                    bestOverlap = overlap;
+                }
+            }
+
+            if (best != null) {
+                ledger.computeIfAbsent(best.getHost(), h -> new HostLedger()).inFlightBytes += bytes;
+                log.info(String.format("[PLACEMENT-FALLBACK] selected %s (fill: %.1f%%, domain overlap=%d)",
+                        best.getNodeName(), best.getProjectedFillPercent(), bestOverlap));
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Settles a reservation made by placeReplicas: a written replica stays counted until
+     * the heartbeat data catches up, a failed one is released
+     */
+    public void settlePlacement(String host, long bytes, boolean written) {
+        synchronized (ledger) {
+            HostLedger entry = ledger.get(host);
+            if (entry == null) return; // Node left the membership meanwhile
+            entry.inFlightBytes = Math.max(0, entry.inFlightBytes - bytes);
+            if (written) {
+                entry.committed.addLast(new long[]{System.currentTimeMillis(), bytes});
+                entry.committedBytes += bytes;
+            }
+        }
+    }
+
+    /**
+     * Bytes this balancer has placed on each DataNode that heartbeats do not reflect yet
+     */
+    public Map<String, Map<String, Long>> getPlacementLedger() {
+        Map<String, Map<String, Long>> view = new TreeMap<>();
+        synchronized (ledger) {
+            ledger.forEach((host, entry) -> view.put(host, Map.of(
+                    "inFlightBytes", entry.inFlightBytes,
+                    "committedBytes", entry.committedBytes)));
+        }
+        return view;
+    }
+
+    public Set<String> getQuarantinedHosts() {
+        long now = System.currentTimeMillis();
+        Set<String> hosts = new HashSet<>();
+        quarantinedUntil.forEach((host, until) -> {
+            if (until > now) hosts.add(host);
+        });
+        return hosts;
+    }
+
+    // Inline refresh for a missing or stale snapshot; one thread refreshes, the others reuse
+    // its result. Attempts are spaced by the refresh interval so an unreachable MasterNode
+    // does not add a timeout to every request, the last snapshot is served meanwhile.
+    private Membership refreshIfStale(Membership seen) {
+        synchronized (refreshLock) {
+            Membership current = membership;
+            if (current != seen) {
+                return current; // Refreshed by another thread while waiting
+            }
+            if (current != null && System.currentTimeMillis() - lastRefreshAttempt < config.getMembershipRefreshMs()) {
+                return current;
+            }
+            doRefresh();
+            return membership;
+        }
+    }
+
+    // Caller holds refreshLock
+    private void doRefresh() {
+        lastRefreshAttempt = System.currentTimeMillis();
+        List<DataNodeInfo> nodes = fetchAvailableDataNodes();
+        if (nodes != null) {
+            reconcileLedger(membership, nodes);
+            membership = new Membership(nodes, System.currentTimeMillis());
+            log.fine("[MEMBERSHIP-REFRESH] datanodes=" + nodes.size());
+        }
+    }
+
+    // Caller holds refreshLock. A node whose reported usage changed since the previous
+    // snapshot has sent a heartbeat in between, which counts everything committed before
+    // that snapshot; later commits may or may not be counted and are kept for now.
+    private void reconcileLedger(Membership previous, List<DataNodeInfo> nodes) {
+        Map<String, Double> previousUsage = new HashMap<>();
+        if (previous != null) {
+            for (DataNodeInfo node : previous.nodes) {
+                previousUsage.put(node.getHost(), node.getCurrentUsedGB());
+            }
+        }
+
+        Set<String> alive = new HashSet<>();
+        long now = System.currentTimeMillis();
+        synchronized (ledger) {
+            for (DataNodeInfo node : nodes) {
+                alive.add(node.getHost());
+                HostLedger entry = ledger.get(node.getHost());
+                if (entry == null) continue;
+
+                Double usedBefore = previousUsage.get(node.getHost());
+                long reportedUpTo = usedBefore != null && usedBefore != node.getCurrentUsedGB()
+                        ? previous.fetchedAt : Long.MIN_VALUE;
+                entry.expire(Math.max(reportedUpTo, now - config.getPlacementLedgerTtlMs()));
+            }
+            ledger.keySet().retainAll(alive);
+        }
+    }
+
+    // Caller holds the ledger lock
+    private void applyLedger(DataNodeInfo node, long now) {
+        Long full = fullUntil.get(node.getHost());
+        if (full != null && full > now) {
+            node.setProjectedFillPercent(100.0);
+            return;
+        }
+        HostLedger entry = ledger.get(node.getHost());
+        if (entry == null) return;
+        entry.expire(now - config.getPlacementLedgerTtlMs());
+
+        long pending = entry.inFlightBytes + entry.committedBytes;
+        if (pending > 0 && node.getTotalCapacityGB() > 0) {
+            double pendingGB = pending / (1024.0 * 1024 * 1024);
+            node.setProjectedFillPercent((node.getCurrentUsedGB() + pendingGB) / node.getTotalCapacityGB() * 100.0);
+        }
+    }
+
+    private boolean isQuarantined(String host, long now) {
+        Long until = quarantinedUntil.get(host);
+        return until != null && until > now;
+    }
+
+    private static DataNodeInfo copyOf(DataNodeInfo node) {
+        DataNodeInfo copy = new DataNodeInfo();
+        copy.setHost(node.getHost());
+        copy.setNodeName(node.getNodeName());
+        copy.setCurrentUsedGB(node.getCurrentUsedGB());
+        copy.setTotalCapacityGB(node.getTotalCapacityGB());
+        copy.setFillPercent(node.getFillPercent());
+        copy.setProjectedFillPercent(node.getProjectedFillPercent());
+        copy.setZone(node.getZone());
+        copy.setRack(node.getRack());
+        copy.setPhysicalHost(node.getPhysicalHost());
+        return copy;
+    }
+
     /**
      * Fetches available DataNodes from MasterNode
-     * This is an on-demand call that queries the master for currently alive datanodes
+     * Network call used to refresh the membership cache; hot paths use getAvailableDataNodes()
      *
-     * @return List of available DataNode information
+     * @return List of available DataNode information (empty if the masters report none alive),
+     *         or null if no MasterNode could be reached
      */
     public List<DataNodeInfo> fetchAvailableDataNodes() {
+        boolean reachedMaster = false;
         List<DataNodeInfo> allDataNodes = new ArrayList<>();
 
         // Try each master node until we get a successful response
@@ -50,6 +413,7 @@ public class DataNodeService {
                 );
 
                 if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+                    reachedMaster = true;
                     Object aliveNodesObj = response.getBody().get("aliveNodes");
 
                     // Check if response is "NULL" or a list
@@ -78,13 +442,24 @@ public class DataNodeService {
                                 info.setFillPercent(((Number) nodeMap.get("fillPercent")).doubleValue());
                             }
 
+                            // Failure-domain labels (absent from older MasterNodes)
+                            if (nodeMap.get("zone") instanceof String) {
+                                info.setZone((String) nodeMap.get("zone"));
+                            }
+                            if (nodeMap.get("rack") instanceof String) {
+                                info.setRack((String) nodeMap.get("rack"));
+                            }
+                            if (nodeMap.get("physicalHost") instanceof String) {
+                                info.setPhysicalHost((String) nodeMap.get("physicalHost"));
+                            }
+
                             // Initialize projected fill percent to current fill percent
                             info.setProjectedFillPercent(info.getFillPercent());
 
                             allDataNodes.add(info);
                         }
 
-                        log.info("Fetched " + allDataNodes.size() + " alive datanodes from " + masterNode);
+                        log.fine("Fetched " + allDataNodes.size() + " alive datanodes from " + masterNode);
                         return allDataNodes; // Return on first successful fetch
                     }
                 }
@@ -93,27 +468,30 @@ public class DataNodeService {
             }
         }
 
-        if (allDataNodes.isEmpty()) {
-            log.severe("No datanodes available from any master node!");
+        if (!reachedMaster) {
+            log.severe("No master node reachable for datanode membership!");
+            return null;
         }
 
+        log.severe("No datanodes available from any master node!");
         return allDataNodes;
     }
 
     /**
-     * Select N datanodes for chunk replication using a heap-based load balancing algorithm
+     * Select N datanodes for chunk replication, spreading replicas across failure domains
      *
      * Algorithm:
-     * - Uses min-heap based on projectedFillPercent to select least-loaded nodes
-     * - Ensures no duplicate nodes for the same chunk (Latin rectangle property)
-     * - Filters out nodes near capacity (>95% full)
+     * - Candidates are nodes below the capacity threshold (95% projected fill), least-loaded first
+     * - Each replica goes to the least-loaded candidate sharing the fewest failure domains with
+     *   the replicas already chosen: a shared machine weighs more than a shared rack, which
+     *   weighs more than a shared zone. Unknown labels never count as shared.
+     * - Ensures no duplicate nodes for the same chunk
      * - Handles edge cases where fewer nodes are available than requested replicas
      *
      * @param availableNodes List of available datanodes with capacity metrics
      * @param count Number of replicas needed (replication factor P)
      * @param offset Offset parameter (deprecated, kept for API compatibility)
      * @return List of selected datanodes
-     * @throws InsufficientCapacityException if unable to select enough nodes with capacity
      */
     public List<DataNodeInfo> selectDataNodesForReplicas(List<DataNodeInfo> availableNodes, int count, int offset) {
         if (availableNodes.isEmpty()) {
@@ -124,61 +502,247 @@ public class DataNodeService {
         // Capacity threshold - reject nodes above 95% full
         final double CAPACITY_THRESHOLD = 95.0;
 
-        // Build min-heap based on projectedFillPercent
-        PriorityQueue<DataNodeInfo> minHeap = new PriorityQueue<>(
-                Comparator.comparingDouble(DataNodeInfo::getProjectedFillPercent)
-        );
-        minHeap.addAll(availableNodes);
+        List<DataNodeInfo> candidates = new ArrayList<>();
+        Set<String> candidateNames = new HashSet<>();
+        for (DataNodeInfo node : availableNodes) {
+            if (node.getProjectedFillPercent() < CAPACITY_THRESHOLD && candidateNames.add(node.getNodeName())) {
+                candidates.add(node);
+            } else {
+                log.fine(String.format("Skipped node %s (fill: %.1f%%)", node.getNodeName(), node.getProjectedFillPercent()));
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(DataNodeInfo::getProjectedFillPercent));
 
-        Set<String> usedNodeNames = new HashSet<>();
+        Set<String> usedMachines = new HashSet<>();
+        Set<String> usedRacks = new HashSet<>();
+        Set<String> usedZones = new HashSet<>();
         List<DataNodeInfo> selectedNodes = new ArrayList<>();
-        int attempts = 0;
-        int maxAttempts = availableNodes.size() * 2;
 
-        while (selectedNodes.size() < count && attempts < maxAttempts) {
-            attempts++;
+        while (selectedNodes.size() < count && !candidates.isEmpty()) {
+            DataNodeInfo best = null;
+            int bestOverlap = Integer.MAX_VALUE;
+            for (DataNodeInfo node : candidates) {
+                int overlap = domainOverlap(node, usedMachines, usedRacks, usedZones);
+                if (overlap < bestOverlap) {
+                    best = node;
+                    bestOverlap = overlap;
+                    if (overlap == 0) break; // Least-loaded node in a fresh domain
+                }
+            }
 
-            if (minHeap.isEmpty()) {
-                log.warning(String.format("Min-heap exhausted after %d attempts. Selected %d/%d replicas",
-                        attempts, selectedNodes.size(), count));
-                break;
+            candidates.remove(best);
+            selectedNodes.add(best);
+            addIfKnown(usedMachines, machineOf(best));
+            addIfKnown(usedRacks, rackOf(best));
+            addIfKnown(usedZones, zoneOf(best));
+
+            log.fine(String.format("Selected node %s (fill: %.1f%%, zone=%s rack=%s machine=%s, domain overlap=%d)",
+                    best.getNodeName(), best.getProjectedFillPercent(), best.getZone(), best.getRack(),
+                    machineOf(best), bestOverlap));
+            if (bestOverlap > 0) {
+                log.warning("[PLACEMENT-DOMAIN-SHARED] " + best.getNodeName()
+                        + " shares a failure domain with another replica (not enough distinct domains)");
             }
+        }
 
-            DataNodeInfo node = minHeap.poll();
+        // Log results
+        if (selectedNodes.size() < count) {
+            log.warning(String.format(
+                    "Could not select enough nodes with capacity. Requested: %d, Selected: %d, Available: %d",
+                    count, selectedNodes.size(), availableNodes.size()));
+        } else {
+            log.info(String.format("Selected %d datanodes for replication (failure-domain aware)",
+                    selectedNodes.size()));
+        }
 
-            // Check: not already used AND has capacity
-            if (!usedNodeNames.contains(node.getNodeName()) &&
-                    node.getProjectedFillPercent() < CAPACITY_THRESHOLD) {
+        return selectedNodes;
+    }
 
-                selectedNodes.add(node);
-                usedNodeNames.add(node.getNodeName());
+    /**
+     * Striped placement (placement-mode=striped): the replicas of consecutive chunks of a file
+     * form a Latin rectangle over a ring of the available nodes.
+     *
+     * Algorithm:
+     * - Ring: nodes sorted by name, interleaved across racks so ring neighbours differ in rack
+     * - Chunk c, replica r goes to ring[(base + c + r * step) mod n], with base derived from the
+     *   fileId (files start at different nodes) and step = n / replicaCount (replicas of one
+     *   chunk sit far apart on the ring)
+     * - Each replica column is a cyclic shift of the ring, so any n consecutive chunks have n
+     *   distinct primaries and every node holds the same share of the file: a parallel read of
+     *   a chunk window is spread over distinct nodes
+     * - A slot whose node is above the capacity threshold, already used by the chunk, or on an
+     *   already used machine moves forward to the next node on the ring
+     *
+     * @param availableNodes List of available datanodes with capacity metrics
+     * @param count Number of replicas needed (replication factor P)
+     * @param fileId File the chunk belongs to
+     * @param chunkNumber Position of the chunk in its file (row of the rectangle)
+     * @return List of selected datanodes
+     */
+    public List<DataNodeInfo> selectStripedNodes(List<DataNodeInfo> availableNodes, int count, String fileId, int chunkNumber) {
+        final double CAPACITY_THRESHOLD = 95.0;
 
-                log.fine(String.format("Selected node %s (fill: %.1f%%)",
-                        node.getNodeName(), node.getProjectedFillPercent()));
-            } else {
-                log.fine(String.format("Skipped node %s (already used: %b, fill: %.1f%%)",
-                        node.getNodeName(),
-                        usedNodeNames.contains(node.getNodeName()),
-                        node.getProjectedFillPercent()));
+        List<DataNodeInfo> ring = stripeRing(availableNodes);
+        int n = ring.size();
+        if (n == 0) {
+            log.warning("No datanodes available for selection");
+            return new ArrayList<>();
+        }
+
+        int base = Math.floorMod(fileId.hashCode(), n);
+        int step = Math.max(1, n / Math.max(1, count));
+
+        Set<String> usedMachines = new HashSet<>();
+        Set<String> usedNames = new HashSet<>();
+        List<DataNodeInfo> selectedNodes = new ArrayList<>();
+
+        for (int r = 0; r < count; r++) {
+            int slot = Math.floorMod(base + chunkNumber + r * step, n);
+            DataNodeInfo chosen = null;
+
+            // First pass keeps replicas on distinct machines, the second only on distinct nodes
+            for (int pass = 0; pass < 2 && chosen == null; pass++) {
+                for (int j = 0; j < n; j++) {
+                    DataNodeInfo node = ring.get((slot + j) % n);
+                    String machine = machineOf(node);
+                    if (usedNames.contains(node.getNodeName())
+                            || node.getProjectedFillPercent() >= CAPACITY_THRESHOLD
+                            || (pass == 0 && machine != null && usedMachines.contains(machine))) {
+                        continue;
+                    }
+                    chosen = node;
+                    if (j > 0) {
+                        log.fine(String.format("Stripe slot %d of chunk %d moved %d nodes forward to %s",
+                                r, chunkNumber, j, node.getNodeName()));
+                    }
+                    break;
+                }
             }
 
-            // Always re-insert for future iterations (heap will re-order)
-            minHeap.offer(node);
+            if (chosen == null) break; // No eligible node left
+            selectedNodes.add(chosen);
+            usedNames.add(chosen.getNodeName());
+            addIfKnown(usedMachines, machineOf(chosen));
         }
 
-        // Log results
         if (selectedNodes.size() < count) {
             log.warning(String.format(
                     "Could not select enough nodes with capacity. Requested: %d, Selected: %d, Available: %d",
                     count, selectedNodes.size(), availableNodes.size()));
         } else {
-            log.info(String.format("Selected %d datanodes for replication (capacity-aware heap algorithm)",
-                    selectedNodes.size()));
+            log.info(String.format("Selected %d datanodes for chunk %d of %s (striped)",
+                    selectedNodes.size(), chunkNumber, fileId));
         }
-
         return selectedNodes;
     }
 
+    // Nodes sorted by name, then dealt round-robin from each rack so the ring alternates racks
+    private static List<DataNodeInfo> stripeRing(List<DataNodeInfo> availableNodes) {
+        Map<String, Deque<DataNodeInfo>> byRack = new TreeMap<>();
+        Set<String> names = new HashSet<>();
+        List<DataNodeInfo> sorted = new ArrayList<>(availableNodes);
+        sorted.sort(Comparator.comparing(DataNodeInfo::getNodeName));
+        for (DataNodeInfo node : sorted) {
+            if (!names.add(node.getNodeName())) continue;
+            String rack = rackOf(node);
+            byRack.computeIfAbsent(rack == null ? "" : rack, k -> new ArrayDeque<>()).add(node);
+        }
+
+        List<DataNodeInfo> ring = new ArrayList<>(names.size());
+        while (ring.size() < names.size()) {
+            for (Deque<DataNodeInfo> rack : byRack.values()) {
+                if (!rack.isEmpty()) ring.add(rack.pollFirst());
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * Read locality of a DataNode relative to this balancer:
+     * LOCALITY_RACK, LOCALITY_ZONE, or LOCALITY_REMOTE (also for unknown labels or hosts)
+     */
+    public int localityOf(String host) {
+        Membership current = membership;
+        DataNodeInfo node = current == null ? null : current.byHost.get(host);
+        if (node == null) return LOCALITY_REMOTE;
+
+        String zone = blankToNull(config.getZone());
+        String rack = blankToNull(config.getRack());
+        if (zone == null || !zone.equals(zoneOf(node))) return LOCALITY_REMOTE;
+        if (rack != null && rack.equals(blankToNull(node.getRack()))) return LOCALITY_RACK;
+        return LOCALITY_ZONE;
+    }
+
+    // 4: same machine, 2: same rack, 1: same zone; sums compare like (machine, rack, zone)
+    private static int domainOverlap(DataNodeInfo node, Set<String> machines, Set<String> racks, Set<String> zones) {
+        int overlap = 0;
+        String machine = machineOf(node);
+        if (machine != null && machines.contains(machine)) overlap += 4;
+        String rack = rackOf(node);
+        if (rack != null && racks.contains(rack)) overlap += 2;
+        String zone = zoneOf(node);
+        if (zone != null && zones.contains(zone)) overlap += 1;
+        return overlap;
+    }
+
+    // Without a physicalHost label, DataNodes sharing an address are assumed to share a machine
+    private static String machineOf(DataNodeInfo node) {
+        String physicalHost = blankToNull(node.getPhysicalHost());
+        if (physicalHost != null) return physicalHost;
+        String host = node.getHost();
+        if (host == null) return null;
+        int port = host.lastIndexOf(':');
+        return port > 0 ? host.substring(0, port) : host;
+    }
+
+    // Rack names are only unique within a zone
+    private static String rackOf(DataNodeInfo node) {
+        String rack = blankToNull(node.getRack());
+        return rack == null ? null : node.getZone() + "/" + rack;
+    }
+
+    private static String zoneOf(DataNodeInfo node) {
+        return blankToNull(node.getZone());
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    private static void addIfKnown(Set<String> domains, String domain) {
+        if (domain != null) domains.add(domain);
+    }
+
+    /**
+     * Unreported placements on one DataNode; committed holds {committedAt, bytes} in time order
+     */
+    private static class HostLedger {
+        private long inFlightBytes;
+        private long committedBytes;
+        private final Deque<long[]> committed = new ArrayDeque<>();
+
+        // Drops commits made at or before the given time
+        void expire(long upTo) {
+            while (!committed.isEmpty() && committed.peekFirst()[0] <= upTo) {
+                committedBytes -= committed.pollFirst()[1];
+            }
+        }
+    }
+
+    private static class Membership {
+        private final List<DataNodeInfo> nodes;
+        private final Map<String, DataNodeInfo> byHost = new HashMap<>();
+        private final long fetchedAt;
+
+        Membership(List<DataNodeInfo> nodes, long fetchedAt) {
+            this.nodes = nodes;
+            this.fetchedAt = fetchedAt;
+            for (DataNodeInfo node : nodes) {
+                byHost.put(node.getHost(), node);
+            }
+        }
+    }
+
     /**
      * Exception thrown when insufficient nodes with capacity are available
      */
@@ -5,13 +5,29 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+/*
+ * DatabaseNodeService
+ * Keeps the set of alive DatabaseNode endpoints cached locally instead of asking the
+ * MasterNode before every metadata call. The set is refreshed in the background.
+ *
+ * Callers iterate getEndpoints(): healthy endpoints come first, rotated round-robin so
+ * load spreads across all DatabaseNodes (they share one metadata store). An endpoint that
+ * fails with a connection error or 5xx is marked down for database-node-retry-ms and moves
+ * to the end of the list, where it is still tried as a last resort.
+ */
 @Service
 public class DatabaseNodeService {
 
@@ -19,19 +35,122 @@ public class DatabaseNodeService {
     private final RestTemplate restTemplate;
     private static final Logger log = Logger.getLogger(DatabaseNodeService.class.getName());
 
+    private volatile List<String> endpoints = List.of();
+    private volatile long fetchedAt;
+    private volatile long lastRefreshAttempt;
+    private final Object refreshLock = new Object();
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
+    private final Map<String, Long> downUntil = new ConcurrentHashMap<>();
+
     public DatabaseNodeService(configModel config) {
         this.config = config;
         this.restTemplate = new RestTemplate();
     }
 
     /**
-     * Fetch an alive DatabaseNode URL from MasterNode
+     * DatabaseNode URLs to try for one call, in order (e.g. "http://127.0.0.1:8082")
+     * Empty if no DatabaseNode is known
+     */
+    public List<String> getEndpoints() {
+        List<String> current = endpoints;
+        if (current.isEmpty() || System.currentTimeMillis() - fetchedAt > config.getMembershipMaxStalenessMs()) {
+            current = refreshIfStale(current);
+        }
+        if (current.isEmpty()) {
+            return current;
+        }
+
+        long now = System.currentTimeMillis();
+        int start = Math.floorMod(nextEndpoint.getAndIncrement(), current.size());
+
+        List<String> healthy = new ArrayList<>(current.size());
+        List<String> down = new ArrayList<>();
+        for (int i = 0; i < current.size(); i++) {
+            String url = current.get((start + i) % current.size());
+            Long until = downUntil.get(url);
+            if (until != null && until > now) {
+                down.add(url);
+            } else {
+                healthy.add(url);
+            }
+        }
+        healthy.addAll(down);
+        return healthy;
+    }
+
+    /**
+     * Fetch an alive DatabaseNode URL
      * @return DatabaseNode URL (e.g., "http://127.0.0.1:8082") or null if none available
      */
     public String fetchDatabaseNodeUrl() {
+        List<String> candidates = getEndpoints();
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    /**
+     * Marks an endpoint down after a connection error or 5xx
+     */
+    public void markFailed(String url) {
+        downUntil.put(url, System.currentTimeMillis() + config.getDatabaseNodeRetryMs());
+        log.warning("[DATABASE-ENDPOINT-DOWN] " + url + " for " + config.getDatabaseNodeRetryMs() + "ms");
+    }
+
+    public void markHealthy(String url) {
+        downUntil.remove(url);
+    }
+
+    /**
+     * Whether a failure means the DatabaseNode itself is unhealthy (worth failing over),
+     * as opposed to a rejected request that every DatabaseNode would reject
+     */
+    public static boolean isFailoverError(Exception e) {
+        return e instanceof ResourceAccessException || e instanceof HttpServerErrorException;
+    }
+
+    /**
+     * Background refresh of the endpoint set
+     */
+    @Scheduled(fixedDelayString = "${frostbyte.balancer.membership-refresh-ms:5000}")
+    public void refreshEndpoints() {
+        synchronized (refreshLock) {
+            doRefresh();
+        }
+    }
+
+    private List<String> refreshIfStale(List<String> seen) {
+        synchronized (refreshLock) {
+            List<String> current = endpoints;
+            if (current != seen) {
+                return current; // Refreshed by another thread while waiting
+            }
+            if (System.currentTimeMillis() - lastRefreshAttempt < config.getMembershipRefreshMs()) {
+                return current;
+            }
+            doRefresh();
+            return endpoints;
+        }
+    }
+
+    // Caller holds refreshLock; keeps the previous set when no master answers
+    private void doRefresh() {
+        lastRefreshAttempt = System.currentTimeMillis();
+        List<String> fetched = fetchDatabaseNodeUrls();
+        if (fetched != null) {
+            endpoints = List.copyOf(fetched);
+            fetchedAt = System.currentTimeMillis();
+            downUntil.keySet().retainAll(fetched);
+            log.fine("[DATABASE-ENDPOINTS-REFRESH] endpoints=" + fetched);
+        }
+    }
+
+    /**
+     * Fetch all alive DatabaseNode URLs from MasterNode
+     * @return URLs, or null if no MasterNode could be reached
+     */
+    private List<String> fetchDatabaseNodeUrls() {
         for (String masterNode : config.getMasterNodes()) {
             try {
-                log.fine("Fetching database node URL from masterNode " + masterNode);
+                log.fine("Fetching database node URLs from masterNode " + masterNode);
                 String url = "http://" + masterNode + "/database/getAlive";
 
                 HttpHeaders headers = new HttpHeaders();
@@ -50,23 +169,26 @@ public class DatabaseNodeService {
 
                     if (aliveNodesObj instanceof List) {
                         @SuppressWarnings("unchecked")
-                        List<Map<String, String>> nodesList = (List<Map<String, String>>) aliveNodesObj;
+                        List<Map<String, Object>> nodesList = (List<Map<String, Object>>) aliveNodesObj;
 
-                        if (!nodesList.isEmpty()) {
-                            String dbHost = nodesList.get(0).get("host");
-                            String dbUrl = "http://" + dbHost;
-                            log.info("Found database node at: " + dbUrl);
-                            return dbUrl;
+                        List<String> urls = new ArrayList<>();
+                        for (Map<String, Object> node : nodesList) {
+                            Object host = node.get("host");
+                            if (host != null) urls.add("http://" + host);
                         }
+
+                        if (urls.isEmpty()) {
+                            log.severe("No database node alive according to " + masterNode);
+                        }
+                        return urls;
                     }
                 }
             } catch (Exception e) {
-                log.warning("Failed to fetch database node from " + masterNode + ": " + e.getMessage());
+                log.warning("Failed to fetch database nodes from " + masterNode + ": " + e.getMessage());
             }
         }
 
-        log.severe("No database node available from any master node!");
+        log.severe("No master node reachable for database node discovery!");
         return null;
     }
 }
-
@@ -1,17 +1,32 @@
 package org.frostbyte.balancer.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.frostbyte.balancer.models.DataNodeInfo;
+import jakarta.annotation.PreDestroy;
 import org.frostbyte.balancer.models.configModel;
 import org.springframework.http.*;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.zip.CRC32;
@@ -26,19 +41,66 @@ public class DownloadService {
     private final configModel config;
     private final DatabaseNodeService databaseNodeService;
     private final DataNodeService dataNodeService;
+    private final SnowflakeCache snowflakeCache;
+    private final ReplicaScoreboard replicaScoreboard;
+    private final DataNodeGuard dataNodeGuard;
+    private final StagingSpool stagingSpool;
     private final RestTemplate restTemplate;
+
+    // Single-flight: chunkId -> fetch in progress
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedFetches = new AtomicLong();
+    private final AtomicLong hintedFetches = new AtomicLong();
+    private final AtomicLong hintFallbacks = new AtomicLong();
     private final ObjectMapper objectMapper;
-    private final Random random;
+
+    public static final byte FRAME_OK = 0;
+    public static final byte FRAME_FAILED = 1;
+    public static final byte FRAME_DATA = 2;
+    public static final byte FRAME_RETRY = 3;
+
+    private static final int RELAY_SEGMENT_BYTES = 64 * 1024;
+    private static final int MAX_METADATA_BYTES = 1024 * 1024;
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    // Prefetches chunks of batch downloads
+    private final ExecutorService batchPool;
+    // Bytes of snowflakes fetched ahead by all batch downloads together
+    private final AtomicLong prefetchBytes = new AtomicLong();
 
     public DownloadService(configModel config,
                            DatabaseNodeService databaseNodeService,
-                           DataNodeService dataNodeService) {
+                           DataNodeService dataNodeService,
+                           SnowflakeCache snowflakeCache,
+                           ReplicaScoreboard replicaScoreboard,
+                           DataNodeGuard dataNodeGuard,
+                           StagingSpool stagingSpool) {
         this.config = config;
         this.databaseNodeService = databaseNodeService;
         this.dataNodeService = dataNodeService;
-        this.restTemplate = new RestTemplate();
+        this.snowflakeCache = snowflakeCache;
+        this.replicaScoreboard = replicaScoreboard;
+        this.dataNodeGuard = dataNodeGuard;
+        this.stagingSpool = stagingSpool;
+
+        // Bounded timeouts: a hung DataNode must fail (and count against its breaker) quickly
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout((int) config.getDatanodeConnectTimeoutMs());
+        factory.setReadTimeout((int) config.getDatanodeReadTimeoutMs());
+        this.restTemplate = new RestTemplate(factory);
         this.objectMapper = new ObjectMapper();
-        this.random = new Random();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchPool = Executors.newFixedThreadPool(Math.max(1, config.getBatchDownloadThreads()), r -> {
+            Thread t = new Thread(r, "batch-download-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchPool.shutdownNow();
     }
 
     /**
@@ -51,53 +113,344 @@ public class DownloadService {
      * @throws ChunkDownloadException if download fails
      */
     public byte[] downloadChunk(String fileId, String chunkId, int chunkNumber) throws ChunkDownloadException {
-        log.info(String.format("[CHUNK-DOWNLOAD-REQ] fileId=%s chunkId=%s chunkNumber=%d",
-                fileId, chunkId, chunkNumber));
+        return downloadChunk(fileId, chunkId, chunkNumber, null);
+    }
+
+    /**
+     * Download a chunk, trying the replicas named by the client first
+     *
+     * @param replicaHints DataNode hosts holding the chunk, as the client got them from the
+     *                     file map; the DatabaseNode is only asked when none of them serves it
+     *                     (null or empty: look the replicas up as usual)
+     */
+    public byte[] downloadChunk(String fileId, String chunkId, int chunkNumber, List<String> replicaHints)
+            throws ChunkDownloadException {
+        log.info(String.format("[CHUNK-DOWNLOAD-REQ] fileId=%s chunkId=%s chunkNumber=%d hints=%d",
+                fileId, chunkId, chunkNumber, replicaHints == null ? 0 : replicaHints.size()));
+
+        return singleFlight(chunkId, () -> fetchChunk(fileId, chunkId, chunkNumber, replicaHints));
+    }
+
+    /**
+     * Runs the fetch unless one for the same chunk is already in flight, in which case
+     * this caller waits for that fetch and shares its result (or its failure).
+     * A burst of requests for a popular chunk costs one DatabaseNode lookup and one
+     * DataNode read; the entry is dropped when the fetch finishes, later requests
+     * are served by the snowflake cache.
+     */
+    private byte[] singleFlight(String chunkId, ChunkFetch fetch) throws ChunkDownloadException {
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> leader = inFlight.putIfAbsent(chunkId, mine);
+
+        if (leader != null) {
+            return awaitLeader(chunkId, leader);
+        }
+
+        try {
+            byte[] snowflakeBytes = fetch.get();
+            mine.complete(snowflakeBytes);
+            return snowflakeBytes;
+        } catch (ChunkDownloadException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(chunkId, mine);
+        }
+    }
+
+    private byte[] awaitLeader(String chunkId, CompletableFuture<byte[]> leader) throws ChunkDownloadException {
+        coalescedFetches.incrementAndGet();
+        log.fine("[CHUNK-COALESCED] chunkId=" + chunkId);
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ChunkDownloadException cause) {
+                throw cause;
+            }
+            throw new ChunkDownloadException("Failed to download chunk " + chunkId + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Requests that were served by another request's in-flight fetch
+     */
+    public long getCoalescedFetches() {
+        return coalescedFetches.get();
+    }
+
+    /**
+     * Chunks served from client replica hints, without a DatabaseNode lookup
+     */
+    public long getHintedFetches() {
+        return hintedFetches.get();
+    }
+
+    /**
+     * Hinted chunks that still needed a DatabaseNode lookup (every hinted replica failed)
+     */
+    public long getHintFallbacks() {
+        return hintFallbacks.get();
+    }
+
+    @FunctionalInterface
+    private interface ChunkFetch {
+        byte[] get() throws ChunkDownloadException;
+    }
+
+    /**
+     * Reads one snowflake from the first replica of the list that serves it
+     * (fetchFromReplicas into memory, relayFromReplicas straight to the client)
+     */
+    @FunctionalInterface
+    private interface ReplicaReader {
+        byte[] read(String chunkId, String snowflakeName, List<ReplicaInfo> replicas) throws ChunkDownloadException;
+    }
+
+    private byte[] fetchChunk(String fileId, String chunkId, int chunkNumber, List<String> replicaHints)
+            throws ChunkDownloadException {
+        String snowflakeName = fileId + "_" + chunkNumber + ".snowflake";
+
+        // Step 0: Snowflake cache, no DatabaseNode or DataNode involved
+        byte[] cached = cachedSnowflake(chunkId, snowflakeName);
+        if (cached != null) return cached;
+
+        log.info(String.format("[SNOWFLAKE-NAME-CONSTRUCTED] fileId=%s chunkNumber=%d snowflakeName=%s",
+                fileId, chunkNumber, snowflakeName));
+
+        return readChunk(chunkId, snowflakeName, replicaHints, this::fetchFromReplicas);
+    }
+
+    /**
+     * Locates the chunk's replicas and reads it with the given reader
+     */
+    private byte[] readChunk(String chunkId, String snowflakeName, List<String> replicaHints, ReplicaReader reader)
+            throws ChunkDownloadException {
+        // Step 0b: Replicas hinted by the client, no DatabaseNode involved
+        Set<String> aliveNodeHosts = dataNodeService.getAvailableHosts();
+        Set<String> triedHosts = new HashSet<>();
+        byte[] hinted = fetchFromHints(chunkId, snowflakeName, replicaHints, aliveNodeHosts, triedHosts, reader);
+        if (hinted != null) return hinted;
 
         // Step 1: Query DatabaseNode for chunk replica locations
         List<ReplicaInfo> replicas = getChunkReplicas(chunkId);
 
+        log.info(String.format("[REPLICA-QUERY] chunkId=%s totalReplicas=%d", chunkId, replicas.size()));
+
+        // Steps 2-3: Filter and read the replicas
+        return readReplicas(chunkId, snowflakeName, replicas, aliveNodeHosts, triedHosts, reader);
+    }
+
+    /**
+     * Reads the chunk from its available replicas (status = AVAILABLE, DataNode alive, not
+     * tried from hints) with failover. A chunk still staged on another balancer may have none
+     * yet (see StagingSpool); it is then read from that balancer.
+     */
+    private byte[] readReplicas(String chunkId, String snowflakeName, List<ReplicaInfo> replicas,
+                                Set<String> aliveNodeHosts, Set<String> triedHosts, ReplicaReader reader)
+            throws ChunkDownloadException {
         if (replicas.isEmpty()) {
             throw new ChunkDownloadException("No replicas found for chunk: " + chunkId);
         }
 
-        log.info(String.format("[REPLICA-QUERY] chunkId=%s totalReplicas=%d", chunkId, replicas.size()));
+        List<String> stagingPeers = stagingPeers(replicas);
+        List<ReplicaInfo> availableReplicas = filterAvailableReplicas(replicas, aliveNodeHosts);
+        if (stagingPeers.isEmpty()) {
+            availableReplicas = untried(chunkId, availableReplicas, triedHosts);
+            if (availableReplicas.isEmpty()) {
+                throw new ChunkDownloadException("No available replicas for chunk: " + chunkId +
+                        " (all replicas are dead or failed)");
+            }
+            log.info(String.format("[REPLICA-FILTER] chunkId=%s availableReplicas=%d", chunkId, availableReplicas.size()));
+            return reader.read(chunkId, snowflakeName, availableReplicas);
+        }
+
+        availableReplicas = availableReplicas.stream()
+                .filter(replica -> !triedHosts.contains(replica.getDatanodeId()))
+                .collect(Collectors.toList());
+        if (!availableReplicas.isEmpty()) {
+            try {
+                return reader.read(chunkId, snowflakeName, availableReplicas);
+            } catch (ChunkDownloadException e) {
+                log.warning(String.format("[REPLICA-READ-FAILED-STAGED] chunkId=%s trying staging balancers %s: %s",
+                        chunkId, stagingPeers, e.getMessage()));
+            }
+        }
+        return fetchFromStagingPeers(chunkId, snowflakeName, stagingPeers);
+    }
 
-        // Step 2: Filter available replicas (status = AVAILABLE, DataNode alive)
-        List<ReplicaInfo> availableReplicas = filterAvailableReplicas(replicas);
+    /**
+     * Other balancers holding the chunk in their staging spool (PENDING replicas registered
+     * under StagingSpool.STAGED_REPLICA_PREFIX)
+     */
+    private List<String> stagingPeers(List<ReplicaInfo> replicas) {
+        String self = stagingSpool.stagedReplicaId();
+        return replicas.stream()
+                .filter(replica -> "PENDING".equalsIgnoreCase(replica.getStatus()))
+                .map(ReplicaInfo::getDatanodeId)
+                .filter(id -> id.startsWith(StagingSpool.STAGED_REPLICA_PREFIX) && !id.equals(self))
+                .map(id -> id.substring(StagingSpool.STAGED_REPLICA_PREFIX.length()))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Downloads a staged snowflake from the balancers holding it, validated like a replica
+     */
+    private byte[] fetchFromStagingPeers(String chunkId, String snowflakeName, List<String> peers)
+            throws ChunkDownloadException {
+        List<String> failedPeers = new ArrayList<>();
+        for (String peer : peers) {
+            String url = "http://" + peer + "/balancer/staged/download?snowflake_name=" + snowflakeName;
+            try {
+                HttpHeaders headers = new HttpHeaders();
+                headers.set("X-API-Key", config.getMasterAPIKey());
+                ResponseEntity<byte[]> response = restTemplate.exchange(url, HttpMethod.POST,
+                        new HttpEntity<>(headers), byte[].class);
+                byte[] snowflakeBytes = response.getBody();
+                if (snowflakeBytes == null) {
+                    failedPeers.add(peer + " (empty response)");
+                    continue;
+                }
+
+                if (validateCRC32(parseSnowflake(snowflakeBytes))) {
+                    log.info(String.format("[CHUNK-STAGED-PEER-HIT] chunkId=%s balancer=%s snowflakeSize=%d",
+                            chunkId, peer, snowflakeBytes.length));
+                    snowflakeCache.put(snowflakeName, snowflakeBytes);
+                    return snowflakeBytes;
+                }
+                failedPeers.add(peer + " (CRC mismatch)");
 
-        if (availableReplicas.isEmpty()) {
-            throw new ChunkDownloadException("No available replicas for chunk: " + chunkId +
-                    " (all replicas are dead or failed)");
+            } catch (HttpClientErrorException.NotFound e) {
+                failedPeers.add(peer + " (destaged meanwhile)");
+            } catch (Exception e) {
+                log.warning(String.format("[STAGED-PEER-DOWNLOAD-FAILED] chunkId=%s balancer=%s error=%s",
+                        chunkId, peer, e.getMessage()));
+                failedPeers.add(peer + " (" + e.getMessage() + ")");
+            }
         }
 
-        log.info(String.format("[REPLICA-FILTER] chunkId=%s availableReplicas=%d", chunkId, availableReplicas.size()));
+        throw new ChunkDownloadException(String.format(
+                "Failed to download chunk %s: no replica served it and no staging balancer holds it. Staging balancers: %s",
+                chunkId, String.join(", ", failedPeers)));
+    }
 
-        // Step 3: Try downloading from replicas with failover
-        String snowflakeName = fileId + "_" + chunkNumber + ".snowflake";
-        List<String> failedNodes = new ArrayList<>();
+    private byte[] cachedSnowflake(String chunkId, String snowflakeName) {
+        byte[] cached = snowflakeCache.get(snowflakeName);
+        if (cached != null) {
+            log.info(String.format("[CHUNK-CACHE-HIT] chunkId=%s snowflakeName=%s", chunkId, snowflakeName));
+            return cached;
+        }
+        // Uploaded but not destaged yet: the DataNodes may not have it
+        byte[] staged = stagingSpool.readStaged(snowflakeName);
+        if (staged != null) {
+            log.info(String.format("[CHUNK-STAGED-HIT] chunkId=%s snowflakeName=%s", chunkId, snowflakeName));
+        }
+        return staged;
+    }
 
-        log.info(String.format("[SNOWFLAKE-NAME-CONSTRUCTED] fileId=%s chunkNumber=%d snowflakeName=%s",
-                fileId, chunkNumber, snowflakeName));
+    /**
+     * Reads the chunk from the replicas the client named. Hints are trusted as they come,
+     * only DataNode liveness is checked.
+     *
+     * @param triedHosts receives the hinted hosts that were tried
+     * @return the snowflake, or null if there were no usable hints or none of them served
+     *         the chunk (the caller then falls back to a DatabaseNode lookup)
+     */
+    private byte[] fetchFromHints(String chunkId, String snowflakeName, List<String> replicaHints,
+                                  Set<String> aliveNodeHosts, Set<String> triedHosts, ReplicaReader reader) {
+        if (replicaHints == null || replicaHints.isEmpty()) return null;
+
+        List<ReplicaInfo> hintedReplicas = new ArrayList<>();
+        for (String host : replicaHints) {
+            if (host == null || !aliveNodeHosts.contains(host) || !triedHosts.add(host)) continue;
+            ReplicaInfo replica = new ReplicaInfo();
+            replica.setDatanodeId(host);
+            replica.setStatus("AVAILABLE");
+            hintedReplicas.add(replica);
+        }
+
+        if (!hintedReplicas.isEmpty()) {
+            try {
+                byte[] snowflakeBytes = reader.read(chunkId, snowflakeName, hintedReplicas);
+                hintedFetches.incrementAndGet();
+                return snowflakeBytes;
+            } catch (ChunkDownloadException e) {
+                log.warning(String.format("[REPLICA-HINTS-FAILED] chunkId=%s error=%s", chunkId, e.getMessage()));
+            }
+        } else {
+            log.warning(String.format("[REPLICA-HINTS-DEAD] chunkId=%s hints=%s", chunkId, replicaHints));
+        }
 
-        // Shuffle replicas for random selection
-        Collections.shuffle(availableReplicas, random);
+        hintFallbacks.incrementAndGet();
+        return null;
+    }
 
+    /**
+     * Drops replicas already tried from hints; throws if that leaves nothing to try
+     */
+    private static List<ReplicaInfo> untried(String chunkId, List<ReplicaInfo> replicas, Set<String> triedHosts)
+            throws ChunkDownloadException {
+        if (triedHosts.isEmpty()) return replicas;
+        List<ReplicaInfo> remaining = replicas.stream()
+                .filter(replica -> !triedHosts.contains(replica.getDatanodeId()))
+                .collect(Collectors.toList());
+        if (remaining.isEmpty() && !replicas.isEmpty()) {
+            throw new ChunkDownloadException(String.format(
+                    "Failed to download chunk %s from all replicas. Hinted replicas failed: %s", chunkId, triedHosts));
+        }
+        return remaining;
+    }
+
+    /**
+     * Downloads one snowflake from the first replica that returns it with a valid CRC32
+     * (replicas are tried in orderForRead order) and offers it to the snowflake cache
+     */
+    private byte[] fetchFromReplicas(String chunkId, String snowflakeName, List<ReplicaInfo> availableReplicas)
+            throws ChunkDownloadException {
+        List<String> failedNodes = new ArrayList<>();
+
+        Map<String, ReplicaInfo> byHost = new LinkedHashMap<>();
         for (ReplicaInfo replica : availableReplicas) {
+            byHost.putIfAbsent(replica.getDatanodeId(), replica);
+        }
+        List<String> orderedHosts = orderForRead(new ArrayList<>(byHost.keySet()));
+
+        for (String host : orderedHosts) {
+            ReplicaInfo replica = byHost.get(host);
+
+            // Skip nodes whose breaker is open or that stay at their concurrency limit
+            DataNodeGuard.Permit permit = acquireReadPermit(chunkId, host);
+            if (permit == null) {
+                log.warning(String.format("[REPLICA-SHED] chunkId=%s datanodeId=%s (circuit open or at concurrency limit)",
+                        chunkId, host));
+                failedNodes.add(host + " (circuit open or busy)");
+                continue;
+            }
+
+            long started = replicaScoreboard.onStart(host);
+            boolean served = false;
+            boolean responded = false;
+            boolean rejected = false;
+            long receivedBytes = 0;
             try {
                 log.info(String.format("[REPLICA-SELECTED] chunkId=%s datanodeId=%s snowflakeName=%s attempt=%d/%d",
-                        chunkId, replica.getDatanodeId(), snowflakeName, failedNodes.size() + 1, availableReplicas.size()));
+                        chunkId, replica.getDatanodeId(), snowflakeName, failedNodes.size() + 1, orderedHosts.size()));
 
                 // Step 4: Download snowflake from DataNode
                 byte[] snowflakeBytes = downloadSnowflakeFromDataNode(replica.getDatanodeId(), snowflakeName);
 
+                responded = true;
+                receivedBytes = snowflakeBytes.length;
+
                 // Step 5: Parse snowflake and validate CRC32
                 SnowflakeData snowflakeData = parseSnowflake(snowflakeBytes);
 
                 // Step 6: Validate CRC32 checksum
                 if (validateCRC32(snowflakeData)) {
+                    served = true;
                     log.info(String.format("[CHUNK-DOWNLOAD-SUCCESS] chunkId=%s datanodeId=%s snowflakeSize=%d crcValid=true",
                             chunkId, replica.getDatanodeId(), snowflakeBytes.length));
+                    snowflakeCache.put(snowflakeName, snowflakeBytes);
                     return snowflakeBytes;
                 } else {
                     // CRC mismatch - try next replica
@@ -106,10 +459,29 @@ public class DownloadService {
                     failedNodes.add(replica.getDatanodeId() + " (CRC mismatch)");
                 }
 
+            } catch (HttpClientErrorException e) {
+                // The node answered (e.g. 404, replica missing there), not a health problem
+                rejected = true;
+                log.warning(String.format("[REPLICA-REJECTED] chunkId=%s datanodeId=%s status=%d",
+                        chunkId, replica.getDatanodeId(), e.getStatusCode().value()));
+                failedNodes.add(replica.getDatanodeId() + " (" + e.getStatusCode() + ")");
             } catch (Exception e) {
                 log.warning(String.format("[REPLICA-DOWNLOAD-FAILED] chunkId=%s datanodeId=%s error=%s",
                         chunkId, replica.getDatanodeId(), e.getMessage()));
                 failedNodes.add(replica.getDatanodeId() + " (" + e.getMessage() + ")");
+            } finally {
+                if (rejected) {
+                    replicaScoreboard.onCancelled(host);
+                    permit.cancelled();
+                } else {
+                    if (served) {
+                        replicaScoreboard.onSuccess(host, started);
+                    } else {
+                        replicaScoreboard.onFailure(host, started);
+                    }
+                    // A corrupt replica is a data problem, the node itself answered
+                    permit.release(responded, receivedBytes);
+                }
             }
         }
 
@@ -119,15 +491,497 @@ public class DownloadService {
                         chunkId, String.join(", ", failedNodes)));
     }
 
+    private DataNodeGuard.Permit acquireReadPermit(String chunkId, String host) throws ChunkDownloadException {
+        try {
+            return dataNodeGuard.acquire(host, DataNodeGuard.Kind.READ,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getDatanodeLimitWaitMs()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChunkDownloadException("Interrupted while downloading chunk " + chunkId);
+        }
+    }
+
+    /**
+     * Relay a chunk to the client while it arrives from the DataNode, without holding the
+     * snowflake in memory; the CRC32 is computed on the way through.
+     *
+     * Frames: [byte status][int length][payload]
+     * - FRAME_DATA: next segment of the snowflake
+     * - FRAME_OK (empty): end of the snowflake, its CRC32 matched
+     * - FRAME_RETRY (empty): the replica sent a corrupt or truncated snowflake; the segments
+     *   received so far are to be dropped, the next replica's follow
+     * - FRAME_FAILED: payload is a UTF-8 error message, no replica could serve the chunk
+     *
+     * Replicas are chosen as for downloadChunk. A cache hit, or a buffered fetch of the same
+     * chunk already in flight, is sent as is. Snowflakes small enough for the cache are
+     * collected on the way and offered to it.
+     *
+     * @param out Response stream
+     * @throws IOException if the client went away
+     */
+    public void relayChunk(String fileId, String chunkId, int chunkNumber, List<String> replicaHints,
+                           OutputStream out) throws IOException {
+        String snowflakeName = fileId + "_" + chunkNumber + ".snowflake";
+        DataOutputStream frames = new DataOutputStream(out);
+
+        log.info(String.format("[CHUNK-RELAY-REQ] fileId=%s chunkId=%s chunkNumber=%d hints=%d",
+                fileId, chunkId, chunkNumber, replicaHints == null ? 0 : replicaHints.size()));
+
+        try {
+            try {
+                byte[] ready = cachedSnowflake(chunkId, snowflakeName);
+                CompletableFuture<byte[]> leader = ready == null ? inFlight.get(chunkId) : null;
+                if (leader != null) {
+                    ready = awaitLeader(chunkId, leader);
+                }
+
+                if (ready != null) {
+                    writeSnowflakeFrames(frames, ready);
+                } else {
+                    AtomicBoolean relayed = new AtomicBoolean();
+                    byte[] snowflakeBytes = readChunk(chunkId, snowflakeName, replicaHints, (id, name, replicas) -> {
+                        byte[] relayedBytes = relayFromReplicas(id, name, replicas, frames);
+                        relayed.set(true);
+                        return relayedBytes;
+                    });
+                    if (!relayed.get()) {
+                        writeSnowflakeFrames(frames, snowflakeBytes); // Fetched from a staging balancer
+                    }
+                }
+            } catch (ChunkDownloadException e) {
+                log.severe(String.format("[CHUNK-RELAY-FAILED] chunkId=%s error=%s", chunkId, e.getMessage()));
+                byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                writeFrame(frames, FRAME_FAILED, message, 0, message.length);
+            }
+        } catch (ClientGoneException e) {
+            log.warning(String.format("[CHUNK-RELAY-ABORTED] chunkId=%s client went away: %s",
+                    chunkId, e.getCause().getMessage()));
+            throw e.getCause();
+        }
+        frames.flush();
+    }
+
+    /**
+     * relayChunk counterpart of fetchFromReplicas: same replica order, permits and scoring,
+     * but the snowflake goes out in FRAME_DATA segments while it is read
+     *
+     * @return the snowflake if it was collected for the cache, otherwise an empty array
+     */
+    private byte[] relayFromReplicas(String chunkId, String snowflakeName, List<ReplicaInfo> availableReplicas,
+                                     DataOutputStream frames) throws ChunkDownloadException {
+        List<String> failedNodes = new ArrayList<>();
+        List<String> orderedHosts = orderForRead(availableReplicas.stream()
+                .map(ReplicaInfo::getDatanodeId)
+                .distinct()
+                .collect(Collectors.toList()));
+
+        for (String host : orderedHosts) {
+            DataNodeGuard.Permit permit = acquireReadPermit(chunkId, host);
+            if (permit == null) {
+                log.warning(String.format("[REPLICA-SHED] chunkId=%s datanodeId=%s (circuit open or at concurrency limit)",
+                        chunkId, host));
+                failedNodes.add(host + " (circuit open or busy)");
+                continue;
+            }
+
+            long started = replicaScoreboard.onStart(host);
+            RelayAttempt attempt = new RelayAttempt();
+            boolean served = false;
+            boolean clientGone = false;
+            boolean rejected = false;
+            try {
+                log.info(String.format("[REPLICA-RELAY] chunkId=%s datanodeId=%s snowflakeName=%s attempt=%d/%d",
+                        chunkId, host, snowflakeName, failedNodes.size() + 1, orderedHosts.size()));
+
+                relaySnowflake(host, snowflakeName, frames, attempt);
+
+                if (attempt.crcValid) {
+                    writeFrame(frames, FRAME_OK, NO_PAYLOAD, 0, 0);
+                    served = true;
+                    log.info(String.format("[CHUNK-RELAY-SUCCESS] chunkId=%s datanodeId=%s snowflakeSize=%d crcValid=true",
+                            chunkId, host, attempt.relayedBytes));
+                    if (attempt.kept != null) {
+                        byte[] snowflakeBytes = attempt.kept.toByteArray();
+                        snowflakeCache.put(snowflakeName, snowflakeBytes);
+                        return snowflakeBytes;
+                    }
+                    snowflakeCache.reference(snowflakeName, attempt.relayedBytes);
+                    return NO_PAYLOAD;
+                }
+
+                log.warning(String.format("[CRC-MISMATCH] chunkId=%s datanodeId=%s expectedCrc=%d",
+                        chunkId, host, attempt.expectedCrc));
+                failedNodes.add(host + " (CRC mismatch)");
+                writeFrame(frames, FRAME_RETRY, NO_PAYLOAD, 0, 0);
+
+            } catch (ClientGoneException e) {
+                clientGone = true;
+                throw e;
+            } catch (HttpClientErrorException e) {
+                // The node answered before any byte was relayed, not a health problem
+                rejected = true;
+                log.warning(String.format("[REPLICA-REJECTED] chunkId=%s datanodeId=%s status=%d",
+                        chunkId, host, e.getStatusCode().value()));
+                failedNodes.add(host + " (" + e.getStatusCode() + ")");
+            } catch (Exception e) {
+                log.warning(String.format("[REPLICA-RELAY-FAILED] chunkId=%s datanodeId=%s relayedBytes=%d error=%s",
+                        chunkId, host, attempt.relayedBytes, e.getMessage()));
+                failedNodes.add(host + " (" + e.getMessage() + ")");
+                if (attempt.relayedBytes > 0) {
+                    writeFrame(frames, FRAME_RETRY, NO_PAYLOAD, 0, 0);
+                }
+            } finally {
+                if (clientGone || rejected) {
+                    replicaScoreboard.onCancelled(host);
+                    permit.cancelled();
+                } else {
+                    if (served) {
+                        replicaScoreboard.onSuccess(host, started);
+                    } else {
+                        replicaScoreboard.onFailure(host, started);
+                    }
+                    // A corrupt replica is a data problem, the node itself answered
+                    permit.release(attempt.responded, attempt.relayedBytes);
+                }
+            }
+        }
+
+        throw new ChunkDownloadException(
+                String.format("Failed to download chunk %s from all replicas. Failed nodes: %s",
+                        chunkId, String.join(", ", failedNodes)));
+    }
+
+    /**
+     * Streams one snowflake from a DataNode into FRAME_DATA segments.
+     * Format: [8-byte metadata length][JSON metadata][encrypted data]; the metadata is read
+     * first for the expected CRC32, the encrypted data is checksummed as it passes.
+     */
+    private void relaySnowflake(String datanodeId, String snowflakeName, DataOutputStream frames,
+                                RelayAttempt attempt) {
+        String url = "http://" + datanodeId + "/datanode/download?snowflake_name=" + snowflakeName;
+
+        restTemplate.execute(url, HttpMethod.POST,
+                request -> request.getHeaders().set("X-API-Key", config.getMasterAPIKey()),
+                response -> {
+                    DataInputStream in = new DataInputStream(response.getBody());
+                    if (snowflakeCache.isEnabled()) attempt.kept = new ByteArrayOutputStream();
+
+                    long metadataLength = in.readLong();
+                    if (metadataLength <= 0 || metadataLength > MAX_METADATA_BYTES) {
+                        attempt.responded = true;
+                        throw new IOException("Invalid snowflake format: metadataLength=" + metadataLength);
+                    }
+                    byte[] header = new byte[8 + (int) metadataLength];
+                    ByteBuffer.wrap(header).putLong(metadataLength);
+                    in.readFully(header, 8, (int) metadataLength);
+
+                    try {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> metadata = objectMapper.readValue(header, 8, (int) metadataLength, Map.class);
+                        attempt.expectedCrc = Long.parseLong(metadata.get("crcChecksum").toString());
+                    } catch (Exception e) {
+                        attempt.responded = true;
+                        throw new IOException("Failed to parse snowflake: " + e.getMessage());
+                    }
+                    relaySegment(frames, snowflakeName, header, header.length, attempt);
+
+                    CRC32 crc32 = new CRC32();
+                    byte[] segment = new byte[RELAY_SEGMENT_BYTES];
+                    int n;
+                    while ((n = in.read(segment)) != -1) {
+                        crc32.update(segment, 0, n);
+                        relaySegment(frames, snowflakeName, segment, n, attempt);
+                    }
+
+                    attempt.responded = true;
+                    attempt.crcValid = crc32.getValue() == attempt.expectedCrc;
+                    return null;
+                });
+    }
+
+    private void relaySegment(DataOutputStream frames, String snowflakeName, byte[] buffer, int length,
+                              RelayAttempt attempt) {
+        writeFrame(frames, FRAME_DATA, buffer, 0, length);
+        attempt.relayedBytes += length;
+
+        if (attempt.kept != null) {
+            if (snowflakeCache.admits(snowflakeName, attempt.relayedBytes)) {
+                attempt.kept.write(buffer, 0, length);
+            } else {
+                attempt.kept = null; // Too large for the cache, stop collecting
+            }
+        }
+    }
+
+    // A whole snowflake in FRAME_DATA segments, then FRAME_OK
+    static void writeSnowflakeFrames(DataOutputStream frames, byte[] snowflakeBytes) {
+        for (int offset = 0; offset < snowflakeBytes.length; offset += RELAY_SEGMENT_BYTES) {
+            writeFrame(frames, FRAME_DATA, snowflakeBytes, offset, Math.min(RELAY_SEGMENT_BYTES, snowflakeBytes.length - offset));
+        }
+        writeFrame(frames, FRAME_OK, NO_PAYLOAD, 0, 0);
+    }
+
+    // A failed write means the client is gone; unchecked so it passes through RestTemplate
+    static void writeFrame(DataOutputStream frames, byte status, byte[] payload, int offset, int length) {
+        try {
+            frames.writeByte(status);
+            frames.writeInt(length);
+            frames.write(payload, offset, length);
+        } catch (IOException e) {
+            throw new ClientGoneException(e);
+        }
+    }
+
+    /**
+     * State of one replica attempt of a relay
+     */
+    private static class RelayAttempt {
+        private boolean responded;
+        private boolean crcValid;
+        private long expectedCrc;
+        private long relayedBytes;
+        private ByteArrayOutputStream kept; // Snowflake collected for the cache, null if not
+    }
+
+    private static class ClientGoneException extends RuntimeException {
+        ClientGoneException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Replica read order: same rack as this balancer first, then same zone, then the rest,
+     * each tier ordered by expected latency (power-of-two-choices over the scoreboard).
+     * Degraded replicas (mostly failing) go last whatever their locality.
+     */
+    private List<String> orderForRead(List<String> hosts) {
+        List<List<String>> tiers = new ArrayList<>();
+        for (int i = 0; i <= DataNodeService.LOCALITY_REMOTE; i++) {
+            tiers.add(new ArrayList<>());
+        }
+        List<String> degraded = new ArrayList<>();
+        for (String host : hosts) {
+            if (replicaScoreboard.isDegraded(host)) {
+                degraded.add(host);
+            } else {
+                tiers.get(dataNodeService.localityOf(host)).add(host);
+            }
+        }
+
+        List<String> ordered = new ArrayList<>(hosts.size());
+        for (List<String> tier : tiers) {
+            ordered.addAll(replicaScoreboard.order(tier));
+        }
+        ordered.addAll(replicaScoreboard.order(degraded));
+        return ordered;
+    }
+
+    /**
+     * Download several chunks and stream them back in request order as one framed response.
+     * Replica locations come from a single DatabaseNode lookup for the whole batch, liveness
+     * is read as each chunk is fetched. Up to batch-download-prefetch chunks are fetched ahead
+     * of the one being written, each reserving the size of the largest snowflake of the batch
+     * so far from batch-download-prefetch-max-bytes (shared by all batches); without budget a
+     * batch goes on one chunk at a time. Chunks that carry replica hints are left out of the
+     * lookup and only looked up on their own if none of their hinted replicas serves them.
+     *
+     * Frame per chunk: [int index][byte status][int length][payload]
+     * status FRAME_OK: payload is the snowflake; FRAME_FAILED: payload is a UTF-8 error message
+     * (the batch goes on, the client can retry that chunk on its own)
+     *
+     * @param chunks Chunks to download, in the order they are streamed back
+     * @param out Response stream
+     */
+    public void streamChunks(List<ChunkRequest> chunks, OutputStream out) throws IOException {
+        List<ChunkRequest> unhinted = chunks.stream()
+                .filter(chunk -> chunk.getReplicas() == null || chunk.getReplicas().isEmpty())
+                .toList();
+        Map<String, List<ReplicaInfo>> replicasByChunk = unhinted.isEmpty() ? Map.of() : getChunkReplicasBatch(unhinted);
+
+        DataOutputStream frames = new DataOutputStream(out);
+        int prefetch = Math.max(0, config.getBatchDownloadPrefetch());
+        List<CompletableFuture<byte[]>> fetches = new ArrayList<>(chunks.size());
+        long[] reserved = new long[chunks.size()];
+        long chunkBytes = 0; // Largest snowflake of the batch so far, reserved per prefetched chunk
+
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                fillWindow(chunks, replicasByChunk, fetches, reserved, i, prefetch, chunkBytes);
+
+                byte[] payload;
+                byte status;
+                try {
+                    payload = fetches.get(i).join();
+                    status = FRAME_OK;
+                    chunkBytes = Math.max(chunkBytes, payload.length);
+                    // Fetch ahead while this one is written
+                    fillWindow(chunks, replicasByChunk, fetches, reserved, i, prefetch, chunkBytes);
+                } catch (CompletionException e) {
+                    String message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                    payload = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+                    status = FRAME_FAILED;
+                    log.warning(String.format("[BATCH-CHUNK-FAILED] chunkId=%s error=%s", chunks.get(i).getChunkId(), message));
+                }
+
+                frames.writeInt(i);
+                frames.writeByte(status);
+                frames.writeInt(payload.length);
+                frames.write(payload);
+                fetches.set(i, null); // Release the written snowflake
+                prefetchBytes.addAndGet(-reserved[i]);
+                reserved[i] = 0;
+            }
+            frames.flush();
+        } finally {
+            // Client went away: stop fetches that have not started
+            fetches.stream().filter(Objects::nonNull).forEach(f -> f.cancel(false));
+            prefetchBytes.addAndGet(-Arrays.stream(reserved).sum());
+        }
+
+        log.info(String.format("[BATCH-DOWNLOAD-COMPLETE] chunks=%d", chunks.size()));
+    }
+
+    /**
+     * Schedules chunk `current` (never held back, so every batch makes progress) and up to
+     * `prefetch` chunks after it, as long as each can reserve chunkBytes of the prefetch budget
+     */
+    private void fillWindow(List<ChunkRequest> chunks, Map<String, List<ReplicaInfo>> replicasByChunk,
+                            List<CompletableFuture<byte[]>> fetches, long[] reserved,
+                            int current, int prefetch, long chunkBytes) {
+        while (fetches.size() < chunks.size() && fetches.size() <= current + prefetch) {
+            int next = fetches.size();
+            if (next > current) {
+                // Nothing fetched yet to size the reservation by, or the budget is spent
+                if (chunkBytes == 0 || !reservePrefetch(chunkBytes)) return;
+                reserved[next] = chunkBytes;
+            }
+            ChunkRequest chunk = chunks.get(next);
+            fetches.add(CompletableFuture.supplyAsync(() -> fetchForBatch(chunk, replicasByChunk), batchPool));
+        }
+    }
+
+    private boolean reservePrefetch(long bytes) {
+        long max = config.getBatchDownloadPrefetchMaxBytes();
+        while (true) {
+            long current = prefetchBytes.get();
+            if (current + bytes > max) return false;
+            if (prefetchBytes.compareAndSet(current, current + bytes)) return true;
+        }
+    }
+
+    private byte[] fetchForBatch(ChunkRequest chunk, Map<String, List<ReplicaInfo>> replicasByChunk) {
+        try {
+            return singleFlight(chunk.getChunkId(), () -> fetchForBatchUncoalesced(chunk, replicasByChunk));
+        } catch (ChunkDownloadException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private byte[] fetchForBatchUncoalesced(ChunkRequest chunk, Map<String, List<ReplicaInfo>> replicasByChunk)
+            throws ChunkDownloadException {
+        String snowflakeName = chunk.getFileId() + "_" + chunk.getChunkNumber() + ".snowflake";
+        byte[] cached = cachedSnowflake(chunk.getChunkId(), snowflakeName);
+        if (cached != null) return cached;
+
+        // Liveness as of this chunk, a long batch must not keep reading from a node that left
+        Set<String> aliveNodeHosts = dataNodeService.getAvailableHosts();
+        Set<String> triedHosts = new HashSet<>();
+        byte[] hinted = fetchFromHints(chunk.getChunkId(), snowflakeName, chunk.getReplicas(), aliveNodeHosts,
+                triedHosts, this::fetchFromReplicas);
+        if (hinted != null) return hinted;
+
+        // Hinted chunks were left out of the batch lookup
+        List<ReplicaInfo> replicas = replicasByChunk != null && replicasByChunk.containsKey(chunk.getChunkId())
+                ? replicasByChunk.get(chunk.getChunkId())
+                : getChunkReplicas(chunk.getChunkId());
+
+        return readReplicas(chunk.getChunkId(), snowflakeName, replicas, aliveNodeHosts, triedHosts, this::fetchFromReplicas);
+    }
+
+    /**
+     * Replica locations of all chunks in a batch from one DatabaseNode call
+     * @return chunkId -> replicas, or null if no DatabaseNode supports the batch lookup
+     *         (chunks are then looked up one by one)
+     */
+    private Map<String, List<ReplicaInfo>> getChunkReplicasBatch(List<ChunkRequest> chunks) {
+        List<String> chunkIds = chunks.stream().map(ChunkRequest::getChunkId).distinct().toList();
+
+        for (String dbNodeUrl : databaseNodeService.getEndpoints()) {
+            try {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                headers.set("X-API-Key", config.getMasterAPIKey());
+
+                ResponseEntity<Map> response = restTemplate.postForEntity(dbNodeUrl + "/replicas/chunks/lookup",
+                        new HttpEntity<>(Map.of("chunkIds", chunkIds), headers), Map.class);
+                databaseNodeService.markHealthy(dbNodeUrl);
+
+                @SuppressWarnings("unchecked")
+                Map<String, List<Map<String, Object>>> body =
+                        (Map<String, List<Map<String, Object>>>) response.getBody().get("replicas");
+
+                Map<String, List<ReplicaInfo>> replicasByChunk = new HashMap<>();
+                body.forEach((chunkId, replicas) -> replicasByChunk.put(chunkId, replicas.stream()
+                        .map(DownloadService::toReplicaInfo)
+                        .collect(Collectors.toList())));
+
+                log.info(String.format("[REPLICA-BATCH-QUERY] chunks=%d url=%s", chunkIds.size(), dbNodeUrl));
+                return replicasByChunk;
+
+            } catch (Exception e) {
+                if (!DatabaseNodeService.isFailoverError(e)) {
+                    log.warning("[REPLICA-BATCH-QUERY-UNSUPPORTED] falling back to per-chunk lookups: " + e.getMessage());
+                    return null;
+                }
+                log.warning(String.format("[REPLICA-BATCH-QUERY-FAILOVER] url=%s error=%s", dbNodeUrl, e.getMessage()));
+                databaseNodeService.markFailed(dbNodeUrl);
+            }
+        }
+        return null;
+    }
+
+    private static ReplicaInfo toReplicaInfo(Map<String, Object> map) {
+        ReplicaInfo info = new ReplicaInfo();
+        info.setDatanodeId(map.get("datanodeId").toString());
+        info.setStatus(map.get("status").toString());
+        return info;
+    }
+
     /**
      * Query DatabaseNode for chunk replica locations
+     * Fails over to the next cached DatabaseNode when one is unreachable or returns 5xx
      */
     private List<ReplicaInfo> getChunkReplicas(String chunkId) throws ChunkDownloadException {
-        String dbNodeUrl = databaseNodeService.fetchDatabaseNodeUrl();
-        if (dbNodeUrl == null) {
+        List<String> dbNodeUrls = databaseNodeService.getEndpoints();
+        if (dbNodeUrls.isEmpty()) {
             throw new ChunkDownloadException("No DatabaseNode available");
         }
 
+        ChunkDownloadException lastError = null;
+        for (String dbNodeUrl : dbNodeUrls) {
+            try {
+                List<ReplicaInfo> replicas = queryChunkReplicas(dbNodeUrl, chunkId);
+                databaseNodeService.markHealthy(dbNodeUrl);
+                return replicas;
+            } catch (ChunkDownloadException e) {
+                if (!(e.getCause() instanceof Exception cause) || !DatabaseNodeService.isFailoverError(cause)) {
+                    throw e;
+                }
+                log.warning(String.format("[REPLICA-QUERY-FAILOVER] chunkId=%s url=%s error=%s",
+                        chunkId, dbNodeUrl, e.getMessage()));
+                databaseNodeService.markFailed(dbNodeUrl);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    private List<ReplicaInfo> queryChunkReplicas(String dbNodeUrl, String chunkId) throws ChunkDownloadException {
         String endpoint = dbNodeUrl + "/replicas/chunk/" + chunkId;
 
         HttpHeaders headers = new HttpHeaders();
@@ -149,12 +1003,7 @@ public class DownloadService {
                     List<Map<String, Object>> replicasList = (List<Map<String, Object>>) replicasObj;
 
                     return replicasList.stream()
-                            .map(map -> {
-                                ReplicaInfo info = new ReplicaInfo();
-                                info.setDatanodeId(map.get("datanodeId").toString());
-                                info.setStatus(map.get("status").toString());
-                                return info;
-                            })
+                            .map(DownloadService::toReplicaInfo)
                             .collect(Collectors.toList());
                 }
             }
@@ -163,21 +1012,17 @@ public class DownloadService {
 
         } catch (HttpClientErrorException.NotFound e) {
             throw new ChunkDownloadException("Chunk not found in database: " + chunkId);
+        } catch (ChunkDownloadException e) {
+            throw e;
         } catch (Exception e) {
-            throw new ChunkDownloadException("Failed to query chunk replicas: " + e.getMessage());
+            throw new ChunkDownloadException("Failed to query chunk replicas: " + e.getMessage(), e);
         }
     }
 
     /**
      * Filter replicas to only include AVAILABLE status and alive DataNodes
      */
-    private List<ReplicaInfo> filterAvailableReplicas(List<ReplicaInfo> replicas) {
-        // Get list of alive DataNodes from MasterNode
-        List<DataNodeInfo> aliveNodes = dataNodeService.fetchAvailableDataNodes();
-        Set<String> aliveNodeHosts = aliveNodes.stream()
-                .map(DataNodeInfo::getHost)
-                .collect(Collectors.toSet());
-
+    private List<ReplicaInfo> filterAvailableReplicas(List<ReplicaInfo> replicas, Set<String> aliveNodeHosts) {
         return replicas.stream()
                 .filter(replica -> "AVAILABLE".equalsIgnoreCase(replica.getStatus()))
                 .filter(replica -> aliveNodeHosts.contains(replica.getDatanodeId()))
@@ -282,6 +1127,45 @@ public class DownloadService {
 
     // Inner classes for data structures
 
+    public static class ChunkRequest {
+        private String fileId;
+        private String chunkId;
+        private int chunkNumber;
+        private List<String> replicas; // Optional replica hints (DataNode hosts)
+
+        public String getFileId() {
+            return fileId;
+        }
+
+        public void setFileId(String fileId) {
+            this.fileId = fileId;
+        }
+
+        public String getChunkId() {
+            return chunkId;
+        }
+
+        public void setChunkId(String chunkId) {
+            this.chunkId = chunkId;
+        }
+
+        public int getChunkNumber() {
+            return chunkNumber;
+        }
+
+        public void setChunkNumber(int chunkNumber) {
+            this.chunkNumber = chunkNumber;
+        }
+
+        public List<String> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<String> replicas) {
+            this.replicas = replicas;
+        }
+    }
+
     public static class ReplicaInfo {
         private String datanodeId;
         private String status;
@@ -337,5 +1221,9 @@ public class DownloadService {
         public ChunkDownloadException(String message) {
             super(message);
         }
+
+        public ChunkDownloadException(String message, Throwable cause) {
+            super(message, cause);
+        }
     }
 }
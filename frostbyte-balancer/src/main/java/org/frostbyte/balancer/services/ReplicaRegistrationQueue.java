@@ -0,0 +1,416 @@
+package org.frostbyte.balancer.services;
+
+import jakarta.annotation.PreDestroy;
+import org.frostbyte.balancer.models.configModel;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/*
+ * ReplicaRegistrationQueue
+ * Write-behind queue for replica registrations. Uploads enqueue (chunkId, datanode, status)
+ * entries, which are appended to a local journal and fsynced before the upload is acknowledged.
+ * A background flusher sends them to a DatabaseNode in bulk (POST /replicas/register/bulk)
+ * every registration-flush-ms, or as soon as registration-batch-size entries are waiting.
+ *
+ * Uploads use group commit: after enqueueing they wait (up to registration-ack-timeout-ms)
+ * in awaitAccepted for the batch holding their entries to be accepted, which wakes the
+ * flusher at once. Uploads arriving while a batch is in flight are sent together in the next
+ * one. The journal-only ack remains as the fallback when no DatabaseNode answers.
+ *
+ * Entries leave the queue (and the journal) only once a DatabaseNode accepted them, so a
+ * DatabaseNode outage delays registration instead of losing it; the journal is replayed on
+ * startup. The bulk endpoint is idempotent, so an entry sent twice (crash after the send,
+ * before its segment was deleted) is harmless.
+ *
+ * The journal is split into segments of SEGMENT_ENTRIES entries
+ * (replica-registrations.<sequence>.journal); a segment is deleted once all of its entries
+ * were accepted and the active one is truncated whenever the queue drains, so every entry
+ * is written once however long the backlog grows.
+ */
+@Service
+public class ReplicaRegistrationQueue {
+
+    private static final String JOURNAL_PREFIX = "replica-registrations.";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int SEGMENT_ENTRIES = 4096;
+    public static final long NOT_QUEUED = -1;
+
+    private final configModel config;
+    private final DatabaseNodeService databaseNodeService;
+    private final RestTemplate restTemplate;
+    private static final Logger log = Logger.getLogger(ReplicaRegistrationQueue.class.getName());
+
+    // Guarded by this; the flusher thread is the only one removing from the head
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    private final Path journalDir;
+    // Segment sequence numbers on disk, oldest first; the last one is being appended to
+    private final Deque<Long> segments = new ArrayDeque<>();
+    private FileChannel journal;
+    private int activeEntries;
+
+    // Group commit state, guarded by this
+    private long nextSequence = 1;
+    private long acceptedThrough;   // Every entry up to this sequence was accepted
+    private long failedFlushes;     // Flushes no DatabaseNode accepted
+    private boolean deferred;       // The last flush failed, waiting would not help
+    private int waiters;            // Uploads blocked in awaitAccepted
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public ReplicaRegistrationQueue(configModel config, DatabaseNodeService databaseNodeService) throws IOException {
+        this.config = config;
+        this.databaseNodeService = databaseNodeService;
+
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(5000);
+        factory.setReadTimeout(30000);
+        this.restTemplate = new RestTemplate(factory);
+
+        this.journalDir = Paths.get(config.getRegistrationJournalDir());
+        Files.createDirectories(journalDir);
+        replayJournal();
+        // Never append behind a line torn by a crash
+        startSegment(segments.isEmpty() ? 0 : segments.peekLast() + 1);
+        releaseSegments();
+
+        this.flusher = new Thread(this::runFlusher, "replica-registration-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+
+        log.info("[REGISTRATION-QUEUE] journal=" + journalDir + " segments=" + segments.size() + " replayed=" + queue.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        synchronized (this) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warning("[REGISTRATION-QUEUE] failed to close journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Durably queues replica registrations for one chunk
+     *
+     * @param chunkId UUID of the chunk
+     * @param datanodeIds Datanodes holding (or writing) the replica
+     * @param status Replica status to record (AVAILABLE, PENDING, UNAVAILABLE)
+     * @return true once the entries are in the journal; false if the queue is full or the journal failed
+     */
+    public boolean enqueue(String chunkId, List<String> datanodeIds, String status) {
+        return enqueueForAck(chunkId, datanodeIds, status) != NOT_QUEUED;
+    }
+
+    /**
+     * Durably queues replica registrations for one chunk, for callers that wait in awaitAccepted
+     *
+     * @return Sequence number to pass to awaitAccepted (0 if nothing was queued);
+     *         NOT_QUEUED if the queue is full or the journal failed
+     */
+    public synchronized long enqueueForAck(String chunkId, List<String> datanodeIds, String status) {
+        if (datanodeIds.isEmpty()) return 0;
+
+        if (queue.size() + datanodeIds.size() > config.getRegistrationQueueMax()) {
+            log.severe("[REGISTRATION-QUEUE-FULL] backlog=" + queue.size() + " chunkId=" + chunkId);
+            return NOT_QUEUED;
+        }
+
+        try {
+            if (activeEntries >= SEGMENT_ENTRIES) {
+                startSegment(segments.peekLast() + 1);
+            }
+        } catch (IOException e) {
+            log.severe("[REGISTRATION-JOURNAL-ERROR] chunkId=" + chunkId + " error=" + e.getMessage());
+            return NOT_QUEUED;
+        }
+
+        long segment = segments.peekLast();
+        List<Entry> entries = new ArrayList<>(datanodeIds.size());
+        StringBuilder lines = new StringBuilder();
+        for (String datanodeId : datanodeIds) {
+            Entry entry = new Entry(chunkId, datanodeId, status, segment, nextSequence + entries.size());
+            entries.add(entry);
+            lines.append(entry.toLine()).append('\n');
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            log.severe("[REGISTRATION-JOURNAL-ERROR] chunkId=" + chunkId + " error=" + e.getMessage());
+            return NOT_QUEUED;
+        }
+
+        activeEntries += entries.size();
+        nextSequence += entries.size();
+        queue.addAll(entries);
+        if (queue.size() >= config.getRegistrationBatchSize()) {
+            notifyAll(); // Size-triggered flush
+        }
+        return nextSequence - 1;
+    }
+
+    /**
+     * Waits until the entries up to a sequence number were accepted by a DatabaseNode.
+     * Wakes the flusher instead of waiting for registration-flush-ms.
+     *
+     * @param sequence Value returned by enqueueForAck
+     * @param timeoutMs Longest wait
+     * @return true if accepted; false on timeout or when no DatabaseNode accepted the last flush
+     */
+    public synchronized boolean awaitAccepted(long sequence, long timeoutMs) {
+        if (sequence <= acceptedThrough) return true;
+        if (deferred || timeoutMs <= 0) return false;
+
+        long failuresBefore = failedFlushes;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        waiters++;
+        notifyAll(); // Flush now
+        try {
+            while (acceptedThrough < sequence && failedFlushes == failuresBefore) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return acceptedThrough >= sequence;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiters--;
+        }
+    }
+
+    /**
+     * Registrations accepted but not yet stored by a DatabaseNode
+     */
+    public synchronized int getBacklog() {
+        return queue.size();
+    }
+
+    private void runFlusher() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    if (queue.size() < config.getRegistrationBatchSize() && (waiters == 0 || deferred)) {
+                        wait(Math.max(1, config.getRegistrationFlushMs()));
+                    }
+                }
+                while (running && flushBatch()) {
+                    // Keep draining full batches
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.severe("[REGISTRATION-FLUSH-ERROR] " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends up to one batch from the head of the queue
+     * @return true if more entries should be sent right away (a full batch, or uploads are waiting)
+     */
+    private boolean flushBatch() {
+        List<Entry> batch = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> it = queue.iterator();
+            while (it.hasNext() && batch.size() < config.getRegistrationBatchSize()) {
+                batch.add(it.next());
+            }
+        }
+        if (batch.isEmpty()) return false;
+
+        if (!sendBatch(batch)) {
+            synchronized (this) {
+                deferred = true;
+                failedFlushes++;
+                notifyAll(); // Waiting uploads fall back to the journal-only ack
+            }
+            return false; // Kept for the next attempt
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < batch.size(); i++) {
+                queue.pollFirst();
+            }
+            deferred = false;
+            acceptedThrough = batch.get(batch.size() - 1).sequence;
+            notifyAll();
+            try {
+                releaseSegments();
+            } catch (IOException e) {
+                // The journal still holds sent entries; replaying them later is harmless
+                log.warning("[REGISTRATION-JOURNAL-RELEASE-FAILED] " + e.getMessage());
+            }
+            return queue.size() >= config.getRegistrationBatchSize() || (waiters > 0 && !queue.isEmpty());
+        }
+    }
+
+    // POST /replicas/register/bulk, failing over across DatabaseNodes
+    private boolean sendBatch(List<Entry> batch) {
+        List<Map<String, String>> replicas = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            replicas.add(Map.of(
+                    "chunkId", entry.chunkId,
+                    "datanodeId", entry.datanodeId,
+                    "status", entry.status));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("X-API-Key", config.getMasterAPIKey());
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(Map.of("replicas", replicas), headers);
+
+        List<String> endpoints = databaseNodeService.getEndpoints();
+        int malformed = 0;
+        for (String databaseNodeUrl : endpoints) {
+            try {
+                ResponseEntity<Map> response = restTemplate.postForEntity(
+                        databaseNodeUrl + "/replicas/register/bulk", request, Map.class);
+                databaseNodeService.markHealthy(databaseNodeUrl);
+                log.info(String.format("[REGISTRATION-FLUSH] url=%s sent=%d response=%s",
+                        databaseNodeUrl, batch.size(), response.getBody()));
+                return true;
+            } catch (HttpClientErrorException.BadRequest e) {
+                malformed++;
+                log.warning(String.format("[REGISTRATION-FLUSH-REJECTED] url=%s error=%s", databaseNodeUrl, e.getMessage()));
+            } catch (HttpClientErrorException e) {
+                // Auth or configuration problem (401, 403, 404, ...): keep the entries until it is fixed
+                log.severe(String.format("[REGISTRATION-FLUSH-REFUSED] url=%s status=%d error=%s",
+                        databaseNodeUrl, e.getStatusCode().value(), e.getMessage()));
+            } catch (Exception e) {
+                log.warning(String.format("[REGISTRATION-FLUSH-FAILED] url=%s error=%s", databaseNodeUrl, e.getMessage()));
+                if (DatabaseNodeService.isFailoverError(e)) {
+                    databaseNodeService.markFailed(databaseNodeUrl);
+                }
+            }
+        }
+
+        if (malformed > 0 && malformed == endpoints.size()) {
+            // Every DatabaseNode rejected the batch as malformed, retrying would never succeed
+            log.severe(String.format("[REGISTRATION-FLUSH-DROPPED] dropped=%d first=%s",
+                    batch.size(), batch.get(0).toLine()));
+            return true;
+        }
+
+        log.warning("[REGISTRATION-FLUSH-DEFERRED] no database node accepted the batch, backlog=" + getBacklog());
+        return false;
+    }
+
+    // ====== Journal ======
+
+    private Path segmentPath(long segment) {
+        return journalDir.resolve(JOURNAL_PREFIX + segment + JOURNAL_SUFFIX);
+    }
+
+    // Caller holds the lock (or is the constructor): appends go to a new segment from now on
+    private void startSegment(long segment) throws IOException {
+        FileChannel next = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (journal != null) journal.close();
+        journal = next;
+        segments.addLast(segment);
+        activeEntries = 0;
+    }
+
+    private void replayJournal() throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(journalDir, JOURNAL_PREFIX + "*" + JOURNAL_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    found.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warning("[REGISTRATION-QUEUE] ignoring " + file);
+                }
+            }
+        }
+        Collections.sort(found);
+
+        for (long segment : found) {
+            for (String line : Files.readAllLines(segmentPath(segment), StandardCharsets.UTF_8)) {
+                Entry entry = Entry.fromLine(line, segment, nextSequence);
+                if (entry != null) { // null: torn write from a crash
+                    queue.add(entry);
+                    nextSequence++;
+                }
+            }
+            segments.addLast(segment);
+        }
+    }
+
+    // Caller holds the lock: drops segments whose entries were all accepted
+    private void releaseSegments() throws IOException {
+        if (queue.isEmpty()) {
+            journal.truncate(0);
+            activeEntries = 0;
+        }
+        long oldestQueued = queue.isEmpty() ? segments.peekLast() : queue.peekFirst().segment;
+        while (segments.peekFirst() < oldestQueued) {
+            Files.deleteIfExists(segmentPath(segments.pollFirst()));
+        }
+    }
+
+    /**
+     * One queued registration; journal line format: chunkId \t datanodeId \t status
+     */
+    private static class Entry {
+        private final String chunkId;
+        private final String datanodeId;
+        private final String status;
+        private final long segment; // Journal segment holding the entry
+        private final long sequence; // Queue order, for awaitAccepted (not journaled)
+
+        Entry(String chunkId, String datanodeId, String status, long segment, long sequence) {
+            this.chunkId = chunkId;
+            this.datanodeId = datanodeId;
+            this.status = status;
+            this.segment = segment;
+            this.sequence = sequence;
+        }
+
+        String toLine() {
+            return chunkId + "\t" + datanodeId + "\t" + status;
+        }
+
+        static Entry fromLine(String line, long segment, long sequence) {
+            String[] parts = line.split("\t");
+            if (parts.length != 3 || parts[2].isEmpty()) return null;
+            return new Entry(parts[0], parts[1], parts[2], segment, sequence);
+        }
+    }
+}
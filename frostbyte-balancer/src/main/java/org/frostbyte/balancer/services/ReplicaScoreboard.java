@@ -0,0 +1,196 @@
+package org.frostbyte.balancer.services;
+
+import org.frostbyte.balancer.models.configModel;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * ReplicaScoreboard
+ * Per-DataNode read statistics used to order replicas for downloads:
+ * - EWMA of snowflake read latency
+ * - EWMA of the error rate (connection errors, non-2xx, CRC mismatches)
+ * - reads currently in flight from this balancer
+ *
+ * Averages decay with time rather than per sample (weight 1 - e^(-dt/decay)), so a burst
+ * of reads does not wash out history and a DataNode that stopped being picked drifts back
+ * towards a neutral score and gets probed again. The in-flight count reacts at once when a
+ * DataNode suddenly slows down, before the averages catch up.
+ *
+ * Expected cost of a read = latency * (inFlight + 1) + errorRate * penalty.
+ * Replicas are ordered by power-of-two-choices: two random candidates, the cheaper one goes
+ * next. Load still spreads across healthy replicas (no herding on the single best node),
+ * while a degraded one loses nearly every comparison.
+ */
+@Service
+public class ReplicaScoreboard {
+
+    private static final double DEGRADED_ERROR_RATE = 0.5;
+
+    private final configModel config;
+    private final Map<String, Score> scores = new ConcurrentHashMap<>();
+
+    public ReplicaScoreboard(configModel config) {
+        this.config = config;
+    }
+
+    /**
+     * Orders candidate DataNode hosts for a read, best expected first
+     */
+    public List<String> order(List<String> hosts) {
+        List<String> remaining = new ArrayList<>(hosts);
+        List<String> ordered = new ArrayList<>(hosts.size());
+        long now = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (remaining.size() > 1) {
+            int a = random.nextInt(remaining.size());
+            int b = random.nextInt(remaining.size() - 1);
+            if (b >= a) b++;
+            int pick = cost(remaining.get(a), now) <= cost(remaining.get(b), now) ? a : b;
+            ordered.add(remaining.remove(pick));
+        }
+        ordered.addAll(remaining);
+        return ordered;
+    }
+
+    /**
+     * Whether most recent reads from this DataNode failed; such replicas are tried last
+     * even when they are closer
+     */
+    public boolean isDegraded(String host) {
+        Score score = scores.get(host);
+        if (score == null) return false;
+        synchronized (score) {
+            return score.errorRate * score.decayFactor(System.nanoTime(), decayNanos()) >= DEGRADED_ERROR_RATE;
+        }
+    }
+
+    /**
+     * Call before a read; the returned start time goes to onSuccess/onFailure
+     */
+    public long onStart(String host) {
+        Score score = scoreOf(host);
+        synchronized (score) {
+            score.inFlight++;
+        }
+        return System.nanoTime();
+    }
+
+    public void onSuccess(String host, long startNanos) {
+        long now = System.nanoTime();
+        Score score = scoreOf(host);
+        synchronized (score) {
+            score.inFlight--;
+            score.update(now, (now - startNanos) / 1_000_000.0, 0.0, decayNanos());
+            score.successes++;
+        }
+    }
+
+    public void onFailure(String host, long startNanos) {
+        long now = System.nanoTime();
+        Score score = scoreOf(host);
+        synchronized (score) {
+            score.inFlight--;
+            // A failure tells nothing about speed, only the error rate moves
+            score.update(now, Double.NaN, 1.0, decayNanos());
+            score.failures++;
+        }
+    }
+
+    /**
+     * The read ended for reasons unrelated to the DataNode's health (client went away,
+     * the node answered 4xx), only the in-flight count moves
+     */
+    public void onCancelled(String host) {
+        Score score = scoreOf(host);
+        synchronized (score) {
+            score.inFlight--;
+        }
+    }
+
+    /**
+     * Current scores per DataNode host (admin endpoint)
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        long now = System.nanoTime();
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        for (Map.Entry<String, Score> entry : scores.entrySet()) {
+            Score score = entry.getValue();
+            synchronized (score) {
+                double factor = score.decayFactor(now, decayNanos());
+                Map<String, Object> view = new LinkedHashMap<>();
+                view.put("latencyMs", round(score.latencyMs * factor));
+                view.put("errorRate", round(score.errorRate * factor));
+                view.put("inFlight", score.inFlight);
+                view.put("expectedCost", round(cost(entry.getKey(), now)));
+                view.put("successes", score.successes);
+                view.put("failures", score.failures);
+                result.put(entry.getKey(), view);
+            }
+        }
+        return result;
+    }
+
+    private double cost(String host, long now) {
+        Score score = scores.get(host);
+        if (score == null) return 0.0; // Never read from: worth probing
+        synchronized (score) {
+            double factor = score.decayFactor(now, decayNanos());
+            return score.latencyMs * factor * (score.inFlight + 1)
+                    + score.errorRate * factor * config.getReplicaErrorPenaltyMs();
+        }
+    }
+
+    private Score scoreOf(String host) {
+        return scores.computeIfAbsent(host, h -> new Score());
+    }
+
+    private long decayNanos() {
+        return Math.max(1, config.getReplicaScoreDecayMs()) * 1_000_000L;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    /**
+     * EWMA state of one DataNode; guarded by its own monitor
+     */
+    private static class Score {
+        private double latencyMs;
+        private double errorRate;
+        private long updatedAt;
+        private boolean seen;
+        private int inFlight;
+        private long successes;
+        private long failures;
+
+        // Fraction of the averages still valid after dt without samples
+        double decayFactor(long now, long decayNanos) {
+            if (!seen) return 0.0;
+            return Math.exp(-(double) (now - updatedAt) / decayNanos);
+        }
+
+        void update(long now, double sampleLatencyMs, double sampleError, long decayNanos) {
+            if (!seen) {
+                latencyMs = Double.isNaN(sampleLatencyMs) ? 0.0 : sampleLatencyMs;
+                errorRate = sampleError;
+                seen = true;
+            } else {
+                double keep = Math.exp(-(double) (now - updatedAt) / decayNanos);
+                if (!Double.isNaN(sampleLatencyMs)) {
+                    latencyMs = latencyMs * keep + sampleLatencyMs * (1 - keep);
+                }
+                errorRate = errorRate * keep + sampleError * (1 - keep);
+            }
+            updatedAt = now;
+        }
+    }
+}
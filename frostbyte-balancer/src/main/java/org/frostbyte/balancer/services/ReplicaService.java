@@ -2,37 +2,93 @@ package org.frostbyte.balancer.services;
 
 import org.frostbyte.balancer.models.DataNodeInfo;
 import org.frostbyte.balancer.models.configModel;
+import jakarta.annotation.PreDestroy;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
 @Service
 public class ReplicaService {
 
     private final configModel config;
+    private final DataNodeService dataNodeService;
+    private final ReplicaRegistrationQueue registrationQueue;
+    private final DataNodeGuard dataNodeGuard;
     private final RestTemplate restTemplate;
     private static final Logger log = Logger.getLogger(ReplicaService.class.getName());
 
-    public ReplicaService(configModel config) {
+    // Replica writes of one chunk run concurrently; each DataNode accepts as many at once as
+    // its DataNodeGuard limit allows
+    private final ExecutorService fanOutPool;
+
+    public ReplicaService(configModel config, DataNodeService dataNodeService, ReplicaRegistrationQueue registrationQueue,
+                          DataNodeGuard dataNodeGuard) {
         this.config = config;
+        this.dataNodeService = dataNodeService;
+        this.registrationQueue = registrationQueue;
+        this.dataNodeGuard = dataNodeGuard;
 
-        // Configure RestTemplate with appropriate timeouts for large file uploads
+        // The read timeout starts once the request body is sent: the DataNode only has to
+        // store the snowflake and answer
         SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(30000); // 30 seconds
-        factory.setReadTimeout(600000);   // 10 minutes for large uploads
+        factory.setConnectTimeout((int) config.getDatanodeConnectTimeoutMs());
+        factory.setReadTimeout((int) config.getDatanodeReadTimeoutMs());
         this.restTemplate = new RestTemplate(factory);
 
-        log.info("ReplicaService initialized with connectTimeout=30s, readTimeout=10m");
+        AtomicInteger threadCount = new AtomicInteger();
+        this.fanOutPool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "replica-fanout-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        log.info(String.format("ReplicaService initialized with connectTimeout=%dms, readTimeout=%dms",
+                config.getDatanodeConnectTimeoutMs(), config.getDatanodeReadTimeoutMs()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutPool.shutdownNow();
+    }
+
+    /**
+     * How a DataNode answered a replica upload. Only FAILED (connection error, timeout, 5xx,
+     * other 4xx) says something about the node's health and counts against its breaker and
+     * quarantine; EXISTS (409, a snowflake with that name is already stored) and FULL (507)
+     * are answers from a working node.
+     */
+    public enum UploadOutcome {
+        WRITTEN, EXISTS, FULL, FAILED;
+
+        static UploadOutcome of(int status) {
+            if (status / 100 == 2) return WRITTEN;
+            if (status == HttpStatus.CONFLICT.value()) return EXISTS;
+            if (status == HttpStatus.INSUFFICIENT_STORAGE.value()) return FULL;
+            return FAILED;
+        }
     }
 
     /**
@@ -41,9 +97,9 @@ public class ReplicaService {
      * @param dataNodeInfo Target datanode information
      * @param snowflakeData Encrypted snowflake binary data
      * @param snowflakeFileName Unique filename for the snowflake
-     * @return true if upload successful, false otherwise
+     * @return how the DataNode answered (WRITTEN if the upload succeeded)
      */
-    public boolean uploadSnowflakeToDataNode(DataNodeInfo dataNodeInfo, byte[] snowflakeData, String snowflakeFileName) {
+    public UploadOutcome uploadSnowflakeToDataNode(DataNodeInfo dataNodeInfo, byte[] snowflakeData, String snowflakeFileName) {
         try {
             String url = "http://" + dataNodeInfo.getHost() + "/datanode/upload";
 
@@ -68,87 +124,616 @@ public class ReplicaService {
 
             ResponseEntity<Map> response = restTemplate.postForEntity(url, requestEntity, Map.class);
 
-            if (response.getStatusCode().is2xxSuccessful()) {
+            UploadOutcome outcome = UploadOutcome.of(response.getStatusCode().value());
+            if (outcome == UploadOutcome.WRITTEN) {
                 log.info("Successfully uploaded snowflake " + snowflakeFileName + " to " + dataNodeInfo.getNodeName());
-                return true;
             } else {
                 log.warning("Failed to upload snowflake to " + dataNodeInfo.getNodeName() + ": " + response.getStatusCode());
-                return false;
             }
+            return outcome;
 
+        } catch (HttpStatusCodeException e) {
+            UploadOutcome outcome = UploadOutcome.of(e.getStatusCode().value());
+            log.warning(String.format("Failed to upload snowflake %s to %s: %s (%s)",
+                    snowflakeFileName, dataNodeInfo.getNodeName(), e.getStatusCode(), outcome));
+            return outcome;
         } catch (Exception e) {
             log.severe("Error uploading snowflake to " + dataNodeInfo.getNodeName() + ": " + e.getMessage());
-            return false;
+            return UploadOutcome.FAILED;
         }
     }
 
     /**
-     * Register replica information in DatabaseNode
+     * Deletes snowflakes from the given DataNodes in parallel; names a node does not store are ignored
      *
-     * @param chunkId UUID of the chunk
-     * @param datanodeIds List of datanode IDs where replicas are stored
-     * @param databaseNodeUrl URL of the database node
-     * @return true if registration successful
+     * @return hosts that could not be reached or refused the delete
      */
-    public boolean registerReplicasInDatabase(String chunkId, List<String> datanodeIds, String databaseNodeUrl) {
-        try {
-            String url = databaseNodeUrl + "/replicas/register/batch";
+    public List<String> deleteSnowflakes(List<DataNodeInfo> nodes, List<String> snowflakeFileNames) {
+        Map<String, CompletableFuture<Boolean>> deletes = new LinkedHashMap<>();
+        for (DataNodeInfo node : nodes) {
+            deletes.put(node.getHost(), CompletableFuture.supplyAsync(
+                    () -> deleteFromDataNode(node.getHost(), snowflakeFileNames), fanOutPool));
+        }
 
-            log.info(String.format("[REPLICA-REGISTER-START] chunkId=%s datanodeIds=%s url=%s",
-                    chunkId, datanodeIds, url));
+        List<String> failed = new ArrayList<>();
+        deletes.forEach((host, delete) -> {
+            if (!delete.join()) failed.add(host);
+        });
+        return failed;
+    }
 
+    private boolean deleteFromDataNode(String host, List<String> snowflakeFileNames) {
+        try {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             headers.set("X-API-Key", config.getMasterAPIKey());
 
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("chunkId", chunkId);
-            requestBody.put("datanodeIds", datanodeIds);
+            ResponseEntity<Map> response = restTemplate.postForEntity("http://" + host + "/datanode/delete",
+                    new HttpEntity<>(Map.of("snowflakeNames", snowflakeFileNames), headers), Map.class);
+            log.info(String.format("Deleted snowflakes on %s: %s of %d", host,
+                    response.getBody() == null ? "?" : response.getBody().get("deleted"), snowflakeFileNames.size()));
+            return true;
+        } catch (Exception e) {
+            log.warning("Failed to delete snowflakes on " + host + ": " + e.getMessage());
+            return false;
+        }
+    }
 
-            log.info("[REPLICA-REGISTER-REQUEST] body=" + requestBody);
+    /**
+     * Whether the snowflake a DataNode stores under this name is byte for byte the given one
+     * (same length and CRC32 over the whole file), read as a stream. Used when a write answered
+     * 409 to tell an earlier write of the same snowflake from a foreign file.
+     */
+    public boolean storedReplicaMatches(String host, String snowflakeFileName, long length, long crc32) {
+        String url = "http://" + host + "/datanode/download?snowflake_name=" + snowflakeFileName;
+        try {
+            Boolean matches = restTemplate.execute(url, HttpMethod.POST,
+                    request -> request.getHeaders().set("X-API-Key", config.getMasterAPIKey()),
+                    response -> {
+                        CRC32 crc = new CRC32();
+                        long total = 0;
+                        byte[] buffer = new byte[64 * 1024];
+                        InputStream in = response.getBody();
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            crc.update(buffer, 0, n);
+                            total += n;
+                            if (total > length) return false;
+                        }
+                        return total == length && crc.getValue() == crc32;
+                    });
+            return Boolean.TRUE.equals(matches);
+        } catch (Exception e) {
+            log.warning("Could not read back " + snowflakeFileName + " from " + host + ": " + e.getMessage());
+            return false;
+        }
+    }
 
-            HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(requestBody, headers);
+    /**
+     * Register replica information: queued durably and sent to a DatabaseNode in bulk
+     * by the write-behind ReplicaRegistrationQueue. Waits (up to registration-ack-timeout-ms)
+     * for the batch to be accepted so the chunk is readable once the upload is acknowledged;
+     * when no DatabaseNode answers, the journaled entries alone acknowledge it.
+     *
+     * @param chunkId UUID of the chunk
+     * @param datanodeIds List of datanode IDs where replicas are stored
+     * @param pendingDatanodeIds Datanode IDs whose writes are still running (registered as PENDING)
+     * @return true once the registration is journaled; false if the queue is full or the journal failed
+     */
+    public boolean registerReplicasInDatabase(String chunkId, List<String> datanodeIds, List<String> pendingDatanodeIds) {
+        long available = registrationQueue.enqueueForAck(chunkId, datanodeIds, "AVAILABLE");
+        long pending = available == ReplicaRegistrationQueue.NOT_QUEUED
+                ? ReplicaRegistrationQueue.NOT_QUEUED
+                : registrationQueue.enqueueForAck(chunkId, pendingDatanodeIds, "PENDING");
+        if (pending == ReplicaRegistrationQueue.NOT_QUEUED) {
+            log.severe("[REPLICA-REGISTER-FAILED] chunkId=" + chunkId + " could not be queued for registration");
+            return false;
+        }
 
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, requestEntity, Map.class);
+        if (!registrationQueue.awaitAccepted(Math.max(available, pending), config.getRegistrationAckTimeoutMs())) {
+            log.warning("[REPLICA-REGISTER-DEFERRED] chunkId=" + chunkId
+                    + " acknowledged from the journal, backlog=" + registrationQueue.getBacklog());
+        }
+        return true;
+    }
 
-            log.info(String.format("[REPLICA-REGISTER-RESPONSE] status=%d body=%s",
-                    response.getStatusCode().value(), response.getBody()));
+    /**
+     * Create and distribute replicas across selected datanodes
+     * All replicas are written concurrently. The call returns once write-quorum replicas
+     * are written (or every write has finished); writes still running at that point are
+     * returned as pending and finish in the background.
+     * Each DataNode takes at most max-in-flight-per-data-node uploads at a time, and
+     * replicas not written within replica-upload-deadline-ms count as failed.
+     * A failed write (error status, timeout, no slot) moves that replica to a fallback node
+     * (see DataNodeService.placeFallbackReplica), up to replica-fallback-attempts times
+     * while the deadline allows, so the replica count is met whenever capacity exists.
+     *
+     * @param selectedNodes List of datanodes to receive replicas
+     * @param snowflakeData Encrypted snowflake binary data
+     * @param snowflakeFileName Unique filename for the snowflake
+     * @return Acknowledged datanode IDs (in selection order) and pending writes
+     */
+    public ReplicaWrite distributeReplicas(List<DataNodeInfo> selectedNodes, byte[] snowflakeData, String snowflakeFileName) {
+        return distributeReplicas(selectedNodes, snowflakeData, snowflakeFileName, config.getWriteQuorum());
+    }
 
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Successfully registered " + datanodeIds.size() + " replicas for chunk " + chunkId);
-                return true;
-            } else {
-                log.warning("Failed to register replicas for chunk " + chunkId + ": " + response.getStatusCode());
-                return false;
+    /**
+     * distributeReplicas with an explicit write quorum (0 = wait for every replica)
+     */
+    public ReplicaWrite distributeReplicas(List<DataNodeInfo> selectedNodes, byte[] snowflakeData, String snowflakeFileName,
+                                           int writeQuorum) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getReplicaUploadDeadlineMs());
+
+        ChunkPlacement placement = new ChunkPlacement(selectedNodes);
+        for (ReplicaSlot slot : placement.slots) {
+            slot.write = writeReplica(slot, placement, snowflakeData, snowflakeFileName, deadline,
+                    config.getReplicaFallbackAttempts());
+        }
+
+        ReplicaWrite write = awaitQuorum(placement.slots, writeQuorum, deadline);
+        write.fallbacks = placement.getFallbacks();
+        log.info(String.format("Distributed %s: %d acknowledged, %d pending out of %d replicas (%d fallbacks)",
+                snowflakeFileName, write.getAcked().size(), write.getPendingHosts().size(), selectedNodes.size(),
+                write.getFallbacks()));
+        return write;
+    }
+
+    // Writes the slot's replica; on failure moves the slot to a fallback node and tries again.
+    // Completes with whether the replica ended up written on the slot's (final) node.
+    private CompletableFuture<Boolean> writeReplica(ReplicaSlot slot, ChunkPlacement placement, byte[] snowflakeData,
+                                                    String snowflakeFileName, long deadline, int fallbacksLeft) {
+        DataNodeInfo node = slot.node;
+        CompletableFuture<Boolean> upload = CompletableFuture.supplyAsync(
+                () -> uploadWithSlot(node, snowflakeData, snowflakeFileName, deadline), fanOutPool);
+        settleWhenDone(node, upload, snowflakeData.length);
+
+        return upload.thenCompose(ok -> {
+            if (Boolean.TRUE.equals(ok) || fallbacksLeft <= 0 || System.nanoTime() >= deadline) {
+                return CompletableFuture.completedFuture(Boolean.TRUE.equals(ok));
+            }
+            DataNodeInfo replacement = placement.replace(slot, snowflakeData.length);
+            if (replacement == null) {
+                log.warning("[REPLICA-FALLBACK-NONE] no other datanode has capacity for " + snowflakeFileName);
+                return CompletableFuture.completedFuture(false);
             }
+            log.info(String.format("[REPLICA-FALLBACK] %s: %s failed, retrying on %s",
+                    snowflakeFileName, node.getNodeName(), replacement.getNodeName()));
+            return writeReplica(slot, placement, snowflakeData, snowflakeFileName, deadline, fallbacksLeft - 1);
+        });
+    }
 
-        } catch (Exception e) {
-            log.severe(String.format("[REPLICA-REGISTER-ERROR] chunkId=%s error=%s", chunkId, e.getMessage()));
-            e.printStackTrace();
+    // Settles the placement reservation made for this replica once its write finishes
+    private void settleWhenDone(DataNodeInfo node, CompletableFuture<Boolean> write, long bytes) {
+        write.whenComplete((ok, error) ->
+                dataNodeService.settlePlacement(node.getHost(), bytes, error == null && Boolean.TRUE.equals(ok)));
+    }
+
+    /**
+     * Number of replica writes a chunk upload waits for (write quorum, 0 = all selected)
+     */
+    private static int quorumFor(int selected, int writeQuorum) {
+        return writeQuorum <= 0 ? selected : Math.min(writeQuorum, selected);
+    }
+
+    /**
+     * Waits until write-quorum writes succeeded, every write finished, or the deadline passed.
+     * Succeeded writes are acknowledged; writes still running before the deadline are pending.
+     */
+    private ReplicaWrite awaitQuorum(List<ReplicaSlot> slots, int writeQuorum, long deadline) {
+        int quorum = quorumFor(slots.size(), writeQuorum);
+        CompletableFuture<Void> quorumReached = new CompletableFuture<>();
+        AtomicInteger acked = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+
+        for (ReplicaSlot slot : slots) {
+            slot.write.whenComplete((ok, error) -> {
+                boolean success = error == null && Boolean.TRUE.equals(ok);
+                if ((success && acked.incrementAndGet() >= quorum) || finished.incrementAndGet() == slots.size()) {
+                    quorumReached.complete(null);
+                }
+            });
+        }
+        if (slots.isEmpty()) quorumReached.complete(null);
+
+        try {
+            quorumReached.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            log.warning("Replica writes missed the deadline before reaching quorum " + quorum);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Never completed exceptionally
+        }
+
+        boolean beforeDeadline = System.nanoTime() < deadline && !Thread.currentThread().isInterrupted();
+        ReplicaWrite result = new ReplicaWrite();
+        for (ReplicaSlot slot : slots) {
+            CompletableFuture<Boolean> write = slot.write;
+            boolean done = write.isDone();
+            DataNodeInfo node = slot.node; // Final once the write is done
+            if (!done) {
+                if (beforeDeadline) {
+                    result.pending.put(node.getHost(), slot);
+                } else {
+                    log.warning("Replica write to " + node.getNodeName() + " missed the deadline");
+                }
+            } else if (!write.isCompletedExceptionally() && Boolean.TRUE.equals(write.join())) {
+                result.acked.add(node.getHost());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tracks replicas registered as PENDING: each is moved to AVAILABLE (or UNAVAILABLE)
+     * through the registration queue once its background write finishes or the upload
+     * deadline passes. The queue is FIFO, so the update always lands after the PENDING row.
+     */
+    public void completePendingReplicas(String chunkId, ReplicaWrite write) {
+        long timeoutMs = config.getReplicaUploadDeadlineMs();
+        write.pending.forEach((host, slot) -> slot.write
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((ok, error) -> {
+                    boolean written = error == null && Boolean.TRUE.equals(ok);
+                    String finalHost = slot.node.getHost();
+                    if (written && !finalHost.equals(host)) {
+                        // The pending write failed over: the registered node never got the replica
+                        updatePendingStatus(chunkId, host, "UNAVAILABLE");
+                        updatePendingStatus(chunkId, finalHost, "AVAILABLE");
+                    } else {
+                        updatePendingStatus(chunkId, host, written ? "AVAILABLE" : "UNAVAILABLE");
+                    }
+                }, fanOutPool));
+    }
+
+    private void updatePendingStatus(String chunkId, String host, String status) {
+        log.info(String.format("[REPLICA-PENDING-DONE] chunkId=%s datanodeId=%s status=%s", chunkId, host, status));
+        if (!registrationQueue.enqueue(chunkId, List.of(host), status)) {
+            log.severe("[REPLICA-STATUS-FAILED] chunkId=" + chunkId + " datanodeId=" + host + " left PENDING");
+        }
+    }
+
+    // Waits (until the deadline) for a free upload slot on the DataNode, then uploads
+    private boolean uploadWithSlot(DataNodeInfo node, byte[] snowflakeData, String snowflakeFileName, long deadline) {
+        DataNodeGuard.Permit permit = acquireSlot(node, snowflakeFileName, deadline);
+        if (permit == null) {
             return false;
         }
+
+        UploadOutcome outcome = UploadOutcome.FAILED;
+        try {
+            outcome = uploadSnowflakeToDataNode(node, snowflakeData, snowflakeFileName);
+            return outcome == UploadOutcome.WRITTEN;
+        } finally {
+            settleOutcome(node, permit, outcome, snowflakeData.length);
+        }
+    }
+
+    // Feeds an upload outcome to the node's breaker / concurrency limit and to the membership
+    private void settleOutcome(DataNodeInfo node, DataNodeGuard.Permit permit, UploadOutcome outcome, long bytes) {
+        switch (outcome) {
+            case WRITTEN -> permit.succeeded(bytes);
+            case EXISTS -> permit.cancelled(); // Name conflict, not a node problem
+            case FULL -> {
+                permit.cancelled();
+                dataNodeService.markFull(node.getHost()); // Still readable, just no new replicas
+            }
+            case FAILED -> {
+                permit.failed();
+                // Stop placing replicas on this node until its quarantine expires
+                dataNodeService.markFailed(node.getHost());
+            }
+        }
+    }
+
+    // Null if the breaker is open or no slot freed up before the deadline (busy, not broken: no quarantine)
+    private DataNodeGuard.Permit acquireSlot(DataNodeInfo node, String snowflakeFileName, long deadline) {
+        try {
+            DataNodeGuard.Permit permit = dataNodeGuard.acquire(node.getHost(), DataNodeGuard.Kind.WRITE, deadline);
+            if (permit == null) {
+                log.warning("No upload slot on " + node.getNodeName() + " (circuit open or at concurrency limit) for "
+                        + snowflakeFileName);
+            }
+            return permit;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
     /**
-     * Create and distribute replicas across selected datanodes
+     * Streaming relay: reads the snowflake body once and tees it to every selected DataNode
+     * as it arrives. Each DataNode connection has its own writer with a bounded queue of
+     * relay buffers, so memory per relay is (nodes x relay-queue-depth x relay-buffer-kb)
+     * whatever the chunk size. A slow DataNode applies backpressure to the incoming stream;
+     * a failed one is dropped and the remaining replicas continue.
      *
      * @param selectedNodes List of datanodes to receive replicas
-     * @param snowflakeData Encrypted snowflake binary data
+     * @param in Incoming snowflake bytes
+     * @param contentLength Exact snowflake size (DataNode uploads use fixed-length streaming)
      * @param snowflakeFileName Unique filename for the snowflake
-     * @return List of successful datanode IDs
+     * @return Acknowledged datanode IDs (in selection order) and pending writes
      */
-    public List<String> distributeReplicas(List<DataNodeInfo> selectedNodes, byte[] snowflakeData, String snowflakeFileName) {
-        List<String> successfulNodes = new ArrayList<>();
+    public ReplicaWrite relayReplicas(List<DataNodeInfo> selectedNodes, InputStream in, long contentLength,
+                                      String snowflakeFileName) throws IOException {
+        return relayReplicas(selectedNodes, in, contentLength, snowflakeFileName, config.getWriteQuorum());
+    }
+
+    /**
+     * relayReplicas with an explicit write quorum (0 = wait for every replica)
+     */
+    public ReplicaWrite relayReplicas(List<DataNodeInfo> selectedNodes, InputStream in, long contentLength,
+                                      String snowflakeFileName, int writeQuorum) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getReplicaUploadDeadlineMs());
+        int bufferSize = Math.max(4, config.getRelayBufferKB()) * 1024;
+
+        // Open one writer per DataNode that has a free upload slot. The body can only be read
+        // once, so fallback nodes replace only those without a slot, before relaying starts.
+        ChunkPlacement placement = new ChunkPlacement(selectedNodes);
+        List<ReplicaSink> sinks = new ArrayList<>();
+        List<ReplicaSlot> writing = new ArrayList<>();
+        for (ReplicaSlot slot : placement.slots) {
+            DataNodeGuard.Permit permit = acquireSlot(slot.node, snowflakeFileName, deadline);
+            int fallbacksLeft = config.getReplicaFallbackAttempts();
+            while (permit == null) {
+                dataNodeService.settlePlacement(slot.node.getHost(), contentLength, false);
+                DataNodeInfo replacement = fallbacksLeft-- > 0 && System.nanoTime() < deadline
+                        ? placement.replace(slot, contentLength) : null;
+                if (replacement == null) break;
+                log.info(String.format("[REPLICA-FALLBACK] %s: no slot, relaying to %s instead",
+                        snowflakeFileName, replacement.getNodeName()));
+                permit = acquireSlot(replacement, snowflakeFileName, deadline);
+            }
+            if (permit == null) continue;
+
+            DataNodeInfo node = slot.node;
+            ReplicaSink sink = new ReplicaSink(node, permit, snowflakeFileName, contentLength);
+            sink.result = CompletableFuture.supplyAsync(sink::write, fanOutPool);
+            settleWhenDone(node, sink.result, contentLength);
+            slot.write = sink.result;
+            sinks.add(sink);
+            writing.add(slot);
+        }
+
+        // Tee the incoming stream into every live writer
+        long relayed = 0;
+        boolean aborted = sinks.isEmpty();
+        try {
+            while (!aborted) {
+                byte[] buffer = new byte[bufferSize];
+                int read = in.readNBytes(buffer, 0, buffer.length);
+                if (read <= 0) break;
+                relayed += read;
+
+                boolean anyAlive = false;
+                for (ReplicaSink sink : sinks) {
+                    anyAlive |= sink.offer(new RelaySegment(buffer, read), deadline);
+                }
+                aborted = !anyAlive;
+            }
+            if (!aborted && relayed != contentLength) {
+                log.warning(String.format("Relay of %s ended after %d of %d bytes", snowflakeFileName, relayed, contentLength));
+                aborted = true;
+            }
+        } finally {
+            for (ReplicaSink sink : sinks) {
+                sink.finish(aborted ? RelaySegment.ABORT : RelaySegment.END, deadline);
+            }
+        }
 
-        for (DataNodeInfo node : selectedNodes) {
-            boolean success = uploadSnowflakeToDataNode(node, snowflakeData, snowflakeFileName);
-            if (success) {
-                successfulNodes.add(node.getHost());
+        ReplicaWrite write = awaitQuorum(writing, writeQuorum, deadline);
+        write.fallbacks = placement.getFallbacks();
+        for (ReplicaSink sink : sinks) {
+            if (sink.result.isDone() && sink.outcome == UploadOutcome.EXISTS) {
+                write.existing.add(sink.node.getHost());
             }
         }
 
-        log.info("Successfully distributed " + successfulNodes.size() + " out of " + selectedNodes.size() + " replicas");
-        return successfulNodes;
+        log.info(String.format("Relayed %s (%d bytes): %d acknowledged, %d pending out of %d datanodes",
+                snowflakeFileName, relayed, write.getAcked().size(), write.getPendingHosts().size(), selectedNodes.size()));
+        return write;
+    }
+
+    /**
+     * Outcome of a replica fan-out: datanodes that acknowledged the write, and writes that
+     * were still running when the quorum was reached
+     */
+    public static class ReplicaWrite {
+        private final List<String> acked = new ArrayList<>();
+        private final Map<String, ReplicaSlot> pending = new LinkedHashMap<>();
+        private final List<String> existing = new ArrayList<>();
+        private int fallbacks;
+
+        public List<String> getAcked() {
+            return acked;
+        }
+
+        public List<String> getPendingHosts() {
+            return new ArrayList<>(pending.keySet());
+        }
+
+        // Replica writes moved to a fallback node
+        public int getFallbacks() {
+            return fallbacks;
+        }
+
+        // Datanodes that already stored a snowflake with this name (409, left as it was; relay only)
+        public List<String> getExisting() {
+            return existing;
+        }
+    }
+
+    /**
+     * One replica of a chunk: the node it is written to (changes on fallback) and the write
+     */
+    private static final class ReplicaSlot {
+        private volatile DataNodeInfo node;
+        private CompletableFuture<Boolean> write;
+
+        ReplicaSlot(DataNodeInfo node) {
+            this.node = node;
+        }
     }
-}
 
+    /**
+     * Replica slots of one chunk and every node tried for it, so fallbacks never pick a
+     * node that already holds or failed this chunk
+     */
+    private final class ChunkPlacement {
+        private final List<ReplicaSlot> slots = new ArrayList<>();
+        private final Set<String> triedHosts = new HashSet<>();
+        private int fallbacks;
+
+        ChunkPlacement(List<DataNodeInfo> selectedNodes) {
+            for (DataNodeInfo node : selectedNodes) {
+                slots.add(new ReplicaSlot(node));
+                triedHosts.add(node.getHost());
+            }
+        }
+
+        // Moves the slot to a fallback node (bytes reserved) or returns null if none is left
+        synchronized DataNodeInfo replace(ReplicaSlot slot, long bytes) {
+            List<DataNodeInfo> kept = new ArrayList<>();
+            for (ReplicaSlot other : slots) {
+                if (other != slot) kept.add(other.node);
+            }
+            DataNodeInfo replacement = dataNodeService.placeFallbackReplica(triedHosts, kept, bytes);
+            if (replacement != null) {
+                triedHosts.add(replacement.getHost());
+                slot.node = replacement;
+                fallbacks++;
+            }
+            return replacement;
+        }
+
+        synchronized int getFallbacks() {
+            return fallbacks;
+        }
+    }
+
+    private static final class RelaySegment {
+        static final RelaySegment END = new RelaySegment(new byte[0], 0);
+        static final RelaySegment ABORT = new RelaySegment(new byte[0], 0);
+
+        private final byte[] data;  // shared read-only between all writers
+        private final int length;
+
+        RelaySegment(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Writes one replica: a hand-framed multipart request to the DataNode's /datanode/upload,
+     * fed from a bounded queue by the relay loop.
+     */
+    private final class ReplicaSink {
+        private final DataNodeInfo node;
+        private final DataNodeGuard.Permit permit;
+        private final String snowflakeFileName;
+        private final long contentLength;
+        private final BlockingQueue<RelaySegment> queue;
+        private volatile boolean failed;
+        private volatile UploadOutcome outcome;
+        private CompletableFuture<Boolean> result;
+
+        ReplicaSink(DataNodeInfo node, DataNodeGuard.Permit permit, String snowflakeFileName, long contentLength) {
+            this.node = node;
+            this.permit = permit;
+            this.snowflakeFileName = snowflakeFileName;
+            this.contentLength = contentLength;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getRelayQueueDepth()));
+        }
+
+        // Blocks while the queue is full; false once this replica has failed or the deadline passed
+        boolean offer(RelaySegment segment, long deadline) {
+            try {
+                while (!failed) {
+                    if (queue.offer(segment, 100, TimeUnit.MILLISECONDS)) return true;
+                    if (System.nanoTime() > deadline) {
+                        log.warning("Relay to " + node.getNodeName() + " stalled past the deadline");
+                        failed = true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+            }
+            return false;
+        }
+
+        void finish(RelaySegment marker, long deadline) {
+            if (!offer(marker, deadline)) {
+                queue.clear();
+                queue.offer(RelaySegment.ABORT);
+            }
+        }
+
+        boolean write() {
+            String boundary = "frostbyte-" + UUID.randomUUID();
+            byte[] preamble = ("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"snowflake\"; filename=\"" + snowflakeFileName + "\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            byte[] epilogue = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+            HttpURLConnection conn = null;
+            boolean aborted = false;
+            outcome = UploadOutcome.FAILED;
+            try {
+                conn = (HttpURLConnection) URI.create("http://" + node.getHost() + "/datanode/upload").toURL().openConnection();
+                conn.setRequestMethod("POST");
+                conn.setDoOutput(true);
+                conn.setConnectTimeout((int) config.getDatanodeConnectTimeoutMs());
+                conn.setReadTimeout((int) config.getDatanodeReadTimeoutMs());
+                conn.setFixedLengthStreamingMode(preamble.length + contentLength + epilogue.length);
+                conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+                conn.setRequestProperty("X-API-Key", config.getMasterAPIKey());
+
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(preamble);
+                    while (true) {
+                        RelaySegment segment = queue.take();
+                        if (segment == RelaySegment.ABORT) {
+                            // Client stream was cut short: drop the connection, the DataNode is not at fault
+                            failed = true;
+                            aborted = true;
+                            conn.disconnect();
+                            return false;
+                        }
+                        if (segment == RelaySegment.END) break;
+                        out.write(segment.data, 0, segment.length);
+                    }
+                    out.write(epilogue);
+                }
+
+                int status = conn.getResponseCode();
+                outcome = UploadOutcome.of(status);
+                if (outcome == UploadOutcome.WRITTEN) {
+                    log.info("Successfully relayed snowflake " + snowflakeFileName + " to " + node.getNodeName());
+                    return true;
+                }
+                log.warning(String.format("Failed to relay snowflake to %s: HTTP %d (%s)", node.getNodeName(), status, outcome));
+                failed = true;
+                return false;
+
+            } catch (Exception e) {
+                failed = true;
+                queue.clear(); // unblock the relay loop
+                if (e instanceof InterruptedException) {
+                    aborted = true; // Shutting down
+                } else if (!aborted) {
+                    log.severe("Error relaying snowflake to " + node.getNodeName() + ": " + e.getMessage());
+                }
+                if (conn != null) conn.disconnect();
+                return false;
+            } finally {
+                if (aborted) {
+                    permit.cancelled(); // Not the DataNode's fault
+                } else {
+                    settleOutcome(node, permit, outcome, contentLength);
+                }
+            }
+        }
+    }
+}
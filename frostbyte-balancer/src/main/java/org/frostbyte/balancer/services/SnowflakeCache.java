@@ -0,0 +1,223 @@
+package org.frostbyte.balancer.services;
+
+import org.frostbyte.balancer.models.configModel;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/*
+ * SnowflakeCache
+ * Read cache of CRC-validated snowflakes keyed by snowflake name. A stored snowflake never
+ * changes, but its name (fileId_chunkNumber) can be reused: the chunks of an aborted append
+ * are deleted and the next append writes the same names again. /balancer/snowflakes/delete
+ * invalidates them here, on the balancer that received it only; other balancers' caches are
+ * not told and can serve the deleted snowflake until it is evicted or the cache is cleared.
+ *
+ * Data is held in direct ByteBuffers, outside the Java heap, and the total is capped at
+ * snowflake-cache-max-bytes (direct memory is counted against -XX:MaxDirectMemorySize).
+ *
+ * Admission is 2Q so a bulk sequential download cannot flush hot entries:
+ * - a snowflake seen for the first time goes to a small FIFO probation area (25% of budget)
+ * - evicted from probation, only its name is remembered in a ghost list
+ * - a miss on a name in the ghost list means it is re-referenced: it goes to the main LRU area
+ * A one-pass scan only ever churns probation. Snowflakes larger than probation (full-size
+ * chunks) skip it: the first reference only records the name as a ghost, the second one
+ * admits the snowflake to main. Entries are capped at snowflake-cache-max-entry-bytes
+ * (default: the whole budget).
+ */
+@Service
+public class SnowflakeCache {
+
+    private static final Logger log = Logger.getLogger(SnowflakeCache.class.getName());
+
+    private final long maxBytes;
+    private final long probationMaxBytes;
+    private final long maxEntryBytes;
+    private final int ghostMaxEntries;
+
+    // Guarded by this
+    private final LinkedHashMap<String, ByteBuffer> probation = new LinkedHashMap<>();             // FIFO
+    private final LinkedHashMap<String, ByteBuffer> main = new LinkedHashMap<>(16, 0.75f, true);   // LRU
+    private final LinkedHashMap<String, Boolean> ghosts = new LinkedHashMap<>();                   // FIFO
+    private long probationBytes;
+    private long mainBytes;
+
+    private long hits;
+    private long misses;
+    private long admissions;
+    private long promotions;
+    private long evictions;
+    private long rejected;
+
+    public SnowflakeCache(configModel config) {
+        this.maxBytes = Math.max(0, config.getSnowflakeCacheMaxBytes());
+        this.probationMaxBytes = maxBytes / 4;
+        this.maxEntryBytes = config.getSnowflakeCacheMaxEntryBytes() > 0
+                ? Math.min(config.getSnowflakeCacheMaxEntryBytes(), maxBytes)
+                : maxBytes;
+        // Remember about as many evicted names as the cache holds 1 MB entries (at least 256)
+        this.ghostMaxEntries = (int) Math.max(256, Math.min(Integer.MAX_VALUE, maxBytes / (1024 * 1024)));
+
+        log.info(String.format("[SNOWFLAKE-CACHE] maxBytes=%d probationBytes=%d maxEntryBytes=%d ghosts=%d",
+                maxBytes, probationMaxBytes, maxEntryBytes, ghostMaxEntries));
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Whether put would store a snowflake of this size now (lets streamed downloads skip
+     * collecting snowflakes the cache would reject or only remember as a ghost)
+     */
+    public synchronized boolean admits(String snowflakeName, long snowflakeBytes) {
+        if (!isEnabled() || snowflakeBytes > maxEntryBytes) return false;
+        return snowflakeBytes <= probationMaxBytes || ghosts.containsKey(snowflakeName);
+    }
+
+    /**
+     * @return a heap copy of the cached snowflake, or null on a miss
+     */
+    public synchronized byte[] get(String snowflakeName) {
+        if (!isEnabled()) return null;
+
+        ByteBuffer buffer = main.get(snowflakeName); // Refreshes LRU position
+        if (buffer == null) {
+            buffer = probation.get(snowflakeName);   // FIFO: a hit does not move it
+        }
+        if (buffer == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Offers a validated snowflake to the cache (after a miss was served from a DataNode)
+     */
+    public synchronized void put(String snowflakeName, byte[] snowflakeBytes) {
+        if (!isEnabled()) return;
+        if (snowflakeBytes.length > maxEntryBytes) {
+            rejected++;
+            return;
+        }
+        if (main.containsKey(snowflakeName) || probation.containsKey(snowflakeName)) {
+            return;
+        }
+
+        if (ghosts.remove(snowflakeName) != null) {
+            // Second reference within the ghost window: hot, goes to the main area
+            ByteBuffer buffer = copyOf(snowflakeBytes);
+            main.put(snowflakeName, buffer);
+            mainBytes += snowflakeBytes.length;
+            promotions++;
+            evictMain();
+        } else if (snowflakeBytes.length > probationMaxBytes) {
+            rememberGhost(snowflakeName); // Would only flush probation, admitted on its next reference
+        } else {
+            probation.put(snowflakeName, copyOf(snowflakeBytes));
+            probationBytes += snowflakeBytes.length;
+            admissions++;
+            evictProbation();
+            evictMain();
+        }
+    }
+
+    /**
+     * Records a reference to a snowflake that was served without being collected for put
+     * (see admits): one too large for probation is remembered as a ghost, so it is
+     * collected and admitted the next time it is fetched
+     */
+    public synchronized void reference(String snowflakeName, long snowflakeBytes) {
+        if (!isEnabled() || snowflakeBytes > maxEntryBytes || snowflakeBytes <= probationMaxBytes) return;
+        if (!main.containsKey(snowflakeName)) rememberGhost(snowflakeName);
+    }
+
+    /**
+     * Drops one snowflake from this balancer's cache (its name is about to be reused)
+     */
+    public synchronized void invalidate(String snowflakeName) {
+        ByteBuffer buffer = probation.remove(snowflakeName);
+        if (buffer != null) probationBytes -= buffer.capacity();
+        buffer = main.remove(snowflakeName);
+        if (buffer != null) mainBytes -= buffer.capacity();
+        ghosts.remove(snowflakeName);
+    }
+
+    public synchronized void clear() {
+        probation.clear();
+        main.clear();
+        ghosts.clear();
+        probationBytes = 0;
+        mainBytes = 0;
+        log.info("[SNOWFLAKE-CACHE-CLEARED]");
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long lookups = hits + misses;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("maxBytes", maxBytes);
+        stats.put("usedBytes", probationBytes + mainBytes);
+        stats.put("probationEntries", probation.size());
+        stats.put("probationBytes", probationBytes);
+        stats.put("mainEntries", main.size());
+        stats.put("mainBytes", mainBytes);
+        stats.put("ghostEntries", ghosts.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups);
+        stats.put("admissions", admissions);
+        stats.put("promotions", promotions);
+        stats.put("evictions", evictions);
+        stats.put("rejectedTooLarge", rejected);
+        return stats;
+    }
+
+    // Caller holds the lock
+    private void evictProbation() {
+        Iterator<Map.Entry<String, ByteBuffer>> it = probation.entrySet().iterator();
+        while (probationBytes > probationMaxBytes && it.hasNext()) {
+            Map.Entry<String, ByteBuffer> eldest = it.next();
+            probationBytes -= eldest.getValue().capacity();
+            it.remove();
+            evictions++;
+
+            rememberGhost(eldest.getKey());
+        }
+    }
+
+    // Caller holds the lock
+    private void rememberGhost(String snowflakeName) {
+        ghosts.put(snowflakeName, Boolean.TRUE);
+        if (ghosts.size() > ghostMaxEntries) {
+            Iterator<String> ghost = ghosts.keySet().iterator();
+            ghost.next();
+            ghost.remove();
+        }
+    }
+
+    private static ByteBuffer copyOf(byte[] snowflakeBytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(snowflakeBytes.length);
+        buffer.put(snowflakeBytes).flip();
+        return buffer;
+    }
+
+    // Caller holds the lock; main may use whatever probation leaves free
+    private void evictMain() {
+        Iterator<Map.Entry<String, ByteBuffer>> it = main.entrySet().iterator();
+        while (probationBytes + mainBytes > maxBytes && it.hasNext()) {
+            mainBytes -= it.next().getValue().capacity();
+            it.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package org.frostbyte.balancer.services;
+
+import jakarta.annotation.PreDestroy;
+import org.frostbyte.balancer.models.DataNodeInfo;
+import org.frostbyte.balancer.models.configModel;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/*
+ * StagingSpool
+ * Optional local spool that absorbs ingest bursts (staging-enabled). An upload is written to
+ * staging-dir (ideally a local SSD), fsynced and acknowledged at once; with staging-ack-replica
+ * one DataNode replica is written before the ack as well. Background destage workers then
+ * write the remaining replicas with the normal placement, register them and delete the file.
+ *
+ * - Bandwidth: destage writes share staging-destage-bytes-per-sec (bytes x replicas), so a
+ *   burst drains at a steady rate instead of competing with live traffic
+ * - Capacity: the spool holds at most staging-max-bytes; beyond it uploads take the direct path
+ * - Failures: a destage that could not write every placed replica (or register them) is
+ *   retried after staging-retry-ms, skipping replicas already written
+ * - Crash recovery: files are written as *.tmp and moved into place once fsynced; on startup
+ *   leftover *.tmp files are dropped and every *.staged file is queued again
+ * - Rewrites: DataNodes refuse a name they already store (409). Hosts written for a chunk are
+ *   appended to a *.hosts sidecar before they count as written, so a retry or a destage after
+ *   a restart skips them. A 409 from any other host (written before its registration, or by
+ *   a pending write that finished late) is read back and accepted only if length and CRC32
+ *   match the staged snowflake; a host holding a different file is left out of the chunk.
+ *
+ * Reads: while a chunk is staged, this balancer is registered as a PENDING replica of it under
+ * STAGED_REPLICA_PREFIX + its own address (marked UNAVAILABLE once destaged). Downloads on this
+ * balancer read the spool directly; other balancers find the entry in the replica list and
+ * fetch the snowflake from /balancer/staged/download when the DataNodes cannot serve it.
+ *
+ * Spool file: <snowflakeName>.<sequence>.staged = [chunkId (modified UTF-8)][long crc32][snowflake bytes]
+ * Sidecar: <spool file>.hosts = DataNodes holding a registered replica, one per line
+ */
+@Service
+public class StagingSpool {
+
+    // Replica datanodeId prefix of a balancer holding a staged chunk
+    public static final String STAGED_REPLICA_PREFIX = "staging:";
+
+    private static final String STAGED_SUFFIX = ".staged";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String HOSTS_SUFFIX = ".hosts";
+    private static final Pattern SAFE_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private final configModel config;
+    private final DataNodeService dataNodeService;
+    private final ReplicaService replicaService;
+    private final ReplicaRegistrationQueue registrationQueue;
+    private static final Logger log = Logger.getLogger(StagingSpool.class.getName());
+
+    private final Path dir;
+    private final DelayQueue<StagedChunk> destageQueue = new DelayQueue<>();
+    // Newest staged copy per snowflake name; older copies are dropped instead of destaged
+    private final Map<String, StagedChunk> latest = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    private final AtomicLong staged = new AtomicLong();
+    private final AtomicLong destaged = new AtomicLong();
+    private final AtomicLong destageRetries = new AtomicLong();
+    private final AtomicLong rejectedFull = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    // Pacing of destage writes, guarded by this
+    private long nextDestageNanos;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public StagingSpool(configModel config, DataNodeService dataNodeService, ReplicaService replicaService,
+                        ReplicaRegistrationQueue registrationQueue) throws IOException {
+        this.config = config;
+        this.dataNodeService = dataNodeService;
+        this.replicaService = replicaService;
+        this.registrationQueue = registrationQueue;
+
+        if (!config.isStagingEnabled()) {
+            this.dir = null;
+            return;
+        }
+
+        this.dir = Paths.get(config.getStagingDir());
+        Files.createDirectories(dir);
+        int recovered = recover();
+
+        for (int i = 1; i <= Math.max(1, config.getStagingDestageConcurrency()); i++) {
+            Thread worker = new Thread(this::runDestager, "staging-destager-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        log.info(String.format("[STAGING-SPOOL] dir=%s recovered=%d (%d bytes)", dir, recovered, usedBytes.get()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    /**
+     * Writes an upload to the spool, fsyncs it and registers this balancer as a pending replica;
+     * with staging-ack-replica one replica is written to a DataNode before returning
+     *
+     * @param chunkId UUID of the chunk
+     * @param snowflakeFileName Unique filename for the snowflake
+     * @param in Snowflake bytes
+     * @param length Exact snowflake size
+     * @return the staged chunk, or null (nothing read from in) if the spool is disabled, full,
+     *         or the name cannot be used as a spool file name
+     * @throws IOException if the spool write or the registration failed (in may be partly consumed)
+     */
+    public StagedChunk stage(String chunkId, String snowflakeFileName, InputStream in, long length)
+            throws IOException {
+        if (!isEnabled()) return null;
+
+        if (!SAFE_NAME.matcher(snowflakeFileName).matches()) {
+            log.warning("[STAGING-SKIPPED] unsupported snowflake name: " + snowflakeFileName);
+            return null;
+        }
+        if (!reserve(length)) {
+            rejectedFull.incrementAndGet();
+            log.warning(String.format("[STAGING-FULL] %s (%d bytes) spool at %d/%d bytes",
+                    snowflakeFileName, length, usedBytes.get(), config.getStagingMaxBytes()));
+            return null;
+        }
+
+        Path file = dir.resolve(snowflakeFileName + "." + sequence.incrementAndGet() + STAGED_SUFFIX);
+        long crc32;
+        try {
+            crc32 = writeDurably(file, chunkId, in, length);
+        } catch (IOException e) {
+            usedBytes.addAndGet(-length);
+            throw e;
+        }
+
+        StagedChunk chunk = new StagedChunk(chunkId, snowflakeFileName, file, length, crc32);
+        // Other balancers find the chunk here until its replicas are registered
+        if (!registrationQueue.enqueue(chunkId, List.of(stagedReplicaId()), "PENDING")) {
+            release(chunk);
+            throw new IOException("Staged chunk " + chunkId + " could not be queued for registration");
+        }
+        latest.put(snowflakeFileName, chunk);
+        staged.incrementAndGet();
+        log.info(String.format("[STAGED] chunkId=%s snowflake=%s bytes=%d", chunkId, snowflakeFileName, length));
+
+        if (config.isStagingAckReplica()) {
+            try {
+                writeReplicas(chunk, 1);
+            } catch (IOException e) {
+                log.warning("[STAGING-ACK-REPLICA-FAILED] " + snowflakeFileName + ": " + e.getMessage());
+            }
+        }
+
+        destageQueue.add(chunk);
+        return chunk;
+    }
+
+    /**
+     * Snowflake bytes of a chunk still waiting in the spool, or null
+     */
+    public byte[] readStaged(String snowflakeFileName) {
+        try (InputStream in = openStaged(snowflakeFileName)) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stream over the snowflake of a chunk still waiting in the spool, or null
+     * (the open file stays readable if the chunk is destaged meanwhile)
+     */
+    public InputStream openStaged(String snowflakeFileName) {
+        if (!isEnabled()) return null;
+        StagedChunk chunk = latest.get(snowflakeFileName);
+        if (chunk == null) return null;
+        try {
+            return openData(chunk.file);
+        } catch (IOException e) {
+            return null; // Destaged meanwhile
+        }
+    }
+
+    /**
+     * Drops a snowflake waiting in the spool so it is never destaged; the destager removes its
+     * file and staging replica as for a superseded copy
+     *
+     * @return true if the snowflake was staged here
+     */
+    public boolean discard(String snowflakeFileName) {
+        if (!isEnabled() || latest.remove(snowflakeFileName) == null) return false;
+        log.info("[STAGING-DISCARDED] " + snowflakeFileName);
+        return true;
+    }
+
+    /**
+     * Replica datanodeId under which this balancer registers the chunks it holds staged
+     */
+    public String stagedReplicaId() {
+        return STAGED_REPLICA_PREFIX + config.getHost() + ":" + config.getPort();
+    }
+
+    /**
+     * Spool usage and destage counters (health endpoint)
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        if (!isEnabled()) return stats;
+        stats.put("stagedChunks", latest.size());
+        stats.put("stagedBytes", usedBytes.get());
+        stats.put("maxBytes", config.getStagingMaxBytes());
+        stats.put("staged", staged.get());
+        stats.put("destaged", destaged.get());
+        stats.put("destageRetries", destageRetries.get());
+        stats.put("rejectedFull", rejectedFull.get());
+        stats.put("conflicts", conflicts.get());
+        return stats;
+    }
+
+    private boolean reserve(long bytes) {
+        long max = config.getStagingMaxBytes();
+        while (true) {
+            long used = usedBytes.get();
+            if (used + bytes > max) return false;
+            if (usedBytes.compareAndSet(used, used + bytes)) return true;
+        }
+    }
+
+    /*
+     * tmp file, fsync, atomic rename, fsync of the directory: a crash leaves either no file or a complete one
+     * @return CRC32 of the snowflake
+     */
+    private long writeDurably(Path file, String chunkId, InputStream in, long length) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), COPY_BUFFER_BYTES);
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeUTF(chunkId);
+            int crcOffset = data.size();
+            data.writeLong(0); // Filled in once the snowflake is written
+
+            byte[] buffer = new byte[COPY_BUFFER_BYTES];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Snowflake body ended " + remaining + " bytes short");
+                }
+                crc.update(buffer, 0, read);
+                data.write(buffer, 0, read);
+                remaining -= read;
+            }
+            data.flush();
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, crc.getValue()), crcOffset);
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        return crc.getValue();
+    }
+
+    private void syncDirectory() {
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException e) {
+            log.fine("Directory fsync not supported: " + e.getMessage()); // e.g. on Windows
+        }
+    }
+
+    // Header, snowflake size and written hosts of a spool file
+    private static StagedChunk readHeader(Path file, String snowflakeFileName) throws IOException {
+        StagedChunk chunk;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            String chunkId = in.readUTF();
+            long crc32 = in.readLong();
+            chunk = new StagedChunk(chunkId, snowflakeFileName, file, channel.size() - channel.position(), crc32);
+        }
+        Path hosts = hostsFile(file);
+        if (Files.exists(hosts)) {
+            for (String host : Files.readAllLines(hosts, StandardCharsets.UTF_8)) {
+                if (!host.isBlank()) chunk.writtenHosts.add(host.trim());
+            }
+        }
+        return chunk;
+    }
+
+    // Stream positioned at the snowflake bytes of a spool file
+    private static InputStream openData(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), COPY_BUFFER_BYTES));
+        try {
+            in.readUTF();
+            in.readLong();
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static Path hostsFile(Path file) {
+        return file.resolveSibling(file.getFileName() + HOSTS_SUFFIX);
+    }
+
+    /*
+     * Appends hosts to the chunk's sidecar and fsyncs it. A host lost here (crash, I/O error)
+     * is only written again after a restart, and then accepted through its 409 read-back.
+     */
+    private void persistHosts(StagedChunk chunk, List<String> hosts) {
+        if (hosts.isEmpty()) return;
+        Path sidecar = hostsFile(chunk.file);
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            byte[] lines = (String.join("\n", hosts) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(lines);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            log.warning("[STAGING-HOSTS-WRITE-FAILED] " + sidecar + ": " + e.getMessage());
+        }
+    }
+
+    // Queues the spool left by the previous run, oldest first
+    private int recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<Path> sidecars = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path file : entries) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    Files.deleteIfExists(file); // Never acknowledged
+                } else if (name.endsWith(STAGED_SUFFIX)) {
+                    files.add(file);
+                } else if (name.endsWith(HOSTS_SUFFIX)) {
+                    sidecars.add(file);
+                }
+            }
+        }
+        for (Path sidecar : sidecars) {
+            String name = sidecar.getFileName().toString();
+            if (!Files.exists(sidecar.resolveSibling(name.substring(0, name.length() - HOSTS_SUFFIX.length())))) {
+                Files.deleteIfExists(sidecar); // Spool file was released before the crash
+            }
+        }
+        files.sort(Comparator.comparingLong(StagingSpool::lastModified));
+
+        int recovered = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String base = name.substring(0, name.length() - STAGED_SUFFIX.length());
+            int separator = base.lastIndexOf('.');
+            if (separator <= 0) continue;
+            try {
+                StagedChunk chunk = readHeader(file, base.substring(0, separator));
+                usedBytes.addAndGet(chunk.length);
+                latest.put(chunk.snowflakeFileName, chunk);
+                destageQueue.add(chunk);
+                recovered++;
+            } catch (IOException e) {
+                log.severe("[STAGING-RECOVERY-ERROR] " + file + ": " + e.getMessage());
+            }
+        }
+        return recovered;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void runDestager() {
+        while (running) {
+            StagedChunk chunk;
+            try {
+                chunk = destageQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            boolean done;
+            try {
+                done = destage(chunk);
+            } catch (InterruptedException e) {
+                destageQueue.add(chunk); // Still on disk, picked up again after a restart
+                return;
+            } catch (RuntimeException e) {
+                log.severe("[DESTAGE-ERROR] " + chunk.snowflakeFileName + ": " + e.getMessage());
+                done = false;
+            }
+
+            if (!done) {
+                destageRetries.incrementAndGet();
+                chunk.retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getStagingRetryMs());
+                destageQueue.add(chunk);
+            }
+        }
+    }
+
+    // @return true once the chunk left the spool, false to retry later
+    private boolean destage(StagedChunk chunk) throws InterruptedException {
+        StagedChunk current = latest.get(chunk.snowflakeFileName);
+        if (current != chunk) {
+            log.info("[DESTAGE-SUPERSEDED] " + chunk.file.getFileName());
+            // The newer copy keeps the staging replica of its own chunk
+            if (current == null || !current.chunkId.equals(chunk.chunkId)) unregisterStaged(chunk);
+            release(chunk);
+            return true;
+        }
+
+        int missing = config.getReplicaCount() - chunk.writtenHosts.size();
+        if (missing > 0) {
+            throttle(chunk.length * missing);
+            int written;
+            try {
+                written = writeReplicas(chunk, missing);
+            } catch (IOException e) {
+                log.severe("[DESTAGE-LOST] " + chunk.file + " unreadable: " + e.getMessage());
+                latest.remove(chunk.snowflakeFileName, chunk);
+                unregisterStaged(chunk);
+                release(chunk);
+                return true;
+            }
+            if (written < 0 || written < chunk.lastPlaced || chunk.writtenHosts.isEmpty()) {
+                return false; // Retry the replicas that failed
+            }
+            if (chunk.writtenHosts.size() < config.getReplicaCount()) {
+                // Every placed replica was written, the cluster has no capacity for more
+                log.warning(String.format("Destaged %s with reduced replication: %d/%d replicas",
+                        chunk.snowflakeFileName, chunk.writtenHosts.size(), config.getReplicaCount()));
+            }
+        }
+
+        // Queued after the replicas, so readers always find one of them
+        if (!unregisterStaged(chunk)) return false;
+        latest.remove(chunk.snowflakeFileName, chunk);
+        release(chunk);
+        destaged.incrementAndGet();
+        log.info(String.format("[DESTAGED] chunkId=%s snowflake=%s replicas=%s",
+                chunk.chunkId, chunk.snowflakeFileName, chunk.writtenHosts));
+        return true;
+    }
+
+    /*
+     * Places and writes count more replicas of the chunk (waiting for all of them), streamed
+     * from the spool file, skipping DataNodes that already hold one, and queues their registration.
+     * Hosts written and registered are recorded in the sidecar and added to chunk.writtenHosts.
+     * @return replicas written, or -1 if none could be placed or the registration failed
+     * @throws IOException if the spool file could not be read
+     */
+    private int writeReplicas(StagedChunk chunk, int count) throws IOException {
+        List<DataNodeInfo> candidates = new ArrayList<>();
+        for (DataNodeInfo node : dataNodeService.getAvailableDataNodes()) {
+            String host = node.getHost();
+            if (!chunk.writtenHosts.contains(host) && !chunk.conflictHosts.contains(host)) candidates.add(node);
+        }
+        List<DataNodeInfo> selected = candidates.isEmpty() ? List.of()
+                : dataNodeService.placeReplicas(candidates, count, chunk.length, chunk.snowflakeFileName);
+        chunk.lastPlaced = selected.size();
+        if (selected.isEmpty()) {
+            log.warning("[DESTAGE-NO-CAPACITY] no datanode available for " + chunk.snowflakeFileName);
+            return -1;
+        }
+
+        ReplicaService.ReplicaWrite write;
+        try (InputStream in = openData(chunk.file)) {
+            write = replicaService.relayReplicas(selected, in, chunk.length, chunk.snowflakeFileName, 0);
+        }
+        List<String> acked = new ArrayList<>(write.getAcked());
+        List<String> pending = write.getPendingHosts();
+        acked.addAll(verifyExisting(chunk, write.getExisting()));
+        if (acked.isEmpty() && pending.isEmpty()) return 0;
+
+        if (!replicaService.registerReplicasInDatabase(chunk.chunkId, acked, pending)) {
+            return -1; // Retried; the hosts written now answer 409 and are accepted by verifyExisting
+        }
+        if (!pending.isEmpty()) {
+            replicaService.completePendingReplicas(chunk.chunkId, write);
+        }
+        List<String> written = new ArrayList<>(acked);
+        written.addAll(pending);
+        persistHosts(chunk, written);
+        chunk.writtenHosts.addAll(written);
+        return written.size();
+    }
+
+    /*
+     * Hosts that refused the write with 409 and whose stored snowflake is this one (an earlier
+     * attempt whose host was not recorded). A host storing a different file under the name is
+     * excluded from the chunk's placement.
+     */
+    private List<String> verifyExisting(StagedChunk chunk, List<String> existing) {
+        List<String> verified = new ArrayList<>();
+        for (String host : existing) {
+            if (replicaService.storedReplicaMatches(host, chunk.snowflakeFileName, chunk.length, chunk.crc32)) {
+                log.info(String.format("[DESTAGE-EXISTING] %s already holds %s", host, chunk.snowflakeFileName));
+                verified.add(host);
+            } else {
+                conflicts.incrementAndGet();
+                chunk.conflictHosts.add(host);
+                log.severe(String.format("[DESTAGE-CONFLICT] %s holds a different snowflake named %s (chunkId=%s), placing elsewhere",
+                        host, chunk.snowflakeFileName, chunk.chunkId));
+            }
+        }
+        return verified;
+    }
+
+    // Retires this balancer's staging replica of the chunk; false if it could not be queued
+    private boolean unregisterStaged(StagedChunk chunk) {
+        boolean queued = registrationQueue.enqueue(chunk.chunkId, List.of(stagedReplicaId()), "UNAVAILABLE");
+        if (!queued) {
+            log.warning("[STAGING-UNREGISTER-FAILED] chunkId=" + chunk.chunkId);
+        }
+        return queued;
+    }
+
+    // Waits until the destage bandwidth allows another bytes to be sent
+    private void throttle(long bytes) throws InterruptedException {
+        long rate = config.getStagingDestageBytesPerSec();
+        if (rate <= 0) return;
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextDestageNanos);
+            nextDestageNanos = start + (long) (bytes * 1_000_000_000.0 / rate);
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void release(StagedChunk chunk) {
+        try {
+            Files.deleteIfExists(chunk.file);
+            Files.deleteIfExists(hostsFile(chunk.file));
+        } catch (IOException e) {
+            log.warning("[STAGING-DELETE-FAILED] " + chunk.file + ": " + e.getMessage());
+        }
+        usedBytes.addAndGet(-chunk.length);
+    }
+
+    /**
+     * One upload held in the spool
+     */
+    public static final class StagedChunk implements Delayed {
+        private final String chunkId;
+        private final String snowflakeFileName;
+        private final Path file;
+        private final long length;
+        private final long crc32;
+        // DataNodes holding a registered replica (the ack replica and earlier destage attempts)
+        private final Set<String> writtenHosts = ConcurrentHashMap.newKeySet();
+        // DataNodes storing a different snowflake under this name
+        private final Set<String> conflictHosts = ConcurrentHashMap.newKeySet();
+        private volatile int lastPlaced;
+        private volatile long retryAtNanos = System.nanoTime();
+
+        private StagedChunk(String chunkId, String snowflakeFileName, Path file, long length, long crc32) {
+            this.chunkId = chunkId;
+            this.snowflakeFileName = snowflakeFileName;
+            this.file = file;
+            this.length = length;
+            this.crc32 = crc32;
+        }
+
+        public String getChunkId() {
+            return chunkId;
+        }
+
+        public List<String> getWrittenHosts() {
+            return new ArrayList<>(writtenHosts);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.frostbyte.balancer.services;
+
+import org.frostbyte.balancer.models.configModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataNodeGuardTest {
+
+    private static final String HOST = "10.0.0.1:8082";
+
+    private static DataNodeGuard newGuard(long openMs) {
+        configModel config = new configModel();
+        config.setBreakerFailureThreshold(3);
+        config.setBreakerOpenMs(openMs);
+        config.setMaxInFlightPerDataNode(2);
+        config.setAdaptiveLimitMin(1);
+        config.setAdaptiveLimitMax(8);
+        return new DataNodeGuard(config);
+    }
+
+    private static long soon() {
+        return System.nanoTime() + 1_000_000_000L;
+    }
+
+    private static DataNodeGuard.Permit acquire(DataNodeGuard guard) throws InterruptedException {
+        return guard.acquire(HOST, DataNodeGuard.Kind.READ, soon());
+    }
+
+    private static Map<String, Object> view(DataNodeGuard guard) {
+        return guard.snapshot().get(HOST);
+    }
+
+    private static void fail(DataNodeGuard guard, int times) throws InterruptedException {
+        for (int i = 0; i < times; i++) {
+            acquire(guard).failed();
+        }
+    }
+
+    @Test
+    void consecutiveFailuresOpenTheBreaker() throws InterruptedException {
+        DataNodeGuard guard = newGuard(60_000);
+
+        fail(guard, 2);
+        assertFalse(guard.isOpen(HOST));
+
+        fail(guard, 1);
+        assertTrue(guard.isOpen(HOST));
+        assertEquals(DataNodeGuard.BreakerState.OPEN, view(guard).get("state"));
+        assertNull(acquire(guard), "an open breaker must refuse requests");
+        assertEquals(1L, view(guard).get("trips"));
+    }
+
+    @Test
+    void successResetsTheFailureCount() throws InterruptedException {
+        DataNodeGuard guard = newGuard(60_000);
+
+        fail(guard, 2);
+        acquire(guard).succeeded(1024);
+        fail(guard, 2);
+
+        assertFalse(guard.isOpen(HOST));
+        assertEquals(2, view(guard).get("consecutiveFailures"));
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThroughAndClosesOnSuccess() throws InterruptedException {
+        DataNodeGuard guard = newGuard(50);
+        fail(guard, 3);
+        Thread.sleep(100);
+
+        assertFalse(guard.isOpen(HOST));
+        assertEquals(DataNodeGuard.BreakerState.HALF_OPEN, view(guard).get("state"));
+
+        DataNodeGuard.Permit probe = acquire(guard);
+        assertNotNull(probe);
+        assertNull(acquire(guard), "only one probe may run while half-open");
+
+        probe.succeeded(1024);
+        assertEquals(DataNodeGuard.BreakerState.CLOSED, view(guard).get("state"));
+        assertNotNull(acquire(guard));
+    }
+
+    @Test
+    void failedProbeReopensTheBreaker() throws InterruptedException {
+        DataNodeGuard guard = newGuard(50);
+        fail(guard, 3);
+        Thread.sleep(100);
+
+        acquire(guard).failed();
+
+        assertTrue(guard.isOpen(HOST));
+        assertEquals(2L, view(guard).get("trips"));
+    }
+
+    @Test
+    void requestsBeyondTheLimitAreShedAtTheDeadline() throws InterruptedException {
+        DataNodeGuard guard = newGuard(60_000);
+
+        DataNodeGuard.Permit first = acquire(guard);
+        DataNodeGuard.Permit second = acquire(guard);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(guard.acquire(HOST, DataNodeGuard.Kind.WRITE, System.nanoTime() + 10_000_000L));
+        assertEquals(1L, view(guard).get("shed"));
+
+        second.cancelled();
+        assertNotNull(acquire(guard));
+    }
+
+    @Test
+    void releasingTwiceCountsOnce() throws InterruptedException {
+        DataNodeGuard guard = newGuard(60_000);
+
+        DataNodeGuard.Permit permit = acquire(guard);
+        permit.failed();
+        permit.failed();
+
+        assertEquals(1, view(guard).get("consecutiveFailures"));
+        assertEquals(0, view(guard).get("inFlight"));
+    }
+
+    @Test
+    void failureShrinksTheConcurrencyLimit() throws InterruptedException {
+        DataNodeGuard guard = newGuard(60_000);
+
+        acquire(guard).failed();
+
+        assertEquals(1.4, (double) view(guard).get("limit"), 0.001);
+    }
+
+    @Test
+    void sizeBucketsGrowByFactorsOfFour() {
+        assertEquals(0, DataNodeGuard.sizeBucket(0));
+        assertEquals(0, DataNodeGuard.sizeBucket(64 * 1024 - 1));
+        assertEquals(1, DataNodeGuard.sizeBucket(64 * 1024));
+        assertEquals(1, DataNodeGuard.sizeBucket(256 * 1024 - 1));
+        assertEquals(2, DataNodeGuard.sizeBucket(256 * 1024));
+        assertEquals(3, DataNodeGuard.sizeBucket(1024 * 1024));
+        assertEquals(4, DataNodeGuard.sizeBucket(4L * 1024 * 1024));
+        assertEquals(6, DataNodeGuard.sizeBucket(64L * 1024 * 1024));
+        assertEquals(7, DataNodeGuard.sizeBucket(256L * 1024 * 1024));
+        assertEquals(7, DataNodeGuard.sizeBucket(8L * 1024 * 1024 * 1024));
+    }
+}
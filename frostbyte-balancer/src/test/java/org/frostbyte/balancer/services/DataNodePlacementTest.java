@@ -0,0 +1,171 @@
+package org.frostbyte.balancer.services;
+
+import org.frostbyte.balancer.models.DataNodeInfo;
+import org.frostbyte.balancer.models.configModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataNodePlacementTest {
+
+    private final DataNodeService service;
+
+    DataNodePlacementTest() {
+        configModel config = new configModel();
+        service = new DataNodeService(config, new DataNodeGuard(config));
+    }
+
+    private static DataNodeInfo node(String name, String host, String zone, String rack, double fill) {
+        DataNodeInfo node = new DataNodeInfo();
+        node.setNodeName(name);
+        node.setHost(host);
+        node.setZone(zone);
+        node.setRack(rack);
+        node.setFillPercent(fill);
+        node.setProjectedFillPercent(fill);
+        return node;
+    }
+
+    private static Set<String> names(List<DataNodeInfo> nodes) {
+        Set<String> names = new HashSet<>();
+        nodes.forEach(n -> names.add(n.getNodeName()));
+        return names;
+    }
+
+    // Six nodes on distinct machines: three racks of two, racks a and b in zone z1, rack c in z2
+    private static List<DataNodeInfo> sixNodes() {
+        List<DataNodeInfo> nodes = new ArrayList<>();
+        nodes.add(node("dn1", "10.0.0.1:8082", "z1", "a", 10));
+        nodes.add(node("dn2", "10.0.0.2:8082", "z1", "a", 11));
+        nodes.add(node("dn3", "10.0.0.3:8082", "z1", "b", 12));
+        nodes.add(node("dn4", "10.0.0.4:8082", "z1", "b", 13));
+        nodes.add(node("dn5", "10.0.0.5:8082", "z2", "c", 14));
+        nodes.add(node("dn6", "10.0.0.6:8082", "z2", "c", 15));
+        return nodes;
+    }
+
+    // ====== Failure-domain aware placement ======
+
+    @Test
+    void replicasSpreadAcrossZonesThenRacks() {
+        List<DataNodeInfo> selected = service.selectDataNodesForReplicas(sixNodes(), 3, 0);
+
+        assertEquals(3, selected.size());
+        // dn1 (least full), then the other zone, then the other rack of z1
+        assertEquals("dn1", selected.get(0).getNodeName());
+        assertEquals("dn5", selected.get(1).getNodeName());
+        assertEquals("dn3", selected.get(2).getNodeName());
+    }
+
+    @Test
+    void nodesOnOneMachineDoNotShareAChunk() {
+        List<DataNodeInfo> nodes = new ArrayList<>();
+        // Same address, different ports: assumed to be one machine
+        nodes.add(node("dn1", "10.0.0.1:8082", "", "", 10));
+        nodes.add(node("dn2", "10.0.0.1:8083", "", "", 11));
+        nodes.add(node("dn3", "10.0.0.2:8082", "", "", 50));
+
+        List<DataNodeInfo> selected = service.selectDataNodesForReplicas(nodes, 2, 0);
+
+        assertEquals(Set.of("dn1", "dn3"), names(selected));
+    }
+
+    @Test
+    void physicalHostLabelOverridesAddress() {
+        List<DataNodeInfo> nodes = new ArrayList<>();
+        nodes.add(node("dn1", "10.0.0.1:8082", "", "", 10));
+        nodes.add(node("dn2", "10.0.0.2:8082", "", "", 11));
+        nodes.add(node("dn3", "10.0.0.3:8082", "", "", 50));
+        nodes.get(0).setPhysicalHost("hv1");
+        nodes.get(1).setPhysicalHost("hv1");
+
+        List<DataNodeInfo> selected = service.selectDataNodesForReplicas(nodes, 2, 0);
+
+        assertEquals(Set.of("dn1", "dn3"), names(selected));
+    }
+
+    @Test
+    void unlabeledNodesArePickedByFill() {
+        List<DataNodeInfo> nodes = new ArrayList<>();
+        nodes.add(node("dn1", "10.0.0.1:8082", "", "", 40));
+        nodes.add(node("dn2", "10.0.0.2:8082", "", "", 10));
+        nodes.add(node("dn3", "10.0.0.3:8082", "", "", 20));
+
+        List<DataNodeInfo> selected = service.selectDataNodesForReplicas(nodes, 2, 0);
+
+        assertEquals("dn2", selected.get(0).getNodeName());
+        assertEquals("dn3", selected.get(1).getNodeName());
+    }
+
+    @Test
+    void fullNodesAreSkippedAndShortfallIsReturned() {
+        List<DataNodeInfo> nodes = new ArrayList<>();
+        nodes.add(node("dn1", "10.0.0.1:8082", "z1", "a", 96));
+        nodes.add(node("dn2", "10.0.0.2:8082", "z1", "b", 10));
+
+        List<DataNodeInfo> selected = service.selectDataNodesForReplicas(nodes, 3, 0);
+
+        assertEquals(List.of("dn2"), selected.stream().map(DataNodeInfo::getNodeName).toList());
+    }
+
+    // ====== Striped (Latin-rectangle) placement ======
+
+    @Test
+    void stripedPlacementFormsLatinRectangle() {
+        List<DataNodeInfo> nodes = sixNodes();
+        int replicas = 3;
+
+        List<List<String>> rows = new ArrayList<>();
+        for (int chunk = 0; chunk < nodes.size(); chunk++) {
+            List<DataNodeInfo> row = service.selectStripedNodes(nodes, replicas, "file-1", chunk);
+            assertEquals(replicas, row.size());
+            assertEquals(replicas, names(row).size(), "replicas of one chunk must be distinct");
+            rows.add(row.stream().map(DataNodeInfo::getNodeName).toList());
+        }
+
+        // Every replica column over n consecutive chunks is a permutation of the nodes
+        for (int r = 0; r < replicas; r++) {
+            Set<String> column = new HashSet<>();
+            for (List<String> row : rows) column.add(row.get(r));
+            assertEquals(nodes.size(), column.size(), "column " + r + " repeats a node");
+        }
+
+        // So every node holds the same share of the file
+        Map<String, Integer> perNode = new HashMap<>();
+        rows.forEach(row -> row.forEach(name -> perNode.merge(name, 1, Integer::sum)));
+        assertEquals(nodes.size(), perNode.size());
+        perNode.values().forEach(count -> assertEquals(replicas, count.intValue()));
+    }
+
+    @Test
+    void stripedRingAlternatesRacks() {
+        List<DataNodeInfo> nodes = sixNodes();
+
+        String previousRack = null;
+        for (int chunk = 0; chunk < nodes.size(); chunk++) {
+            DataNodeInfo primary = service.selectStripedNodes(nodes, 1, "file-2", chunk).get(0);
+            assertNotEquals(previousRack, primary.getRack());
+            previousRack = primary.getRack();
+        }
+    }
+
+    @Test
+    void stripedPlacementIsStableAndSkipsFullNodes() {
+        List<DataNodeInfo> nodes = sixNodes();
+        nodes.get(2).setProjectedFillPercent(99);
+
+        for (int chunk = 0; chunk < 12; chunk++) {
+            List<DataNodeInfo> row = service.selectStripedNodes(nodes, 3, "file-3", chunk);
+            assertEquals(3, names(row).size());
+            assertFalse(names(row).contains("dn3"), "full node selected for chunk " + chunk);
+            assertEquals(names(row), names(service.selectStripedNodes(nodes, 3, "file-3", chunk)));
+        }
+    }
+}
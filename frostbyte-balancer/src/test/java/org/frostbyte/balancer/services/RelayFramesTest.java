@@ -0,0 +1,93 @@
+package org.frostbyte.balancer.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayFramesTest {
+
+    private static final int SEGMENT = 64 * 1024;
+
+    @Test
+    void statusBytesMatchTheWireProtocol() {
+        // ClientNodes decode these values, they must never change
+        assertEquals(0, DownloadService.FRAME_OK);
+        assertEquals(1, DownloadService.FRAME_FAILED);
+        assertEquals(2, DownloadService.FRAME_DATA);
+        assertEquals(3, DownloadService.FRAME_RETRY);
+    }
+
+    @Test
+    void snowflakeIsSplitIntoSegmentsFollowedByOk() throws IOException {
+        byte[] snowflake = new byte[SEGMENT * 2 + 123];
+        new Random(1).nextBytes(snowflake);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DownloadService.writeSnowflakeFrames(new DataOutputStream(out), snowflake);
+
+        DataInputStream frames = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+        int dataFrames = 0;
+        while (true) {
+            byte status = frames.readByte();
+            byte[] payload = new byte[frames.readInt()];
+            frames.readFully(payload);
+            if (status == DownloadService.FRAME_OK) {
+                assertEquals(0, payload.length);
+                break;
+            }
+            assertEquals(DownloadService.FRAME_DATA, status);
+            assertTrue(payload.length > 0 && payload.length <= SEGMENT);
+            reassembled.write(payload);
+            dataFrames++;
+        }
+
+        assertEquals(3, dataFrames);
+        assertArrayEquals(snowflake, reassembled.toByteArray());
+        assertEquals(-1, frames.read(), "nothing may follow FRAME_OK");
+    }
+
+    @Test
+    void emptySnowflakeIsJustOk() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DownloadService.writeSnowflakeFrames(new DataOutputStream(out), new byte[0]);
+
+        assertArrayEquals(new byte[]{DownloadService.FRAME_OK, 0, 0, 0, 0}, out.toByteArray());
+    }
+
+    @Test
+    void frameCarriesOnlyTheRequestedSlice() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] message = "no replica".getBytes();
+        DownloadService.writeFrame(new DataOutputStream(out), DownloadService.FRAME_FAILED, message, 3, 7);
+
+        DataInputStream frame = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(DownloadService.FRAME_FAILED, frame.readByte());
+        assertEquals(7, frame.readInt());
+        byte[] payload = new byte[7];
+        frame.readFully(payload);
+        assertEquals("replica", new String(payload));
+    }
+
+    @Test
+    void writeToADisconnectedClientKeepsTheIOException() {
+        OutputStream gone = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> DownloadService.writeSnowflakeFrames(new DataOutputStream(gone), new byte[10]));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+}
@@ -0,0 +1,121 @@
+package org.frostbyte.balancer.services;
+
+import org.frostbyte.balancer.models.configModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeCacheTest {
+
+    // Probation gets a quarter of the budget: 1000 bytes
+    private static final long BUDGET = 4000;
+
+    private static SnowflakeCache newCache(long maxBytes, long maxEntryBytes) {
+        configModel config = new configModel();
+        config.setSnowflakeCacheMaxBytes(maxBytes);
+        config.setSnowflakeCacheMaxEntryBytes(maxEntryBytes);
+        return new SnowflakeCache(config);
+    }
+
+    private static byte[] bytes(int size, int fill) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) fill);
+        return data;
+    }
+
+    @Test
+    void firstReferenceIsServedFromProbation() {
+        SnowflakeCache cache = newCache(BUDGET, 0);
+        cache.put("a", bytes(100, 7));
+
+        assertArrayEquals(bytes(100, 7), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getStats().get("probationEntries"));
+        assertEquals(0, cache.getStats().get("mainEntries"));
+    }
+
+    @Test
+    void reReferencedSnowflakeSurvivesSequentialScan() {
+        SnowflakeCache cache = newCache(BUDGET, 0);
+
+        // Pushed out of probation once, then referenced again: promoted to main
+        cache.put("hot", bytes(100, 1));
+        for (int i = 0; i < 10; i++) {
+            cache.put("fill" + i, bytes(100, 2));
+        }
+        assertNull(cache.get("hot"));
+        cache.put("hot", bytes(100, 1));
+        assertEquals(1L, cache.getStats().get("promotions"));
+
+        // A one-pass scan only churns probation
+        for (int i = 0; i < 500; i++) {
+            cache.put("scan" + i, bytes(100, 3));
+        }
+        assertArrayEquals(bytes(100, 1), cache.get("hot"));
+        assertTrue((long) cache.getStats().get("usedBytes") <= BUDGET);
+    }
+
+    @Test
+    void snowflakeLargerThanProbationNeedsSecondReference() {
+        SnowflakeCache cache = newCache(BUDGET, 0);
+        String name = "full-size";
+
+        assertFalse(cache.admits(name, 2000));
+        cache.put(name, bytes(2000, 5));
+        assertNull(cache.get(name));
+
+        // Remembered as a ghost, so the next fetch is admitted straight to main
+        assertTrue(cache.admits(name, 2000));
+        cache.put(name, bytes(2000, 5));
+        assertArrayEquals(bytes(2000, 5), cache.get(name));
+        assertEquals(2000L, cache.getStats().get("mainBytes"));
+    }
+
+    @Test
+    void referenceRecordsUncollectedLargeSnowflake() {
+        SnowflakeCache cache = newCache(BUDGET, 0);
+
+        cache.reference("big", 2000);
+        assertTrue(cache.admits("big", 2000));
+
+        // Small snowflakes are always collected, a reference records nothing for them
+        cache.reference("small", 100);
+        assertEquals(1, cache.getStats().get("ghostEntries"));
+    }
+
+    @Test
+    void entriesAboveMaxEntryBytesAreRejected() {
+        SnowflakeCache cache = newCache(BUDGET, 500);
+
+        assertFalse(cache.admits("x", 600));
+        cache.put("x", bytes(600, 1));
+        assertNull(cache.get("x"));
+        assertEquals(1L, cache.getStats().get("rejectedTooLarge"));
+    }
+
+    @Test
+    void invalidateDropsEntryAndGhost() {
+        SnowflakeCache cache = newCache(BUDGET, 0);
+        cache.put("a", bytes(100, 1));
+        cache.reference("big", 2000);
+
+        cache.invalidate("a");
+        cache.invalidate("big");
+
+        assertNull(cache.get("a"));
+        assertFalse(cache.admits("big", 2000));
+        assertEquals(0L, cache.getStats().get("usedBytes"));
+    }
+
+    @Test
+    void zeroBudgetDisablesCache() {
+        SnowflakeCache cache = newCache(0, 0);
+        assertFalse(cache.isEnabled());
+
+        cache.put("a", bytes(10, 1));
+        assertNull(cache.get("a"));
+        assertFalse(cache.admits("a", 10));
+    }
+}
@@ -1,13 +1,21 @@
 package org.frostbyte.clientnode;
 
+import org.frostbyte.clientnode.cli.BulkIngestCommand;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Arrays;
+
 
 @SpringBootApplication
 public class App {
     public static void main(String[] args) {
+        // CLI mode: bulk-ingest runs without starting the ClientNode server
+        if (args.length > 0 && BulkIngestCommand.COMMAND.equals(args[0])) {
+            System.exit(BulkIngestCommand.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         SpringApplication.run(App.class, args);
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,434 @@
+package org.frostbyte.clientnode.cli;
+
+import org.frostbyte.clientnode.services.BalancerNodeClient;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/*
+ * BulkIngestCommand
+ * Command line bulk loader that walks a directory tree and uploads every regular file
+ * through one or more ClientNodes' /public/upload endpoint.
+ *
+ * - File-level parallelism: a fixed pool of upload workers, at most N files in flight.
+ * - Chunk-level parallelism: forwarded to the ClientNode as 'parallelChunks'.
+ * - Backpressure: a ClientNode at upload capacity answers 503 with Retry-After; the retry
+ *   waits at least that long, jittered so rejected workers do not return in lockstep.
+ * - Checkpointing: every finished file is appended to a checkpoint journal
+ *   (relative path, size, mtime, fileId); a rerun skips files already in the journal.
+ * - Reporting: periodic progress plus a final throughput and latency percentile summary.
+ *
+ * Usage:
+ *   java -jar frostbyte-clientnode.jar bulk-ingest --source /archive [options]
+ */
+public class BulkIngestCommand {
+    private static final Logger log = Logger.getLogger(BulkIngestCommand.class.getName());
+
+    public static final String COMMAND = "bulk-ingest";
+    private static final String CHECKPOINT_FILE = ".frostbyte-ingest.checkpoint";
+
+    private final Path source;
+    private final List<String> clientNodes;
+    private final int fileParallelism;
+    private final int chunkParallelism;
+    private final int retries;
+    private final int reportIntervalSeconds;
+    private final Path checkpointPath;
+    private final String callerId;
+
+    private final RestTemplate restTemplate;
+    private final Map<String, String> checkpoint = new ConcurrentHashMap<>();
+    private BufferedWriter checkpointWriter;
+
+    // Metrics
+    private final AtomicInteger filesUploaded = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicInteger nodeCursor = new AtomicInteger();
+    private final List<Long> latenciesMs = Collections.synchronizedList(new ArrayList<>());
+
+    BulkIngestCommand(Path source, List<String> clientNodes, int fileParallelism, int chunkParallelism,
+                      int retries, int reportIntervalSeconds, Path checkpointPath, String callerId) {
+        this.source = source;
+        this.clientNodes = clientNodes;
+        this.fileParallelism = fileParallelism;
+        this.chunkParallelism = chunkParallelism;
+        this.retries = retries;
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        this.checkpointPath = checkpointPath;
+        this.callerId = callerId;
+
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(30_000);   // 30 seconds
+        factory.setReadTimeout(60 * 60_000); // 1 hour, a single file may be several GB
+        this.restTemplate = new RestTemplate(factory);
+    }
+
+    /**
+     * Entry point used by App when the first argument is 'bulk-ingest'.
+     * Returns the process exit code.
+     */
+    public static int run(String[] args) {
+        Map<String, String> opts;
+        try {
+            opts = parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            printUsage();
+            return 2;
+        }
+
+        if (opts.containsKey("help") || !opts.containsKey("source")) {
+            printUsage();
+            return opts.containsKey("help") ? 0 : 2;
+        }
+
+        Path source = Paths.get(opts.get("source")).toAbsolutePath().normalize();
+        if (!Files.isDirectory(source)) {
+            System.err.println("ERROR: source is not a directory: " + source);
+            return 2;
+        }
+
+        List<String> nodes = new ArrayList<>();
+        for (String n : opts.getOrDefault("client-nodes", "127.0.0.1:7082").split(",")) {
+            if (!n.isBlank()) nodes.add(normalizeHost(n.trim()));
+        }
+
+        Path checkpointPath = opts.containsKey("checkpoint")
+                ? Paths.get(opts.get("checkpoint")).toAbsolutePath().normalize()
+                : source.resolve(CHECKPOINT_FILE);
+
+        BulkIngestCommand cmd;
+        try {
+            if (nodes.isEmpty()) {
+                throw new IllegalArgumentException("--client-nodes names no ClientNode");
+            }
+            cmd = new BulkIngestCommand(
+                    source,
+                    nodes,
+                    intOption(opts, "file-parallelism", 4, 1),
+                    intOption(opts, "chunk-parallelism", 0, 0),
+                    intOption(opts, "retries", 2, 0),
+                    intOption(opts, "report-interval", 10, 1),
+                    checkpointPath,
+                    opts.getOrDefault("caller-id", "bulk-ingest"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            printUsage();
+            return 2;
+        }
+
+        try {
+            return cmd.execute();
+        } catch (Exception e) {
+            System.err.println("ERROR: bulk ingest aborted: " + e);
+            return 1;
+        }
+    }
+
+    int execute() throws IOException, InterruptedException {
+        loadCheckpoint();
+        checkpointWriter = Files.newBufferedWriter(checkpointPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        System.out.printf("[BULK-INGEST] source=%s clientNodes=%s fileParallelism=%d chunkParallelism=%s checkpoint=%s (%d files already done)%n",
+                source, clientNodes, fileParallelism, chunkParallelism > 0 ? chunkParallelism : "server-default",
+                checkpointPath, checkpoint.size());
+
+        ExecutorService workers = Executors.newFixedThreadPool(fileParallelism, namedThreads("bulk-ingest-"));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(namedThreads("bulk-ingest-report-"));
+        Semaphore slots = new Semaphore(fileParallelism);
+        long startNanos = System.nanoTime();
+
+        reporter.scheduleAtFixedRate(() -> printProgress(startNanos), reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+
+        try {
+            // Walk lazily; the semaphore keeps at most fileParallelism uploads queued or running
+            Files.walkFileTree(source, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile() || file.equals(checkpointPath)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    String relative = source.relativize(file).toString().replace('\\', '/');
+                    if (relative.indexOf('\n') >= 0 || relative.indexOf('\t') >= 0) {
+                        log.warning("[BULK-SKIP] unsupported characters in path: " + relative);
+                        filesFailed.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    long size = attrs.size();
+                    long mtime = attrs.lastModifiedTime().toMillis();
+                    if (isCheckpointed(relative, size, mtime)) {
+                        filesSkipped.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    try {
+                        slots.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+
+                    workers.submit(() -> {
+                        try {
+                            uploadWithRetries(file, relative, size, mtime);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    log.warning("[BULK-WALK-FAILED] " + file + ": " + exc);
+                    filesFailed.incrementAndGet();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            reporter.shutdownNow();
+            checkpointWriter.close();
+        }
+
+        printSummary(startNanos);
+        return filesFailed.get() == 0 ? 0 : 1;
+    }
+
+    private void uploadWithRetries(Path file, String relative, long size, long mtime) {
+        Exception lastError = null;
+
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            // Round robin across ClientNodes, a retry lands on the next one
+            String node = clientNodes.get(Math.floorMod(nodeCursor.getAndIncrement(), clientNodes.size()));
+            long t0 = System.nanoTime();
+            try {
+                String fileId = upload(node, file);
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+                latenciesMs.add(elapsedMs);
+                bytesUploaded.addAndGet(size);
+                filesUploaded.incrementAndGet();
+                recordCheckpoint(relative, size, mtime, fileId);
+
+                log.info(String.format("[BULK-UPLOADED] path=%s size=%d fileId=%s node=%s ms=%d",
+                        relative, size, fileId, node, elapsedMs));
+                return;
+            } catch (HttpServerErrorException.ServiceUnavailable e) {
+                lastError = e;
+                if (attempt < retries && !backOff(relative, node, e, attempt)) {
+                    break; // Interrupted
+                }
+            } catch (Exception e) {
+                lastError = e;
+                log.warning(String.format("[BULK-UPLOAD-RETRY] path=%s node=%s attempt=%d/%d error=%s",
+                        relative, node, attempt + 1, retries + 1, e.getMessage()));
+            }
+        }
+
+        filesFailed.incrementAndGet();
+        log.severe(String.format("[BULK-UPLOAD-FAILED] path=%s error=%s", relative, lastError));
+    }
+
+    // Waits out a busy ClientNode: Retry-After (or a growing default), plus up to 50% jitter
+    private boolean backOff(String relative, String node, HttpServerErrorException e, int attempt) {
+        long retryAfterMs = BalancerNodeClient.retryAfterMs(e);
+        long backoffMs = (long) (Math.max(retryAfterMs, 1000L << Math.min(attempt, 5))
+                * (1 + ThreadLocalRandom.current().nextDouble(0.5)));
+        log.warning(String.format("[BULK-UPLOAD-BUSY] path=%s node=%s retryAfter=%dms backoff=%dms attempt=%d/%d",
+                relative, node, retryAfterMs, backoffMs, attempt + 1, retries + 1));
+        try {
+            Thread.sleep(backoffMs);
+            return true;
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private String upload(String node, Path file) {
+        String endpoint = node + "/public/upload";
+        if (chunkParallelism > 0) {
+            endpoint += "?parallelChunks=" + chunkParallelism;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        // Lets the ClientNode schedule bulk traffic behind interactive uploads
+        headers.set("X-Caller-Id", callerId);
+
+        // FileSystemResource is streamed from disk, the file is never fully loaded in memory
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new FileSystemResource(file));
+
+        @SuppressWarnings("rawtypes")
+        ResponseEntity<Map> response = restTemplate.postForEntity(endpoint, new HttpEntity<>(body, headers), Map.class);
+
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null
+                || response.getBody().get("fileId") == null) {
+            throw new IllegalStateException("Upload failed: HTTP " + response.getStatusCode());
+        }
+        return response.getBody().get("fileId").toString();
+    }
+
+    // ====== Checkpoint journal ======
+
+    private void loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointPath)) return;
+
+        for (String line : Files.readAllLines(checkpointPath, StandardCharsets.UTF_8)) {
+            // size \t mtime \t fileId \t relativePath
+            String[] parts = line.split("\t", 4);
+            if (parts.length != 4) continue; // torn write from an interrupted run
+            checkpoint.put(parts[3], parts[0] + "\t" + parts[1]);
+        }
+    }
+
+    private boolean isCheckpointed(String relative, long size, long mtime) {
+        return (size + "\t" + mtime).equals(checkpoint.get(relative));
+    }
+
+    private synchronized void recordCheckpoint(String relative, long size, long mtime, String fileId) {
+        try {
+            checkpointWriter.write(size + "\t" + mtime + "\t" + fileId + "\t" + relative);
+            checkpointWriter.newLine();
+            checkpointWriter.flush();
+            checkpoint.put(relative, size + "\t" + mtime);
+        } catch (IOException e) {
+            log.warning("[BULK-CHECKPOINT-FAILED] path=" + relative + " error=" + e.getMessage());
+        }
+    }
+
+    // ====== Reporting ======
+
+    private void printProgress(long startNanos) {
+        double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        System.out.printf("[BULK-PROGRESS] uploaded=%d failed=%d skipped=%d bytes=%.2fGB rate=%.2fMB/s%n",
+                filesUploaded.get(), filesFailed.get(), filesSkipped.get(),
+                bytesUploaded.get() / 1e9, bytesUploaded.get() / 1e6 / seconds);
+    }
+
+    private void printSummary(long startNanos) {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        double seconds = Math.max(1e-3, elapsed.toMillis() / 1000.0);
+
+        long[] sorted;
+        synchronized (latenciesMs) {
+            sorted = latenciesMs.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+
+        System.out.println("========================================");
+        System.out.printf("Bulk ingest finished in %s%n", elapsed);
+        System.out.printf("Files: uploaded=%d failed=%d skipped=%d%n",
+                filesUploaded.get(), filesFailed.get(), filesSkipped.get());
+        System.out.printf("Throughput: %.2f MB/s, %.2f files/s (%.2f GB total)%n",
+                bytesUploaded.get() / 1e6 / seconds, filesUploaded.get() / seconds, bytesUploaded.get() / 1e9);
+        System.out.printf("Latency per file (ms): p50=%d p90=%d p99=%d max=%d%n",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100));
+        System.out.println("========================================");
+    }
+
+    // Nearest-rank percentile over an ascending array
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    // ====== Argument handling ======
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--help") || a.equals("-h")) {
+                opts.put("help", "true");
+                continue;
+            }
+            if (!a.startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument: " + a);
+            }
+            String key = a.substring(2);
+            String value;
+            int eq = key.indexOf('=');
+            if (eq >= 0) {
+                value = key.substring(eq + 1);
+                key = key.substring(0, eq);
+            } else if (i + 1 < args.length) {
+                value = args[++i];
+            } else {
+                throw new IllegalArgumentException("missing value for --" + key);
+            }
+            opts.put(key, value);
+        }
+        return opts;
+    }
+
+    // Integer option, at least min
+    private static int intOption(Map<String, String> opts, String key, int defaultValue, int min) {
+        String value = opts.get(key);
+        if (value == null) return defaultValue;
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + key + " must be an integer, got: " + value);
+        }
+        if (parsed < min) {
+            throw new IllegalArgumentException("--" + key + " must be at least " + min + ", got: " + value);
+        }
+        return parsed;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java -jar frostbyte-clientnode.jar bulk-ingest --source <dir> [options]");
+        System.out.println("  --client-nodes <h:p,...>   ClientNodes to upload through (default 127.0.0.1:7082)");
+        System.out.println("  --file-parallelism <n>     Files uploaded concurrently (default 4)");
+        System.out.println("  --chunk-parallelism <n>    Chunks in flight per file on the ClientNode (default: server setting)");
+        System.out.println("  --checkpoint <path>        Checkpoint journal (default <source>/" + CHECKPOINT_FILE + ")");
+        System.out.println("  --retries <n>              Retries per file, rotating ClientNodes (default 2)");
+        System.out.println("  --report-interval <sec>    Progress report interval (default 10)");
+        System.out.println("  --caller-id <id>           X-Caller-Id sent for fair scheduling (default bulk-ingest)");
+    }
+
+    private static String normalizeHost(String host) {
+        if (!host.startsWith("http://") && !host.startsWith("https://")) {
+            host = "http://" + host;
+        }
+        return host.endsWith("/") ? host.substring(0, host.length() - 1) : host;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger(1);
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
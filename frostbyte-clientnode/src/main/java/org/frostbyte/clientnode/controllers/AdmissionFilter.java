@@ -0,0 +1,125 @@
+package org.frostbyte.clientnode.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.frostbyte.clientnode.models.configModel;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/*
+ * AdmissionFilter
+ * Admission control for file ingest (POST /public/upload and /public/upload/{fileId}/append).
+ * Runs before Spring spools the multipart file to temp disk, so a rejected upload costs
+ * neither disk nor heap.
+ *
+ * Uploads are admitted while the in-flight ones stay within admission-max-inflight-requests
+ * and admission-max-inflight-bytes (by Content-Length); an idle node always takes one.
+ * An upload without Content-Length (chunked) counts as spring.servlet.multipart.max-request-size,
+ * the most it may carry.
+ * Otherwise the caller gets 503 and a Retry-After derived from how fast recent uploads
+ * completed, capped at admission-retry-after-max-s.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final Logger log = Logger.getLogger(AdmissionFilter.class.getName());
+    private static final double RATE_ALPHA = 0.2;
+
+    private final configModel config;
+    private final long unknownLengthBytes;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Guarded by this
+    private int inFlightRequests;
+    private long inFlightBytes;
+    private double drainBytesPerSec;
+    private double avgDurationMs;
+
+    public AdmissionFilter(configModel config, MultipartProperties multipart) {
+        this.config = config;
+        long maxRequestBytes = multipart.getMaxRequestSize().toBytes();
+        // An unlimited multipart size: the request has to fit the byte budget on its own
+        this.unknownLengthBytes = maxRequestBytes >= 0 ? maxRequestBytes : config.getAdmissionMaxInflightBytes();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !request.getRequestURI().startsWith("/public/upload");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        long bytes = contentLength >= 0 ? contentLength : unknownLengthBytes;
+
+        long retryAfter = tryAdmit(bytes);
+        if (retryAfter > 0) {
+            log.warning(String.format("[ADMISSION-REJECTED] uri=%s bytes=%d retryAfter=%ds",
+                    request.getRequestURI(), bytes, retryAfter));
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            mapper.writeValue(response.getOutputStream(), Map.of(
+                    "error", "ClientNode is at upload capacity, retry later",
+                    "retryAfterSeconds", retryAfter));
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            release(bytes, Math.max(0, contentLength), System.nanoTime() - start);
+        }
+    }
+
+    // @return 0 if admitted, otherwise the Retry-After in seconds
+    private synchronized long tryAdmit(long bytes) {
+        boolean idle = inFlightRequests == 0;
+        boolean fits = inFlightRequests < config.getAdmissionMaxInflightRequests()
+                && inFlightBytes + bytes <= config.getAdmissionMaxInflightBytes();
+        if (idle || fits) {
+            inFlightRequests++;
+            inFlightBytes += bytes;
+            return 0;
+        }
+
+        double seconds = 1;
+        long excessBytes = inFlightBytes + bytes - config.getAdmissionMaxInflightBytes();
+        if (excessBytes > 0 && drainBytesPerSec > 0) {
+            seconds = Math.max(seconds, excessBytes / drainBytesPerSec);
+        }
+        int excessRequests = inFlightRequests + 1 - config.getAdmissionMaxInflightRequests();
+        if (excessRequests > 0 && avgDurationMs > 0) {
+            seconds = Math.max(seconds, excessRequests * avgDurationMs / 1000.0
+                    / Math.max(1, config.getAdmissionMaxInflightRequests()));
+        }
+        return Math.min(Math.max(1, config.getAdmissionRetryAfterMaxS()), (long) Math.ceil(seconds));
+    }
+
+    // measuredBytes: the actual Content-Length, 0 when unknown (keeps the drain rate honest)
+    private synchronized void release(long bytes, long measuredBytes, long elapsedNanos) {
+        inFlightRequests--;
+        inFlightBytes -= bytes;
+
+        double elapsedMs = Math.max(1, elapsedNanos / 1_000_000.0);
+        avgDurationMs = avgDurationMs == 0 ? elapsedMs : avgDurationMs * (1 - RATE_ALPHA) + elapsedMs * RATE_ALPHA;
+        if (measuredBytes > 0) {
+            // Each upload drains its bytes over its duration, alongside the others in flight
+            double rate = measuredBytes * 1000.0 / elapsedMs * (inFlightRequests + 1);
+            drainBytesPerSec = drainBytesPerSec == 0 ? rate : drainBytesPerSec * (1 - RATE_ALPHA) + rate * RATE_ALPHA;
+        }
+    }
+}
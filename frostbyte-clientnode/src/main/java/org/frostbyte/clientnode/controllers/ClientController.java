@@ -8,9 +8,11 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyPair;
@@ -18,7 +20,10 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -36,15 +41,22 @@ public class ClientController {
     private final MasterNodeDiscoveryService discoveryService;
     private final BalancerNodeClient balancerClient;
     private final DatabaseNodeClient databaseNodeClient;
+    private final SmallFileCache smallFileCache;
+    private final RangeReadService rangeReadService;
+    private final ContentDefinedChunker chunker;
 
     public ClientController(configModel config, KeyClient keyClient, AsyncUploadService asyncUploadService, MasterNodeDiscoveryService discoveryService,
-                            BalancerNodeClient balancerClient, DatabaseNodeClient databaseNodeClient) {
+                            BalancerNodeClient balancerClient, DatabaseNodeClient databaseNodeClient, SmallFileCache smallFileCache,
+                            RangeReadService rangeReadService, ContentDefinedChunker chunker) {
         this.config = config;
         this.keyClient = keyClient;
         this.asyncUploadService = asyncUploadService;
         this.discoveryService = discoveryService;
         this.balancerClient = balancerClient;
         this.databaseNodeClient = databaseNodeClient;
+        this.smallFileCache = smallFileCache;
+        this.rangeReadService = rangeReadService;
+        this.chunker = chunker;
     }
 
     /**
@@ -56,10 +68,21 @@ public class ClientController {
      *
      * Param 'file' Multipart file to upload
      * Param 'totalChunks' (optional) total number of chunks (if known)
+     * Param 'parallelChunks' (optional) cap on chunks in flight for this upload,
+     *   clamped to frostbyte.clientnode.max-in-flight-chunks
+     * Param 'contentDefined' (optional) split on content-defined boundaries and record chunk
+     *   fingerprints, so this upload can be the base of a later versioned upload
+     * Param 'baseFileId' (optional) previous version of this file; chunks whose fingerprint
+     *   matches the base version are referenced instead of uploaded (implies contentDefined)
+     * Header 'X-Caller-Id' (optional) selects the fair-scheduling weight for this upload
      */
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Map<String, Object>> uploadFile(@RequestParam("file") MultipartFile file,
-                                                          @RequestParam(name = "totalChunks", required = false, defaultValue = "0") int totalChunks) {
+                                                          @RequestParam(name = "totalChunks", required = false, defaultValue = "0") int totalChunks,
+                                                          @RequestParam(name = "parallelChunks", required = false, defaultValue = "0") int parallelChunks,
+                                                          @RequestParam(name = "contentDefined", required = false, defaultValue = "false") boolean contentDefined,
+                                                          @RequestParam(name = "baseFileId", required = false) String baseFileId,
+                                                          @RequestHeader(name = "X-Caller-Id", required = false) String callerId) {
         Instant start = Instant.now(); // Request timer start
 
         // ERROR HANDLING FOR HTTP
@@ -77,17 +100,39 @@ public class ClientController {
         int configuredChunkSizeMB = config.getChunkSizeMB() > 0 ? config.getChunkSizeMB() : 1;
         long chunkSizeBytes = (long) configuredChunkSizeMB * 1024 * 1024;
 
-        // Calculate totalChunks from file size if not provided
-        if (totalChunks <= 0) {
+        boolean hasBase = baseFileId != null && !baseFileId.isBlank();
+        boolean versioned = contentDefined || hasBase;
+
+        // Versioned uploads scan the file once up front: content-defined boundaries decide totalChunks,
+        // and the base version's manifest decides which chunks can be reused
+        List<ContentDefinedChunker.ChunkBoundary> boundaries = null;
+        Map<String, String> reusableChunks = Map.of(); // fingerprint -> chunk holding the data
+        if (versioned) {
+            try (InputStream scanIn = file.getInputStream()) {
+                boundaries = chunker.scan(scanIn);
+                totalChunks = boundaries.size();
+                if (hasBase) reusableChunks = loadReusableChunks(baseFileId);
+            } catch (DatabaseNodeClient.FileNotFoundException e) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Base file not found: " + baseFileId));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                log.severe("[UPLOAD-VERSION-PREPARE-FAILED] " + e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", String.valueOf(e.getMessage())));
+            }
+        } else if (totalChunks <= 0) {
+            // Calculate totalChunks from file size if not provided
             totalChunks = (int) Math.ceil((double) fileSize / chunkSizeBytes);
         }
 
-        log.info(String.format("[UPLOAD-REQUEST] filename=%s size=%d chunkSize=%dMB totalChunks=%d",
-                originalFilename, fileSize, configuredChunkSizeMB, totalChunks));
+        // Bound the number of chunks read into memory and not yet acknowledged by the balancer
+        int maxInFlight = resolveMaxInFlightChunks(parallelChunks);
+
+        log.info(String.format("[UPLOAD-REQUEST] filename=%s size=%d chunkSize=%dMB totalChunks=%d maxInFlight=%d versioned=%s base=%s",
+                originalFilename, fileSize, configuredChunkSizeMB, totalChunks, maxInFlight, versioned, baseFileId));
 
         String sessionId = null; // Initialize to handle early exceptions
         String fileId; // Will be set after session initialization
-        List<CompletableFuture<Object>> futures = new ArrayList<>();
 
         /*
             * Main upload processing block
@@ -100,6 +145,7 @@ public class ClientController {
             *   - Stream file, chunk it, encrypt each chunk and create snowflake
             *   - For each chunk, request per-chunk AES key from DatabaseNode, then serialise the snowflake
             *   - This part is implemented by encryption service asynchronously, implementing multi threading
+            *   - Versioned uploads register unchanged chunks as references and skip their bytes
             * 3) Snowflake Upload to Balancer
             *   - Upload the snowflake to the selected balancer node
             *  - No local storage of snowflakes on ClientNode, Balancer takes care of allocation
@@ -117,6 +163,9 @@ public class ClientController {
 
             log.info(String.format("[SESSION-INIT] sessionId=%s fileId=%s filename=%s", sessionId, fileId, originalFilename));
 
+            // Chunk tasks of this upload get their own fair-share queue
+            asyncUploadService.openSession(sessionId, callerId);
+
             // 2) Discover a balancer node to send snowflakes to
             String selectedBalancer = discoveryService.discoverBalancerNode();
             if (selectedBalancer == null || selectedBalancer.isEmpty()) {
@@ -134,74 +183,45 @@ public class ClientController {
 
             log.info(String.format("[SESSION-READY] sessionId=%s fileId=%s filename=%s", sessionId, fileId, originalFilename));
 
-            // 4) Stream and chunk the file
-            byte[] buffer = new byte[(int) chunkSizeBytes];
-            int read;
-            int chunkNumber = 0;
-            final String fixedFileId = fileId; // for lambdas
-            final String fixedBalancer = selectedBalancer; // for lambdas
+            UploadState upload = new UploadState(sessionId, fileId, originalFilename, totalChunks, selectedBalancer,
+                    kp, clientPublicKey, asyncUploadService.executorFor(sessionId), maxInFlight);
 
             // UPLOAD STAGE 2 + 3: Chunking + Encryption + Snowflake Creation + Upload to Balancer
-            AtomicBoolean uploadFailed = new AtomicBoolean(false);
-            List<String> failureReasons = Collections.synchronizedList(new ArrayList<>());
-
-            while ((read = in.read(buffer)) != -1) {
-                // Prepare chunk data (trim buffer if last chunk is smaller)
-                byte[] chunkBytes = (read == buffer.length) ? buffer.clone() : Arrays.copyOf(buffer, read);
-
-                log.fine(String.format("[CHUNK-READ] fileId=%s chunkNumber=%d bytes=%d", fileId, chunkNumber, chunkBytes.length));
-
-                // Request a per-chunk AES key from DatabaseNode
-                Map<String, Object> keyResp = keyClient.requestKeyFromKeyService(clientPublicKey);
-                Object chunkIdObj = keyResp.get("chunkId");
-                Object encryptedKeyObj = keyResp.get("encryptedKey");
-                if (chunkIdObj == null || encryptedKeyObj == null) {
-                    throw new IllegalStateException("Key service did not return expected fields");
+            int chunkNumber = 0;
+            int reusedChunks = 0;
+            long reusedBytes = 0;
+
+            if (versioned) {
+                // 4) Walk the precomputed content-defined boundaries
+                for (ContentDefinedChunker.ChunkBoundary boundary : boundaries) {
+                    String dataChunkId = reusableChunks.get(boundary.getFingerprint());
+
+                    if (dataChunkId != null) {
+                        // Unchanged since the base version: reference it, nothing is encrypted or sent
+                        keyClient.registerChunkReference(fileId, chunkNumber, dataChunkId, boundary.getFingerprint());
+                        in.skipNBytes(boundary.getLength());
+                        reusedChunks++;
+                        reusedBytes += boundary.getLength();
+                        log.fine(String.format("[CHUNK-REUSED] fileId=%s chunkNumber=%d source=%s", fileId, chunkNumber, dataChunkId));
+                    } else {
+                        if (!upload.acquireSlot()) break;
+                        byte[] chunkBytes = in.readNBytes(boundary.getLength());
+                        submitChunk(upload, chunkNumber, chunkBytes, boundary.getFingerprint());
+                    }
+                    chunkNumber++;
                 }
-                String chunkId = chunkIdObj.toString();
-                String encryptedKey = encryptedKeyObj.toString();
-
-                // Decrypt AES key using session private key
-                String base64AesKey = keyClient.decryptWithPrivateKey(kp.getPrivate(), encryptedKey);
-
-                final int currentChunkNumber = chunkNumber;
-                final String fixedChunkId = chunkId;
-
-                // 5) Process chunk (encrypt + create snowflake) and immediately send to balancer
-                CompletableFuture<Object> fut = asyncUploadService
-                        .processChunk(chunkId, fileId, originalFilename, chunkNumber, totalChunks, chunkBytes, base64AesKey)
-                        .thenCompose(snowflake -> {
-                            // Send snowflake to balancer (no local storage)
-                            return CompletableFuture.supplyAsync(() -> {
-                                try {
-                                    String sfName = fixedFileId + "_" + currentChunkNumber + ".snowflake";
-                                    Map<String, Object> resp = balancerClient.uploadSnowflakeToBalancer(
-                                            fixedBalancer, fixedChunkId, snowflake, sfName);
-                                    log.info(String.format("[BALANCER-UPLOADED] chunkId=%s chunkNumber=%d replicas=%s",
-                                            fixedChunkId, currentChunkNumber, resp.get("replicasCreated")));
-                                    return null;
-                                } catch (Exception e) {
-                                    log.severe(String.format("[BALANCER-UPLOAD-FAILED] chunkId=%s chunkNumber=%d: ERROR: %s",
-                                            fixedChunkId, currentChunkNumber, e));
-                                    uploadFailed.set(true);
-                                    failureReasons.add("chunk " + currentChunkNumber + ": " + e.getMessage());
-                                    log.severe("[CHUNK-FAILED] chunk=" + currentChunkNumber + " error=" + e);
-                                    return null;
-                                }
-                            }, asyncUploadService.getExecutor());
-                        });
-
-                futures.add(fut);
-                chunkNumber++;
+            } else {
+                // 4) Stream and chunk the file
+                chunkNumber = streamFixedChunks(in, upload, 0, (int) chunkSizeBytes);
             }
 
             // 6) Wait for all chunks to complete
-            log.info(String.format("[WAITING] for %d chunk uploads to complete for fileId=%s", futures.size(), fileId));
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            log.info(String.format("[WAITING] for %d chunk uploads to complete for fileId=%s", upload.futures.size(), fileId));
+            CompletableFuture.allOf(upload.futures.toArray(new CompletableFuture[0])).join();
 
             // Check if any chunk upload failed
-            if (uploadFailed.get()) {
-                log.severe("[UPLOAD-FAILED] fileId=" + fileId + " reasons=" + failureReasons);
+            if (upload.uploadFailed.get()) {
+                log.severe("[UPLOAD-FAILED] fileId=" + fileId + " reasons=" + upload.failureReasons);
 
                 try {
                     keyClient.updateSessionStatus(sessionId, "FAILED");
@@ -211,7 +231,7 @@ public class ClientController {
                         .body(Map.of(
                                 "status", "failed",
                                 "fileId", fileId,
-                                "errors", failureReasons
+                                "errors", upload.failureReasons
                         ));
             }
 
@@ -220,17 +240,22 @@ public class ClientController {
             keyClient.completeSession(sessionId);
 
             Duration duration = Duration.between(start, Instant.now());
-            log.info(String.format("[UPLOAD-SUCCESS] fileId=%s totalChunks=%d durationMs=%d",
-                    fileId, chunkNumber, duration.toMillis()));
-
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "fileId", fileId,
-                    "sessionId", sessionId,
-                    "filename", originalFilename,
-                    "totalChunks", chunkNumber,
-                    "durationMs", duration.toMillis()
-            ));
+            log.info(String.format("[UPLOAD-SUCCESS] fileId=%s totalChunks=%d reusedChunks=%d durationMs=%d",
+                    fileId, chunkNumber, reusedChunks, duration.toMillis()));
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", "success");
+            body.put("fileId", fileId);
+            body.put("sessionId", sessionId);
+            body.put("filename", originalFilename);
+            body.put("totalChunks", chunkNumber);
+            body.put("durationMs", duration.toMillis());
+            if (hasBase) {
+                body.put("baseFileId", baseFileId);
+                body.put("reusedChunks", reusedChunks);
+                body.put("reusedBytes", reusedBytes);
+            }
+            return ResponseEntity.ok(body);
 
         } catch (Exception e) {
             log.severe("[UPLOAD-FAILED] upload failed" + e);
@@ -239,13 +264,376 @@ public class ClientController {
                 if (sessionId != null) keyClient.updateSessionStatus(sessionId, "FAILED");
             } catch (Exception ignored) {}
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", e.getMessage()));
+                    .body(Map.of("error", String.valueOf(e.getMessage())));
+        } finally {
+            if (sessionId != null) asyncUploadService.closeSession(sessionId);
+        }
+    }
+
+    /**
+     * APPEND ENDPOINT
+     * - Appends data to an existing COMPLETED file without touching its existing chunks.
+     * - Opens an append session on the DatabaseNode, which numbers the new chunks after the
+     *   file's last chunk; only the appended bytes are chunked, encrypted and uploaded.
+     * - The new chunks become visible (totalChunks/fileSize grow) only when the session
+     *   completes, readers never see a partially appended file.
+     *
+     * Param 'file' Multipart data to append
+     * Param 'parallelChunks' (optional) cap on chunks in flight, as for /upload
+     * Header 'X-Caller-Id' (optional) selects the fair-scheduling weight for this append
+     */
+    @PostMapping(value = "/upload/{fileId}/append", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> appendFile(@PathVariable("fileId") String fileId,
+                                                          @RequestParam("file") MultipartFile file,
+                                                          @RequestParam(name = "parallelChunks", required = false, defaultValue = "0") int parallelChunks,
+                                                          @RequestHeader(name = "X-Caller-Id", required = false) String callerId) {
+        Instant start = Instant.now();
+
+        if (file == null || file.isEmpty()) {
+            log.warning("[APPEND-REQUEST] empty or missing file");
+            return ResponseEntity.badRequest().body(Map.of("error", "file is required"));
+        }
+
+        long appendSize = file.getSize();
+        int configuredChunkSizeMB = config.getChunkSizeMB() > 0 ? config.getChunkSizeMB() : 1;
+        long chunkSizeBytes = (long) configuredChunkSizeMB * 1024 * 1024;
+        int appendChunks = (int) Math.ceil((double) appendSize / chunkSizeBytes);
+        int maxInFlight = resolveMaxInFlightChunks(parallelChunks);
+
+        log.info(String.format("[APPEND-REQUEST] fileId=%s size=%d appendChunks=%d maxInFlight=%d",
+                fileId, appendSize, appendChunks, maxInFlight));
+
+        String sessionId = null;
+        String appendBalancer = null;
+        int startChunk = 0;
+        int chunksSent = 0;
+        boolean completionSent = false;
+        try (InputStream in = file.getInputStream()) {
+
+            // 1) Open the append session; the DatabaseNode assigns the first chunk number
+            Map<String, Object> initResp;
+            try {
+                initResp = keyClient.initializeAppendSession(fileId, appendSize, appendChunks);
+            } catch (DatabaseNodeClient.FileNotFoundException e) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+            } catch (KeyClient.AppendConflictException e) {
+                // appendSessionId lets the caller abort an append that is stuck
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getAppendSessionId() != null
+                        ? Map.of("error", e.getMessage(), "appendSessionId", e.getAppendSessionId())
+                        : Map.of("error", e.getMessage()));
+            }
+            sessionId = initResp.get("sessionId").toString();
+            startChunk = ((Number) initResp.get("startChunk")).intValue();
+
+            log.info(String.format("[APPEND-SESSION-INIT] sessionId=%s fileId=%s startChunk=%d", sessionId, fileId, startChunk));
+
+            asyncUploadService.openSession(sessionId, callerId);
+
+            String selectedBalancer = discoveryService.discoverBalancerNode();
+            if (selectedBalancer == null || selectedBalancer.isEmpty()) {
+                log.severe("[BALANCER-DISCOVERY-FAILED] No balancer node available");
+                try {
+                    keyClient.updateSessionStatus(sessionId, "FAILED");
+                } catch (Exception ignored) {}
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body(Map.of("error", "No balancer node available"));
+            }
+
+            // An earlier append that was aborted may have left snowflakes under these chunk
+            // numbers; DataNodes refuse to overwrite a name
+            discardAppendSnowflakes(selectedBalancer, fileId, startChunk, appendChunks);
+            appendBalancer = selectedBalancer;
+
+            KeyPair kp = keyClient.generateClientKeyPair();
+            String clientPublicKey = keyClient.publicKeyToBase64(kp.getPublic());
+
+            // Snowflakes of appended chunks carry the file's chunk count after the append
+            String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : "appended-data";
+            UploadState upload = new UploadState(sessionId, fileId, fileName, startChunk + appendChunks, selectedBalancer,
+                    kp, clientPublicKey, asyncUploadService.executorFor(sessionId), maxInFlight);
+
+            // 2) Chunk, encrypt and upload only the appended bytes
+            chunksSent = streamFixedChunks(in, upload, startChunk, (int) chunkSizeBytes) - startChunk;
+
+            CompletableFuture.allOf(upload.futures.toArray(new CompletableFuture[0])).join();
+
+            if (upload.uploadFailed.get()) {
+                log.severe("[APPEND-FAILED] fileId=" + fileId + " reasons=" + upload.failureReasons);
+                // Failing the session discards the appended chunks and releases the file
+                if (failAppendSession(sessionId)) {
+                    discardAppendSnowflakes(selectedBalancer, fileId, startChunk, appendChunks);
+                }
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of(
+                                "status", "failed",
+                                "fileId", fileId,
+                                "errors", upload.failureReasons
+                        ));
+            }
+
+            // 3) Publish the append: totalChunks and fileSize are updated atomically
+            completionSent = true;
+            keyClient.completeSession(sessionId);
+
+            return appendPublished(fileId, sessionId, startChunk, chunksSent, appendSize, start);
+
+        } catch (Exception e) {
+            log.severe("[APPEND-FAILED] append failed " + e);
+            // The completion may have committed before the error reached us (e.g. a read timeout)
+            if (completionSent && "COMPLETED".equals(appendSessionStatus(sessionId))) {
+                log.warning("[APPEND-COMMITTED] sessionId=" + sessionId + " was published despite: " + e.getMessage());
+                return appendPublished(fileId, sessionId, startChunk, chunksSent, appendSize, start);
+            }
+            // Snowflakes are only deleted once the DatabaseNode confirms the append can no longer be published
+            if (sessionId != null && failAppendSession(sessionId) && appendBalancer != null) {
+                discardAppendSnowflakes(appendBalancer, fileId, startChunk, appendChunks);
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", String.valueOf(e.getMessage())));
+        } finally {
+            if (sessionId != null) asyncUploadService.closeSession(sessionId);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> appendPublished(String fileId, String sessionId, int startChunk,
+                                                                int chunksSent, long appendSize, Instant start) {
+        // Cached copies and layouts describe the file before the append
+        smallFileCache.invalidate(fileId);
+        rangeReadService.invalidate(fileId);
+
+        Duration duration = Duration.between(start, Instant.now());
+        log.info(String.format("[APPEND-SUCCESS] fileId=%s chunks=%d..%d bytes=%d durationMs=%d",
+                fileId, startChunk, startChunk + chunksSent - 1, appendSize, duration.toMillis()));
+
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "fileId", fileId,
+                "sessionId", sessionId,
+                "firstChunk", startChunk,
+                "appendedChunks", chunksSent,
+                "appendedBytes", appendSize,
+                "totalChunks", startChunk + chunksSent,
+                "durationMs", duration.toMillis()
+        ));
+    }
+
+    /**
+     * Marks an append session FAILED. The DatabaseNode refuses this once the append is
+     * published or no longer holds the file, so true means its snowflakes can be deleted.
+     */
+    private boolean failAppendSession(String sessionId) {
+        try {
+            keyClient.updateSessionStatus(sessionId, "FAILED");
+            return true;
+        } catch (Exception e) {
+            log.warning(String.format("[APPEND-FAIL-REFUSED] sessionId=%s, keeping its snowflakes: %s",
+                    sessionId, e.getMessage()));
+            return false;
+        }
+    }
+
+    // Session status as the DatabaseNode sees it, null if it could not be read
+    private String appendSessionStatus(String sessionId) {
+        try {
+            return keyClient.getSessionStatus(sessionId);
+        } catch (Exception e) {
+            log.warning(String.format("[APPEND-STATUS-UNKNOWN] sessionId=%s: %s", sessionId, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the snowflakes of an append's chunk numbers from the DataNodes. Best effort: a
+     * name left behind only moves that replica to another DataNode on the next attempt.
+     */
+    private void discardAppendSnowflakes(String balancer, String fileId, int startChunk, int chunkCount) {
+        List<String> names = new ArrayList<>(chunkCount);
+        for (int chunkNumber = startChunk; chunkNumber < startChunk + chunkCount; chunkNumber++) {
+            names.add(fileId + "_" + chunkNumber + ".snowflake");
+        }
+        if (names.isEmpty()) return;
+        try {
+            balancerClient.deleteSnowflakes(balancer, names);
+        } catch (Exception e) {
+            log.warning(String.format("[APPEND-CLEANUP-FAILED] fileId=%s chunks=%d..%d: %s",
+                    fileId, startChunk, startChunk + chunkCount - 1, e.getMessage()));
+        }
+    }
+
+    /**
+     * 5) Process one chunk: request a per-chunk AES key, encrypt + create the snowflake
+     * asynchronously and send it to the balancer. The caller must hold an in-flight slot,
+     * it is released once the chunk is acknowledged or failed.
+     */
+    private void submitChunk(UploadState upload, int chunkNumber, byte[] chunkBytes, String fingerprint) throws Exception {
+        log.fine(String.format("[CHUNK-READ] fileId=%s chunkNumber=%d bytes=%d", upload.fileId, chunkNumber, chunkBytes.length));
+
+        String chunkId;
+        String base64AesKey;
+        try {
+            // Request a per-chunk AES key from DatabaseNode
+            Map<String, Object> keyResp = keyClient.requestKeyFromKeyService(upload.clientPublicKey);
+            Object chunkIdObj = keyResp.get("chunkId");
+            Object encryptedKeyObj = keyResp.get("encryptedKey");
+            if (chunkIdObj == null || encryptedKeyObj == null) {
+                throw new IllegalStateException("Key service did not return expected fields");
+            }
+            chunkId = chunkIdObj.toString();
+
+            // Decrypt AES key using session private key
+            base64AesKey = keyClient.decryptWithPrivateKey(upload.keyPair.getPrivate(), encryptedKeyObj.toString());
+        } catch (Exception e) {
+            upload.inFlight.release();
+            throw e;
+        }
+
+        final String fixedChunkId = chunkId;
+        String sfName = upload.fileId + "_" + chunkNumber + ".snowflake";
+
+        CompletableFuture<Object> fut = asyncUploadService
+                .processChunk(upload.sessionId, chunkId, upload.fileId, upload.fileName, chunkNumber, upload.totalChunks,
+                        chunkBytes, base64AesKey, fingerprint)
+                .thenCompose(snowflake -> {
+                    // Send snowflake to balancer (no local storage)
+                    return CompletableFuture.supplyAsync(() -> {
+                        try {
+                            Map<String, Object> resp = balancerClient.uploadSnowflakeToBalancer(
+                                    upload.balancer, fixedChunkId, snowflake, sfName);
+                            log.info(String.format("[BALANCER-UPLOADED] chunkId=%s chunkNumber=%d replicas=%s",
+                                    fixedChunkId, chunkNumber, resp.get("replicasCreated")));
+                            return null;
+                        } catch (Exception e) {
+                            log.severe(String.format("[BALANCER-UPLOAD-FAILED] chunkId=%s chunkNumber=%d: ERROR: %s",
+                                    fixedChunkId, chunkNumber, e));
+                            upload.uploadFailed.set(true);
+                            upload.failureReasons.add("chunk " + chunkNumber + ": " + e.getMessage());
+                            log.severe("[CHUNK-FAILED] chunk=" + chunkNumber + " error=" + e);
+                            return null;
+                        }
+                    }, upload.executor);
+                })
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        upload.uploadFailed.set(true);
+                        upload.failureReasons.add("chunk " + chunkNumber + ": " + ex.getMessage());
+                    }
+                    upload.inFlight.release();
+                });
+
+        upload.futures.add(fut);
+    }
+
+    /**
+     * Splits the stream into fixed-size chunks numbered from 'firstChunkNumber' and submits them.
+     * Returns the number following the last submitted chunk.
+     */
+    private int streamFixedChunks(InputStream in, UploadState upload, int firstChunkNumber, int chunkSizeBytes) throws Exception {
+        byte[] buffer = new byte[chunkSizeBytes];
+        int chunkNumber = firstChunkNumber;
+        int read;
+
+        while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+            // Wait for a slot before holding another chunk in memory
+            if (!upload.acquireSlot()) break;
+
+            // Prepare chunk data (trim buffer if last chunk is smaller)
+            byte[] chunkBytes = (read == buffer.length) ? buffer.clone() : Arrays.copyOf(buffer, read);
+            submitChunk(upload, chunkNumber, chunkBytes, null);
+            chunkNumber++;
+        }
+        return chunkNumber;
+    }
+
+    /**
+     * Maps each fingerprint of the base version to the chunk that holds its data.
+     */
+    private Map<String, String> loadReusableChunks(String baseFileId) throws Exception {
+        Map<String, Object> manifest = databaseNodeClient.getFileManifest(baseFileId);
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> entries = (List<Map<String, Object>>) manifest.get("chunks");
+
+        Map<String, String> reusable = new HashMap<>();
+        if (entries != null) {
+            for (Map<String, Object> entry : entries) {
+                Object fp = entry.get("fingerprint");
+                Object dataChunkId = entry.get("dataChunkId");
+                if (fp != null && dataChunkId != null) {
+                    reusable.putIfAbsent(fp.toString(), dataChunkId.toString());
+                }
+            }
+        }
+
+        log.info(String.format("[BASE-MANIFEST] baseFileId=%s fingerprintedChunks=%d", baseFileId, reusable.size()));
+        return reusable;
+    }
+
+    /**
+     * Per-upload state shared by the chunk pipeline.
+     */
+    private static class UploadState {
+        private final String sessionId;
+        private final String fileId;
+        private final String fileName;
+        private final int totalChunks;
+        private final String balancer;
+        private final KeyPair keyPair;
+        private final String clientPublicKey;
+        private final Executor executor;
+        private final Semaphore inFlight;
+
+        private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+        private final AtomicBoolean uploadFailed = new AtomicBoolean(false);
+        private final List<String> failureReasons = Collections.synchronizedList(new ArrayList<>());
+
+        UploadState(String sessionId, String fileId, String fileName, int totalChunks, String balancer,
+                    KeyPair keyPair, String clientPublicKey, Executor executor, int maxInFlight) {
+            this.sessionId = sessionId;
+            this.fileId = fileId;
+            this.fileName = fileName;
+            this.totalChunks = totalChunks;
+            this.balancer = balancer;
+            this.keyPair = keyPair;
+            this.clientPublicKey = clientPublicKey;
+            this.executor = executor;
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+
+        // Blocks until another chunk may be held in memory; false once the upload has failed
+        boolean acquireSlot() throws InterruptedException {
+            inFlight.acquire();
+            if (uploadFailed.get()) {
+                inFlight.release();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Whether a cached file still matches the DatabaseNode's metadata. Deletes and appends made
+     * through other ClientNodes never reach this cache, so every hit costs one metadata lookup.
+     * If the DatabaseNode cannot be asked, the cached copy is served.
+     */
+    private boolean isCurrent(SmallFileCache.CachedFile cached) {
+        try {
+            Map<String, Object> metadata = databaseNodeClient.getFileMetadata(cached.getFileId());
+            return "COMPLETED".equalsIgnoreCase(String.valueOf(metadata.get("uploadStatus")))
+                    && metadata.get("fileSize") instanceof Number size && size.longValue() == cached.getData().length
+                    && cached.getFileName().equals(metadata.get("fileName"));
+        } catch (DatabaseNodeClient.FileNotFoundException e) {
+            return false;
+        } catch (Exception e) {
+            log.warning(String.format("[DOWNLOAD-CACHE-REVALIDATE-FAILED] fileId=%s error=%s (serving cached copy)",
+                    cached.getFileId(), e.getMessage()));
+            return true;
         }
     }
 
     /**
      * Download endpoint: retrieves file by fileId and streams it to the user
      * Steps:
+     * 0. Serve small hot files straight from the local cache (see SmallFileCache)
      * 1. Query DatabaseNode for file chunk map
      * 2. Select a BalancerNode for download routing
      * 3. Generate ephemeral RSA keypair for session
@@ -262,6 +650,26 @@ public class ClientController {
     public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable("fileId") String fileId) {
         log.info(String.format("[DOWNLOAD-REQUEST] fileId=%s", fileId));
 
+        // Step 0: Cache hit skips discovery, the chunk map, key exchange and decryption
+        SmallFileCache.CachedFile hit = smallFileCache.get(fileId);
+        if (hit != null && !isCurrent(hit)) {
+            log.info(String.format("[DOWNLOAD-CACHE-STALE] fileId=%s", fileId));
+            smallFileCache.invalidate(fileId);
+            hit = null;
+        }
+        final SmallFileCache.CachedFile cached = hit;
+        if (cached != null) {
+            log.info(String.format("[DOWNLOAD-CACHE-HIT] fileId=%s bytes=%d", fileId, cached.getData().length));
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentDispositionFormData("attachment", cached.getFileName());
+            headers.setContentLength(cached.getData().length);
+
+            StreamingResponseBody body = outputStream -> outputStream.write(cached.getData());
+            return ResponseEntity.ok().headers(headers).body(body);
+        }
+
         try {
             // Step 1a: Query DatabaseNode for file metadata (fileSize, uploadStatus)
             Map<String, Object> fileMetadata;
@@ -331,57 +739,81 @@ public class ClientController {
             log.info(String.format("[DOWNLOAD-SESSION-KEY] generated RSA keypair for fileId=%s publicKeyLen=%d",
                     fileId, clientPublicKey.length()));
 
+            // Small files are collected while streaming and offered to the cache once complete
+            final boolean cacheable = smallFileCache.isCacheable(fileSize);
+
+            // Snowflake holding each chunk; chunks reused from a previous version live in that version's snowflake.
+            // The map's replica locations (already those of the source snowflake) go along as hints,
+            // sparing the balancer a DatabaseNode lookup per chunk
+            List<BalancerNodeClient.ChunkRef> chunkRefs = new ArrayList<>(chunks.size());
+            for (Map<String, Object> chunk : chunks) {
+                List<String> replicaHints = replicaHosts(chunk.get("replicas"));
+                if (chunk.get("sourceChunkId") != null) {
+                    chunkRefs.add(new BalancerNodeClient.ChunkRef(chunk.get("sourceFileId").toString(),
+                            chunk.get("sourceChunkId").toString(), ((Number) chunk.get("sourceChunkNumber")).intValue(),
+                            replicaHints));
+                } else {
+                    chunkRefs.add(new BalancerNodeClient.ChunkRef(fileId,
+                            chunk.get("chunkId").toString(), ((Number) chunk.get("chunkNumber")).intValue(),
+                            replicaHints));
+                }
+            }
+
             // Step 4: Create streaming response body
             StreamingResponseBody streamingResponseBody = outputStream -> {
                 Instant downloadStart = Instant.now();
-                long totalBytesStreamed = 0;
+                AtomicLong streamed = new AtomicLong();
+                ByteArrayOutputStream cacheBuffer = cacheable ? new ByteArrayOutputStream((int) fileSize) : null;
 
-                try {
-                    // Sequential chunk download loop
-                    for (int i = 0; i < chunks.size(); i++) {
-                        Map<String, Object> chunk = chunks.get(i);
-                        String chunkId = chunk.get("chunkId").toString();
-                        int chunkNumber = ((Number) chunk.get("chunkNumber")).intValue();
-
-                        log.fine(String.format("[CHUNK-DOWNLOAD-START] chunkNumber=%d/%d chunkId=%s",
-                                chunkNumber, totalChunks - 1, chunkId));
+                // 4b-4d for one downloaded snowflake (position = chunk number in this file)
+                BalancerNodeClient.ChunkHandler writeChunk = (position, encryptedSnowflakeBytes) -> {
+                    byte[] plaintext = decryptSnowflake(chunkRefs.get(position), encryptedSnowflakeBytes,
+                            downloadKeyPair, clientPublicKey);
 
-                        // 4a. Download encrypted snowflake from BalancerNode
-                        byte[] encryptedSnowflakeBytes = balancerClient.downloadChunkFromBalancer(
-                                selectedBalancer, fileId, chunkId, chunkNumber);
+                    // 4d. Stream plaintext to user
+                    outputStream.write(plaintext);
+                    long totalStreamed = streamed.addAndGet(plaintext.length);
+                    if (cacheBuffer != null) cacheBuffer.write(plaintext);
 
-                        // Parse snowflake
-                        Snowflake snowflake = Snowflake.fromByteArray(encryptedSnowflakeBytes);
+                    log.info(String.format("[CHUNK-STREAM] chunkNumber=%d plaintextSize=%d totalStreamed=%d",
+                            position, plaintext.length, totalStreamed));
+                };
 
-                        // Validate chunk metadata
-                        if (snowflake.getChunkNumber() != chunkNumber) {
-                            throw new Exception("Chunk number mismatch: expected " + chunkNumber +
-                                    ", got " + snowflake.getChunkNumber());
+                try {
+                    int batchChunks = config.getDownloadBatchChunks();
+                    int position = 0;
+                    while (position < chunkRefs.size()) {
+                        // 4a. Download encrypted snowflakes from BalancerNode, several per request when enabled
+                        if (batchChunks > 1) {
+                            List<BalancerNodeClient.ChunkRef> batch =
+                                    chunkRefs.subList(position, Math.min(position + batchChunks, chunkRefs.size()));
+                            int base = position;
+                            try {
+                                balancerClient.downloadChunkBatch(selectedBalancer, batch,
+                                        (index, snowflakeBytes) -> writeChunk.accept(base + index, snowflakeBytes));
+                                position += batch.size();
+                                continue;
+                            } catch (HttpClientErrorException.NotFound e) {
+                                log.warning("[BALANCER-BATCH-UNSUPPORTED] balancer=" + selectedBalancer + ", downloading chunk by chunk");
+                                batchChunks = 0;
+                            }
                         }
 
-                        // For download, we need to retrieve the existing key, not generate a new one
-                        // Let's use a different approach - batch retrieve keys at the start
-                        // For now, we'll retrieve individual keys (can optimize later)
-                        String encryptedAesKey = retrieveChunkKey(chunkId, clientPublicKey);
-
-                        // Decrypt AES key with session private key
-                        String base64AesKey = keyClient.decryptWithPrivateKey(
-                                downloadKeyPair.getPrivate(), encryptedAesKey);
-
-                        // 4c. Decrypt chunk data
-                        byte[] plaintext = ChunkEncryptionService.decrypt(
-                                snowflake.getEncryptedData(), base64AesKey);
-
-                        // 4d. Stream plaintext to user
-                        outputStream.write(plaintext);
-                        totalBytesStreamed += plaintext.length;
-
-                        log.info(String.format("[CHUNK-STREAM] chunkNumber=%d plaintextSize=%d totalStreamed=%d",
-                                chunkNumber, plaintext.length, totalBytesStreamed));
+                        BalancerNodeClient.ChunkRef ref = chunkRefs.get(position);
+                        log.fine(String.format("[CHUNK-DOWNLOAD-START] chunkNumber=%d/%d chunkId=%s",
+                                position, totalChunks - 1, ref.getChunkId()));
+                        writeChunk.accept(position, balancerClient.downloadChunkFromBalancer(
+                                selectedBalancer, ref.getFileId(), ref.getChunkId(), ref.getChunkNumber(), ref.getReplicas()));
+                        position++;
                     }
 
                     outputStream.flush();
 
+                    long totalBytesStreamed = streamed.get();
+                    if (cacheBuffer != null && totalBytesStreamed == fileSize) {
+                        smallFileCache.put(fileId, fileName, cacheBuffer.toByteArray());
+                    }
+
                     Duration downloadDuration = Duration.between(downloadStart, Instant.now());
                     log.info(String.format("[DOWNLOAD-SUCCESS] fileId=%s fileName=%s totalChunks=%d totalBytes=%d durationMs=%d",
                             fileId, fileName, totalChunks, totalBytesStreamed, downloadDuration.toMillis()));
@@ -411,43 +843,136 @@ public class ClientController {
     }
 
     /**
-     * Helper method to retrieve a single chunk's encryption key from DatabaseNode
+     * DataNode hosts of a chunk's replicas in the file map (its "replicas" list), null if none
+     */
+    private static List<String> replicaHosts(Object replicas) {
+        if (!(replicas instanceof List<?> list) || list.isEmpty()) return null;
+        List<String> hosts = new ArrayList<>(list.size());
+        for (Object replica : list) {
+            if (replica instanceof Map<?, ?> location && location.get("datanodeId") != null) {
+                hosts.add(location.get("datanodeId").toString());
+            }
+        }
+        return hosts.isEmpty() ? null : hosts;
+    }
+
+    /**
+     * Validates a downloaded snowflake and decrypts its chunk with the chunk's existing AES key
+     */
+    private byte[] decryptSnowflake(BalancerNodeClient.ChunkRef ref, byte[] encryptedSnowflakeBytes,
+                                    KeyPair downloadKeyPair, String clientPublicKey) throws Exception {
+        // Parse snowflake
+        Snowflake snowflake = Snowflake.fromByteArray(encryptedSnowflakeBytes);
+
+        // Validate chunk metadata
+        if (snowflake.getChunkNumber() != ref.getChunkNumber()) {
+            throw new Exception("Chunk number mismatch: expected " + ref.getChunkNumber() +
+                    ", got " + snowflake.getChunkNumber());
+        }
+
+        // 4b. Retrieve the chunk's existing AES key (not a newly generated one)
+        String encryptedAesKey = keyClient.retrieveChunkKey(ref.getChunkId(), clientPublicKey);
+
+        // Decrypt AES key with session private key
+        String base64AesKey = keyClient.decryptWithPrivateKey(
+                downloadKeyPair.getPrivate(), encryptedAesKey);
+
+        // 4c. Decrypt chunk data
+        return ChunkEncryptionService.decrypt(snowflake.getEncryptedData(), base64AesKey);
+    }
+
+    /**
+     * Range read endpoint: returns 'length' plaintext bytes starting at 'offset'.
+     * Only the chunks covering the range are fetched and decrypted (see RangeReadService).
+     * The full file size is always returned in X-File-Size, so length=0 can be used to probe it.
+     *
+     * @param fileId UUID of the file to read
+     * @param offset Byte offset into the plaintext file
+     * @param length Number of bytes to read (capped by frostbyte.clientnode.range-max-length)
      */
-    private String retrieveChunkKey(String chunkId, String clientPublicKey) throws Exception {
-        // This should call a key retrieval endpoint on DatabaseNode
-        // For now, we'll use the existing requestKeyFromKeyService method
-        // In production, this should be a dedicated /keys/retrieve endpoint
-
-        // Using KeyClient's method to retrieve key for specific chunkId
-        // Note: The existing requestKeyFromKeyService generates a NEW key,
-        // so we need to add a proper retrieve method to KeyClient
-
-        // For now, let's create the request manually
-        String dbNodeUrl = discoveryService.discoverDatabaseNode();
-        if (!dbNodeUrl.startsWith("http://") && !dbNodeUrl.startsWith("https://")) {
-            dbNodeUrl = "http://" + dbNodeUrl;
+    @GetMapping("/download/{fileId}/range")
+    public ResponseEntity<byte[]> readRange(@PathVariable("fileId") String fileId,
+                                            @RequestParam("offset") long offset,
+                                            @RequestParam("length") int length) {
+        long maxLength = config.getRangeMaxLength() > 0 ? config.getRangeMaxLength() : 64L * 1024 * 1024;
+        if (offset < 0 || length < 0 || length > maxLength) {
+            log.warning(String.format("[RANGE-BAD-REQUEST] fileId=%s offset=%d length=%d", fileId, offset, length));
+            return ResponseEntity.badRequest().build();
         }
-        String endpoint = dbNodeUrl + "/keys/retrieve";
 
-        org.springframework.web.client.RestTemplate rest = new org.springframework.web.client.RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("X-API-Key", config.getMasterAPIKey());
+        try {
+            RangeReadService.FileLayout layout = rangeReadService.getLayout(fileId);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("X-File-Size", Long.toString(layout.getFileSize()));
+
+            if (offset > layout.getFileSize()) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + layout.getFileSize());
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+            }
+
+            byte[] data = rangeReadService.read(layout, offset, length);
+
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            if (data.length > 0) {
+                headers.set(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d",
+                        offset, offset + data.length - 1, layout.getFileSize()));
+            }
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(data);
 
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("chunkId", chunkId);
-        requestBody.put("publicKey", clientPublicKey);
+        } catch (DatabaseNodeClient.FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (RangeReadService.FileNotReadyException e) {
+            log.warning(String.format("[RANGE-NOT-READY] fileId=%s reason=%s", fileId, e.getMessage()));
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            log.severe("[RANGE-READ-FAILED] fileId=" + fileId + " Error: " + e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
 
-        org.springframework.http.HttpEntity<Map<String, Object>> entity =
-            new org.springframework.http.HttpEntity<>(requestBody, headers);
+    /**
+     * Delete endpoint: removes the file's metadata on the DatabaseNode and
+     * drops it from the local small file cache.
+     */
+    @DeleteMapping("/file/{fileId}")
+    public ResponseEntity<Map<String, Object>> deleteFile(@PathVariable("fileId") String fileId) {
+        log.info(String.format("[DELETE-REQUEST] fileId=%s", fileId));
 
-        org.springframework.http.ResponseEntity<Map> response = rest.postForEntity(
-            endpoint, entity, Map.class);
+        // Invalidate first so a failed delete never leaves a stale entry behind
+        smallFileCache.invalidate(fileId);
+        rangeReadService.invalidate(fileId);
 
-        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
-            throw new Exception("Failed to retrieve chunk key: " + response.getStatusCode());
+        try {
+            Map<String, Object> resp = databaseNodeClient.deleteFile(fileId);
+            return ResponseEntity.ok(resp);
+        } catch (DatabaseNodeClient.FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.severe("[DELETE-FAILED] fileId=" + fileId + " Error: " + e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage() != null ? e.getMessage() : e.toString()));
         }
+    }
+
+    /**
+     * Cache metrics: hits, misses, evictions, admission rejections and byte usage.
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(smallFileCache.stats());
+    }
 
-        return response.getBody().get("encryptedKey").toString();
+    /**
+     * Resolves the per-upload in-flight chunk limit.
+     * The configured maximum wins over the request, and defaults to twice the thread pool.
+     */
+    private int resolveMaxInFlightChunks(int requested) {
+        int configured = config.getMaxInFlightChunks();
+        if (configured <= 0) {
+            configured = Math.max(1, config.getMaxThreadPool()) * 2;
+        }
+        if (requested <= 0) return configured;
+        return Math.min(requested, configured);
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "frostbyte.clientnode")
@@ -22,6 +25,43 @@ public class configModel {
     private int maxThreadPool;
     private int chunkSizeMB;
 
+    // Ingest admission control: uploads beyond these get 503 with Retry-After
+    private long admissionMaxInflightBytes = 10737418240L; // Content-Length of uploads being processed
+    private int admissionMaxInflightRequests = 16;
+    private long admissionRetryAfterMaxS = 60;
+
+    // Balancer upload retries when the balancer answers 503 with Retry-After (jittered)
+    private int balancerBusyRetries = 5;
+
+    // Upper bound on chunks buffered per upload (0 = twice the thread pool)
+    private int maxInFlightChunks;
+
+    // Weighted fair scheduling of upload tasks, keyed by the X-Caller-Id header
+    private int defaultUploadWeight = 1;
+    private Map<String, Integer> uploadCallerWeights = new HashMap<>();
+
+    // Versioned (delta) uploads: content-defined chunk size and fingerprint HMAC key
+    private int deltaAvgChunkSizeKB;
+    private String fingerprintSecret;
+
+    // Send snowflakes to the balancer's streamed endpoint (relayed to DataNodes without buffering)
+    private boolean streamingUpload;
+
+    // Download chunks from the balancer's streamed endpoint (relayed from DataNodes without buffering)
+    private boolean streamingDownload;
+
+    // Chunks fetched per balancer request when downloading a whole file (0 or 1 = one request per chunk)
+    private int downloadBatchChunks = 32;
+
+    // Small file cache params (cacheMaxBytes = 0 disables the cache)
+    private long cacheMaxBytes;
+    private long cacheMaxEntryBytes;
+    private int cacheTtlSeconds;
+
+    // Range read params
+    private long rangeMaxLength;     // largest single range request (0 = 64MB)
+    private long rangeCacheMaxBytes; // LRU of decrypted chunks for range reads (0 disables, raised to one chunk if smaller)
+
     // Storage params
     private String snowflakeStorageFolder;
 
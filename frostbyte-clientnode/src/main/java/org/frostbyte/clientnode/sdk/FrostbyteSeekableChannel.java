@@ -0,0 +1,160 @@
+package org.frostbyte.clientnode.sdk;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Duration;
+
+/*
+ * FrostbyteSeekableChannel
+ * Read-only SeekableByteChannel over a file stored in Frostbyte, backed by the ClientNode's
+ * range endpoint (GET /public/download/{fileId}/range?offset=&length=).
+ *
+ * Reads are served from a block-aligned read-ahead buffer, so a sequence of small reads
+ * turns into one HTTP request per block. Only the chunks covering a block are fetched and
+ * decrypted by the ClientNode, which also keeps recently decrypted chunks in memory.
+ *
+ * Depends only on the JDK so it can be copied into consumer applications as is.
+ *
+ * Usage:
+ *   try (SeekableByteChannel ch = new FrostbyteSeekableChannel("http://clientnode:7082", fileId)) {
+ *       ch.position(ch.size() - 8);  // e.g. Parquet footer
+ *       ch.read(buffer);
+ *   }
+ */
+public class FrostbyteSeekableChannel implements SeekableByteChannel {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final HttpClient http;
+    private final String rangeEndpoint;
+    private final int blockSize;
+    private final long size;
+
+    private long position;
+    private boolean open = true;
+
+    // Current read-ahead block: bytes [blockStart, blockStart + block.length)
+    private byte[] block = new byte[0];
+    private long blockStart = -1;
+
+    public FrostbyteSeekableChannel(String clientNodeUrl, String fileId) throws IOException {
+        this(clientNodeUrl, fileId, DEFAULT_BLOCK_SIZE);
+    }
+
+    public FrostbyteSeekableChannel(String clientNodeUrl, String fileId, int blockSize) throws IOException {
+        if (!clientNodeUrl.startsWith("http://") && !clientNodeUrl.startsWith("https://")) {
+            clientNodeUrl = "http://" + clientNodeUrl;
+        }
+        if (clientNodeUrl.endsWith("/")) {
+            clientNodeUrl = clientNodeUrl.substring(0, clientNodeUrl.length() - 1);
+        }
+        this.rangeEndpoint = clientNodeUrl + "/public/download/" + fileId + "/range";
+        this.blockSize = Math.max(4096, blockSize);
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+
+        // A zero-length read only returns the file size
+        HttpResponse<byte[]> probe = fetch(0, 0);
+        this.size = probe.headers().firstValueAsLong("X-File-Size")
+                .orElseThrow(() -> new IOException("ClientNode did not report X-File-Size"));
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) return -1;
+
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            if (position < blockStart || position >= blockStart + block.length) {
+                loadBlock(position);
+            }
+            int from = (int) (position - blockStart);
+            int n = Math.min(dst.remaining(), block.length - from);
+            dst.put(block, from, n);
+            position += n;
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) throw new IllegalArgumentException("position must be >= 0");
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        block = new byte[0];
+    }
+
+    private void loadBlock(long pos) throws IOException {
+        long start = pos - (pos % blockSize);
+        int length = (int) Math.min(blockSize, size - start);
+        HttpResponse<byte[]> resp = fetch(start, length);
+        if (resp.body().length == 0) {
+            throw new IOException("Empty range response at offset " + start);
+        }
+        block = resp.body();
+        blockStart = start;
+    }
+
+    private HttpResponse<byte[]> fetch(long offset, int length) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create(rangeEndpoint + "?offset=" + offset + "&length=" + length))
+                .timeout(Duration.ofMinutes(5))
+                .GET()
+                .build();
+        try {
+            HttpResponse<byte[]> resp = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (resp.statusCode() != 206 && resp.statusCode() != 200) {
+                throw new IOException("Range read failed: HTTP " + resp.statusCode() + " at offset " + offset);
+            }
+            return resp;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during range read", e);
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) throw new ClosedChannelException();
+    }
+}
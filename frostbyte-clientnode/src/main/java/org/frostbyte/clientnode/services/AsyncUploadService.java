@@ -10,11 +10,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +21,9 @@ import java.util.logging.Logger;
 * Handles asynchronous processing of file chunks: encryption and registration with DatabaseNode.
 * Uses a configurable thread pool for concurrent processing.
 * thread pool size are taken from application.properties
+*
+* Tasks are queued per upload session and served with weighted fair scheduling
+* (see FairUploadScheduler), weights come from frostbyte.clientnode.upload-caller-weights
  */
 @Service
 public class AsyncUploadService {
@@ -31,7 +31,10 @@ public class AsyncUploadService {
 
     private final configModel config;
     private final KeyClient keyClient;
-    private ExecutorService executor;
+    private FairUploadScheduler scheduler;
+
+    // Queue used by callers that do not belong to an upload session
+    private static final String SHARED_QUEUE = "shared";
 
     public AsyncUploadService(configModel config, KeyClient keyClient) {
         this.config = config;
@@ -46,43 +49,63 @@ public class AsyncUploadService {
             if (config != null && config.getMaxThreadPool() > 0) threads = config.getMaxThreadPool();
         } catch (Exception ignored) {}
 
-        final AtomicInteger counter = new AtomicInteger(1);
-
-        // Custom thread factory to name threads
-        ThreadFactory tf = r -> {
-            Thread t = new Thread(r, "async-upload-" + counter.getAndIncrement());
-            t.setDaemon(false);
-            return t;
-        };
-
-        executor = Executors.newFixedThreadPool(threads, tf);
+        scheduler = new FairUploadScheduler(threads, "async-upload-");
+        scheduler.openSession(SHARED_QUEUE, defaultWeight());
 
-        log.info(String.format("AsyncUploadService initialized. threads=%d chunkSize=%dMB (in-memory processing, no local storage)",
-                threads, (config != null ? config.getChunkSizeMB() : -1)));
+        log.info(String.format("AsyncUploadService initialized. threads=%d chunkSize=%dMB callerWeights=%s (in-memory processing, no local storage)",
+                threads, (config != null ? config.getChunkSizeMB() : -1),
+                (config != null ? config.getUploadCallerWeights() : Map.of())));
     }
 
     @PreDestroy
     public void shutdown() {
-        if (executor != null) {
+        if (scheduler != null) {
             try {
-                executor.shutdown();
-                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
+                scheduler.shutdown(10, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                executor.shutdownNow();
             }
         }
     }
 
+    /**
+     * Opens a fair-share queue for an upload session.
+     * The weight is looked up by caller id, unknown callers get the default weight.
+     */
+    public void openSession(String sessionId, String callerId) {
+        int weight = defaultWeight();
+        Map<String, Integer> weights = config.getUploadCallerWeights();
+        if (callerId != null && weights != null && weights.get(callerId) != null) {
+            weight = weights.get(callerId);
+        }
+        scheduler.openSession(sessionId, weight);
+        log.fine(String.format("[FAIR-QUEUE-OPEN] sessionId=%s caller=%s weight=%d", sessionId, callerId, weight));
+    }
+
+    public void closeSession(String sessionId) {
+        scheduler.closeSession(sessionId);
+    }
+
+    /**
+     * Executor that queues tasks on the session's fair-share queue.
+     */
+    public Executor executorFor(String sessionId) {
+        return scheduler.executorFor(sessionId);
+    }
+
+    private int defaultWeight() {
+        return config != null && config.getDefaultUploadWeight() > 0 ? config.getDefaultUploadWeight() : 1;
+    }
+
     /**
      * Process chunk: encrypt data, create Snowflake object in memory (no local storage)
      * Returns the Snowflake object which contains all the encrypted data and metadata
+     * The task runs on the given session's fair-share queue.
+     * 'fingerprint' is optional and only recorded for content-defined (versioned) uploads.
      */
-    public CompletableFuture<Snowflake> processChunk(String chunkId, String fileId, String originalFileName,
+    public CompletableFuture<Snowflake> processChunk(String sessionId, String chunkId, String fileId, String originalFileName,
                                                      int chunkNumber, int totalChunks,
-                                                     byte[] chunkData, String base64AesKey) {
+                                                     byte[] chunkData, String base64AesKey, String fingerprint) {
         return CompletableFuture.supplyAsync(() -> {
 
             // Error handling
@@ -125,7 +148,8 @@ public class AsyncUploadService {
                 // Register chunk with DatabaseNode via KeyClient
                 try {
                     Instant regStart = Instant.now();
-                    Map<String, Object> regResp = keyClient.registerChunk(chunkId, fileId, chunkNumber, chunkData.length, Long.toString(crcValue));
+                    Map<String, Object> regResp = keyClient.registerChunk(chunkId, fileId, chunkNumber, chunkData.length,
+                            Long.toString(crcValue), fingerprint);
                     Duration regDuration = Duration.between(regStart, Instant.now());
                     log.info(String.format("[REGISTERED] chunkId=%s fileId=%s chunkNumber=%d regMs=%d response=%s thread=%s",
                             chunkId, fileId, chunkNumber, regDuration.toMillis(), (regResp != null ? regResp.toString() : "null"), threadName));
@@ -147,12 +171,12 @@ public class AsyncUploadService {
                         chunkId, fileId, chunkNumber, threadName), e);
                 throw new RuntimeException(e);
             }
-        }, executor);
+        }, executorFor(sessionId));
     }
 
 
-    // Expose executor for chaining futures when required
-    public ExecutorService getExecutor() {
-        return executor;
+    // Expose executor for chaining futures when required (shared fair-share queue)
+    public Executor getExecutor() {
+        return executorFor(SHARED_QUEUE);
     }
 }
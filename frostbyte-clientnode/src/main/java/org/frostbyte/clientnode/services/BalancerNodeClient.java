@@ -8,14 +8,26 @@ import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +41,12 @@ import java.util.logging.Logger;
 public class BalancerNodeClient {
     private static final Logger log = Logger.getLogger(BalancerNodeClient.class.getName());
 
+    // Frame status bytes of the balancer's download streams
+    private static final byte FRAME_OK = 0;
+    private static final byte FRAME_FAILED = 1;
+    private static final byte FRAME_DATA = 2;
+    private static final byte FRAME_RETRY = 3;
+
     private final RestTemplate rest;
     private final ObjectMapper mapper = new ObjectMapper();
     private final configModel config;
@@ -54,6 +72,8 @@ public class BalancerNodeClient {
      * @param snowflake the Snowflake object containing encrypted data and metadata
      * @param fileName file name to report to balancer (e.g., fileId_chunkNum.snowflake)
      * @return response JSON as Map
+     * @throws HttpServerErrorException.ServiceUnavailable if the balancer stayed busy for
+     *         balancer-busy-retries attempts
      */
     public Map<String, Object> uploadSnowflakeToBalancer(String balancerHost, String chunkId, Snowflake snowflake, String fileName) throws Exception {
         if (snowflake == null) {
@@ -66,10 +86,6 @@ public class BalancerNodeClient {
         }
         String endpoint = host + (host.endsWith("/") ? "" : "/") + "balancer/upload/snowflake";
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-        if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
-
         // Convert Snowflake to bytes using its built-in serialization (fully in-memory)
         byte[] snowflakeBytes;
         try {
@@ -80,6 +96,56 @@ public class BalancerNodeClient {
             throw new RuntimeException("Failed to serialize snowflake", e);
         }
 
+        // A busy balancer answers 503 with Retry-After: wait at least that long (jittered, growing
+        // with each rejection) before sending again
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return sendSnowflake(endpoint, chunkId, snowflakeBytes, fileName);
+            } catch (HttpServerErrorException.ServiceUnavailable e) {
+                long retryAfterMs = retryAfterMs(e);
+                if (retryAfterMs < 0 || attempt >= config.getBalancerBusyRetries()) {
+                    throw e;
+                }
+                long backoffMs = (long) (Math.max(retryAfterMs, 1000L << Math.min(attempt, 5))
+                        * (1 + ThreadLocalRandom.current().nextDouble(0.5)));
+                log.warning(String.format("[BALANCER-BUSY] chunkId=%s retryAfter=%dms backoff=%dms attempt=%d/%d",
+                        chunkId, retryAfterMs, backoffMs, attempt + 1, config.getBalancerBusyRetries()));
+                Thread.sleep(backoffMs);
+            }
+        }
+    }
+
+    // Retry-After as delta-seconds or an HTTP date; -1 if absent or unreadable
+    public static long retryAfterMs(HttpServerErrorException e) {
+        HttpHeaders headers = e.getResponseHeaders();
+        String value = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) return -1;
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException notSeconds) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(Instant.now(), at.toInstant()).toMillis());
+            } catch (DateTimeParseException notDate) {
+                return -1;
+            }
+        }
+    }
+
+    private Map<String, Object> sendSnowflake(String endpoint, String chunkId, byte[] snowflakeBytes, String fileName) throws Exception {
+        if (config.isStreamingUpload()) {
+            try {
+                return streamSnowflakeToBalancer(endpoint + "/stream", chunkId, snowflakeBytes, fileName);
+            } catch (HttpClientErrorException.NotFound e) {
+                // Balancer predates the streamed endpoint
+                log.warning("[BALANCER-STREAM-UNSUPPORTED] falling back to multipart upload: " + endpoint);
+            }
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
+
         // Create a ByteArrayResource that provides a filename for multipart upload
         ByteArrayResource resource = new ByteArrayResource(snowflakeBytes) {
             @Override
@@ -115,6 +181,63 @@ public class BalancerNodeClient {
         }
     }
 
+    /**
+     * Uploads the snowflake as a raw request body; the balancer relays it to DataNodes
+     * while receiving it instead of buffering the whole chunk first.
+     */
+    private Map<String, Object> streamSnowflakeToBalancer(String endpoint, String chunkId, byte[] snowflakeBytes, String fileName) throws Exception {
+        String url = UriComponentsBuilder.fromHttpUrl(endpoint)
+                .queryParam("chunkId", chunkId)
+                .queryParam("fileName", fileName)
+                .toUriString();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentLength(snowflakeBytes.length);
+        if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
+
+        Instant start = Instant.now();
+        ResponseEntity<String> resp = rest.postForEntity(url, new HttpEntity<>(snowflakeBytes, headers), String.class);
+        long ms = Duration.between(start, Instant.now()).toMillis();
+        log.info(String.format("[BALANCER-UPLOAD-STREAM] POST %s status=%d timeMs=%d size=%d file=%s",
+                endpoint, resp.getStatusCode().value(), ms, snowflakeBytes.length, fileName));
+        if (!resp.getStatusCode().is2xxSuccessful()) {
+            String msg = "Balancer upload failed with status " + resp.getStatusCode().value() + " body=" + resp.getBody();
+            log.severe("[BALANCER-UPLOAD-ERR] " + msg);
+            throw new RuntimeException(msg);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> bodyMap = mapper.readValue(resp.getBody(), Map.class);
+        return bodyMap;
+    }
+
+    /**
+     * Ask a BalancerNode to delete snowflakes from every DataNode (and its caches), e.g. the
+     * chunks of an append that was aborted, so the names can be uploaded again.
+     *
+     * @param balancerHost host:port of the balancer (with or without http://)
+     * @param snowflakeNames snowflake file names (fileId_chunkNum.snowflake)
+     * @throws Exception if the balancer or one of the DataNodes did not complete the delete
+     */
+    public void deleteSnowflakes(String balancerHost, List<String> snowflakeNames) throws Exception {
+        String host = balancerHost;
+        if (!host.startsWith("http://") && !host.startsWith("https://")) {
+            host = "http://" + host;
+        }
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "balancer/snowflakes/delete";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (config.getMasterAPIKey() != null) {
+            headers.set("X-API-Key", config.getMasterAPIKey());
+        }
+
+        ResponseEntity<String> resp = rest.postForEntity(endpoint,
+                new HttpEntity<>(Map.of("snowflakeNames", snowflakeNames), headers), String.class);
+        log.info(String.format("[BALANCER-DELETE] POST %s status=%d names=%d",
+                endpoint, resp.getStatusCode().value(), snowflakeNames.size()));
+    }
+
     /**
      * Download a chunk from BalancerNode.
      * BalancerNode will select an available replica, validate CRC, and return encrypted snowflake.
@@ -127,6 +250,17 @@ public class BalancerNodeClient {
      * @throws Exception if download fails
      */
     public byte[] downloadChunkFromBalancer(String balancerHost, String fileId, String chunkId, int chunkNumber) throws Exception {
+        return downloadChunkFromBalancer(balancerHost, fileId, chunkId, chunkNumber, null);
+    }
+
+    /**
+     * Download a chunk from BalancerNode, naming the DataNodes that hold it.
+     * The balancer reads from these first and skips its DatabaseNode replica lookup.
+     *
+     * @param replicaHints DataNode hosts from the file map (null: let the balancer look them up)
+     */
+    public byte[] downloadChunkFromBalancer(String balancerHost, String fileId, String chunkId, int chunkNumber,
+                                            List<String> replicaHints) throws Exception {
         String host = balancerHost;
         if (!host.startsWith("http://") && !host.startsWith("https://")) {
             host = "http://" + host;
@@ -144,8 +278,21 @@ public class BalancerNodeClient {
         requestBody.put("fileId", fileId);
         requestBody.put("chunkId", chunkId);
         requestBody.put("chunkNumber", chunkNumber);
+        if (replicaHints != null && !replicaHints.isEmpty()) {
+            requestBody.put("replicas", replicaHints);
+        }
 
         String json = mapper.writeValueAsString(requestBody);
+
+        if (config.isStreamingDownload()) {
+            try {
+                return relayChunkFromBalancer(endpoint + "/stream", json, chunkId, chunkNumber);
+            } catch (HttpClientErrorException.NotFound e) {
+                // Balancer predates the relay endpoint
+                log.warning("[BALANCER-RELAY-UNSUPPORTED] falling back to buffered download: " + endpoint);
+            }
+        }
+
         HttpEntity<String> entity = new HttpEntity<>(json, headers);
 
         try {
@@ -174,4 +321,176 @@ public class BalancerNodeClient {
             throw e;
         }
     }
+
+    /**
+     * Download a chunk through the balancer's relay, which forwards the snowflake while it
+     * arrives from the DataNode. The response is a sequence of [byte status][int length][payload]
+     * frames: FRAME_DATA segments, then FRAME_OK once the CRC32 matched. FRAME_RETRY drops the
+     * segments received so far (corrupt replica, the next one follows); FRAME_FAILED carries
+     * the error when no replica could serve the chunk.
+     */
+    private byte[] relayChunkFromBalancer(String endpoint, String json, String chunkId, int chunkNumber) throws Exception {
+        Instant start = Instant.now();
+        byte[] snowflakeBytes;
+        try {
+            snowflakeBytes = rest.execute(endpoint, HttpMethod.POST, request -> {
+                request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                if (config.getMasterAPIKey() != null) {
+                    request.getHeaders().set("X-API-Key", config.getMasterAPIKey());
+                }
+                request.getBody().write(json.getBytes(StandardCharsets.UTF_8));
+            }, response -> readRelayFrames(response.getBody(), chunkId));
+        } catch (HttpClientErrorException.NotFound e) {
+            throw e;
+        } catch (Exception e) {
+            log.log(Level.SEVERE, String.format("[BALANCER-RELAY-EX] Failed to download chunk chunkId=%s chunkNumber=%d",
+                    chunkId, chunkNumber), e);
+            throw e;
+        }
+
+        log.info(String.format("[BALANCER-RELAY-SUCCESS] chunkId=%s chunkNumber=%d size=%d timeMs=%d",
+                chunkId, chunkNumber, snowflakeBytes.length, Duration.between(start, Instant.now()).toMillis()));
+        return snowflakeBytes;
+    }
+
+    /**
+     * Reads relay frames up to FRAME_OK and returns the snowflake they carried
+     *
+     * @throws IllegalStateException on FRAME_FAILED
+     * @throws IOException on an unknown status or a truncated stream
+     */
+    static byte[] readRelayFrames(InputStream body, String chunkId) throws IOException {
+        DataInputStream frames = new DataInputStream(body);
+        ByteArrayOutputStream snowflake = new ByteArrayOutputStream();
+        while (true) {
+            byte status = frames.readByte();
+            byte[] payload = new byte[frames.readInt()];
+            frames.readFully(payload);
+            switch (status) {
+                case FRAME_DATA -> snowflake.write(payload, 0, payload.length);
+                case FRAME_OK -> {
+                    return snowflake.toByteArray();
+                }
+                case FRAME_RETRY -> {
+                    log.warning(String.format("[BALANCER-RELAY-RETRY] chunkId=%s dropped=%d bytes, next replica",
+                            chunkId, snowflake.size()));
+                    snowflake.reset();
+                }
+                case FRAME_FAILED -> throw new IllegalStateException(
+                        "Balancer relay failed: " + new String(payload, StandardCharsets.UTF_8));
+                default -> throw new IOException("Unknown relay frame status " + status);
+            }
+        }
+    }
+
+    /**
+     * Download several chunks with one request to the balancer's /balancer/download/batch.
+     * Snowflakes are handed to the handler in request order while the response streams in,
+     * so at most one chunk is held in memory. A chunk the balancer could not serve in the
+     * batch is retried on its own through downloadChunkFromBalancer.
+     *
+     * @throws HttpClientErrorException.NotFound if the balancer has no batch endpoint
+     */
+    public void downloadChunkBatch(String balancerHost, List<ChunkRef> chunks, ChunkHandler handler) throws Exception {
+        String host = balancerHost;
+        if (!host.startsWith("http://") && !host.startsWith("https://")) {
+            host = "http://" + host;
+        }
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "balancer/download/batch";
+        byte[] json = mapper.writeValueAsBytes(Map.of("chunks", chunks));
+
+        Instant start = Instant.now();
+        try {
+            rest.execute(endpoint, HttpMethod.POST, request -> {
+                request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                if (config.getMasterAPIKey() != null) {
+                    request.getHeaders().set("X-API-Key", config.getMasterAPIKey());
+                }
+                request.getBody().write(json);
+            }, response -> {
+                DataInputStream frames = new DataInputStream(response.getBody());
+                for (int expected = 0; expected < chunks.size(); expected++) {
+                    // Frame: [int index][byte status][int length][payload]
+                    int index = frames.readInt();
+                    byte status = frames.readByte();
+                    byte[] payload = new byte[frames.readInt()];
+                    frames.readFully(payload);
+                    if (index != expected) {
+                        throw new IOException("Batch frame out of order: expected " + expected + ", got " + index);
+                    }
+
+                    ChunkRef chunk = chunks.get(index);
+                    try {
+                        if (status != FRAME_OK) {
+                            log.warning(String.format("[BALANCER-BATCH-CHUNK-FAILED] chunkId=%s error=%s, retrying alone",
+                                    chunk.getChunkId(), new String(payload, StandardCharsets.UTF_8)));
+                            payload = downloadChunkFromBalancer(balancerHost, chunk.getFileId(), chunk.getChunkId(),
+                                    chunk.getChunkNumber(), chunk.getReplicas());
+                        }
+                        handler.accept(index, payload);
+                    } catch (IOException | RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            if (!(e instanceof HttpClientErrorException.NotFound)) {
+                log.log(Level.SEVERE, String.format("[BALANCER-BATCH-EX] Failed to download batch of %d chunks from %s",
+                        chunks.size(), endpoint), e);
+            }
+            throw e;
+        }
+
+        log.info(String.format("[BALANCER-BATCH-SUCCESS] chunks=%d timeMs=%d",
+                chunks.size(), Duration.between(start, Instant.now()).toMillis()));
+    }
+
+    /**
+     * Receives the snowflakes of a batch download, in order
+     */
+    @FunctionalInterface
+    public interface ChunkHandler {
+        void accept(int index, byte[] snowflakeBytes) throws Exception;
+    }
+
+    /**
+     * One chunk of a batch download (fileId/chunkNumber name the snowflake on the DataNode,
+     * replicas optionally name the DataNodes holding it)
+     */
+    public static class ChunkRef {
+        private final String fileId;
+        private final String chunkId;
+        private final int chunkNumber;
+        private final List<String> replicas;
+
+        public ChunkRef(String fileId, String chunkId, int chunkNumber) {
+            this(fileId, chunkId, chunkNumber, null);
+        }
+
+        public ChunkRef(String fileId, String chunkId, int chunkNumber, List<String> replicas) {
+            this.fileId = fileId;
+            this.chunkId = chunkId;
+            this.chunkNumber = chunkNumber;
+            this.replicas = replicas;
+        }
+
+        public String getFileId() {
+            return fileId;
+        }
+
+        public String getChunkId() {
+            return chunkId;
+        }
+
+        public int getChunkNumber() {
+            return chunkNumber;
+        }
+
+        public List<String> getReplicas() {
+            return replicas;
+        }
+    }
 }
@@ -49,6 +49,31 @@ public class ConfigLoader {
             writer.write("# Client Node Parameters\n");
             writer.write("frostbyte.clientnode.max-thread-pool=10\n");
             writer.write("frostbyte.clientnode.chunk-size-mb=512\n");
+            writer.write("frostbyte.clientnode.max-in-flight-chunks=0\n");
+            writer.write("frostbyte.clientnode.admission-max-inflight-bytes=10737418240\n");
+            writer.write("frostbyte.clientnode.admission-max-inflight-requests=16\n");
+            writer.write("frostbyte.clientnode.admission-retry-after-max-s=60\n");
+            writer.write("frostbyte.clientnode.balancer-busy-retries=5\n");
+            writer.write("\n");
+            writer.write("# Upload Fair Scheduling (weights per X-Caller-Id header)\n");
+            writer.write("frostbyte.clientnode.default-upload-weight=4\n");
+            writer.write("frostbyte.clientnode.upload-caller-weights.bulk-ingest=1\n");
+            writer.write("\n");
+            writer.write("# Versioned Uploads (content-defined chunking)\n");
+            writer.write("frostbyte.clientnode.delta-avg-chunk-size-kb=4096\n");
+            writer.write("frostbyte.clientnode.fingerprint-secret=\n");
+            writer.write("frostbyte.clientnode.streaming-upload=false\n");
+            writer.write("frostbyte.clientnode.streaming-download=false\n");
+            writer.write("frostbyte.clientnode.download-batch-chunks=32\n");
+            writer.write("\n");
+            writer.write("# Small File Cache (0 disables)\n");
+            writer.write("frostbyte.clientnode.cache-max-bytes=268435456\n");
+            writer.write("frostbyte.clientnode.cache-max-entry-bytes=1048576\n");
+            writer.write("frostbyte.clientnode.cache-ttl-seconds=300\n");
+            writer.write("\n");
+            writer.write("# Range Reads\n");
+            writer.write("frostbyte.clientnode.range-max-length=67108864\n");
+            writer.write("frostbyte.clientnode.range-cache-max-bytes=536870912\n");
             writer.write("\n");
             writer.write("# Storage Parameters\n");
             writer.write("frostbyte.clientnode.snowflake-storage-folder=chunks\n");
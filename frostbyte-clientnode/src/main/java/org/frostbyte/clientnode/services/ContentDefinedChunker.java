@@ -0,0 +1,157 @@
+package org.frostbyte.clientnode.services;
+
+import org.frostbyte.clientnode.models.configModel;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+/*
+ * ContentDefinedChunker
+ * Splits a stream into content-defined chunks with a Gear rolling hash, and fingerprints
+ * every chunk with HMAC-SHA256. Because cut points depend on content rather than offsets,
+ * an insert or delete near the start of a file only changes the chunks around the edit,
+ * which is what lets versioned uploads reuse the rest of the previous version.
+ *
+ * Fingerprints are keyed (frostbyte.clientnode.fingerprint-secret) so the DatabaseNode
+ * stores opaque values and never learns plaintext hashes.
+ *
+ * The gear table is derived from a fixed seed: changing it, or the chunk size settings,
+ * changes every cut point and disables reuse against versions uploaded before.
+ */
+@Service
+public class ContentDefinedChunker {
+    private static final Logger log = Logger.getLogger(ContentDefinedChunker.class.getName());
+
+    // Placeholder shipped in old configs, never a usable key
+    private static final String SECRET_PLACEHOLDER = "CHANGE_ME";
+
+    private static final long GEAR_SEED = 0x46524F5354425954L; // "FROSTBYT"
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(GEAR_SEED);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private static final int READ_BUFFER = 64 * 1024;
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long mask;
+    private final byte[] fingerprintKey;
+
+    public ContentDefinedChunker(configModel config) {
+        int avgKB = config.getDeltaAvgChunkSizeKB() > 0 ? config.getDeltaAvgChunkSizeKB() : 4096;
+        this.avgSize = Integer.highestOneBit(avgKB * 1024);
+        this.minSize = avgSize / 4;
+        this.maxSize = avgSize * 4;
+        // A cut is taken when the top log2(avg) bits of the hash are zero
+        this.mask = -1L << (64 - Integer.numberOfTrailingZeros(avgSize));
+
+        if (SECRET_PLACEHOLDER.equals(config.getFingerprintSecret())) {
+            // Every node running the placeholder would share a publicly known key
+            log.severe("[FINGERPRINT-SECRET] frostbyte.clientnode.fingerprint-secret is still set to the "
+                    + SECRET_PLACEHOLDER + " placeholder, set a real secret or leave it empty to use master-api-key");
+            throw new IllegalStateException("frostbyte.clientnode.fingerprint-secret must not be " + SECRET_PLACEHOLDER);
+        }
+
+        String secret = config.getFingerprintSecret() != null && !config.getFingerprintSecret().isEmpty()
+                ? config.getFingerprintSecret()
+                : config.getMasterAPIKey();
+        this.fingerprintKey = (secret != null ? secret : "frostbyte").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int getMaxChunkSize() {
+        return maxSize;
+    }
+
+    /**
+     * Scans the stream once and returns the chunk boundaries with their fingerprints.
+     */
+    public List<ChunkBoundary> scan(InputStream in) throws IOException {
+        List<ChunkBoundary> boundaries = new ArrayList<>();
+        Mac mac = newMac();
+        byte[] buf = new byte[READ_BUFFER];
+
+        long chunkStart = 0;
+        int chunkLength = 0;
+        long hash = 0;
+        int read;
+
+        while ((read = in.read(buf)) != -1) {
+            int segmentStart = 0;
+            for (int i = 0; i < read; i++) {
+                hash = (hash << 1) + GEAR[buf[i] & 0xFF];
+                chunkLength++;
+
+                boolean cut = chunkLength >= maxSize
+                        || (chunkLength >= minSize && (hash & mask) == 0);
+                if (cut) {
+                    mac.update(buf, segmentStart, i + 1 - segmentStart);
+                    boundaries.add(new ChunkBoundary(chunkStart, chunkLength, HexFormat.of().formatHex(mac.doFinal())));
+                    segmentStart = i + 1;
+                    chunkStart += chunkLength;
+                    chunkLength = 0;
+                    hash = 0;
+                }
+            }
+            mac.update(buf, segmentStart, read - segmentStart);
+        }
+
+        if (chunkLength > 0) {
+            boundaries.add(new ChunkBoundary(chunkStart, chunkLength, HexFormat.of().formatHex(mac.doFinal())));
+        }
+
+        log.fine(String.format("[CDC-SCAN] chunks=%d avg=%d min=%d max=%d", boundaries.size(), avgSize, minSize, maxSize));
+        return boundaries;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(fingerprintKey, "HmacSHA256"));
+            return mac;
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    /**
+     * One content-defined chunk: plaintext bytes [offset, offset + length).
+     */
+    public static class ChunkBoundary {
+        private final long offset;
+        private final int length;
+        private final String fingerprint;
+
+        ChunkBoundary(long offset, int length, String fingerprint) {
+            this.offset = offset;
+            this.length = length;
+            this.fingerprint = fingerprint;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+    }
+}
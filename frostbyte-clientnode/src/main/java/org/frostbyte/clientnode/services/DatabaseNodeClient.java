@@ -138,6 +138,90 @@ public class DatabaseNodeClient {
         }
     }
 
+    /**
+     * Get the fingerprint manifest of a completed file (/upload/file/{fileId}/manifest)
+     * Used by versioned uploads to find chunks that can be reused
+     *
+     * @param fileId The UUID of the base file version
+     * @return Map containing fileId, totalChunks and chunks (chunkNumber, chunkSize, fingerprint, dataChunkId)
+     * @throws FileNotFoundException if file doesn't exist (404)
+     * @throws RuntimeException for other errors
+     */
+    public Map<String, Object> getFileManifest(String fileId) throws Exception {
+        String host = discoveryService.discoverDatabaseNode();
+        if (!host.startsWith("http://") && !host.startsWith("https://")) {
+            host = "http://" + host;
+        }
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "upload/file/" + fileId + "/manifest";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (config.getMasterAPIKey() != null) {
+            headers.set("X-API-Key", config.getMasterAPIKey());
+        }
+
+        log.info(String.format("[FILE-MANIFEST-REQ] GET %s fileId=%s", endpoint, fileId));
+
+        try {
+            ResponseEntity<String> resp = rest.exchange(endpoint, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> body = mapper.readValue(resp.getBody(), Map.class);
+            return body;
+
+        } catch (HttpClientErrorException.NotFound e) {
+            log.warning(String.format("[FILE-MANIFEST-NOT-FOUND] fileId=%s", fileId));
+            throw new FileNotFoundException("File not found: " + fileId);
+        } catch (HttpClientErrorException.Conflict e) {
+            log.warning(String.format("[FILE-MANIFEST-NOT-READY] fileId=%s", fileId));
+            throw new IllegalStateException("Base file is not completed: " + fileId);
+        } catch (HttpClientErrorException e) {
+            log.severe(String.format("[FILE-MANIFEST-HTTP-ERR] status=%d body=%s",
+                    e.getStatusCode().value(), e.getResponseBodyAsString()));
+            throw new RuntimeException("Failed to query file manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete a file and its chunk metadata on the DatabaseNode (DELETE /upload/file/{fileId})
+     *
+     * @param fileId The UUID of the file to delete
+     * @return Map containing the DatabaseNode's deletion response
+     * @throws FileNotFoundException if file doesn't exist (404)
+     * @throws RuntimeException for other errors
+     */
+    public Map<String, Object> deleteFile(String fileId) throws Exception {
+        String host = discoveryService.discoverDatabaseNode();
+        if (!host.startsWith("http://") && !host.startsWith("https://")) {
+            host = "http://" + host;
+        }
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "upload/file/" + fileId;
+
+        HttpHeaders headers = new HttpHeaders();
+        if (config.getMasterAPIKey() != null) {
+            headers.set("X-API-Key", config.getMasterAPIKey());
+        }
+
+        log.info(String.format("[FILE-DELETE-REQ] DELETE %s fileId=%s", endpoint, fileId));
+
+        try {
+            ResponseEntity<String> resp = rest.exchange(endpoint, HttpMethod.DELETE, new HttpEntity<>(headers), String.class);
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> body = resp.getBody() != null ? mapper.readValue(resp.getBody(), Map.class) : Map.of();
+            log.info(String.format("[FILE-DELETE-RESP] status=%d fileId=%s", resp.getStatusCode().value(), fileId));
+            return body;
+
+        } catch (HttpClientErrorException.NotFound e) {
+            log.warning(String.format("[FILE-DELETE-NOT-FOUND] fileId=%s", fileId));
+            throw new FileNotFoundException("File not found: " + fileId);
+        } catch (HttpClientErrorException e) {
+            log.severe(String.format("[FILE-DELETE-HTTP-ERR] status=%d body=%s",
+                    e.getStatusCode().value(), e.getResponseBodyAsString()));
+            throw new RuntimeException("Failed to delete file: " + e.getMessage());
+        }
+    }
+
     /**
      * Custom exception for file not found errors
      */
@@ -0,0 +1,187 @@
+package org.frostbyte.clientnode.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * FairUploadScheduler
+ * Fixed pool of worker threads that serves per-session task queues with weighted fair
+ * (stride) scheduling instead of one shared FIFO.
+ *
+ * Every session keeps a virtual 'pass'. A worker always runs the next task of the active
+ * session with the lowest pass, then advances that session's pass by 1/weight, so a session
+ * with weight 4 gets four task slots for every one of a weight 1 session.
+ * A session that becomes active again starts at the current virtual time, so idle time
+ * is not banked: a small upload arriving behind a 100 GB one is served on its next turn
+ * instead of after the big upload's whole backlog.
+ */
+class FairUploadScheduler {
+    private static final Logger log = Logger.getLogger(FairUploadScheduler.class.getName());
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+
+    private final Map<String, SessionQueue> sessions = new HashMap<>();
+    private final List<SessionQueue> active = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private double virtualTime;
+    private boolean shuttingDown;
+
+    FairUploadScheduler(int threads, String threadPrefix) {
+        for (int i = 1; i <= threads; i++) {
+            Thread t = new Thread(this::workerLoop, threadPrefix + i);
+            t.setDaemon(false);
+            workers.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Registers (or re-weights) a session queue.
+     */
+    void openSession(String sessionId, int weight) {
+        lock.lock();
+        try {
+            SessionQueue q = sessions.computeIfAbsent(sessionId, SessionQueue::new);
+            q.weight = Math.max(1, weight);
+            q.closed = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets a session once it has no queued tasks left; tasks still queued are kept running.
+     */
+    void closeSession(String sessionId) {
+        lock.lock();
+        try {
+            SessionQueue q = sessions.get(sessionId);
+            if (q != null) {
+                q.closed = true;
+                if (q.tasks.isEmpty()) sessions.remove(sessionId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Executor view that enqueues onto the given session's queue.
+     * The session must be open, tasks for closed or unknown sessions are rejected.
+     */
+    Executor executorFor(String sessionId) {
+        return task -> submit(sessionId, task);
+    }
+
+    void submit(String sessionId, Runnable task) {
+        lock.lock();
+        try {
+            if (shuttingDown) {
+                throw new RejectedExecutionException("Upload scheduler is shutting down");
+            }
+
+            // Never recreate a queue here: a late task for a closed session would leave
+            // an entry behind that nothing ever removes
+            SessionQueue q = sessions.get(sessionId);
+            if (q == null || q.closed) {
+                throw new RejectedExecutionException("Upload session is not open: " + sessionId);
+            }
+            if (q.tasks.isEmpty()) {
+                // (Re)activation: no credit for time spent idle
+                q.pass = Math.max(q.pass, virtualTime);
+                active.add(q);
+            }
+            q.tasks.addLast(task);
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            shuttingDown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread t : workers) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs > 0) t.join(remainingMs);
+        }
+        for (Thread t : workers) {
+            if (t.isAlive()) t.interrupt();
+        }
+    }
+
+    private void workerLoop() {
+        while (true) {
+            Runnable task;
+            lock.lock();
+            try {
+                while (active.isEmpty()) {
+                    if (shuttingDown) return;
+                    workAvailable.await();
+                }
+                task = pollNext();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // CompletableFuture tasks capture their own failures, this is a last resort
+                log.log(Level.SEVERE, "[FAIR-SCHEDULER] task failed on " + Thread.currentThread().getName(), t);
+            }
+        }
+    }
+
+    // Caller holds the lock and active is non-empty
+    private Runnable pollNext() {
+        SessionQueue next = active.get(0);
+        for (SessionQueue q : active) {
+            if (q.pass < next.pass) next = q;
+        }
+
+        Runnable task = next.tasks.pollFirst();
+        virtualTime = next.pass;
+        next.pass += 1.0 / next.weight;
+
+        if (next.tasks.isEmpty()) {
+            active.remove(next);
+            if (next.closed) sessions.remove(next.id);
+        }
+        return task;
+    }
+
+    private static class SessionQueue {
+        private final String id;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private int weight = 1;
+        private double pass;
+        private boolean closed;
+
+        SessionQueue(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.frostbyte.clientnode.models.configModel;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.crypto.Cipher;
@@ -103,6 +104,27 @@ public class  KeyClient {
         return body;
     }
 
+    // Retrieve the existing AES key of a chunk (/keys/retrieve), encrypted with the client's public key
+    public String retrieveChunkKey(String chunkId, String clientPublicKey) throws Exception {
+        String host = discoveryService.discoverDatabaseNode();
+        if (!host.startsWith("http://") && !host.startsWith("https://")) host = "http://" + host;
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "keys/retrieve";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
+
+        String json = mapper.writeValueAsString(Map.of("chunkId", chunkId, "publicKey", clientPublicKey));
+        HttpEntity<String> entity = new HttpEntity<>(json, headers);
+        ResponseEntity<String> resp = rest.postForEntity(endpoint, entity, String.class);
+        if (!resp.getStatusCode().is2xxSuccessful() || resp.getBody() == null) {
+            throw new RuntimeException("Failed to retrieve chunk key: " + resp.getStatusCode());
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> body = mapper.readValue(resp.getBody(), Map.class);
+        return body.get("encryptedKey").toString();
+    }
+
     // Initialize upload session on DatabaseNode (/upload/initialize)
     public Map<String, Object> initializeUploadSession(String fileName, long fileSize, int totalChunks) throws Exception {
         String host = discoveryService.discoverDatabaseNode();
@@ -140,8 +162,58 @@ public class  KeyClient {
         return body;
     }
 
+    // Open an append session on an existing COMPLETED file (/upload/file/{fileId}/append)
+    public Map<String, Object> initializeAppendSession(String fileId, long appendSize, int appendChunks) throws Exception {
+        String host = discoveryService.discoverDatabaseNode();
+        if (!host.startsWith("http://") && !host.startsWith("https://")) {
+            host = "http://" + host;
+        }
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "upload/file/" + fileId + "/append";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
+
+        String clientNodeId = config.getNodeName() != null ? config.getNodeName() : "clientNode";
+        String json = mapper.writeValueAsString(Map.of(
+                "appendSize", appendSize,
+                "appendChunks", appendChunks,
+                "clientNodeId", clientNodeId
+        ));
+
+        Instant start = Instant.now();
+        log.info(String.format("[APPEND-INIT] POST %s appendSize=%d appendChunks=%d", endpoint, appendSize, appendChunks));
+        ResponseEntity<String> resp;
+        try {
+            resp = rest.postForEntity(endpoint, new HttpEntity<>(json, headers), String.class);
+        } catch (HttpClientErrorException.NotFound e) {
+            throw new DatabaseNodeClient.FileNotFoundException("File not found: " + fileId);
+        } catch (HttpClientErrorException.Conflict e) {
+            // File not COMPLETED, or another append is in progress
+            log.warning("[APPEND-INIT-CONFLICT] fileId=" + fileId + " body=" + e.getResponseBodyAsString());
+            Object holder = null;
+            try {
+                holder = mapper.readValue(e.getResponseBodyAsString(), Map.class).get("appendSessionId");
+            } catch (Exception ignored) {}
+            throw new AppendConflictException("Cannot append to file " + fileId + ": " + e.getResponseBodyAsString(),
+                    holder != null ? holder.toString() : null);
+        }
+        log.info(String.format("[APPEND-INIT-RESP] status=%d timeMs=%d", resp.getStatusCode().value(),
+                Duration.between(start, Instant.now()).toMillis()));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> body = mapper.readValue(resp.getBody(), Map.class);
+        return body;
+    }
+
     // Register chunk metadata with DatabaseNode (/upload/chunk/register)
     public Map<String, Object> registerChunk(String chunkId, String fileId, int chunkNumber, int chunkSize, String crc32) throws Exception {
+        return registerChunk(chunkId, fileId, chunkNumber, chunkSize, crc32, null);
+    }
+
+    // Overload that also records the chunk's content fingerprint (delta uploads)
+    public Map<String, Object> registerChunk(String chunkId, String fileId, int chunkNumber, int chunkSize, String crc32,
+                                             String fingerprint) throws Exception {
         String host = discoveryService.discoverDatabaseNode();
         if (!host.startsWith("http://") && !host.startsWith("https://")) {
             host = "http://" + host;
@@ -153,13 +225,14 @@ public class  KeyClient {
         if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
 
         // Build DTO similar to ChunkMetadataDTO
-        Map<String, Object> dto = Map.of(
+        Map<String, Object> dto = new java.util.HashMap<>(Map.of(
                 "chunkId", java.util.UUID.fromString(chunkId),
                 "fileId", java.util.UUID.fromString(fileId),
                 "chunkNumber", chunkNumber,
                 "chunkSize", chunkSize,
                 "crc32", crc32
-        );
+        ));
+        if (fingerprint != null) dto.put("fingerprint", fingerprint);
 
         String json = mapper.writeValueAsString(dto);
         Instant start = Instant.now();
@@ -179,6 +252,35 @@ public class  KeyClient {
         return body;
     }
 
+    // Register a chunk that reuses an existing chunk's data (/upload/chunk/reference)
+    public Map<String, Object> registerChunkReference(String fileId, int chunkNumber, String sourceChunkId,
+                                                      String fingerprint) throws Exception {
+        String host = discoveryService.discoverDatabaseNode();
+        if (!host.startsWith("http://") && !host.startsWith("https://")) host = "http://" + host;
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "upload/chunk/reference";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
+
+        String json = mapper.writeValueAsString(Map.of(
+                "fileId", fileId,
+                "chunkNumber", chunkNumber,
+                "sourceChunkId", sourceChunkId,
+                "fingerprint", fingerprint
+        ));
+        HttpEntity<String> entity = new HttpEntity<>(json, headers);
+        ResponseEntity<String> resp = rest.postForEntity(endpoint, entity, String.class);
+        if (resp.getStatusCode() != HttpStatus.OK) {
+            String msg = "Chunk reference returned status: " + resp.getStatusCode().value();
+            log.severe("[CHUNK-REFERENCE-ERR] body=" + resp.getBody());
+            throw new RuntimeException(msg);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> body = mapper.readValue(resp.getBody(), Map.class);
+        return body;
+    }
+
     // Complete session (/upload/session/{sessionId}/complete)
     public Map<String, Object> completeSession(String sessionId) throws Exception {
         String dbNode = discoveryService.discoverDatabaseNode();
@@ -255,6 +357,42 @@ public class  KeyClient {
         return body;
     }
 
+    // Read a session's status (UPLOADING/COMPLETED/FAILED)
+    public String getSessionStatus(String sessionId) throws Exception {
+        String host = discoveryService.discoverDatabaseNode();
+        if (!host.startsWith("http://") && !host.startsWith("https://")) host = "http://" + host;
+        String endpoint = host + (host.endsWith("/") ? "" : "/") + "upload/session/" + sessionId + "/status";
+
+        HttpHeaders headers = new HttpHeaders();
+        if (config.getMasterAPIKey() != null) headers.set("X-API-Key", config.getMasterAPIKey());
+
+        ResponseEntity<String> resp = rest.exchange(endpoint, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        if (!resp.getStatusCode().is2xxSuccessful()) {
+            String msg = "Get session status returned: " + resp.getStatusCode().value();
+            log.severe("[SESSION-STATUS-ERR] body=" + resp.getBody());
+            throw new RuntimeException(msg);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> body = mapper.readValue(resp.getBody(), Map.class);
+        return String.valueOf(body.get("status"));
+    }
+
+    /**
+     * Append refused by the DatabaseNode; appendSessionId is the session holding the file, if any
+     */
+    public static class AppendConflictException extends IllegalStateException {
+        private final String appendSessionId;
+
+        public AppendConflictException(String message, String appendSessionId) {
+            super(message);
+            this.appendSessionId = appendSessionId;
+        }
+
+        public String getAppendSessionId() {
+            return appendSessionId;
+        }
+    }
+
     // Utility to convert a base64-encoded RSA public key (X.509) to PublicKey instance
     public PublicKey base64ToPublicKey(String base64) throws Exception {
         byte[] decoded = Base64.getDecoder().decode(base64);
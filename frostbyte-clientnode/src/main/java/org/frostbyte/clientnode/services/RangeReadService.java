@@ -0,0 +1,290 @@
+package org.frostbyte.clientnode.services;
+
+import org.frostbyte.clientnode.models.Snowflake;
+import org.frostbyte.clientnode.models.configModel;
+import org.springframework.stereotype.Service;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/*
+ * RangeReadService
+ * Random-access reads over chunked files: maps a byte range to the chunks that cover it,
+ * fetches and decrypts only those chunks, and keeps a byte-budgeted LRU of decrypted chunks
+ * (at least one chunk-size-mb) so nearby reads (e.g. a Parquet footer followed by its column
+ * index, or a seekable channel reading block by block) don't refetch.
+ *
+ * Chunk boundaries come from the DatabaseNode chunk map (per-chunk plaintext size).
+ * File layouts are cached briefly as well, a seek-heavy reader issues many small reads.
+ */
+@Service
+public class RangeReadService {
+    private static final Logger log = Logger.getLogger(RangeReadService.class.getName());
+
+    private static final int LAYOUT_CACHE_ENTRIES = 256;
+    private static final long LAYOUT_TTL_MS = 30_000;
+
+    private final configModel config;
+    private final KeyClient keyClient;
+    private final DatabaseNodeClient databaseNodeClient;
+    private final MasterNodeDiscoveryService discoveryService;
+    private final BalancerNodeClient balancerClient;
+
+    private final long chunkCacheMaxBytes;
+    private final LinkedHashMap<String, byte[]> chunkCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long chunkCacheBytes;
+
+    private final LinkedHashMap<String, FileLayout> layoutCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileLayout> eldest) {
+            return size() > LAYOUT_CACHE_ENTRIES;
+        }
+    };
+
+    public RangeReadService(configModel config, KeyClient keyClient, DatabaseNodeClient databaseNodeClient,
+                            MasterNodeDiscoveryService discoveryService, BalancerNodeClient balancerClient) {
+        this.config = config;
+        this.keyClient = keyClient;
+        this.databaseNodeClient = databaseNodeClient;
+        this.discoveryService = discoveryService;
+        this.balancerClient = balancerClient;
+        this.chunkCacheMaxBytes = chunkCacheBudget(config);
+    }
+
+    // The LRU holds whole chunks: a budget below the chunk size would never cache one,
+    // and every small read of a large chunk would refetch and decrypt all of it
+    private static long chunkCacheBudget(configModel config) {
+        if (config.getRangeCacheMaxBytes() <= 0) return 0;
+        long chunkSize = (long) Math.max(1, config.getChunkSizeMB()) * 1024 * 1024;
+        if (config.getRangeCacheMaxBytes() >= chunkSize) return config.getRangeCacheMaxBytes();
+        log.warning(String.format("[RANGE-CACHE] range-cache-max-bytes=%d is below one chunk (%d bytes), using %d",
+                config.getRangeCacheMaxBytes(), chunkSize, chunkSize));
+        return chunkSize;
+    }
+
+    /**
+     * Resolves (and caches) the chunk layout of a COMPLETED file.
+     *
+     * @throws DatabaseNodeClient.FileNotFoundException if the file does not exist
+     * @throws FileNotReadyException if the file is not COMPLETED
+     */
+    public FileLayout getLayout(String fileId) throws Exception {
+        synchronized (layoutCache) {
+            FileLayout cached = layoutCache.get(fileId);
+            if (cached != null && System.currentTimeMillis() - cached.resolvedAt < LAYOUT_TTL_MS) {
+                return cached;
+            }
+        }
+
+        Map<String, Object> metadata = databaseNodeClient.getFileMetadata(fileId);
+        String status = String.valueOf(metadata.get("uploadStatus"));
+        if (!"COMPLETED".equalsIgnoreCase(status)) {
+            throw new FileNotReadyException("File is not ready: status=" + status);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> fileMap = (Map<String, Object>) databaseNodeClient.getFileChunkMap(fileId).get("fileMap");
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> chunks = (List<Map<String, Object>>) fileMap.get("chunks");
+        chunks.sort(Comparator.comparingInt(c -> ((Number) c.get("chunkNumber")).intValue()));
+
+        long fileSize = ((Number) metadata.get("fileSize")).longValue();
+        long defaultChunkSize = (long) Math.max(1, config.getChunkSizeMB()) * 1024 * 1024;
+
+        int n = chunks.size();
+        String[] dataFileIds = new String[n];
+        String[] chunkIds = new String[n];
+        int[] chunkNumbers = new int[n];
+        long[] offsets = new long[n + 1];
+
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> c = chunks.get(i);
+            int chunkNumber = ((Number) c.get("chunkNumber")).intValue();
+            if (chunkNumber != i) {
+                throw new IllegalStateException("Chunk sequence gap detected: expected " + i + ", got " + chunkNumber);
+            }
+
+            // Chunks reused from a previous version are read from that version's snowflake
+            if (c.get("sourceChunkId") != null) {
+                dataFileIds[i] = c.get("sourceFileId").toString();
+                chunkIds[i] = c.get("sourceChunkId").toString();
+                chunkNumbers[i] = ((Number) c.get("sourceChunkNumber")).intValue();
+            } else {
+                dataFileIds[i] = fileId;
+                chunkIds[i] = c.get("chunkId").toString();
+                chunkNumbers[i] = chunkNumber;
+            }
+
+            // Older DatabaseNodes do not report chunkSize; fall back to the configured chunk size
+            Object size = c.get("chunkSize");
+            long chunkSize = size instanceof Number && ((Number) size).longValue() > 0
+                    ? ((Number) size).longValue()
+                    : Math.min(defaultChunkSize, fileSize - offsets[i]);
+            offsets[i + 1] = offsets[i] + chunkSize;
+        }
+
+        if (offsets[n] != fileSize) {
+            throw new IllegalStateException("Chunk sizes do not add up to file size: " + offsets[n] + " != " + fileSize);
+        }
+
+        FileLayout layout = new FileLayout(fileId, metadata.get("fileName").toString(), fileSize,
+                dataFileIds, chunkIds, chunkNumbers, offsets, System.currentTimeMillis());
+        synchronized (layoutCache) {
+            layoutCache.put(fileId, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Reads up to 'length' plaintext bytes starting at 'offset'.
+     * Returns fewer bytes only when the range runs past the end of the file.
+     */
+    public byte[] read(FileLayout layout, long offset, int length) throws Exception {
+        if (offset < 0 || offset > layout.fileSize) {
+            throw new IllegalArgumentException("Offset out of range: " + offset);
+        }
+        int toRead = (int) Math.min(length, layout.fileSize - offset);
+        byte[] out = new byte[toRead];
+        if (toRead == 0) return out;
+
+        // First chunk covering offset: largest i with offsets[i] <= offset
+        int idx = Arrays.binarySearch(layout.offsets, offset);
+        if (idx < 0) idx = -idx - 2;
+
+        String balancer = null;
+        KeyPair keyPair = null;
+        int written = 0;
+
+        while (written < toRead) {
+            String chunkId = layout.chunkIds[idx];
+            byte[] plaintext = cachedChunk(chunkId);
+
+            if (plaintext == null) {
+                // Discovery and the ephemeral keypair are only paid for when a chunk must be fetched
+                if (balancer == null) {
+                    balancer = discoveryService.discoverBalancerNode();
+                    if (balancer == null || balancer.isEmpty()) {
+                        throw new IllegalStateException("No balancer node available");
+                    }
+                    keyPair = keyClient.generateClientKeyPair();
+                }
+                plaintext = fetchChunk(layout.dataFileIds[idx], chunkId, layout.chunkNumbers[idx], balancer, keyPair);
+                cacheChunk(chunkId, plaintext);
+            }
+
+            long chunkStart = layout.offsets[idx];
+            int from = (int) (offset + written - chunkStart);
+            int n = Math.min(plaintext.length - from, toRead - written);
+            System.arraycopy(plaintext, from, out, written, n);
+            written += n;
+            idx++;
+        }
+
+        log.fine(String.format("[RANGE-READ] fileId=%s offset=%d length=%d", layout.fileId, offset, toRead));
+        return out;
+    }
+
+    private byte[] fetchChunk(String fileId, String chunkId, int chunkNumber, String balancer, KeyPair keyPair) throws Exception {
+        byte[] snowflakeBytes = balancerClient.downloadChunkFromBalancer(balancer, fileId, chunkId, chunkNumber);
+        Snowflake snowflake = Snowflake.fromByteArray(snowflakeBytes);
+        if (snowflake.getChunkNumber() != chunkNumber) {
+            throw new IllegalStateException("Chunk number mismatch: expected " + chunkNumber + ", got " + snowflake.getChunkNumber());
+        }
+
+        String clientPublicKey = keyClient.publicKeyToBase64(keyPair.getPublic());
+        String encryptedAesKey = keyClient.retrieveChunkKey(chunkId, clientPublicKey);
+        String base64AesKey = keyClient.decryptWithPrivateKey(keyPair.getPrivate(), encryptedAesKey);
+
+        log.info(String.format("[RANGE-CHUNK-FETCHED] fileId=%s chunkNumber=%d", fileId, chunkNumber));
+        return ChunkEncryptionService.decrypt(snowflake.getEncryptedData(), base64AesKey);
+    }
+
+    /**
+     * Drops a file's layout and decrypted chunks, e.g. after it was deleted.
+     */
+    public void invalidate(String fileId) {
+        FileLayout layout;
+        synchronized (layoutCache) {
+            layout = layoutCache.remove(fileId);
+        }
+        if (layout == null) return;
+
+        synchronized (this) {
+            for (String chunkId : layout.chunkIds) {
+                byte[] removed = chunkCache.remove(chunkId);
+                if (removed != null) chunkCacheBytes -= removed.length;
+            }
+        }
+    }
+
+    // ====== Decrypted chunk LRU ======
+
+    private synchronized byte[] cachedChunk(String chunkId) {
+        return chunkCache.get(chunkId);
+    }
+
+    private synchronized void cacheChunk(String chunkId, byte[] plaintext) {
+        if (plaintext.length > chunkCacheMaxBytes) return;
+
+        byte[] previous = chunkCache.put(chunkId, plaintext);
+        if (previous != null) chunkCacheBytes -= previous.length;
+        chunkCacheBytes += plaintext.length;
+
+        Iterator<byte[]> it = chunkCache.values().iterator();
+        while (chunkCacheBytes > chunkCacheMaxBytes && it.hasNext()) {
+            chunkCacheBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Thrown when a file exists but has not finished uploading.
+     */
+    public static class FileNotReadyException extends Exception {
+        public FileNotReadyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Chunk layout of a file: chunk i covers plaintext bytes [offsets[i], offsets[i+1]).
+     * chunkIds/chunkNumbers/dataFileIds name the snowflake holding the data, which for
+     * reused chunks belongs to an earlier version of the file.
+     */
+    public static class FileLayout {
+        private final String fileId;
+        private final String fileName;
+        private final long fileSize;
+        private final String[] dataFileIds;
+        private final String[] chunkIds;
+        private final int[] chunkNumbers;
+        private final long[] offsets;
+        private final long resolvedAt;
+
+        FileLayout(String fileId, String fileName, long fileSize, String[] dataFileIds, String[] chunkIds,
+                   int[] chunkNumbers, long[] offsets, long resolvedAt) {
+            this.fileId = fileId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.dataFileIds = dataFileIds;
+            this.chunkIds = chunkIds;
+            this.chunkNumbers = chunkNumbers;
+            this.offsets = offsets;
+            this.resolvedAt = resolvedAt;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+    }
+}
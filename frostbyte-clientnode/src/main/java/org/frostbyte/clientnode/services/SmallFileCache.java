@@ -0,0 +1,333 @@
+package org.frostbyte.clientnode.services;
+
+import org.frostbyte.clientnode.models.configModel;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/*
+ * SmallFileCache
+ * ClientNode-local cache of recently downloaded small files (plaintext), so hot objects
+ * skip the master lookup, DatabaseNode lookups, key exchange and decryption entirely.
+ *
+ * Eviction follows W-TinyLFU:
+ * - a small LRU admission window (1% of the budget, at least one max-size entry)
+ *   absorbs bursts of new keys,
+ * - the main area is a segmented LRU (probation + protected, 80% protected),
+ * - when the window overflows, its LRU entry only enters the main area if a
+ *   count-min frequency sketch says it is more popular than the main area's victim.
+ * One-hit wonders therefore never push out the hot set.
+ *
+ * The byte budget is hard: window + main never exceed frostbyte.clientnode.cache-max-bytes.
+ * A budget of 0 disables the cache.
+ */
+@Service
+public class SmallFileCache {
+    private static final Logger log = Logger.getLogger(SmallFileCache.class.getName());
+
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.80;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long ttlMillis;
+    private final long windowBudget;
+    private final long protectedBudget;
+
+    // Insertion order doubles as recency order: first entry = LRU, re-insert to touch
+    private final LinkedHashMap<String, CachedFile> window = new LinkedHashMap<>();
+    private final LinkedHashMap<String, CachedFile> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, CachedFile> protectedSegment = new LinkedHashMap<>();
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final FrequencySketch sketch;
+
+    // Metrics
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long invalidations;
+
+    public SmallFileCache(configModel config) {
+        this.maxBytes = Math.max(0, config.getCacheMaxBytes());
+        this.maxEntryBytes = config.getCacheMaxEntryBytes() > 0
+                ? Math.min(config.getCacheMaxEntryBytes(), maxBytes)
+                : Math.min(1024 * 1024, maxBytes);
+        this.ttlMillis = Math.max(0, config.getCacheTtlSeconds()) * 1000L;
+        // The window must hold at least one maximum-size entry to be of any use
+        this.windowBudget = Math.max(1, Math.min(maxBytes / 2, Math.max((long) (maxBytes * WINDOW_RATIO), maxEntryBytes)));
+        this.protectedBudget = (long) ((maxBytes - windowBudget) * PROTECTED_RATIO);
+
+        // Roughly one counter per expected entry, assuming entries average a quarter of the max entry size
+        long expectedEntries = maxEntryBytes > 0 ? maxBytes / Math.max(1, maxEntryBytes / 4) : 0;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(256, expectedEntries)));
+
+        log.info(String.format("[CACHE-INIT] maxBytes=%d maxEntryBytes=%d ttlSeconds=%d",
+                maxBytes, maxEntryBytes, ttlMillis / 1000));
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Whether a file of this size is eligible for caching.
+     */
+    public boolean isCacheable(long fileSize) {
+        return isEnabled() && fileSize >= 0 && fileSize <= maxEntryBytes;
+    }
+
+    /**
+     * Returns the cached file or null. Every lookup counts towards the key's frequency.
+     */
+    public synchronized CachedFile get(String fileId) {
+        if (!isEnabled()) return null;
+        sketch.increment(fileId);
+
+        CachedFile entry;
+        if ((entry = window.get(fileId)) != null) {
+            if (expired(entry)) return missAfterExpiry(fileId);
+            window.remove(fileId);
+            window.put(fileId, entry);
+        } else if ((entry = probation.get(fileId)) != null) {
+            if (expired(entry)) return missAfterExpiry(fileId);
+            // Second hit in the main area: promote to protected
+            probation.remove(fileId);
+            probationBytes -= entry.size();
+            protectedSegment.put(fileId, entry);
+            protectedBytes += entry.size();
+            demoteProtectedOverflow();
+        } else if ((entry = protectedSegment.get(fileId)) != null) {
+            if (expired(entry)) return missAfterExpiry(fileId);
+            protectedSegment.remove(fileId);
+            protectedSegment.put(fileId, entry);
+        } else {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry;
+    }
+
+    /**
+     * Offers a freshly downloaded file to the cache. Oversized files are ignored.
+     */
+    public synchronized void put(String fileId, String fileName, byte[] data) {
+        if (!isCacheable(data.length)) return;
+
+        removeEntry(fileId);
+        window.put(fileId, new CachedFile(fileId, fileName, data, System.currentTimeMillis()));
+        windowBytes += data.length;
+
+        // Overflowing window entries compete for admission into the main area
+        while (windowBytes > windowBudget && !window.isEmpty()) {
+            CachedFile candidate = pollFirst(window);
+            windowBytes -= candidate.size();
+            admitToMain(candidate);
+        }
+    }
+
+    /**
+     * Drops a file from the cache, e.g. after it was deleted.
+     */
+    public synchronized void invalidate(String fileId) {
+        if (removeEntry(fileId)) {
+            invalidations++;
+            log.info(String.format("[CACHE-INVALIDATE] fileId=%s", fileId));
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long lookups = hits + misses;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        stats.put("evictions", evictions);
+        stats.put("admissionRejections", rejections);
+        stats.put("invalidations", invalidations);
+        stats.put("entries", window.size() + probation.size() + protectedSegment.size());
+        stats.put("usedBytes", windowBytes + probationBytes + protectedBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxEntryBytes", maxEntryBytes);
+        return stats;
+    }
+
+    // ====== Internals (caller holds the lock) ======
+
+    private void admitToMain(CachedFile candidate) {
+        long mainBudget = maxBytes - windowBudget;
+
+        while (probationBytes + protectedBytes + candidate.size() > mainBudget) {
+            boolean fromProbation = !probation.isEmpty();
+            LinkedHashMap<String, CachedFile> segment = fromProbation ? probation : protectedSegment;
+            if (segment.isEmpty()) break;
+
+            CachedFile victim = segment.values().iterator().next();
+
+            // TinyLFU admission: the newcomer must be strictly more popular than the victim
+            if (sketch.frequency(candidate.getFileId()) <= sketch.frequency(victim.getFileId())) {
+                rejections++;
+                evictions++;
+                return;
+            }
+
+            segment.remove(victim.getFileId());
+            if (fromProbation) probationBytes -= victim.size();
+            else protectedBytes -= victim.size();
+            evictions++;
+        }
+
+        if (probationBytes + protectedBytes + candidate.size() > mainBudget) {
+            evictions++;
+            return;
+        }
+
+        probation.put(candidate.getFileId(), candidate);
+        probationBytes += candidate.size();
+    }
+
+    private void demoteProtectedOverflow() {
+        while (protectedBytes > protectedBudget && !protectedSegment.isEmpty()) {
+            CachedFile demoted = pollFirst(protectedSegment);
+            protectedBytes -= demoted.size();
+            probation.put(demoted.getFileId(), demoted);
+            probationBytes += demoted.size();
+        }
+    }
+
+    private boolean removeEntry(String fileId) {
+        CachedFile e;
+        if ((e = window.remove(fileId)) != null) {
+            windowBytes -= e.size();
+        } else if ((e = probation.remove(fileId)) != null) {
+            probationBytes -= e.size();
+        } else if ((e = protectedSegment.remove(fileId)) != null) {
+            protectedBytes -= e.size();
+        }
+        return e != null;
+    }
+
+    private boolean expired(CachedFile entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry.getCachedAt() > ttlMillis;
+    }
+
+    private CachedFile missAfterExpiry(String fileId) {
+        removeEntry(fileId);
+        misses++;
+        return null;
+    }
+
+    private static CachedFile pollFirst(LinkedHashMap<String, CachedFile> map) {
+        Iterator<CachedFile> it = map.values().iterator();
+        CachedFile first = it.next();
+        it.remove();
+        return first;
+    }
+
+    /**
+     * A cached plaintext file.
+     */
+    public static class CachedFile {
+        private final String fileId;
+        private final String fileName;
+        private final byte[] data;
+        private final long cachedAt;
+
+        CachedFile(String fileId, String fileName, byte[] data, long cachedAt) {
+            this.fileId = fileId;
+            this.fileName = fileName;
+            this.data = data;
+            this.cachedAt = cachedAt;
+        }
+
+        public String getFileId() {
+            return fileId;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        long getCachedAt() {
+            return cachedAt;
+        }
+
+        int size() {
+            return data.length;
+        }
+    }
+
+    /**
+     * Count-min sketch with 4 rows of saturating 4-bit-range counters.
+     * All counters are halved every 10 x width increments so old popularity fades out.
+     */
+    static class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1) << 1);
+            this.table = new byte[ROWS][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(String key) {
+            int h = key.hashCode();
+            boolean added = false;
+            for (int r = 0; r < ROWS; r++) {
+                int i = index(h, r);
+                if (table[r][i] < MAX_COUNT) {
+                    table[r][i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int h = key.hashCode();
+            int min = MAX_COUNT;
+            for (int r = 0; r < ROWS; r++) {
+                min = Math.min(min, table[r][index(h, r)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >> 1);
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
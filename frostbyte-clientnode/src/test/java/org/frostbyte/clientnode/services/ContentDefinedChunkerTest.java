@@ -0,0 +1,115 @@
+package org.frostbyte.clientnode.services;
+
+import org.frostbyte.clientnode.models.configModel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDefinedChunkerTest {
+
+    // 8 KB average: min 2 KB, max 32 KB
+    private static final int AVG_KB = 8;
+
+    private static ContentDefinedChunker newChunker(String secret, String masterKey) {
+        configModel config = new configModel();
+        config.setDeltaAvgChunkSizeKB(AVG_KB);
+        config.setFingerprintSecret(secret);
+        config.setMasterAPIKey(masterKey);
+        return new ContentDefinedChunker(config);
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static List<ContentDefinedChunker.ChunkBoundary> scan(ContentDefinedChunker chunker, byte[] data) throws IOException {
+        return chunker.scan(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    void boundariesCoverTheStreamWithinSizeLimits() throws IOException {
+        ContentDefinedChunker chunker = newChunker("secret", null);
+        int min = AVG_KB * 1024 / 4;
+        int max = chunker.getMaxChunkSize();
+
+        for (byte[] data : List.of(randomBytes(1 << 20, 1), new byte[200_000])) {
+            List<ContentDefinedChunker.ChunkBoundary> boundaries = scan(chunker, data);
+
+            long expectedOffset = 0;
+            for (int i = 0; i < boundaries.size(); i++) {
+                ContentDefinedChunker.ChunkBoundary b = boundaries.get(i);
+                assertEquals(expectedOffset, b.getOffset());
+                assertTrue(b.getLength() <= max, "chunk longer than max");
+                if (i < boundaries.size() - 1) {
+                    assertTrue(b.getLength() >= min, "chunk shorter than min");
+                }
+                expectedOffset += b.getLength();
+            }
+            assertEquals(data.length, expectedOffset);
+        }
+    }
+
+    @Test
+    void emptyStreamHasNoChunks() throws IOException {
+        assertTrue(scan(newChunker("secret", null), new byte[0]).isEmpty());
+    }
+
+    @Test
+    void insertNearTheStartKeepsLaterChunks() throws IOException {
+        ContentDefinedChunker chunker = newChunker("secret", null);
+        byte[] original = randomBytes(1 << 20, 2);
+
+        byte[] edited = new byte[original.length + 100];
+        System.arraycopy(original, 0, edited, 0, 1000);
+        System.arraycopy(randomBytes(100, 3), 0, edited, 1000, 100);
+        System.arraycopy(original, 1000, edited, 1100, original.length - 1000);
+
+        List<ContentDefinedChunker.ChunkBoundary> before = scan(chunker, original);
+        Set<String> beforePrints = new HashSet<>();
+        before.forEach(b -> beforePrints.add(b.getFingerprint()));
+
+        long reused = scan(chunker, edited).stream()
+                .filter(b -> beforePrints.contains(b.getFingerprint()))
+                .count();
+
+        // Cut points resynchronise after the edit, so only the first chunk or two change
+        assertTrue(reused >= before.size() - 2, "reused " + reused + " of " + before.size());
+    }
+
+    @Test
+    void fingerprintsDependOnTheSecret() throws IOException {
+        byte[] data = randomBytes(100_000, 4);
+
+        List<ContentDefinedChunker.ChunkBoundary> a = scan(newChunker("secret-a", null), data);
+        List<ContentDefinedChunker.ChunkBoundary> again = scan(newChunker("secret-a", null), data);
+        List<ContentDefinedChunker.ChunkBoundary> b = scan(newChunker("secret-b", null), data);
+
+        assertEquals(a.get(0).getFingerprint(), again.get(0).getFingerprint());
+        assertNotEquals(a.get(0).getFingerprint(), b.get(0).getFingerprint());
+        // Cut points are content-only and do not change with the key
+        assertEquals(a.size(), b.size());
+    }
+
+    @Test
+    void emptySecretFallsBackToMasterKey() throws IOException {
+        byte[] data = randomBytes(50_000, 5);
+
+        String viaFallback = scan(newChunker("", "master"), data).get(0).getFingerprint();
+        String explicit = scan(newChunker("master", null), data).get(0).getFingerprint();
+        assertEquals(explicit, viaFallback);
+    }
+
+    @Test
+    void placeholderSecretIsRefused() {
+        assertThrows(IllegalStateException.class, () -> newChunker("CHANGE_ME", "master"));
+    }
+}
@@ -0,0 +1,111 @@
+package org.frostbyte.clientnode.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairUploadSchedulerTest {
+
+    @Test
+    void heavierSessionGetsProportionallyMoreSlots() throws Exception {
+        FairUploadScheduler scheduler = new FairUploadScheduler(1, "test-fair-");
+        try {
+            scheduler.openSession("blocker", 1);
+            scheduler.openSession("heavy", 4);
+            scheduler.openSession("light", 1);
+
+            // Hold the only worker so both queues are full before scheduling starts
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            scheduler.submit("blocker", () -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(16);
+            for (int i = 0; i < 8; i++) {
+                scheduler.submit("heavy", () -> { order.add("heavy"); done.countDown(); });
+                scheduler.submit("light", () -> { order.add("light"); done.countDown(); });
+            }
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            // Weight 4 against weight 1: four of every five slots go to the heavy session
+            long heavyFirst = order.subList(0, 5).stream().filter("heavy"::equals).count();
+            assertEquals(4, heavyFirst);
+            assertEquals(16, order.size());
+        } finally {
+            scheduler.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void tasksForUnknownSessionsAreRejected() throws Exception {
+        FairUploadScheduler scheduler = new FairUploadScheduler(1, "test-fair-");
+        try {
+            assertThrows(RejectedExecutionException.class, () -> scheduler.submit("never-opened", () -> { }));
+            assertThrows(RejectedExecutionException.class, () -> scheduler.executorFor("never-opened").execute(() -> { }));
+        } finally {
+            scheduler.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void closedSessionDrainsQueuedTasksButRejectsNewOnes() throws Exception {
+        FairUploadScheduler scheduler = new FairUploadScheduler(1, "test-fair-");
+        try {
+            scheduler.openSession("s1", 1);
+
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch queuedRan = new CountDownLatch(1);
+            scheduler.submit("s1", () -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            scheduler.submit("s1", queuedRan::countDown);
+
+            scheduler.closeSession("s1");
+            assertThrows(RejectedExecutionException.class, () -> scheduler.submit("s1", () -> { }));
+
+            release.countDown();
+            assertTrue(queuedRan.await(5, TimeUnit.SECONDS));
+            assertThrows(RejectedExecutionException.class, () -> scheduler.submit("s1", () -> { }));
+
+            // Reopening makes the session usable again
+            CountDownLatch reopenedRan = new CountDownLatch(1);
+            scheduler.openSession("s1", 1);
+            scheduler.submit("s1", reopenedRan::countDown);
+            assertTrue(reopenedRan.await(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void shutdownRejectsNewTasks() throws Exception {
+        FairUploadScheduler scheduler = new FairUploadScheduler(1, "test-fair-");
+        scheduler.openSession("s1", 1);
+        scheduler.shutdown(5, TimeUnit.SECONDS);
+
+        assertThrows(RejectedExecutionException.class, () -> scheduler.submit("s1", () -> { }));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
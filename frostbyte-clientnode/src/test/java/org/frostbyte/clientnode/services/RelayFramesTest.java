@@ -0,0 +1,79 @@
+package org.frostbyte.clientnode.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayFramesTest {
+
+    // Status bytes of the balancer's relay stream
+    private static final byte OK = 0;
+    private static final byte FAILED = 1;
+    private static final byte DATA = 2;
+    private static final byte RETRY = 3;
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    private final DataOutputStream frames = new DataOutputStream(stream);
+
+    private RelayFramesTest frame(byte status, String payload) throws IOException {
+        byte[] bytes = payload.getBytes();
+        frames.writeByte(status);
+        frames.writeInt(bytes.length);
+        frames.write(bytes);
+        return this;
+    }
+
+    private byte[] read() throws IOException {
+        return BalancerNodeClient.readRelayFrames(new ByteArrayInputStream(stream.toByteArray()), "chunk-1");
+    }
+
+    @Test
+    void dataSegmentsAreJoinedUntilOk() throws IOException {
+        frame(DATA, "snow").frame(DATA, "flake").frame(OK, "");
+
+        assertEquals("snowflake", new String(read()));
+    }
+
+    @Test
+    void retryDropsTheCorruptReplica() throws IOException {
+        frame(DATA, "corr").frame(DATA, "upt").frame(RETRY, "")
+                .frame(DATA, "good").frame(OK, "");
+
+        assertEquals("good", new String(read()));
+    }
+
+    @Test
+    void framesAfterOkBelongToTheNextRead() throws IOException {
+        frame(DATA, "one").frame(OK, "").frame(DATA, "two").frame(OK, "");
+
+        assertEquals("one", new String(read()));
+    }
+
+    @Test
+    void failedCarriesTheBalancerError() throws IOException {
+        frame(DATA, "partial").frame(RETRY, "").frame(FAILED, "all replicas failed");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, this::read);
+        assertTrue(e.getMessage().contains("all replicas failed"));
+    }
+
+    @Test
+    void unknownStatusIsRejected() throws IOException {
+        frame((byte) 9, "?");
+
+        assertThrows(IOException.class, this::read);
+    }
+
+    @Test
+    void streamEndingBeforeOkIsAnError() throws IOException {
+        frame(DATA, "truncated");
+
+        assertThrows(EOFException.class, this::read);
+    }
+}
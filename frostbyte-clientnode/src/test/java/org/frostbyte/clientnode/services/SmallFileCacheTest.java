@@ -0,0 +1,97 @@
+package org.frostbyte.clientnode.services;
+
+import org.frostbyte.clientnode.models.configModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmallFileCacheTest {
+
+    private static SmallFileCache newCache(long maxBytes, long maxEntryBytes) {
+        configModel config = new configModel();
+        config.setCacheMaxBytes(maxBytes);
+        config.setCacheMaxEntryBytes(maxEntryBytes);
+        return new SmallFileCache(config);
+    }
+
+    @Test
+    void putThenGetReturnsCachedFile() {
+        SmallFileCache cache = newCache(10_000, 100);
+        cache.put("f1", "a.txt", new byte[]{1, 2, 3});
+
+        SmallFileCache.CachedFile hit = cache.get("f1");
+        assertNotNull(hit);
+        assertEquals("a.txt", hit.getFileName());
+        assertArrayEquals(new byte[]{1, 2, 3}, hit.getData());
+        assertNull(cache.get("missing"));
+
+        Map<String, Object> stats = cache.stats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+    }
+
+    @Test
+    void oversizedFilesAreNotCached() {
+        SmallFileCache cache = newCache(10_000, 100);
+        assertFalse(cache.isCacheable(101));
+
+        cache.put("big", "big.bin", new byte[101]);
+        assertNull(cache.get("big"));
+    }
+
+    @Test
+    void zeroBudgetDisablesCache() {
+        SmallFileCache cache = newCache(0, 100);
+        assertFalse(cache.isEnabled());
+
+        cache.put("f1", "a.txt", new byte[1]);
+        assertNull(cache.get("f1"));
+    }
+
+    @Test
+    void hotFilesSurviveScanOfOneHitWonders() {
+        // Window holds one 100 byte entry, the main area nine
+        SmallFileCache cache = newCache(1_000, 100);
+        for (int i = 0; i < 9; i++) {
+            cache.put("hot" + i, "hot", new byte[100]);
+        }
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 9; i++) {
+                assertNotNull(cache.get("hot" + i), "hot" + i + " should be cached");
+            }
+        }
+
+        // Files that are written once and never read again must not displace the hot set
+        for (int i = 0; i < 200; i++) {
+            cache.put("scan" + i, "scan", new byte[100]);
+        }
+
+        for (int i = 0; i < 9; i++) {
+            assertNotNull(cache.get("hot" + i), "hot" + i + " was evicted by the scan");
+        }
+        assertTrue((long) cache.stats().get("admissionRejections") > 0);
+    }
+
+    @Test
+    void usedBytesStayWithinBudget() {
+        SmallFileCache cache = newCache(1_000, 100);
+        for (int i = 0; i < 500; i++) {
+            String id = "f" + (i % 37);
+            cache.put(id, id, new byte[1 + (i % 100)]);
+            cache.get("f" + (i % 11));
+            assertTrue((long) cache.stats().get("usedBytes") <= 1_000);
+        }
+    }
+
+    @Test
+    void invalidateDropsEntry() {
+        SmallFileCache cache = newCache(10_000, 100);
+        cache.put("f1", "a.txt", new byte[10]);
+        cache.invalidate("f1");
+
+        assertNull(cache.get("f1"));
+        assertEquals(1L, cache.stats().get("invalidations"));
+    }
+}
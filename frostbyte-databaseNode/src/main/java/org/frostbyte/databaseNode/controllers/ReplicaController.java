@@ -5,6 +5,7 @@ import org.frostbyte.databaseNode.models.ReplicaStatus;
 import org.frostbyte.databaseNode.models.configModel;
 import org.frostbyte.databaseNode.models.dto.FileMapDTO;
 import org.frostbyte.databaseNode.models.dto.ReplicaInfoDTO;
+import org.frostbyte.databaseNode.models.dto.ReplicaRegistrationDTO;
 import org.frostbyte.databaseNode.repositories.ChunkRepository;
 import org.frostbyte.databaseNode.services.ChunkMetadataService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -110,6 +111,8 @@ public class ReplicaController {
     /**
      * Batch register multiple replicas for a chunk
      * Called by ClientNode after uploading chunk to multiple DataNodes
+     * Optional pendingDatanodeIds are registered as PENDING: writes the balancer acknowledged
+     * before they finished, later moved to AVAILABLE/UNAVAILABLE through PUT /replicas/status
      */
     @PostMapping("/register/batch")
     public ResponseEntity<?> registerMultipleReplicas(
@@ -135,8 +138,13 @@ public class ReplicaController {
             UUID chunkId = UUID.fromString(batchData.get("chunkId").toString());
             @SuppressWarnings("unchecked")
             List<String> datanodeIds = (List<String>) batchData.get("datanodeIds");
+            @SuppressWarnings("unchecked")
+            List<String> pendingDatanodeIds = batchData.get("pendingDatanodeIds") instanceof List
+                    ? (List<String>) batchData.get("pendingDatanodeIds")
+                    : List.of();
 
-            log.info(String.format("[BATCH-REPLICA-REQ] chunkId=%s datanodeIds=%s", chunkId, datanodeIds));
+            log.info(String.format("[BATCH-REPLICA-REQ] chunkId=%s datanodeIds=%s pending=%s",
+                    chunkId, datanodeIds, pendingDatanodeIds));
 
             // Check if chunk exists
             boolean chunkExists = chunkRepository.existsById(chunkId);
@@ -153,13 +161,16 @@ public class ReplicaController {
             int failureCount = 0;
             List<String> errors = new ArrayList<>();
 
-            for (String datanodeId : datanodeIds) {
+            List<String> allDatanodeIds = new ArrayList<>(datanodeIds);
+            allDatanodeIds.addAll(pendingDatanodeIds);
+
+            for (String datanodeId : allDatanodeIds) {
                 try {
                     log.info(String.format("[REPLICA-REGISTER] Attempting: chunkId=%s datanodeId=%s", chunkId, datanodeId));
 
                     ReplicaInfoDTO replicaInfo = new ReplicaInfoDTO();
                     replicaInfo.setDatanodeId(datanodeId);
-                    replicaInfo.setStatus(ReplicaStatus.AVAILABLE);
+                    replicaInfo.setStatus(pendingDatanodeIds.contains(datanodeId) ? ReplicaStatus.PENDING : ReplicaStatus.AVAILABLE);
 
                     ChunkReplica saved = chunkMetadataService.registerReplica(chunkId, replicaInfo);
                     successCount++;
@@ -179,7 +190,8 @@ public class ReplicaController {
 
             Map<String, Object> response = new HashMap<>();
             response.put("chunkId", chunkId);
-            response.put("totalRequested", datanodeIds.size());
+            response.put("totalRequested", allDatanodeIds.size());
+            response.put("pending", pendingDatanodeIds.size());
             response.put("succeeded", successCount);
             response.put("failed", failureCount);
             response.put("message", "Batch replica registration completed");
@@ -197,6 +209,56 @@ public class ReplicaController {
         }
     }
 
+    /**
+     * Apply a batch of replica registrations/status changes across many chunks in one transaction
+     * Called by the balancer's write-behind registration queue
+     * Body: {"replicas": [{"chunkId", "datanodeId", "status"}, ...]}
+     * Idempotent: an existing replica gets its status updated instead of being rejected
+     */
+    @PostMapping("/register/bulk")
+    public ResponseEntity<?> registerReplicasBulk(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestBody Map<String, List<ReplicaRegistrationDTO>> bulkData) {
+
+        if (isAuthorized(apiKey)) {
+            log.warning("[BULK-REPLICA-REQ] Unauthorized API key");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+
+        List<ReplicaRegistrationDTO> registrations = bulkData.get("replicas");
+        if (registrations == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "replicas list is required"));
+        }
+        for (ReplicaRegistrationDTO registration : registrations) {
+            if (registration.getChunkId() == null || registration.getDatanodeId() == null) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Every replica needs chunkId and datanodeId"));
+            }
+        }
+
+        try {
+            List<ReplicaRegistrationDTO> rejected = chunkMetadataService.applyReplicaRegistrations(registrations);
+            if (!rejected.isEmpty()) {
+                log.warning("[BULK-REPLICA-REJECTED] unknown chunks: " + rejected.stream()
+                        .map(ReplicaRegistrationDTO::getChunkId).distinct().toList());
+            }
+
+            return ResponseEntity.ok(Map.of(
+                    "received", registrations.size(),
+                    "applied", registrations.size() - rejected.size(),
+                    "rejected", rejected,
+                    "message", "Bulk replica registration completed"
+            ));
+
+        } catch (Exception e) {
+            log.severe("[BULK-REPLICA-ERROR] Failed to apply bulk replica registration: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to process bulk registration: " + e.getMessage()));
+        }
+    }
+
     // 2. REPLICA STATUS MANAGEMENT
     /**
      * Update replica status (e.g., mark as FAILED, CORRUPTED, etc.)
@@ -322,6 +384,43 @@ public class ReplicaController {
         }
     }
 
+    /**
+     * Get replicas for many chunks at once
+     * Called by the balancer for batch downloads, one lookup instead of one per chunk
+     * Body: {"chunkIds": [...]}; response maps every requested chunkId to its replicas
+     */
+    @PostMapping("/chunks/lookup")
+    public ResponseEntity<?> lookupChunkReplicas(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestBody Map<String, List<UUID>> lookup) {
+
+        if (isAuthorized(apiKey)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+
+        List<UUID> chunkIds = lookup.get("chunkIds");
+        if (chunkIds == null || chunkIds.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "chunkIds list is required"));
+        }
+
+        try {
+            Map<UUID, List<ChunkReplica>> replicas = chunkMetadataService.getReplicasByChunkIds(chunkIds);
+
+            return ResponseEntity.ok(Map.of(
+                    "replicas", replicas,
+                    "chunkCount", replicas.size(),
+                    "message", "Chunk replicas retrieved successfully"
+            ));
+
+        } catch (Exception e) {
+            log.severe("Failed to look up chunk replicas: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to look up chunk replicas: " + e.getMessage()));
+        }
+    }
+
     // 4. REPLICA CLEANUP & MAINTENANCE
 
     /**
@@ -393,6 +492,10 @@ public class ReplicaController {
                     "message", "Chunk and all replicas deleted successfully"
             ));
 
+        } catch (IllegalStateException e) {
+            log.warning("Chunk deletion refused: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.severe("Failed to delete chunk replicas: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
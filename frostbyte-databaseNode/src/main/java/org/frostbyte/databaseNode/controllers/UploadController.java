@@ -4,8 +4,11 @@ import org.frostbyte.databaseNode.entities.File;
 import org.frostbyte.databaseNode.entities.UploadSession;
 import org.frostbyte.databaseNode.models.UploadStatus;
 import org.frostbyte.databaseNode.models.configModel;
+import org.frostbyte.databaseNode.models.dto.AppendMetadataDTO;
 import org.frostbyte.databaseNode.models.dto.ChunkMetadataDTO;
+import org.frostbyte.databaseNode.models.dto.ChunkReferenceDTO;
 import org.frostbyte.databaseNode.models.dto.FileMetadataDTO;
+import org.frostbyte.databaseNode.models.dto.ManifestEntryDTO;
 import org.frostbyte.databaseNode.services.ChunkMetadataService;
 import org.frostbyte.databaseNode.services.FileService;
 import org.frostbyte.databaseNode.services.UploadSessionService;
@@ -101,6 +104,67 @@ public class UploadController {
         }
     }
 
+    /**
+     * Open an append session on an existing COMPLETED file
+     * Chunks are registered as usual, numbered from 'startChunk'; they become part of the
+     * file only when the session completes (totalChunks and fileSize are updated atomically)
+     */
+    @PostMapping("/file/{fileId}/append")
+    public ResponseEntity<?> initializeAppend(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @PathVariable("fileId") UUID fileId,
+            @RequestBody AppendMetadataDTO appendMetadata) {
+
+        if (!isAuthorized(apiKey)) {
+            log.warning("Unauthorized append initialization attempt");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+
+        if (appendMetadata == null || appendMetadata.getAppendSize() <= 0 || appendMetadata.getAppendChunks() <= 0) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "appendSize and appendChunks must be greater than 0"));
+        }
+
+        if (appendMetadata.getClientNodeId() == null || appendMetadata.getClientNodeId().trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Client node ID is required"));
+        }
+
+        try {
+            UploadSessionService.UploadSessionResponse response = uploadSessionService.initializeAppendSession(fileId, appendMetadata);
+
+            log.info("Append session initialized: " + response.getSessionId() + " for file: " + fileId +
+                    " from chunk " + response.getStartChunk());
+
+            return ResponseEntity.ok(Map.of(
+                    "sessionId", response.getSessionId(),
+                    "fileId", response.getFileId(),
+                    "status", response.getStatus(),
+                    "expectedChunks", response.getExpectedChunks(),
+                    "startChunk", response.getStartChunk(),
+                    "message", "Append session initialized successfully"
+            ));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (FileService.AppendInProgressException e) {
+            // The holder can be aborted through /upload/session/{sessionId}/status
+            log.warning("Append refused: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage(), "appendSessionId", e.getAppendSessionId()));
+        } catch (IllegalStateException e) {
+            log.warning("Append refused: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.severe("Failed to initialize append session: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to initialize append: " + e.getMessage()));
+        }
+    }
+
     // 2. CHUNK REGISTRATION
 
     /**
@@ -154,6 +218,49 @@ public class UploadController {
         }
     }
 
+    /**
+     * Register a chunk of a new file version that reuses an existing chunk's data
+     * Called by ClientNode during delta uploads for chunks whose fingerprint matched the base version
+     */
+    @PostMapping("/chunk/reference")
+    public ResponseEntity<?> registerChunkReference(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @RequestBody ChunkReferenceDTO reference) {
+
+        if (!isAuthorized(apiKey)) {
+            log.warning("Unauthorized chunk reference attempt");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+
+        if (reference == null || reference.getFileId() == null || reference.getSourceChunkId() == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "File ID and source chunk ID are required"));
+        }
+
+        try {
+            var chunk = chunkMetadataService.registerChunkReference(reference);
+
+            return ResponseEntity.ok(Map.of(
+                    "chunkId", chunk.getChunkId(),
+                    "chunkNumber", chunk.getChunkNumber(),
+                    "fileId", chunk.getFileId(),
+                    "sourceChunkId", chunk.getSourceChunkId(),
+                    "status", "registered",
+                    "message", "Chunk reference registered successfully"
+            ));
+
+        } catch (IllegalArgumentException e) {
+            log.warning("Chunk reference validation failed: " + e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.severe("Failed to register chunk reference: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to register chunk reference: " + e.getMessage()));
+        }
+    }
+
     // 3. SESSION STATUS MANAGEMENT
 
     /**
@@ -193,6 +300,10 @@ public class UploadController {
             log.warning("Invalid status update: " + e.getMessage());
             return ResponseEntity.badRequest()
                     .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            log.warning("Refused status update: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.severe("Failed to update session status: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -349,6 +460,43 @@ public class UploadController {
         }
     }
 
+    /**
+     * Get the fingerprint manifest of a file version (for delta uploads)
+     */
+    @GetMapping("/file/{fileId}/manifest")
+    public ResponseEntity<?> getFileManifest(
+            @RequestHeader(value = API_HEADER) String apiKey,
+            @PathVariable("fileId") UUID fileId) {
+
+        if (!isAuthorized(apiKey)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Forbidden: Invalid API key"));
+        }
+
+        try {
+            File file = fileService.getFile(fileId);
+            if (file.getUploadStatus() != UploadStatus.COMPLETED) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("error", "File is not completed: " + file.getUploadStatus()));
+            }
+
+            List<ManifestEntryDTO> manifest = chunkMetadataService.getFileManifest(fileId);
+            return ResponseEntity.ok(Map.of(
+                    "fileId", fileId,
+                    "totalChunks", file.getTotalChunks(),
+                    "chunks", manifest
+            ));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "File not found: " + fileId));
+        } catch (Exception e) {
+            log.severe("Failed to build manifest: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to build manifest: " + e.getMessage()));
+        }
+    }
+
     /**
      * Get sessions by status
      */
@@ -420,6 +568,10 @@ public class UploadController {
                     "message", "File and all associated data deleted successfully"
             ));
 
+        } catch (IllegalStateException e) {
+            log.warning("File deletion refused: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.severe("Failed to delete file: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
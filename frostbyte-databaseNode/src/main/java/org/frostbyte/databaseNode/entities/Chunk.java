@@ -30,6 +30,14 @@ public class Chunk {
     @Column(name = "crc32")
     private String crc32;
 
+    // Keyed content fingerprint, used to match chunks across file versions
+    @Column(name = "fingerprint")
+    private String fingerprint;
+
+    // Set for chunks that reuse another chunk's snowflake (delta uploads); null otherwise
+    @Column(name = "source_chunk_id", columnDefinition = "uuid")
+    private UUID sourceChunkId;
+
     @Column(name = "created_at", updatable = false, insertable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
     private Timestamp createdAt;
 }
\ No newline at end of file
@@ -32,6 +32,12 @@ public class File {
     @Column(name = "session_id", columnDefinition = "uuid")
     private UUID sessionId;  // Just the UUID!
 
+    @Column(name = "append_session_id", columnDefinition = "uuid")
+    private UUID appendSessionId;  // Open append session, at most one per file
+
+    @Column(name = "append_claimed_at")
+    private Timestamp appendClaimedAt;  // When appendSessionId took the file
+
     @Column(name = "created_at", updatable = false, insertable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
     private Timestamp createdAt;
 }
\ No newline at end of file
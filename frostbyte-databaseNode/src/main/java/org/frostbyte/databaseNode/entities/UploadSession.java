@@ -34,4 +34,23 @@ public class UploadSession {
 
     @Column(name = "chunks_received")
     private int chunksReceived;
+
+    // ========== APPEND SESSIONS ONLY ==========
+    // Chunks are added to an existing file, they become visible when the session completes
+
+    @Column(name = "target_file_id", columnDefinition = "uuid")
+    private UUID targetFileId;
+
+    @Column(name = "base_chunk_count")
+    private int baseChunkCount;
+
+    @Column(name = "append_chunk_count")
+    private int appendChunkCount;
+
+    @Column(name = "append_bytes")
+    private long appendBytes;
+
+    public boolean isAppend() {
+        return targetFileId != null;
+    }
 }
\ No newline at end of file
@@ -20,6 +20,9 @@ public class configModel {
     // File address
     private String masterAPIKey;
 
+    // An append claim idle for this long (no chunk registered) is taken over by the next append, 0 never expires
+    private long appendClaimTimeoutMs = 900000;
+
     @Data
     public static class DatabaseDetails {
         private String host;
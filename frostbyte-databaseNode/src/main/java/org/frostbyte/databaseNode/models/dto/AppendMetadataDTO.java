@@ -0,0 +1,10 @@
+package org.frostbyte.databaseNode.models.dto;
+
+import lombok.Data;
+
+@Data
+public class AppendMetadataDTO {
+    private long appendSize;   // bytes being appended
+    private int appendChunks;  // chunks being appended
+    private String clientNodeId;
+}
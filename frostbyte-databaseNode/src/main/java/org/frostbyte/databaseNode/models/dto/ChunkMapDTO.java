@@ -8,5 +8,12 @@ import java.util.UUID;
 public class ChunkMapDTO {
     private UUID chunkId;
     private int chunkNumber;
+    private int chunkSize; // plaintext bytes, used to map file offsets to chunks
     private List<ReplicaLocationDTO> replicas;
+
+    // Set when the chunk reuses another chunk's snowflake (delta uploads):
+    // download, key retrieval and replica lookups must use these instead
+    private UUID sourceChunkId;
+    private UUID sourceFileId;
+    private Integer sourceChunkNumber;
 }
\ No newline at end of file
@@ -10,4 +10,5 @@ public class ChunkMetadataDTO {
     private int chunkNumber;
     private int chunkSize;
     private String crc32;
+    private String fingerprint; // optional, recorded for delta uploads
 }
\ No newline at end of file
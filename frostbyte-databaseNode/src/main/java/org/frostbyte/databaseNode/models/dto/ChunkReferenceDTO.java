@@ -0,0 +1,15 @@
+package org.frostbyte.databaseNode.models.dto;
+
+import lombok.Data;
+import java.util.UUID;
+
+/**
+ * Registers a chunk of a new file version that reuses an existing chunk's data
+ */
+@Data
+public class ChunkReferenceDTO {
+    private UUID fileId;
+    private int chunkNumber;
+    private UUID sourceChunkId;
+    private String fingerprint;
+}
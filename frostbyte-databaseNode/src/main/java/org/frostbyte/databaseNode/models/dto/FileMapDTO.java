@@ -8,6 +8,7 @@ import java.util.UUID;
 public class FileMapDTO {
     private UUID fileId;
     private String fileName;
+    private long fileSize;
     private int totalChunks;
     private List<ChunkMapDTO> chunks;
 }
\ No newline at end of file
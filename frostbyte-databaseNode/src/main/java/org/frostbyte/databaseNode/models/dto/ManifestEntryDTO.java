@@ -0,0 +1,15 @@
+package org.frostbyte.databaseNode.models.dto;
+
+import lombok.Data;
+import java.util.UUID;
+
+/**
+ * One fingerprinted chunk of a file version, as used for delta uploads
+ */
+@Data
+public class ManifestEntryDTO {
+    private int chunkNumber;
+    private int chunkSize;
+    private String fingerprint;
+    private UUID dataChunkId; // chunk whose snowflake holds the bytes
+}
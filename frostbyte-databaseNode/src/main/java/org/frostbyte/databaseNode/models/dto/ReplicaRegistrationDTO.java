@@ -0,0 +1,13 @@
+package org.frostbyte.databaseNode.models.dto;
+
+import lombok.Data;
+import org.frostbyte.databaseNode.models.ReplicaStatus;
+
+import java.util.UUID;
+
+@Data
+public class ReplicaRegistrationDTO {
+    private UUID chunkId;
+    private String datanodeId;
+    private ReplicaStatus status; // null means AVAILABLE
+}
@@ -4,6 +4,7 @@ import org.frostbyte.databaseNode.entities.ChunkReplica;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -12,6 +13,7 @@ import java.util.UUID;
 public interface ChunkReplicaRepository extends JpaRepository<ChunkReplica, Long> {
     // Methods for finding replicas
     List<ChunkReplica> findByChunkId(UUID chunkId);
+    List<ChunkReplica> findByChunkIdIn(Collection<UUID> chunkIds);
     List<ChunkReplica> findByDatanodeId(String datanodeId);
     Optional<ChunkReplica> findByChunkIdAndDatanodeId(UUID chunkId, String datanodeId);
 
@@ -4,6 +4,7 @@ import org.frostbyte.databaseNode.entities.Chunk;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -11,7 +12,20 @@ import java.util.UUID;
 public interface ChunkRepository extends JpaRepository<Chunk, UUID> {
     List<Chunk> findByFileIdOrderByChunkNumberAsc(UUID fileId);
 
+    // Committed chunks only: chunks of an open append session sit at chunkNumber >= totalChunks
+    List<Chunk> findByFileIdAndChunkNumberLessThanOrderByChunkNumberAsc(UUID fileId, int chunkNumber);
+
+    List<Chunk> findByFileIdAndChunkNumberGreaterThanEqual(UUID fileId, int chunkNumber);
+
+    long countByFileIdAndChunkNumberLessThan(UUID fileId, int chunkNumber);
+
+    long countByFileIdAndChunkNumberGreaterThanEqual(UUID fileId, int chunkNumber);
+
     long countByFileId(UUID fileId);
 
     void deleteByFileId(UUID fileId);
+
+    boolean existsBySourceChunkIdIn(Collection<UUID> sourceChunkIds);
+
+    boolean existsByFileIdAndChunkNumber(UUID fileId, int chunkNumber);
 }
\ No newline at end of file
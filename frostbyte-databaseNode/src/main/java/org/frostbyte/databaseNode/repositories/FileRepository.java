@@ -3,8 +3,12 @@ package org.frostbyte.databaseNode.repositories;
 import org.frostbyte.databaseNode.entities.File;
 import org.frostbyte.databaseNode.models.UploadStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,4 +23,36 @@ public interface FileRepository extends JpaRepository<File, UUID> {
 
     List<File> findByUploadStatus(UploadStatus status);
 
+    /**
+     * Claims a COMPLETED file for an append session.
+     * Only one append can be open per file, a second claim updates no rows.
+     *
+     * @return Number of rows updated (1 if claimed)
+     */
+    @Modifying
+    @Query("UPDATE File f SET f.appendSessionId = :sessionId, f.appendClaimedAt = :claimedAt WHERE f.fileId = :fileId " +
+            "AND f.appendSessionId IS NULL AND f.uploadStatus = org.frostbyte.databaseNode.models.UploadStatus.COMPLETED")
+    int claimAppend(@Param("fileId") UUID fileId, @Param("sessionId") UUID sessionId,
+                    @Param("claimedAt") Timestamp claimedAt);
+
+    /**
+     * Publishes an append: grows totalChunks/fileSize and releases the claim in one statement,
+     * so readers see either the old file or the whole append.
+     *
+     * @return Number of rows updated (0 if the session no longer holds the claim)
+     */
+    @Modifying
+    @Query("UPDATE File f SET f.totalChunks = f.totalChunks + :chunks, f.fileSize = f.fileSize + :bytes, " +
+            "f.appendSessionId = NULL, f.appendClaimedAt = NULL WHERE f.fileId = :fileId AND f.appendSessionId = :sessionId")
+    int commitAppend(@Param("fileId") UUID fileId, @Param("sessionId") UUID sessionId,
+                     @Param("chunks") int chunks, @Param("bytes") long bytes);
+
+    /**
+     * Releases an append claim without publishing anything.
+     */
+    @Modifying
+    @Query("UPDATE File f SET f.appendSessionId = NULL, f.appendClaimedAt = NULL " +
+            "WHERE f.fileId = :fileId AND f.appendSessionId = :sessionId")
+    int releaseAppend(@Param("fileId") UUID fileId, @Param("sessionId") UUID sessionId);
+
 }
\ No newline at end of file
@@ -13,7 +13,13 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.logging.Logger;
@@ -65,21 +71,8 @@ public class ChunkMetadataService {
         File file = fileRepository.findById(chunkData.getFileId())
                 .orElseThrow(() -> new IllegalArgumentException("File not found: " + chunkData.getFileId()));
 
-        // 3. Check for duplicate chunk numbers for the same file
-        List<Chunk> existingChunks = chunkRepository.findByFileIdOrderByChunkNumberAsc(chunkData.getFileId());
-        boolean chunkNumberExists = existingChunks.stream()
-                .anyMatch(chunk -> chunk.getChunkNumber() == chunkData.getChunkNumber());
-
-        if (chunkNumberExists) {
-            throw new IllegalArgumentException("Chunk number " + chunkData.getChunkNumber() +
-                    " already exists for file: " + chunkData.getFileId());
-        }
-
-        // 4. Validate chunk number is within expected range
-        if (chunkData.getChunkNumber() < 0 || chunkData.getChunkNumber() >= file.getTotalChunks()) {
-            throw new IllegalArgumentException("Invalid chunk number " + chunkData.getChunkNumber() +
-                    ". Expected range: 0 to " + (file.getTotalChunks() - 1));
-        }
+        // 3-4. Chunk number must be free and within the expected range
+        UploadSession session = validateChunkSlot(file, chunkData.getChunkNumber());
 
         // ========== CREATE CHUNK ENTRY ==========
 
@@ -89,30 +82,125 @@ public class ChunkMetadataService {
         chunk.setChunkNumber(chunkData.getChunkNumber());
         chunk.setChunkSize(chunkData.getChunkSize());
         chunk.setCrc32(chunkData.getCrc32());
+        chunk.setFingerprint(chunkData.getFingerprint());
 
         Chunk savedChunk = chunkRepository.save(chunk);
         log.info("Chunk saved: " + savedChunk.getChunkId());
 
         // ========== UPDATE UPLOAD SESSION PROGRESS ==========
 
-        // Atomically increment chunks received counter (prevents race condition)
-        Timestamp now = Timestamp.from(Instant.now());
-        int rowsUpdated = uploadSessionRepository.incrementChunksReceived(file.getSessionId(), now);
+        recordChunkReceived(session);
 
-        if (rowsUpdated == 0) {
-            throw new IllegalArgumentException("Upload session not found: " + file.getSessionId());
+        return savedChunk;
+    }
+
+    /**
+     * Registers a chunk of a new file version that reuses the data of an existing chunk
+     * (delta upload). No key, snowflake or replicas are created: downloads are redirected
+     * to the source chunk. References always point at the chunk that owns the data.
+     */
+    @Transactional
+    public Chunk registerChunkReference(ChunkReferenceDTO reference) {
+        log.info("Registering chunk reference for file: " + reference.getFileId() +
+                " chunk " + reference.getChunkNumber() + " -> " + reference.getSourceChunkId());
+
+        // ========== VALIDATIONS ==========
+
+        File file = fileRepository.findById(reference.getFileId())
+                .orElseThrow(() -> new IllegalArgumentException("File not found: " + reference.getFileId()));
+
+        Chunk source = chunkRepository.findById(reference.getSourceChunkId())
+                .orElseThrow(() -> new IllegalArgumentException("Source chunk not found: " + reference.getSourceChunkId()));
+
+        // Collapse reference chains so lookups are always one hop
+        if (source.getSourceChunkId() != null) {
+            UUID rootId = source.getSourceChunkId();
+            source = chunkRepository.findById(rootId)
+                    .orElseThrow(() -> new IllegalArgumentException("Source chunk not found: " + rootId));
         }
 
-        // Fetch updated session to log progress
-        UploadSession session = uploadSessionRepository.findById(file.getSessionId())
-                .orElseThrow(() -> new IllegalArgumentException("Upload session not found: " + file.getSessionId()));
+        UploadSession session = validateChunkSlot(file, reference.getChunkNumber());
 
-        log.info("Upload session updated. Chunks received: " + session.getChunksReceived() +
-                "/" + file.getTotalChunks());
+        // ========== CREATE REFERENCE CHUNK ==========
+
+        Chunk chunk = new Chunk();
+        chunk.setChunkId(UUID.randomUUID());
+        chunk.setFileId(file.getFileId());
+        chunk.setChunkNumber(reference.getChunkNumber());
+        chunk.setChunkSize(source.getChunkSize());
+        chunk.setCrc32(source.getCrc32());
+        chunk.setFingerprint(reference.getFingerprint() != null ? reference.getFingerprint() : source.getFingerprint());
+        chunk.setSourceChunkId(source.getChunkId());
+
+        Chunk savedChunk = chunkRepository.save(chunk);
+        log.info("Chunk reference saved: " + savedChunk.getChunkId() + " -> " + source.getChunkId());
+
+        recordChunkReceived(session);
 
         return savedChunk;
     }
 
+    /**
+     * Fingerprinted chunks of a file, used by ClientNodes to find unchanged chunks
+     * when uploading a new version.
+     */
+    @Transactional(readOnly = true)
+    public List<ManifestEntryDTO> getFileManifest(UUID fileId) {
+        File file = fileRepository.findById(fileId)
+                .orElseThrow(() -> new IllegalArgumentException("File not found: " + fileId));
+
+        return chunkRepository.findByFileIdAndChunkNumberLessThanOrderByChunkNumberAsc(fileId, file.getTotalChunks()).stream()
+                .filter(chunk -> chunk.getFingerprint() != null)
+                .map(chunk -> {
+                    ManifestEntryDTO entry = new ManifestEntryDTO();
+                    entry.setChunkNumber(chunk.getChunkNumber());
+                    entry.setChunkSize(chunk.getChunkSize());
+                    entry.setFingerprint(chunk.getFingerprint());
+                    entry.setDataChunkId(chunk.getSourceChunkId() != null ? chunk.getSourceChunkId() : chunk.getChunkId());
+                    return entry;
+                })
+                .collect(Collectors.toList());
+    }
+
+    // Rejects duplicate chunk numbers and numbers outside the file's range,
+    // returns the session the chunk belongs to (the file's append session for chunks past totalChunks)
+    private UploadSession validateChunkSlot(File file, int chunkNumber) {
+        if (chunkRepository.existsByFileIdAndChunkNumber(file.getFileId(), chunkNumber)) {
+            throw new IllegalArgumentException("Chunk number " + chunkNumber +
+                    " already exists for file: " + file.getFileId());
+        }
+
+        UUID sessionId = file.getSessionId();
+        int upperBound = file.getTotalChunks();
+        if (chunkNumber >= file.getTotalChunks() && file.getAppendSessionId() != null) {
+            sessionId = file.getAppendSessionId();
+            upperBound += uploadSessionRepository.findById(sessionId)
+                    .map(UploadSession::getAppendChunkCount)
+                    .orElse(0);
+        }
+
+        if (chunkNumber < 0 || chunkNumber >= upperBound) {
+            throw new IllegalArgumentException("Invalid chunk number " + chunkNumber +
+                    ". Expected range: 0 to " + (upperBound - 1));
+        }
+
+        UUID finalSessionId = sessionId;
+        return uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Upload session not found: " + finalSessionId));
+    }
+
+    // Atomically increments the session's chunks received counter (prevents race condition)
+    private void recordChunkReceived(UploadSession session) {
+        Timestamp now = Timestamp.from(Instant.now());
+        int rowsUpdated = uploadSessionRepository.incrementChunksReceived(session.getSessionId(), now);
+
+        if (rowsUpdated == 0) {
+            throw new IllegalArgumentException("Upload session not found: " + session.getSessionId());
+        }
+
+        log.info("Upload session updated: " + session.getSessionId() + " (chunk received)");
+    }
+
     // =================================================================
     // 2. REGISTER REPLICA FUNCTION (ATOMIC)
     // =================================================================
@@ -152,6 +240,53 @@ public class ChunkMetadataService {
         return savedReplica;
     }
 
+    /**
+     * Applies a batch of replica registrations in one transaction (balancer write-behind queue)
+     * Entries are applied in order: a new (chunk, datanode) pair is inserted, an existing one
+     * gets its status updated, so replaying a batch is harmless.
+     * @return Entries rejected because their chunk does not exist
+     */
+    @Transactional
+    public List<ReplicaRegistrationDTO> applyReplicaRegistrations(List<ReplicaRegistrationDTO> registrations) {
+        Set<UUID> chunkIds = registrations.stream()
+                .map(ReplicaRegistrationDTO::getChunkId)
+                .collect(Collectors.toSet());
+
+        Set<UUID> knownChunks = new HashSet<>();
+        chunkRepository.findAllById(chunkIds).forEach(chunk -> knownChunks.add(chunk.getChunkId()));
+
+        Map<String, ChunkReplica> replicas = new HashMap<>();
+        for (ChunkReplica existing : chunkReplicaRepository.findByChunkIdIn(knownChunks)) {
+            replicas.put(existing.getChunkId() + "/" + existing.getDatanodeId(), existing);
+        }
+
+        List<ReplicaRegistrationDTO> rejected = new ArrayList<>();
+        Map<String, ChunkReplica> touched = new LinkedHashMap<>();
+        for (ReplicaRegistrationDTO registration : registrations) {
+            if (!knownChunks.contains(registration.getChunkId())) {
+                rejected.add(registration);
+                continue;
+            }
+            ReplicaStatus status = registration.getStatus() != null ? registration.getStatus() : ReplicaStatus.AVAILABLE;
+            String key = registration.getChunkId() + "/" + registration.getDatanodeId();
+
+            ChunkReplica replica = replicas.computeIfAbsent(key, k -> {
+                ChunkReplica created = new ChunkReplica();
+                created.setChunkId(registration.getChunkId());
+                created.setDatanodeId(registration.getDatanodeId());
+                return created;
+            });
+            replica.setStatus(status);
+            touched.put(key, replica);
+        }
+
+        chunkReplicaRepository.saveAll(touched.values());
+
+        log.info(String.format("[REPLICA-BULK-APPLY] received=%d applied=%d rejected=%d",
+                registrations.size(), touched.size(), rejected.size()));
+        return rejected;
+    }
+
     // =================================================================
     // 3. FETCH CHUNKS FUNCTION (FILE RECONSTRUCTION MAP)
     // =================================================================
@@ -172,8 +307,9 @@ public class ChunkMetadataService {
 
         // ========== FETCH CHUNKS WITH REPLICAS ==========
 
-        // 2. Get all chunks for this file, ordered by chunk number
-        List<Chunk> chunks = chunkRepository.findByFileIdOrderByChunkNumberAsc(fileId);
+        // 2. Get all committed chunks for this file, ordered by chunk number
+        //    (chunks of an open append session stay hidden until it completes)
+        List<Chunk> chunks = chunkRepository.findByFileIdAndChunkNumberLessThanOrderByChunkNumberAsc(fileId, file.getTotalChunks());
 
         if (chunks.isEmpty()) {
             throw new IllegalStateException("No chunks found for file: " + fileId);
@@ -184,9 +320,21 @@ public class ChunkMetadataService {
             ChunkMapDTO chunkMapDTO = new ChunkMapDTO();
             chunkMapDTO.setChunkId(chunk.getChunkId());
             chunkMapDTO.setChunkNumber(chunk.getChunkNumber());
+            chunkMapDTO.setChunkSize(chunk.getChunkSize());
+
+            // Reference chunks (delta uploads) are served from their source chunk's snowflake
+            UUID dataChunkId = chunk.getChunkId();
+            if (chunk.getSourceChunkId() != null) {
+                Chunk source = chunkRepository.findById(chunk.getSourceChunkId())
+                        .orElseThrow(() -> new IllegalStateException("Source chunk missing: " + chunk.getSourceChunkId()));
+                dataChunkId = source.getChunkId();
+                chunkMapDTO.setSourceChunkId(source.getChunkId());
+                chunkMapDTO.setSourceFileId(source.getFileId());
+                chunkMapDTO.setSourceChunkNumber(source.getChunkNumber());
+            }
 
             // Get available replicas for this chunk
-            List<ReplicaLocationDTO> replicaLocations = chunkReplicaRepository.findByChunkId(chunk.getChunkId())
+            List<ReplicaLocationDTO> replicaLocations = chunkReplicaRepository.findByChunkId(dataChunkId)
                     .stream()
                     .filter(replica -> replica.getStatus() == ReplicaStatus.AVAILABLE) // Only healthy replicas
                     .map(replica -> {
@@ -198,7 +346,7 @@ public class ChunkMetadataService {
                     .collect(Collectors.toList());
 
             if (replicaLocations.isEmpty()) {
-                log.warning("No available replicas found for chunk: " + chunk.getChunkId());
+                log.warning("No available replicas found for chunk: " + dataChunkId);
             }
 
             chunkMapDTO.setReplicas(replicaLocations);
@@ -210,6 +358,7 @@ public class ChunkMetadataService {
         FileMapDTO fileMap = new FileMapDTO();
         fileMap.setFileId(file.getFileId());
         fileMap.setFileName(file.getFileName());
+        fileMap.setFileSize(file.getFileSize());
         fileMap.setTotalChunks(file.getTotalChunks());
         fileMap.setChunks(chunkMaps);
 
@@ -238,16 +387,21 @@ public class ChunkMetadataService {
             throw new IllegalArgumentException("Chunk not found: " + chunkId);
         }
 
+        // 2. Newer file versions may still read this chunk's data
+        if (chunkRepository.existsBySourceChunkIdIn(List.of(chunkId))) {
+            throw new IllegalStateException("Chunk is referenced by another file version: " + chunkId);
+        }
+
         // ========== CASCADE DELETE ==========
 
-        // 2. First delete all replicas for this chunk
+        // 3. First delete all replicas for this chunk
         List<ChunkReplica> replicas = chunkReplicaRepository.findByChunkId(chunkId);
         if (!replicas.isEmpty()) {
             chunkReplicaRepository.deleteAll(replicas);
             log.info("Deleted " + replicas.size() + " replicas for chunk: " + chunkId);
         }
 
-        // 3. Then delete the chunk itself
+        // 4. Then delete the chunk itself
         chunkRepository.deleteById(chunkId);
         log.info("Chunk deleted: " + chunkId);
 
@@ -290,6 +444,23 @@ public class ChunkMetadataService {
         return replicas;
     }
 
+    /**
+     * Replicas of many chunks in one query (balancer batch downloads)
+     * Chunks without replicas map to an empty list
+     */
+    public Map<UUID, List<ChunkReplica>> getReplicasByChunkIds(List<UUID> chunkIds) {
+        Map<UUID, List<ChunkReplica>> byChunk = new LinkedHashMap<>();
+        for (UUID chunkId : chunkIds) {
+            byChunk.put(chunkId, new ArrayList<>());
+        }
+        for (ChunkReplica replica : chunkReplicaRepository.findByChunkIdIn(byChunk.keySet())) {
+            byChunk.get(replica.getChunkId()).add(replica);
+        }
+
+        log.info("Found replicas for " + byChunk.size() + " chunks in one lookup");
+        return byChunk;
+    }
+
     /**
      * Delete a specific replica (chunk from specific DataNode)
      * Used for replica cleanup operations
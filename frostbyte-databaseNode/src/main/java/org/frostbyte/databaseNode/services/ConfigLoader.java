@@ -52,6 +52,9 @@ public class ConfigLoader {
             writer.write("# Security Configuration\n");
             writer.write("frostbyte.databasenode.master-api-key=ABCDEFEG\n");
             writer.write("\n");
+            writer.write("# Appends\n");
+            writer.write("frostbyte.databasenode.append-claim-timeout-ms=900000\n");
+            writer.write("\n");
             writer.write("# Database Configuration\n");
             writer.write("frostbyte.databasenode.database.host=localhost\n");
             writer.write("frostbyte.databasenode.database.port=5432\n");
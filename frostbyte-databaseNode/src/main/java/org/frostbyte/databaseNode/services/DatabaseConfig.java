@@ -57,6 +57,10 @@ public class DatabaseConfig {
         jpaProps.put("hibernate.hbm2ddl.auto", "update"); // Can be 'validate', 'create', 'none'
         jpaProps.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
         jpaProps.put("hibernate.show_sql", "true");
+        // Group inserts/updates into JDBC batches (bulk replica registration)
+        jpaProps.put("hibernate.jdbc.batch_size", "100");
+        jpaProps.put("hibernate.order_inserts", "true");
+        jpaProps.put("hibernate.order_updates", "true");
 
         emf.setJpaPropertyMap(jpaProps);
 
@@ -10,6 +10,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
@@ -150,7 +152,75 @@ public class FileService {
     }
 
 
-    // 4. DELETE FILE FUNCTION (CASCADE DELETE)
+    // 4. APPEND FUNCTIONS
+
+    /**
+     * Claims a COMPLETED file for an append session
+     * Called by UploadSessionService when an append session is initialized
+     */
+    @Transactional
+    public File claimAppend(UUID fileId, UUID sessionId) {
+        File file = getFile(fileId);
+
+        if (fileRepository.claimAppend(fileId, sessionId, Timestamp.from(Instant.now())) == 0) {
+            if (file.getUploadStatus() != UploadStatus.COMPLETED) {
+                throw new IllegalStateException("Cannot append to file in status " + file.getUploadStatus() + ": " + fileId);
+            }
+            throw new AppendInProgressException(fileId, file.getAppendSessionId());
+        }
+
+        log.info("Append session " + sessionId + " opened on file " + fileId +
+                " after chunk " + (file.getTotalChunks() - 1));
+        return file;
+    }
+
+    /**
+     * Publishes an append session's chunks by growing totalChunks and fileSize atomically
+     */
+    @Transactional
+    public void commitAppend(UUID fileId, UUID sessionId, int appendChunks, long appendBytes) {
+        if (fileRepository.commitAppend(fileId, sessionId, appendChunks, appendBytes) == 0) {
+            throw new IllegalStateException("Append session " + sessionId + " no longer holds file: " + fileId);
+        }
+        log.info("Append committed on file " + fileId + ": +" + appendChunks + " chunks, +" + appendBytes + " bytes");
+    }
+
+    /**
+     * Drops an append session's uncommitted chunks and releases the file
+     *
+     * @return false if the session no longer held the file (committed, released or the file is gone)
+     */
+    @Transactional
+    public boolean abortAppend(UUID fileId, UUID sessionId, int baseChunkCount) {
+        if (fileRepository.releaseAppend(fileId, sessionId) == 0) {
+            return false;
+        }
+
+        List<Chunk> uncommitted = chunkRepository.findByFileIdAndChunkNumberGreaterThanEqual(fileId, baseChunkCount);
+        uncommitted.forEach(chunk -> chunkReplicaRepository.deleteAll(chunkReplicaRepository.findByChunkId(chunk.getChunkId())));
+        chunkRepository.deleteAll(uncommitted);
+
+        log.warning("Append aborted on file " + fileId + ", discarded " + uncommitted.size() + " uncommitted chunks");
+        return true;
+    }
+
+    /**
+     * Thrown when another append session holds the file
+     */
+    public static class AppendInProgressException extends IllegalStateException {
+        private final UUID appendSessionId;
+
+        public AppendInProgressException(UUID fileId, UUID appendSessionId) {
+            super("Another append is already in progress for file: " + fileId + " (session " + appendSessionId + ")");
+            this.appendSessionId = appendSessionId;
+        }
+
+        public UUID getAppendSessionId() {
+            return appendSessionId;
+        }
+    }
+
+    // 5. DELETE FILE FUNCTION (CASCADE DELETE)
 
     /**
      * Deletes file and ALL associated chunks and replicas
@@ -165,6 +235,14 @@ public class FileService {
         File file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new IllegalArgumentException("File not found: " + fileId));
 
+        // Chunks reused by newer versions (delta uploads) must outlive this file
+        List<UUID> chunkIds = chunkRepository.findByFileIdOrderByChunkNumberAsc(fileId).stream()
+                .map(Chunk::getChunkId)
+                .toList();
+        if (!chunkIds.isEmpty() && chunkRepository.existsBySourceChunkIdIn(chunkIds)) {
+            throw new IllegalStateException("File has chunks referenced by newer versions, delete those first: " + fileId);
+        }
+
         // ========== CASCADE DELETE IN CORRECT ORDER ==========
 
         // 1. Delete all chunk replicas first (foreign key dependency)
@@ -185,15 +263,16 @@ public class FileService {
         log.warning("FILE DELETED: " + file.getFileName() + " (" + fileId + ")");
     }
 
-    // 5. VALIDATION & UTILITY FUNCTIONS
+    // 6. VALIDATION & UTILITY FUNCTIONS
 
     /**
      * Check if file upload is complete (all chunks received)
+     * Chunks of an open append session are not counted
      */
     @Transactional(readOnly = true)
     public boolean isFileUploadComplete(UUID fileId) {
         File file = getFile(fileId);
-        long registeredChunks = chunkRepository.countByFileId(fileId);
+        long registeredChunks = chunkRepository.countByFileIdAndChunkNumberLessThan(fileId, file.getTotalChunks());
 
         boolean isComplete = registeredChunks == file.getTotalChunks();
         log.info("File upload completeness check: " + fileId +
@@ -209,7 +288,7 @@ public class FileService {
     @Transactional(readOnly = true)
     public double getFileUploadProgress(UUID fileId) {
         File file = getFile(fileId);
-        long registeredChunks = chunkRepository.countByFileId(fileId);
+        long registeredChunks = chunkRepository.countByFileIdAndChunkNumberLessThan(fileId, file.getTotalChunks());
 
         if (file.getTotalChunks() == 0) return 0.0;
 
@@ -4,6 +4,8 @@ import lombok.Data;
 import org.frostbyte.databaseNode.entities.File;
 import org.frostbyte.databaseNode.entities.UploadSession;
 import org.frostbyte.databaseNode.models.UploadStatus;
+import org.frostbyte.databaseNode.models.configModel;
+import org.frostbyte.databaseNode.models.dto.AppendMetadataDTO;
 import org.frostbyte.databaseNode.models.dto.FileMetadataDTO;
 import org.frostbyte.databaseNode.repositories.UploadSessionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,12 +25,15 @@ public class UploadSessionService {
 
     private final UploadSessionRepository uploadSessionRepository;
     private final FileService fileService; // Injected FileService
+    private final configModel config;
 
     @Autowired
     public UploadSessionService(UploadSessionRepository uploadSessionRepository,
-                                FileService fileService) {
+                                FileService fileService,
+                                configModel config) {
         this.uploadSessionRepository = uploadSessionRepository;
         this.fileService = fileService;
+        this.config = config;
     }
 
     // =================================================================
@@ -75,11 +80,98 @@ public class UploadSessionService {
         response.setFileId(createdFile.getFileId());
         response.setStatus(savedSession.getStatus());
         response.setExpectedChunks(createdFile.getTotalChunks());
+        response.setStartChunk(0);
 
         log.info("Upload session initialized successfully: " + response.getSessionId());
         return response;
     }
 
+    /**
+     * Opens an append session on an existing COMPLETED file
+     * New chunks are numbered from the file's current totalChunks and stay invisible
+     * to readers until the session completes
+     */
+    @Transactional
+    public UploadSessionResponse initializeAppendSession(UUID fileId, AppendMetadataDTO appendMetadata) {
+        log.info("Initializing append session for file: " + fileId + " from client: " + appendMetadata.getClientNodeId());
+
+        // ========== VALIDATIONS ==========
+
+        if (appendMetadata.getClientNodeId() == null || appendMetadata.getClientNodeId().trim().isEmpty()) {
+            throw new IllegalArgumentException("Client node ID cannot be null or empty");
+        }
+
+        if (appendMetadata.getAppendSize() <= 0 || appendMetadata.getAppendChunks() <= 0) {
+            throw new IllegalArgumentException("Append size and chunk count must be greater than 0");
+        }
+
+        // ========== CREATE APPEND SESSION ==========
+
+        UploadSession session = new UploadSession();
+        session.setSessionId(UUID.randomUUID());
+        session.setClientNode(appendMetadata.getClientNodeId());
+        session.setStatus(UploadStatus.UPLOADING);
+        session.setChunksReceived(0);
+        session.setTargetFileId(fileId);
+        session.setAppendChunkCount(appendMetadata.getAppendChunks());
+        session.setAppendBytes(appendMetadata.getAppendSize());
+
+        // A ClientNode that crashed mid-append would otherwise hold the file forever
+        reclaimStaleAppend(fileId);
+
+        // Claim the file first so baseChunkCount cannot move underneath this session
+        File file = fileService.claimAppend(fileId, session.getSessionId());
+        session.setBaseChunkCount(file.getTotalChunks());
+
+        UploadSession savedSession = uploadSessionRepository.save(session);
+        log.info("Append session created: " + savedSession.getSessionId() + " for file: " + fileId);
+
+        // ========== RETURN RESPONSE ==========
+
+        UploadSessionResponse response = new UploadSessionResponse();
+        response.setSessionId(savedSession.getSessionId());
+        response.setFileId(fileId);
+        response.setStatus(savedSession.getStatus());
+        response.setExpectedChunks(savedSession.getAppendChunkCount());
+        response.setStartChunk(savedSession.getBaseChunkCount());
+        return response;
+    }
+
+    /**
+     * Aborts the file's append session if neither the claim nor the session (every chunk
+     * registration touches it) moved for append-claim-timeout-ms
+     */
+    private void reclaimStaleAppend(UUID fileId) {
+        File file = fileService.getFile(fileId);
+        UUID holder = file.getAppendSessionId();
+        long timeoutMs = config.getAppendClaimTimeoutMs();
+        if (holder == null || timeoutMs <= 0) return;
+
+        UploadSession stale = uploadSessionRepository.findById(holder).orElse(null);
+        Instant staleBefore = Instant.now().minusMillis(timeoutMs);
+        // Claims taken before claim timestamps existed have none and count as stale
+        if (isAfter(file.getAppendClaimedAt(), staleBefore)
+                || (stale != null && isAfter(stale.getUpdatedAt(), staleBefore))) {
+            return;
+        }
+
+        int baseChunkCount = stale != null ? stale.getBaseChunkCount() : file.getTotalChunks();
+        if (!fileService.abortAppend(fileId, holder, baseChunkCount)) {
+            return; // Completed or released meanwhile
+        }
+        if (stale != null) {
+            stale.setStatus(UploadStatus.FAILED);
+            stale.setUpdatedAt(Timestamp.from(Instant.now()));
+            uploadSessionRepository.save(stale);
+        }
+        log.warning("Reclaimed stale append claim of session " + holder + " on file " + fileId +
+                " (claimed at " + file.getAppendClaimedAt() + ", idle for more than " + timeoutMs + "ms)");
+    }
+
+    private static boolean isAfter(Timestamp time, Instant instant) {
+        return time != null && time.toInstant().isAfter(instant);
+    }
+
     // =================================================================
     // 2. UPDATE SESSION STATUS
     // =================================================================
@@ -102,12 +194,38 @@ public class UploadSessionService {
             throw new IllegalStateException("Invalid session status transition from " + currentStatus + " to " + newStatus);
         }
 
+        // A published append is part of the file, failing it now would not undo anything
+        if (session.isAppend() && currentStatus == UploadStatus.COMPLETED) {
+            throw new IllegalStateException("Append session " + sessionId + " is already published");
+        }
+
+        // A failed append has released its file, it is retried by opening a new append session
+        if (session.isAppend() && newStatus == UploadStatus.UPLOADING) {
+            throw new IllegalStateException("Append sessions cannot be resumed, open a new append session");
+        }
+        if (session.isAppend() && newStatus == UploadStatus.COMPLETED) {
+            return completeAppendSession(session);
+        }
+
         // ========== UPDATE SESSION ==========
 
         session.setStatus(newStatus);
         session.setUpdatedAt(Timestamp.from(Instant.now()));
         UploadSession updatedSession = uploadSessionRepository.save(session);
 
+        // Append sessions never change the file's status, a failed append is simply discarded
+        if (session.isAppend()) {
+            // Refused unless this call released the claim: the caller deletes the append's
+            // snowflakes next, which is only safe if the append can no longer be published
+            if (newStatus == UploadStatus.FAILED
+                    && !fileService.abortAppend(session.getTargetFileId(), sessionId, session.getBaseChunkCount())) {
+                throw new IllegalStateException("Append session " + sessionId + " no longer holds file: "
+                        + session.getTargetFileId());
+            }
+            log.info("Append session status updated: " + sessionId + " -> " + newStatus);
+            return updatedSession;
+        }
+
         // ========== CASCADE UPDATE TO FILE (via FileService) ==========
 
         fileService.updateFileStatusBySession(sessionId, newStatus);
@@ -142,11 +260,11 @@ public class UploadSessionService {
     @Transactional(readOnly = true)
     public boolean isSessionComplete(UUID sessionId) {
         UploadSession session = getSession(sessionId);
-        File file = fileService.getFileBySession(sessionId);
+        int expectedChunks = getExpectedChunks(session);
 
-        boolean isComplete = session.getChunksReceived() >= file.getTotalChunks();
+        boolean isComplete = session.getChunksReceived() >= expectedChunks;
         log.info("Session completeness check: " + sessionId +
-                " - " + session.getChunksReceived() + "/" + file.getTotalChunks() +
+                " - " + session.getChunksReceived() + "/" + expectedChunks +
                 " chunks (" + (isComplete ? "COMPLETE" : "INCOMPLETE") + ")");
 
         return isComplete;
@@ -166,6 +284,10 @@ public class UploadSessionService {
         // ========== VALIDATIONS ==========
 
         UploadSession session = getSession(sessionId);
+        if (session.isAppend()) {
+            return completeAppendSession(session);
+        }
+
         File file = fileService.getFileBySession(sessionId);
 
         // Check if all chunks are received
@@ -187,6 +309,31 @@ public class UploadSessionService {
         return completedSession;
     }
 
+    /**
+     * Publishes an append session: totalChunks and fileSize grow in a single update,
+     * in the same transaction that marks the session COMPLETED
+     */
+    private UploadSession completeAppendSession(UploadSession session) {
+        if (session.getStatus() != UploadStatus.UPLOADING) {
+            throw new IllegalStateException("Cannot complete append session in status " + session.getStatus());
+        }
+
+        if (session.getChunksReceived() < session.getAppendChunkCount()) {
+            throw new IllegalStateException("Cannot complete append - missing chunks. " +
+                    "Received: " + session.getChunksReceived() + ", Expected: " + session.getAppendChunkCount());
+        }
+
+        fileService.commitAppend(session.getTargetFileId(), session.getSessionId(),
+                session.getAppendChunkCount(), session.getAppendBytes());
+
+        session.setStatus(UploadStatus.COMPLETED);
+        session.setUpdatedAt(Timestamp.from(Instant.now()));
+        UploadSession completedSession = uploadSessionRepository.save(session);
+
+        log.info("Append session completed: " + session.getSessionId() + " on file " + session.getTargetFileId());
+        return completedSession;
+    }
+
     // =================================================================
     // 5. FETCH SESSION FUNCTIONS
     // =================================================================
@@ -214,11 +361,11 @@ public class UploadSessionService {
     @Transactional(readOnly = true)
     public double getSessionProgress(UUID sessionId) {
         UploadSession session = getSession(sessionId);
-        File file = fileService.getFileBySession(sessionId);
+        int expectedChunks = getExpectedChunks(session);
 
-        if (file.getTotalChunks() == 0) return 0.0;
+        if (expectedChunks == 0) return 0.0;
 
-        double progress = (double) session.getChunksReceived() / file.getTotalChunks() * 100.0;
+        double progress = (double) session.getChunksReceived() / expectedChunks * 100.0;
         return Math.round(progress * 100.0) / 100.0; // Round to 2 decimal places
     }
 
@@ -235,6 +382,15 @@ public class UploadSessionService {
         log.warning("DELETING SESSION AND ALL DATA: " + sessionId);
 
         UploadSession session = getSession(sessionId);
+
+        if (session.isAppend()) {
+            // Only the append's uncommitted chunks belong to this session
+            fileService.abortAppend(session.getTargetFileId(), sessionId, session.getBaseChunkCount());
+            uploadSessionRepository.delete(session);
+            log.warning("APPEND SESSION DELETED: " + sessionId);
+            return;
+        }
+
         File file = fileService.getFileBySession(sessionId);
 
         // Delete file first (cascades to chunks and replicas via FileService)
@@ -249,6 +405,16 @@ public class UploadSessionService {
     // 7. VALIDATION & UTILITY FUNCTIONS
     // =================================================================
 
+    /**
+     * Chunks a session must receive: the whole file, or only the appended chunks
+     */
+    private int getExpectedChunks(UploadSession session) {
+        if (session.isAppend()) {
+            return session.getAppendChunkCount();
+        }
+        return fileService.getFileBySession(session.getSessionId()).getTotalChunks();
+    }
+
     /**
      * Validate session status transitions
      */
@@ -277,6 +443,7 @@ public class UploadSessionService {
         private UUID fileId;
         private UploadStatus status;
         private int expectedChunks;
+        private int startChunk; // first chunk number of this session (non-zero for appends)
 
     }
 }
\ No newline at end of file
@@ -46,6 +46,11 @@ public class ConfigLoader {
             writer.write("frostbyte.datanode.master-api-key=ABCDEFEG\n");
             writer.write("frostbyte.datanode.size=5\n");
             writer.write("\n");
+            writer.write("# Failure domain (replicas of a chunk are spread across zones, racks and machines)\n");
+            writer.write("frostbyte.datanode.zone=\n");
+            writer.write("frostbyte.datanode.rack=\n");
+            writer.write("frostbyte.datanode.physical-host=\n");
+            writer.write("\n");
             writer.write("# Spring Configuration\n");
             writer.write("spring.servlet.multipart.max-file-size=5GB\n");
             writer.write("spring.servlet.multipart.max-request-size=5GB\n");
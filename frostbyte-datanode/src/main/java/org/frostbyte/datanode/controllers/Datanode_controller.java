@@ -13,13 +13,15 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.logging.Logger;
 
 /*
     * Datanode_controller
-    * Handles chunk (snowflake) upload/download and storage monitoring
+    * Handles chunk (snowflake) upload/download/delete and storage monitoring
     * Communicates with BalancerNode and MasterNode
  */
 
@@ -152,6 +154,55 @@ public class Datanode_controller {
         }
     }
 
+    /**
+     * Delete snowflakes by filename.
+     * Called by BalancerNode to drop snowflakes no file references (e.g. of an aborted append),
+     * so their names can be written again. Names that do not exist count as deleted.
+     *
+     * @param apiKey Internal API key for authentication
+     * @param body JSON {"snowflakeNames": [...]}
+     * @return 200 OK with the number of files removed, 400 BAD_REQUEST if a name is missing or
+     *         points outside the snowflake folder
+     */
+    @PostMapping("/datanode/delete")
+    public ResponseEntity<?> deleteSnowflakes(@RequestHeader(value = API_HEADER) String apiKey,
+                                              @RequestBody Map<String, List<String>> body) {
+
+        if (!config.getMasterAPIKey().equals(apiKey)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid API key.");
+        }
+
+        List<String> names = body.get("snowflakeNames");
+        if (names == null) {
+            return ResponseEntity.badRequest().body("snowflakeNames is required.");
+        }
+
+        Path snowflakeFolder = Paths.get(config.getSnowflakeFolder()).toAbsolutePath().normalize();
+        List<Path> targets = new ArrayList<>(names.size());
+        for (String name : names) {
+            Path target = snowflakeFolder.resolve(name).normalize();
+            if (!snowflakeFolder.equals(target.getParent())) {
+                return ResponseEntity.badRequest().body("Invalid snowflake name: " + name);
+            }
+            targets.add(target);
+        }
+
+        try {
+            int deleted = 0;
+            for (Path target : targets) {
+                if (Files.deleteIfExists(target)) deleted++;
+            }
+            log.info(String.format("[DELETE-SUCCESS] requested=%d deleted=%d", names.size(), deleted));
+            return ResponseEntity.ok(Map.of("status", "success",
+                                            "requested", names.size(),
+                                            "deleted", deleted));
+        } catch (IOException e) {
+            log.warning("Failed to delete snowflakes " + e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to delete snowflakes: " + e.getMessage());
+        }
+    }
+
     // =================================================================
     // 2. CAPACITY MONITORING
     // =================================================================
@@ -21,4 +21,9 @@ public class configModel {
     private String masterAPIKey;
     private String snowflakeFolder;
     private int size;
+
+    // Failure-domain labels reported on registration (empty = unknown)
+    private String zone = "";
+    private String rack = "";
+    private String physicalHost = "";   // Machine running this DataNode, defaults to the host address
 }
@@ -30,10 +30,16 @@ public class MasterNodeCommunicator {
                 HttpHeaders headers = new HttpHeaders();
                 headers.set("X-API-Key", config.getMasterAPIKey());
 
+                String physicalHost = config.getPhysicalHost() == null || config.getPhysicalHost().isEmpty()
+                        ? config.getHost() : config.getPhysicalHost();
+
                 Map<String, Object> body = Map.of(
                         "ip", config.getHost() + ":" + config.getPort(),
                         "nodeName", config.getNodeName(),
-                        "nodeType", "DataNode"
+                        "nodeType", "DataNode",
+                        "zone", config.getZone() == null ? "" : config.getZone(),
+                        "rack", config.getRack() == null ? "" : config.getRack(),
+                        "physicalHost", physicalHost
                 );
 
                 HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
@@ -77,7 +77,7 @@ public class Masternode_controller {
      * Validates node type and adds to registry with current timestamp.
      *
      * @param apiKey Internal API key for authentication
-     * @param req Registration request containing node IP, name, and type
+     * @param req Registration request containing node IP, name, type and optional zone/rack/physicalHost labels
      * @return 200 OK with success status, 400 BAD_REQUEST if wrong node type or invalid API key
      */
     @PostMapping("/datanode/register")
@@ -96,6 +96,9 @@ public class Masternode_controller {
         DataNode dn = new DataNode();
         dn.setHost(req.getIp());
         dn.setNodeName(req.getNodeName());
+        dn.setZone(req.getZone() != null ? req.getZone() : "");
+        dn.setRack(req.getRack() != null ? req.getRack() : "");
+        dn.setPhysicalHost(req.getPhysicalHost() != null ? req.getPhysicalHost() : "");
         dn.setRegisterTime(LocalDateTime.now());
         dn.setLastUpdateTime(LocalDateTime.now());
 
@@ -262,8 +265,9 @@ public class Masternode_controller {
      * Get list of alive DataNodes with capacity metrics.
      * Called by ClientNode and BalancerNode to discover available storage nodes.
      *
-     * Returns node host, name, and capacity info (currentUsedGB, totalCapacityGB, fillPercent).
-     * Used by BalancerNode's heap-based load balancing algorithm for chunk allocation.
+     * Returns node host, name, capacity info (currentUsedGB, totalCapacityGB, fillPercent) and
+     * failure-domain labels (zone, rack, physicalHost; empty if not reported).
+     * Used by BalancerNode's placement algorithm for chunk allocation.
      *
      * @param apiKey Internal API key for authentication
      * @return JSON with aliveNodes array (or "NULL" string if none alive) and timestamp
@@ -288,7 +292,10 @@ public class Masternode_controller {
                     "nodeName", dn.getNodeName(),
                     "currentUsedGB", dn.getCurrentUsedGB(),
                     "totalCapacityGB", dn.getTotalCapacityGB(),
-                    "fillPercent", dn.getFillPercent()
+                    "fillPercent", dn.getFillPercent(),
+                    "zone", dn.getZone(),
+                    "rack", dn.getRack(),
+                    "physicalHost", dn.getPhysicalHost()
             ));
         }
 
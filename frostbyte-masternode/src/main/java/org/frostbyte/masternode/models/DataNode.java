@@ -12,4 +12,9 @@ public class DataNode extends Node {
     private double currentUsedGB = 0.0;
     private double totalCapacityGB = 0.0;
     private double fillPercent = 0.0;
+
+    // Failure-domain labels, empty when the DataNode did not report them
+    private String zone = "";
+    private String rack = "";
+    private String physicalHost = "";
 }
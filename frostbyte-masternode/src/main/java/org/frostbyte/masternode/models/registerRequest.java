@@ -14,5 +14,10 @@ public class registerRequest {
 
     @NotNull
     private nodeType nodeType;
+
+    // Optional failure-domain labels (DataNodes only)
+    private String zone;
+    private String rack;
+    private String physicalHost;
 }
 